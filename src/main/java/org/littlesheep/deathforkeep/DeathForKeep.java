@@ -14,24 +14,34 @@ import org.bukkit.plugin.RegisteredServiceProvider;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.littlesheep.deathforkeep.commands.DeathKeepCommand;
 import org.littlesheep.deathforkeep.data.DatabaseManager;
+import org.littlesheep.deathforkeep.data.ExpiryIndex;
+import org.littlesheep.deathforkeep.data.ShareIndex;
+import org.littlesheep.deathforkeep.data.PlayerDataStore;
 import org.littlesheep.deathforkeep.data.PlayerData;
+import org.littlesheep.deathforkeep.data.PlayerDataCache;
+import org.littlesheep.deathforkeep.data.PlayerDataWriter;
+import org.littlesheep.deathforkeep.data.PlayerNameCache;
 import org.littlesheep.deathforkeep.gui.GUIManager;
 import org.littlesheep.deathforkeep.hooks.PlaceholderHook;
+import org.littlesheep.deathforkeep.listeners.BackupTriggerListener;
 import org.littlesheep.deathforkeep.listeners.JoinListener;
 import org.littlesheep.deathforkeep.listeners.ChatListener;
 import org.littlesheep.deathforkeep.service.ProtectionService;
 import org.littlesheep.deathforkeep.tasks.ReminderTask;
 import org.littlesheep.deathforkeep.utils.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 public final class DeathForKeep extends JavaPlugin {
 
     private Economy economy;
-    private DatabaseManager databaseManager;
+    private PlayerDataStore databaseManager;
+    private PlayerDataWriter playerDataWriter;
     private Messages messages;
     private ColorLogger colorLogger;
     private ConfigManager configManager;
@@ -40,8 +50,11 @@ public final class DeathForKeep extends JavaPlugin {
     private ShareRequestManager shareRequestManager;
     private ReminderTask reminderTask;
     private ProtectionService protectionService;
+    // 重载时整体替换，其他线程也可能读取
+    private volatile PluginSettings settings;
 
-    private Map<UUID, PlayerData> playerDataMap = new ConcurrentHashMap<>();
+    private PlayerDataCache playerDataCache;
+    private PlayerNameCache nameCache;
 
     // 声明DeathListener字段
     private org.littlesheep.deathforkeep.listeners.DeathListener deathListener;
@@ -55,19 +68,29 @@ public final class DeathForKeep extends JavaPlugin {
         // 初始化配置管理器
         configManager = new ConfigManager(this, colorLogger);
         configManager.checkConfig();
+        settings = PluginSettings.load(getConfig(), getLogger());
         configManager.checkLanguageFiles();
         
         // 初始化消息系统
         messages = new Messages(this);
         
+        // 启动保护时钟，保护检查读取每tick更新的时间
+        ProtectionClock.start(this);
+        
         // 初始化数据库
-        databaseManager = new DatabaseManager(this);
+        databaseManager = DatabaseManager.create(this);
+        playerDataWriter = new PlayerDataWriter(this, databaseManager);
         
-        // 加载玩家数据
-        playerDataMap = databaseManager.loadAllPlayerData();
+        // 玩家数据按需加载，启动时只预加载在线玩家
+        ExpiryIndex expiryIndex = new ExpiryIndex();
+        ShareIndex shareIndex = new ShareIndex();
+        playerDataCache = new PlayerDataCache(this, databaseManager, playerDataWriter, expiryIndex, shareIndex);
+        preloadOnlinePlayers();
+        nameCache = new PlayerNameCache(this, databaseManager);
+        nameCache.load();
         
         // 初始化保护服务
-        protectionService = new ProtectionService(this, databaseManager, playerDataMap);
+        protectionService = new ProtectionService(this, playerDataWriter, playerDataCache, expiryIndex, shareIndex);
         
         // 设置经济系统
         if (!setupEconomy()) {
@@ -87,6 +110,7 @@ public final class DeathForKeep extends JavaPlugin {
         // 注册监听器
         deathListener = new org.littlesheep.deathforkeep.listeners.DeathListener(this);
         getServer().getPluginManager().registerEvents(deathListener, this);
+        getServer().getPluginManager().registerEvents(new BackupTriggerListener(deathListener.getBackupScheduler()), this);
         getServer().getPluginManager().registerEvents(new JoinListener(this), this);
         getServer().getPluginManager().registerEvents(guiManager, this);
         Bukkit.getPluginManager().registerEvents(new ChatListener(this), this);
@@ -96,9 +120,14 @@ public final class DeathForKeep extends JavaPlugin {
         reminderTask.startTask();
         bossBarManager.startTask();
         
+        // 定期淘汰长时间未访问的离线玩家数据
+        Bukkit.getScheduler().runTaskTimerAsynchronously(this, playerDataCache::evictExpired, 1200L, 1200L);
+        
         // 注册 PlaceholderAPI 扩展
         if (Bukkit.getPluginManager().getPlugin("PlaceholderAPI") != null) {
-            new PlaceholderHook(this).register();
+            PlaceholderHook placeholderHook = new PlaceholderHook(this);
+            placeholderHook.register();
+            getServer().getPluginManager().registerEvents(placeholderHook, this);
             colorLogger.info("已成功注册 PlaceholderAPI 扩展！");
         }
         
@@ -109,24 +138,16 @@ public final class DeathForKeep extends JavaPlugin {
             colorLogger.info("已启用 bStats 统计");
         }
         
-        // 添加死亡保护的最终检查任务
-        Bukkit.getScheduler().runTaskTimer(this, () -> {
-            for (Player player : Bukkit.getOnlinePlayers()) {
-                if (player.isDead() && hasActiveProtection(player.getUniqueId())) {
-                    // 如果玩家已死亡且有保护，强制设置保持物品
-                }
-            }
-        }, 1L, 1L);
-        
         colorLogger.info(messages.getMessage("plugin.enabled"));
     }
 
     @Override
     public void onDisable() {
-        // 保存所有玩家数据
+        // 保存所有玩家数据，并等待写入线程写完所有排队的数据
         try {
-            for (UUID playerUUID : playerDataMap.keySet()) {
-                savePlayerData(playerUUID);
+            if (playerDataWriter != null) {
+                playerDataWriter.saveAll(playerDataCache.values());
+                playerDataWriter.shutdown(30000L);
             }
             colorLogger.info("所有玩家数据已保存");
         } catch (Exception e) {
@@ -140,6 +161,8 @@ public final class DeathForKeep extends JavaPlugin {
                 colorLogger.info("提醒任务已取消");
             }
             
+            ProtectionClock.stop();
+            
             if (bossBarManager != null) {
                 bossBarManager.stopTask();
                 colorLogger.info("BossBar任务已取消");
@@ -195,8 +218,11 @@ public final class DeathForKeep extends JavaPlugin {
     public void reload() {
         // 重新加载配置
         reloadConfig();
+        settings = PluginSettings.load(getConfig(), getLogger());
         configManager.checkLanguageFiles();
         messages.loadLanguage();
+        // 保护等级可能已修改，使已有的快照失效
+        protectionService.reloadSettings();
         
         colorLogger.logReload();
     }
@@ -205,6 +231,13 @@ public final class DeathForKeep extends JavaPlugin {
         return economy;
     }
     
+    /**
+     * @return 当前的插件设置，重载后返回新的设置
+     */
+    public PluginSettings getSettings() {
+        return settings;
+    }
+    
     public Messages getMessages() {
         return messages;
     }
@@ -213,14 +246,22 @@ public final class DeathForKeep extends JavaPlugin {
         return colorLogger;
     }
     
-    public DatabaseManager getDatabaseManager() {
+    public PlayerDataStore getDatabaseManager() {
         return databaseManager;
     }
     
+    public PlayerDataWriter getPlayerDataWriter() {
+        return playerDataWriter;
+    }
+    
     public GUIManager getGuiManager() {
         return guiManager;
     }
     
+    public org.littlesheep.deathforkeep.listeners.DeathListener getDeathListener() {
+        return deathListener;
+    }
+    
     public BossBarManager getBossBarManager() {
         return bossBarManager;
     }
@@ -229,8 +270,20 @@ public final class DeathForKeep extends JavaPlugin {
         return shareRequestManager;
     }
     
-    public Map<UUID, PlayerData> getPlayerDataMap() {
-        return playerDataMap;
+    public ProtectionService getProtectionService() {
+        return protectionService;
+    }
+    
+    public PlayerNameCache getNameCache() {
+        return nameCache;
+    }
+    
+    public PlayerDataCache getPlayerDataCache() {
+        return playerDataCache;
+    }
+    
+    public ReminderTask getReminderTask() {
+        return reminderTask;
     }
     
     public boolean hasActiveProtection(UUID playerUUID) {
@@ -257,42 +310,29 @@ public final class DeathForKeep extends JavaPlugin {
         return protectionService.isParticlesEnabled(playerUUID);
     }
     
-    public void shareProtection(UUID playerUUID, UUID targetUUID) {
-        PlayerData data = playerDataMap.get(playerUUID);
-        if (data != null) {
-            data.setSharedWith(targetUUID);
-            databaseManager.updateSharedWith(playerUUID, targetUUID);
-        }
+    public boolean shareProtection(UUID playerUUID, UUID targetUUID) {
+        return protectionService.shareProtection(playerUUID, targetUUID);
     }
     
     public double getWorldPrice(World world) {
-        String worldName = world.getName();
-        double defaultPrice = getConfig().getDouble("price-per-day", 1000);
-        
-        if (getConfig().contains("worlds." + worldName + ".price")) {
-            return getConfig().getDouble("worlds." + worldName + ".price", defaultPrice);
-        }
-        
-        return defaultPrice;
+        return settings.getWorldPrice(world.getName());
     }
     
     public void resetAllData() {
-        playerDataMap.clear();
-        databaseManager.resetAllData();
+        playerDataCache.reset();
+        playerDataWriter.resetAll();
     }
     
     public String getRemainingTimeFormatted(UUID playerUUID) {
-        PlayerData data = playerDataMap.get(playerUUID);
+        PlayerData data = playerDataCache.get(playerUUID);
         if (data != null && data.isActive()) {
-            long remainingSeconds = data.getExpiryTime() - (System.currentTimeMillis() / 1000);
-            return TimeUtils.formatTime(remainingSeconds);
+            return TimeUtils.formatTime(data.getRemainingSeconds());
         }
         
         // 检查是否有其他玩家与此玩家共享保护
-        for (PlayerData otherData : playerDataMap.values()) {
-            if (otherData.isActive() && playerUUID.equals(otherData.getSharedWith())) {
-                long remainingSeconds = otherData.getExpiryTime() - (System.currentTimeMillis() / 1000);
-                return TimeUtils.formatTime(remainingSeconds);
+        for (PlayerData otherData : playerDataCache.findSharingWith(playerUUID)) {
+            if (otherData.isActive()) {
+                return TimeUtils.formatTime(otherData.getRemainingSeconds());
             }
         }
         
@@ -300,15 +340,16 @@ public final class DeathForKeep extends JavaPlugin {
     }
     
     public void batchAddProtection(Map<UUID, Long> playerDurations) {
+        Map<UUID, Integer> playerDays = new HashMap<>();
         for (Map.Entry<UUID, Long> entry : playerDurations.entrySet()) {
-            addProtection(entry.getKey(), entry.getValue());
+            int days = (int) (entry.getValue() / (24 * 60 * 60));
+            playerDays.put(entry.getKey(), Math.max(1, days)); // 确保至少1天
         }
+        protectionService.addProtectionDays(playerDays);
     }
     
     public void batchRemoveProtection(Iterable<UUID> playerUUIDs) {
-        for (UUID uuid : playerUUIDs) {
-            removeProtection(uuid);
-        }
+        protectionService.removeProtection(playerUUIDs);
     }
 
     /**
@@ -328,8 +369,7 @@ public final class DeathForKeep extends JavaPlugin {
             return false;
         }
         
-        UUID sharedWith = data.getSharedWith();
-        return sharedWith != null && sharedWith.equals(targetUUID);
+        return data.isSharedWith(targetUUID);
     }
 
     /**
@@ -339,7 +379,7 @@ public final class DeathForKeep extends JavaPlugin {
      * @return 玩家数据，如果不存在则返回null
      */
     public PlayerData getPlayerData(UUID playerUUID) {
-        return playerDataMap.get(playerUUID);
+        return playerDataCache.get(playerUUID);
     }
 
     /**
@@ -354,10 +394,7 @@ public final class DeathForKeep extends JavaPlugin {
             return 0;
         }
         
-        long currentTime = System.currentTimeMillis() / 1000;
-        long expiryTime = data.getExpiryTime();
-        
-        return Math.max(0, expiryTime - currentTime);
+        return data.getRemainingSeconds();
     }
 
     /**
@@ -365,36 +402,49 @@ public final class DeathForKeep extends JavaPlugin {
      */
     public void reloadPluginData() {
         reloadConfig();
+        settings = PluginSettings.load(getConfig(), getLogger());
         configManager.checkLanguageFiles();
         messages.loadLanguage();
-        playerDataMap = databaseManager.loadAllPlayerData();
+        // 先写入所有排队的修改，避免重新加载到旧数据
+        playerDataWriter.flushNow(10000L);
+        playerDataCache.reloadSettings(this);
+        protectionService.reloadSettings();
+        playerDataCache.clear();
+        preloadOnlinePlayers();
         colorLogger.logReload();
     }
 
+    /**
+     * 在异步线程中预加载所有在线玩家的数据
+     * 加载完成前的查询会直接读取数据库，不会得到错误的结果
+     */
+    private void preloadOnlinePlayers() {
+        final List<UUID> online = new ArrayList<>();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            online.add(player.getUniqueId());
+            playerDataCache.setOnline(player.getUniqueId());
+        }
+        if (online.isEmpty()) {
+            return;
+        }
+        
+        Bukkit.getScheduler().runTaskAsynchronously(this, () -> {
+            for (UUID uuid : online) {
+                playerDataCache.preload(uuid);
+            }
+        });
+    }
+
+    /**
+     * 保存玩家数据
+     * 数据会进入写入队列，由写入线程合并后批量写入数据库，不会阻塞调用线程
+     * 
+     * @param uuid 玩家UUID
+     */
     public void savePlayerData(UUID uuid) {
-        PlayerData data = playerDataMap.get(uuid);
+        PlayerData data = playerDataCache.get(uuid);
         if (data != null) {
-            databaseManager.savePlayerData(
-                uuid, 
-                data.getExpiryTime(), 
-                data.isParticlesEnabled(), 
-                data.getSharedWith()
-            );
-            
-            // 确保更新所有其他字段
-            if (data.getProtectionLevel() != null || data.isKeepExp() || data.getParticleEffect() != null || data.isNoDeathPenalty()) {
-                databaseManager.updatePlayerData(
-                    uuid,
-                    data.getExpiryTime(),
-                    data.isActive(),
-                    data.isParticlesEnabled(),
-                    data.getSharedWith(),
-                    data.getProtectionLevel(),
-                    data.isKeepExp(),
-                    data.getParticleEffect(),
-                    data.isNoDeathPenalty()
-                );
-            }
+            playerDataWriter.markDirty(data);
         }
     }
 
@@ -0,0 +1,177 @@
+/*
+  备份压缩
+  写入日志前压缩序列化后的备份，第一个字节记录压缩方式，读取时据此解压
+  压缩使用预置字典，字典包含物品序列化时常见的类名和键名，小备份也能有效压缩
+ */
+package org.littlesheep.deathforkeep.backup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public class BackupCodec {
+
+    public static final byte NONE = 0;
+    // Deflate + 第一版预置字典，修改字典时需要使用新的编号
+    public static final byte DEFLATE = 1;
+
+    // 越常见的内容越靠后
+    private static final byte[] DICTIONARY = (
+            "WRITTEN_BOOKtitleauthorpagesgenerationBOOK_SIGNEDstored-enchantsENCHANTED"
+            + "attribute-modifiersItemFlagsHIDE_ATTRIBUTESrepair-costcustom-model-data"
+            + "BlockEntityTagTILE_ENTITYSHULKER_BOX{\"extra\":[{\"text\":\"\"}],\"text\":\"\"}"
+            + "org.bukkit.potion.PotionEffecteffectdurationamplifierambienthas-particleshas-icon"
+            + "PROTECTION_ENVIRONMENTALDAMAGE_ALLDIG_SPEEDLOOT_BONUS_BLOCKSDURABILITYMENDING"
+            + "NETHERITE_DIAMOND_IRON__SWORD_PICKAXE_AXE_SHOVEL_HELMET_CHESTPLATE_LEGGINGS_BOOTS"
+            + "display-nameloreenchantsDamageUnbreakablemeta-typeUNSPECIFICItemMeta"
+            + "java.lang.Integerjava.lang.Numbervaluexpjava.lang.Stringjava.util.LinkedHashMap"
+            + "com.google.common.collect.ImmutableMapcom.google.common.collect.ImmutableMap$SerializedForm"
+            + "keysvalues[Ljava.lang.Object;org.bukkit.util.io.Wrappermapv==org.bukkit.inventory.ItemStack"
+            + "typeamountmeta"
+    ).getBytes(StandardCharsets.UTF_8);
+
+    private final byte codec;
+    private final int level;
+
+    // 统计
+    private final AtomicLong encodedCount = new AtomicLong();
+    private final AtomicLong rawBytes = new AtomicLong();
+    private final AtomicLong encodedBytes = new AtomicLong();
+    private final AtomicLong encodeNanos = new AtomicLong();
+
+    /**
+     * @param name 压缩方式：none 或 deflate
+     * @param level 压缩级别 1-9
+     */
+    public BackupCodec(String name, int level) {
+        this.codec = "none".equalsIgnoreCase(name) ? NONE : DEFLATE;
+        this.level = Math.max(Deflater.BEST_SPEED, Math.min(Deflater.BEST_COMPRESSION, level));
+    }
+
+    /**
+     * 压缩序列化后的备份，可在任意线程调用
+     */
+    public byte[] encode(byte[] raw) {
+        long start = System.nanoTime();
+        byte[] result;
+        if (codec == NONE) {
+            result = new byte[raw.length + 1];
+            result[0] = NONE;
+            System.arraycopy(raw, 0, result, 1, raw.length);
+        } else {
+            result = deflate(raw);
+        }
+
+        encodedCount.incrementAndGet();
+        rawBytes.addAndGet(raw.length);
+        encodedBytes.addAndGet(result.length);
+        encodeNanos.addAndGet(System.nanoTime() - start);
+        return result;
+    }
+
+    private byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(raw);
+            deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 16);
+            out.write(DEFLATE);
+            out.write(ByteBuffer.allocate(4).putInt(raw.length).array(), 0, 4);
+            byte[] chunk = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 按第一个字节记录的压缩方式解压，与当前配置无关
+     */
+    public static byte[] decode(byte[] data) throws IOException {
+        if (data.length == 0) {
+            throw new IOException("备份数据为空");
+        }
+        switch (data[0]) {
+            case NONE: {
+                byte[] raw = new byte[data.length - 1];
+                System.arraycopy(data, 1, raw, 0, raw.length);
+                return raw;
+            }
+            case DEFLATE:
+                return inflate(data);
+            default:
+                throw new IOException("不支持的备份压缩方式: " + data[0]);
+        }
+    }
+
+    private static byte[] inflate(byte[] data) throws IOException {
+        if (data.length < 5) {
+            throw new IOException("备份数据不完整");
+        }
+        int rawLength = ByteBuffer.wrap(data, 1, 4).getInt();
+        byte[] raw = new byte[rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, 5, data.length - 5);
+            int offset = 0;
+            while (offset < rawLength) {
+                int read = inflater.inflate(raw, offset, rawLength - offset);
+                if (read == 0) {
+                    if (inflater.needsDictionary()) {
+                        inflater.setDictionary(DICTIONARY);
+                    } else if (inflater.finished() || inflater.needsInput()) {
+                        throw new IOException("备份数据不完整");
+                    }
+                }
+                offset += read;
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("备份数据损坏: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    public String getName() {
+        return codec == NONE ? "none" : "deflate";
+    }
+
+    /**
+     * @return 压缩后与压缩前的大小之比
+     */
+    public double getRatio() {
+        long raw = rawBytes.get();
+        return raw == 0 ? 1.0 : (double) encodedBytes.get() / raw;
+    }
+
+    /**
+     * @return 每个备份平均压缩耗时（微秒）
+     */
+    public double getAverageMicros() {
+        long count = encodedCount.get();
+        return count == 0 ? 0 : encodeNanos.get() / 1000.0 / count;
+    }
+
+    /**
+     * @return 每个备份压缩前的平均大小（字节）
+     */
+    public long getAverageRawBytes() {
+        long count = encodedCount.get();
+        return count == 0 ? 0 : rawBytes.get() / count;
+    }
+
+    public long getEncodedCount() {
+        return encodedCount.get();
+    }
+}
@@ -0,0 +1,460 @@
+/*
+  死亡备份日志
+  死亡时的备份追加写入内存映射文件，服务器崩溃后在启动或玩家进入时恢复
+  写入只复制到映射内存，由异步任务批量刷盘，已恢复的记录在后台压缩时移除
+  压缩后写入新一代文件（journal.dat.1、journal.dat.2…），不替换仍被映射的旧文件
+ */
+package org.littlesheep.deathforkeep.backup;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+public class BackupJournal {
+
+    private static final int MAGIC = 0x444B4A31; // "DKJ1"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    // 记录格式：内容长度(4) 类型(1) UUID(16) 内容 CRC32(4)，长度为0表示日志结束
+    private static final int RECORD_OVERHEAD = 4 + 1 + 16 + 4;
+    private static final byte TYPE_BACKUP = 1;
+    private static final byte TYPE_RESTORED = 2;
+    private static final byte[] EMPTY = new byte[0];
+    private static final int MIN_CAPACITY = 1024 * 1024;
+
+    private final Plugin plugin;
+    // 第0代文件，之后每次压缩生成的文件在此文件名后加上代数
+    private final File file;
+    private final long compactThreshold;
+
+    private long generation;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int position;
+    private boolean dirty;
+    private long appendCount;
+    // 尚未恢复的备份，压缩时只保留这些记录
+    private final Map<UUID, byte[]> pending = new HashMap<>();
+    // 已预留但尚未写入的备份，序列化在工作线程完成后才写入
+    private final Map<UUID, Long> reserved = new HashMap<>();
+    private long nextTicket;
+
+    private BukkitTask syncTask;
+    private BukkitTask compactTask;
+
+    // 统计，只由异步任务更新
+    private volatile long syncs;
+    private volatile long compactions;
+
+    /**
+     * @param compactThreshold 日志超过多少字节时尝试压缩
+     */
+    public BackupJournal(Plugin plugin, File file, long compactThreshold) {
+        this.plugin = plugin;
+        this.file = file;
+        this.compactThreshold = Math.max(HEADER_BYTES, compactThreshold);
+    }
+
+    /**
+     * 打开日志并读取所有未恢复的备份，末尾不完整的记录会被丢弃
+     */
+    public synchronized void open() throws IOException {
+        File folder = file.getParentFile();
+        if (folder != null && !folder.exists()) {
+            folder.mkdirs();
+        }
+        generation = latestGeneration();
+        channel = openChannel(generationFile(generation));
+        buffer = map(channel);
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            if (buffer.getInt(0) != 0) {
+                plugin.getLogger().warning("备份日志格式无法识别，已重新创建: " + file.getName());
+            }
+            zero(0, buffer.capacity());
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            position = HEADER_BYTES;
+        } else {
+            position = scan();
+            // 清除末尾可能残留的不完整记录，避免之后追加的记录后面出现旧数据
+            zero(position, buffer.capacity());
+        }
+        buffer.force();
+        deleteStaleGenerations();
+    }
+
+    private static FileChannel openChannel(File target) throws IOException {
+        return FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static MappedByteBuffer map(FileChannel target) throws IOException {
+        long size = Math.max(target.size(), MIN_CAPACITY);
+        return target.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private File generationFile(long target) {
+        return target == 0 ? file : new File(file.getParentFile(), file.getName() + "." + target);
+    }
+
+    /**
+     * @return 文件名为 日志名.代数 时的代数，不是日志文件时返回-1
+     */
+    private long parseGeneration(String name) {
+        if (name.equals(file.getName())) {
+            return 0;
+        }
+        String prefix = file.getName() + ".";
+        if (!name.startsWith(prefix) || name.length() == prefix.length() || name.length() - prefix.length() > 18) {
+            return -1;
+        }
+        for (int i = prefix.length(); i < name.length(); i++) {
+            if (!Character.isDigit(name.charAt(i))) {
+                return -1;
+            }
+        }
+        return Long.parseLong(name.substring(prefix.length()));
+    }
+
+    private File[] listJournalFiles() {
+        File folder = file.getAbsoluteFile().getParentFile();
+        File[] files = folder == null ? null : folder.listFiles(
+                candidate -> candidate.isFile() && candidate.getName().startsWith(file.getName()));
+        return files == null ? new File[0] : files;
+    }
+
+    // 新一代文件只在完整写入并刷盘后才改名生成，所以代数最大的文件总是最新的
+    private long latestGeneration() {
+        long latest = 0;
+        for (File candidate : listJournalFiles()) {
+            latest = Math.max(latest, parseGeneration(candidate.getName()));
+        }
+        return latest;
+    }
+
+    /**
+     * 删除旧一代日志和未完成的临时文件
+     * 旧文件可能仍被映射（Windows上无法删除），删除失败时留到下次压缩或启动时再删
+     */
+    private void deleteStaleGenerations() {
+        for (File candidate : listJournalFiles()) {
+            String name = candidate.getName();
+            long candidateGeneration = parseGeneration(name);
+            if ((candidateGeneration >= 0 && candidateGeneration != generation) || name.endsWith(".tmp")) {
+                candidate.delete();
+            }
+        }
+    }
+
+    private int scan() {
+        int offset = HEADER_BYTES;
+        while (offset + RECORD_OVERHEAD <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+            if (length == 0 && buffer.get(offset + 4) == 0) {
+                break;
+            }
+            if (length < 0 || offset + RECORD_OVERHEAD + length > buffer.capacity()) {
+                break;
+            }
+            int crcOffset = offset + RECORD_OVERHEAD - 4 + length;
+            if ((int) checksum(buffer, offset + 4, crcOffset) != buffer.getInt(crcOffset)) {
+                break;
+            }
+
+            byte type = buffer.get(offset + 4);
+            UUID uuid = new UUID(buffer.getLong(offset + 5), buffer.getLong(offset + 13));
+            if (type == TYPE_BACKUP) {
+                byte[] payload = new byte[length];
+                ByteBuffer source = buffer.duplicate();
+                source.position(offset + 21);
+                source.get(payload);
+                pending.put(uuid, payload);
+            } else if (type == TYPE_RESTORED) {
+                pending.remove(uuid);
+            }
+            offset += RECORD_OVERHEAD + length;
+        }
+        return offset;
+    }
+
+    /**
+     * 启动批量刷盘和压缩任务
+     *
+     * @param syncInterval 刷盘间隔（刻）
+     */
+    public void start(long syncInterval) {
+        long interval = Math.max(1L, syncInterval);
+        syncTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::sync, interval, interval);
+        compactTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::compact, 20 * 60, 20 * 60);
+    }
+
+    /**
+     * 在主线程为玩家的死亡备份预留位置，之后的备份或恢复会使之前的预留失效
+     *
+     * @return 写入时使用的编号
+     */
+    public synchronized long reserve(UUID uuid) {
+        long ticket = ++nextTicket;
+        reserved.put(uuid, ticket);
+        return ticket;
+    }
+
+    /**
+     * 记录玩家的死亡备份，覆盖之前未恢复的备份
+     * 只复制到映射内存，不等待写入磁盘
+     *
+     * @param ticket reserve返回的编号
+     * @return 预留已失效（已恢复或有更新的备份）时返回false，不写入
+     */
+    public synchronized boolean append(UUID uuid, long ticket, byte[] payload) throws IOException {
+        Long current = reserved.get(uuid);
+        if (current == null || current != ticket) {
+            return false;
+        }
+        reserved.remove(uuid);
+        writeRecord(TYPE_BACKUP, uuid, payload);
+        pending.put(uuid, payload);
+        return true;
+    }
+
+    /**
+     * 标记玩家的备份已恢复，之后不会再被重放
+     */
+    public synchronized void markRestored(UUID uuid) {
+        reserved.remove(uuid);
+        if (pending.remove(uuid) == null) {
+            return;
+        }
+        try {
+            writeRecord(TYPE_RESTORED, uuid, EMPTY);
+        } catch (IOException e) {
+            plugin.getLogger().warning("写入备份日志时出错: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return 玩家未恢复的备份，没有时返回null
+     */
+    public synchronized byte[] getPending(UUID uuid) {
+        return pending.get(uuid);
+    }
+
+    private void writeRecord(byte type, UUID uuid, byte[] payload) throws IOException {
+        if (buffer == null) {
+            throw new IOException("备份日志未打开");
+        }
+        int size = RECORD_OVERHEAD + payload.length;
+        // 保留4字节作为结束标记
+        ensureCapacity(position + size + 4);
+        putRecord(buffer, position, type, uuid, payload);
+        position += size;
+        appendCount++;
+        dirty = true;
+    }
+
+    // 先写内容和校验值，最后写长度，写入中途崩溃时该记录被视为日志结束
+    private static int putRecord(ByteBuffer target, int offset, byte type, UUID uuid, byte[] payload) {
+        target.put(offset + 4, type);
+        target.putLong(offset + 5, uuid.getMostSignificantBits());
+        target.putLong(offset + 13, uuid.getLeastSignificantBits());
+        ByteBuffer body = target.duplicate();
+        body.position(offset + 21);
+        body.put(payload);
+        int crcOffset = offset + RECORD_OVERHEAD - 4 + payload.length;
+        target.putInt(crcOffset, (int) checksum(target, offset + 4, crcOffset));
+        target.putInt(offset, payload.length);
+        return RECORD_OVERHEAD + payload.length;
+    }
+
+    private static long checksum(ByteBuffer source, int from, int to) {
+        ByteBuffer range = source.duplicate();
+        range.limit(to);
+        range.position(from);
+        CRC32 crc = new CRC32();
+        crc.update(range);
+        return crc.getValue();
+    }
+
+    private void ensureCapacity(int required) throws IOException {
+        int capacity = buffer.capacity();
+        if (required <= capacity) {
+            return;
+        }
+        while (capacity < required) {
+            capacity *= 2;
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private void zero(int from, int to) {
+        byte[] zeros = new byte[8192];
+        ByteBuffer target = buffer.duplicate();
+        target.position(from);
+        while (target.position() < to) {
+            target.put(zeros, 0, Math.min(zeros.length, to - target.position()));
+        }
+    }
+
+    // 批量刷盘，在异步线程执行，刷盘期间不阻塞主线程写入
+    private void sync() {
+        MappedByteBuffer target;
+        synchronized (this) {
+            if (!dirty || buffer == null) {
+                return;
+            }
+            dirty = false;
+            target = buffer;
+        }
+        target.force();
+        syncs++;
+    }
+
+    /**
+     * 只保留未恢复的记录写入新一代日志，新文件写完并刷盘后再切换
+     * 在异步线程执行，写文件期间不持有锁，期间有新记录时放弃本次压缩
+     * 切换失败时继续使用旧文件，旧文件在切换成功前不会被关闭
+     */
+    void compact() {
+        Map<UUID, byte[]> live;
+        long expectedAppends;
+        synchronized (this) {
+            if (buffer == null || position < compactThreshold) {
+                return;
+            }
+            live = new HashMap<>(pending);
+            expectedAppends = appendCount;
+        }
+
+        int size = HEADER_BYTES + 4;
+        for (byte[] payload : live.values()) {
+            size += RECORD_OVERHEAD + payload.length;
+        }
+        ByteBuffer data = ByteBuffer.allocate(size);
+        data.putInt(0, MAGIC);
+        data.putInt(4, VERSION);
+        int offset = HEADER_BYTES;
+        for (Map.Entry<UUID, byte[]> entry : live.entrySet()) {
+            offset += putRecord(data, offset, TYPE_BACKUP, entry.getKey(), entry.getValue());
+        }
+
+        long nextGeneration;
+        synchronized (this) {
+            nextGeneration = generation + 1;
+        }
+        File target = generationFile(nextGeneration);
+        File temp = new File(target.getPath() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (data.hasRemaining()) {
+                out.write(data);
+            }
+            out.force(true);
+        } catch (IOException e) {
+            plugin.getLogger().warning("压缩备份日志时出错: " + e.getMessage());
+            return;
+        }
+
+        synchronized (this) {
+            if (appendCount != expectedAppends || buffer == null || generation + 1 != nextGeneration) {
+                temp.delete();
+                return;
+            }
+
+            FileChannel nextChannel;
+            MappedByteBuffer nextBuffer;
+            try {
+                // 临时文件没有被映射，改名在各平台上都可以完成
+                Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                plugin.getLogger().warning("切换备份日志时出错: " + e.getMessage());
+                temp.delete();
+                return;
+            }
+            try {
+                nextChannel = openChannel(target);
+                try {
+                    nextBuffer = map(nextChannel);
+                } catch (IOException e) {
+                    nextChannel.close();
+                    throw e;
+                }
+            } catch (IOException e) {
+                // 删除新文件，否则重启后会读取它而忽略之后写入旧文件的记录
+                plugin.getLogger().warning("打开新的备份日志时出错: " + e.getMessage());
+                if (!target.delete()) {
+                    plugin.getLogger().severe("无法删除未启用的备份日志: " + target.getName());
+                }
+                return;
+            }
+
+            buffer.force();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                plugin.getLogger().warning("关闭旧的备份日志时出错: " + e.getMessage());
+            }
+            channel = nextChannel;
+            buffer = nextBuffer;
+            generation = nextGeneration;
+            position = offset;
+            compactions++;
+        }
+        deleteStaleGenerations();
+    }
+
+    public void close() {
+        if (syncTask != null) {
+            syncTask.cancel();
+            syncTask = null;
+        }
+        if (compactTask != null) {
+            compactTask.cancel();
+            compactTask = null;
+        }
+        synchronized (this) {
+            if (buffer == null) {
+                return;
+            }
+            buffer.force();
+            buffer = null;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                plugin.getLogger().warning("关闭备份日志时出错: " + e.getMessage());
+            }
+        }
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * @return 日志已使用的字节数
+     */
+    public synchronized int getSize() {
+        return position;
+    }
+
+    public long getSyncCount() {
+        return syncs;
+    }
+
+    public long getCompactionCount() {
+        return compactions;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+  备份处理线程
+  主线程只复制备份的引用，序列化等耗时工作在有界队列的工作线程中完成
+  队列已满时由提交任务的线程自己执行，避免无限堆积
+ */
+package org.littlesheep.deathforkeep.backup;
+
+import org.bukkit.plugin.Plugin;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+public class BackupPipeline {
+
+    private final Plugin plugin;
+    private final ThreadPoolExecutor executor;
+
+    // 统计
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong inlineCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    /**
+     * @param threads 工作线程数
+     * @param queueSize 最多排队的任务数
+     */
+    public BackupPipeline(Plugin plugin, int threads, int queueSize) {
+        this.plugin = plugin;
+        int count = Math.max(1, threads);
+        AtomicInteger index = new AtomicInteger();
+        RejectedExecutionHandler backpressure = (runnable, pool) -> {
+            if (pool.isShutdown()) {
+                droppedCount.incrementAndGet();
+                return;
+            }
+            // 队列已满，在提交任务的线程执行，减慢提交速度
+            inlineCount.incrementAndGet();
+            runnable.run();
+        };
+        this.executor = new ThreadPoolExecutor(count, count, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "DeathForKeep-Backup-" + index.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                backpressure);
+    }
+
+    /**
+     * 提交一个备份任务，可在任意线程调用
+     */
+    public void submit(Runnable task) {
+        executor.execute(() -> {
+            long start = System.nanoTime();
+            try {
+                task.run();
+                completedCount.incrementAndGet();
+            } catch (Exception e) {
+                failedCount.incrementAndGet();
+                plugin.getLogger().log(Level.WARNING, "处理备份时出错", e);
+            } finally {
+                totalNanos.addAndGet(System.nanoTime() - start);
+            }
+        });
+    }
+
+    /**
+     * 记录一次被放弃的任务，例如已有更新的备份
+     */
+    public void recordDropped() {
+        droppedCount.incrementAndGet();
+    }
+
+    /**
+     * 停止工作线程，并等待已排队的任务完成
+     *
+     * @param timeoutMillis 最长等待时间（毫秒）
+     */
+    public void shutdown(long timeoutMillis) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                plugin.getLogger().severe("备份线程未能在 " + timeoutMillis + "ms 内完成，剩余 " + executor.getQueue().size() + " 个任务");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    /**
+     * @return 队列已满时在提交线程执行的任务数
+     */
+    public long getInlineCount() {
+        return inlineCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * @return 每个任务的平均耗时（毫秒）
+     */
+    public double getAverageMillis() {
+        long count = completedCount.get() + failedCount.get();
+        return count == 0 ? 0 : totalNanos.get() / 1_000_000.0 / count;
+    }
+}
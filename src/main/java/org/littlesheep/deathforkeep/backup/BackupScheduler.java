@@ -0,0 +1,124 @@
+/*
+  事件驱动的备份调度器
+  物品或经验发生变化的玩家被标记为待备份，每tick在预算内分批备份，没有变化的玩家不产生开销
+ */
+package org.littlesheep.deathforkeep.backup;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+public class BackupScheduler {
+
+    private final Consumer<Player> backupAction;
+
+    // 待备份的玩家 -> 被标记时的tick，按标记顺序排列，只在主线程访问
+    private final Map<UUID, Long> dirtySince = new LinkedHashMap<>();
+    private BukkitTask task;
+    private long tick;
+
+    private int maxPlayersPerTick;
+    private long maxNanosPerTick;
+    private long maxStaleTicks;
+
+    // 统计
+    private long backups;
+    private long overdueBackups;
+
+    public BackupScheduler(Consumer<Player> backupAction) {
+        this.backupAction = backupAction;
+    }
+
+    /**
+     * 启动调度任务
+     *
+     * @param maxPlayers 每tick最多备份的玩家数
+     * @param maxMicros 每tick最多使用的时间（微秒）
+     * @param maxStaleTicks 玩家被标记后最迟多少tick内必须完成备份，超过时不受预算限制
+     */
+    public void start(Plugin plugin, int maxPlayers, long maxMicros, long maxStaleTicks) {
+        stop();
+        this.maxPlayersPerTick = Math.max(1, maxPlayers);
+        this.maxNanosPerTick = Math.max(1L, maxMicros) * 1000L;
+        this.maxStaleTicks = Math.max(1L, maxStaleTicks);
+        this.task = Bukkit.getScheduler().runTaskTimer(plugin, this::run, 1L, 1L);
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        dirtySince.clear();
+    }
+
+    public boolean isRunning() {
+        return task != null;
+    }
+
+    /**
+     * 标记玩家需要备份，已标记的玩家保持原来的顺序
+     */
+    public void markDirty(UUID uuid) {
+        if (task != null && !dirtySince.containsKey(uuid)) {
+            dirtySince.put(uuid, tick);
+        }
+    }
+
+    public void remove(UUID uuid) {
+        dirtySince.remove(uuid);
+    }
+
+    private void run() {
+        tick++;
+        if (dirtySince.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        int processed = 0;
+        Iterator<Map.Entry<UUID, Long>> iterator = dirtySince.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<UUID, Long> entry = iterator.next();
+            boolean overBudget = processed >= maxPlayersPerTick || System.nanoTime() - start >= maxNanosPerTick;
+            boolean overdue = tick - entry.getValue() >= maxStaleTicks;
+            if (overBudget && !overdue) {
+                // 后面的玩家标记得更晚，也不会超时
+                break;
+            }
+
+            iterator.remove();
+            Player player = Bukkit.getPlayer(entry.getKey());
+            if (player != null && player.isOnline()) {
+                backupAction.accept(player);
+                processed++;
+                backups++;
+                if (overBudget) {
+                    overdueBackups++;
+                }
+            }
+        }
+    }
+
+    public int getPendingCount() {
+        return dirtySince.size();
+    }
+
+    public long getBackupCount() {
+        return backups;
+    }
+
+    /**
+     * @return 因超过最大延迟而在预算之外执行的备份次数
+     */
+    public long getOverdueBackupCount() {
+        return overdueBackups;
+    }
+}
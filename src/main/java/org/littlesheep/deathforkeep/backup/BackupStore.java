@@ -0,0 +1,183 @@
+/*
+  备份存储
+  保存每个玩家的备份记录，按内存预算淘汰最旧的备份
+  所有备份的物品由同一个物品池共享，过期时间由时间轮管理
+  只在主线程访问
+ */
+package org.littlesheep.deathforkeep.backup;
+
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public class BackupStore {
+
+    private final Map<UUID, DeathBackupData> records = new HashMap<>();
+    private final ItemPool itemPool = new ItemPool();
+    // 所有备份记录估算占用的字节数（不包括物品池），随每次备份增量更新
+    private long estimatedBytes;
+    private long maxBytes;
+    private long evicted;
+    // 备份在最后一次更新后保留的时间（毫秒），小于等于0表示不过期
+    private long timeToLive;
+    private final ExpiryWheel<UUID> expiry = new ExpiryWheel<>(1000L, System.currentTimeMillis());
+
+    /**
+     * @param maxBytes 内存预算（字节），小于等于0表示不限制
+     */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param timeToLive 备份在最后一次更新后保留的时间（毫秒），小于等于0表示不过期
+     */
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    public DeathBackupData get(UUID uuid) {
+        return records.get(uuid);
+    }
+
+    /**
+     * 更新玩家的备份，没有备份时创建
+     * 超出内存预算时淘汰其他玩家中最旧的备份
+     *
+     * @return 复制的物品格子数量
+     */
+    public int capture(Player player) {
+        UUID uuid = player.getUniqueId();
+        DeathBackupData record = records.get(uuid);
+        if (record == null) {
+            record = new DeathBackupData(player);
+            records.put(uuid, record);
+            estimatedBytes += record.getEstimatedBytes();
+        }
+
+        long before = record.getEstimatedBytes();
+        int changed = record.capture(player, itemPool);
+        estimatedBytes += record.getEstimatedBytes() - before;
+        resetExpiry(uuid);
+
+        if (maxBytes > 0 && getEstimatedBytes() > maxBytes) {
+            enforceBudget(uuid);
+        }
+        return changed;
+    }
+
+    // 按备份时间从旧到新淘汰，等待恢复的备份和当前玩家的备份不会被淘汰
+    private void enforceBudget(UUID keep) {
+        List<DeathBackupData> candidates = new ArrayList<>();
+        for (DeathBackupData record : records.values()) {
+            if (!record.isPendingRestore() && !record.getPlayerUUID().equals(keep)) {
+                candidates.add(record);
+            }
+        }
+        candidates.sort(Comparator.comparingLong(DeathBackupData::getTimestamp));
+
+        for (DeathBackupData record : candidates) {
+            if (getEstimatedBytes() <= maxBytes) {
+                break;
+            }
+            remove(record.getPlayerUUID());
+            evicted++;
+        }
+    }
+
+    /**
+     * 放入从其他来源读取的备份，替换玩家现有的备份
+     */
+    public void put(DeathBackupData record) {
+        remove(record.getPlayerUUID());
+        record.intern(itemPool);
+        records.put(record.getPlayerUUID(), record);
+        estimatedBytes += record.getEstimatedBytes();
+        resetExpiry(record.getPlayerUUID());
+    }
+
+    /**
+     * 按最后一次备份的时间重新计算过期时间
+     */
+    public void resetExpiry(UUID uuid) {
+        DeathBackupData record = records.get(uuid);
+        if (record == null) {
+            return;
+        }
+        if (timeToLive > 0) {
+            expiry.schedule(uuid, record.getTimestamp() + timeToLive);
+        } else {
+            expiry.cancel(uuid);
+        }
+    }
+
+    /**
+     * 安排备份在指定时间后删除，早于原来的过期时间时生效
+     *
+     * @param delay 延迟（毫秒）
+     */
+    public void expireAfter(UUID uuid, long delay) {
+        if (records.containsKey(uuid)) {
+            expiry.schedule(uuid, System.currentTimeMillis() + delay);
+        }
+    }
+
+    public void remove(UUID uuid) {
+        DeathBackupData record = records.remove(uuid);
+        if (record != null) {
+            estimatedBytes -= record.getEstimatedBytes();
+            record.release(itemPool);
+            expiry.cancel(uuid);
+        }
+    }
+
+    /**
+     * 删除已过期的备份，只处理到期的记录，与备份总数无关
+     *
+     * @param now 当前时间（毫秒）
+     * @return 删除的数量
+     */
+    public int expire(long now) {
+        int removed = 0;
+        for (UUID uuid : expiry.advance(now)) {
+            DeathBackupData record = records.remove(uuid);
+            if (record != null) {
+                estimatedBytes -= record.getEstimatedBytes();
+                record.release(itemPool);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public int size() {
+        return records.size();
+    }
+
+    /**
+     * @return 所有备份和物品池大约占用的堆内存（字节）
+     */
+    public long getEstimatedBytes() {
+        return estimatedBytes + itemPool.getEstimatedBytes();
+    }
+
+    public ItemPool getItemPool() {
+        return itemPool;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return 因超出内存预算被淘汰的备份数量
+     */
+    public long getEvictedCount() {
+        return evicted;
+    }
+}
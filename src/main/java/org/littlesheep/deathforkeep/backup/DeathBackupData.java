@@ -0,0 +1,304 @@
+/*
+  死亡备份数据
+  每个玩家一份的备份记录，包含物品快照、玩家状态、备份时间和恢复状态
+ */
+package org.littlesheep.deathforkeep.backup;
+
+import org.bukkit.NamespacedKey;
+import org.bukkit.attribute.Attribute;
+import org.bukkit.entity.Player;
+import org.bukkit.potion.PotionEffect;
+import org.bukkit.potion.PotionEffectType;
+import org.bukkit.util.io.BukkitObjectInputStream;
+import org.bukkit.util.io.BukkitObjectOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public class DeathBackupData {
+
+    // 内存估算：记录本身和每个药水效果大约占用的字节数
+    private static final long RECORD_BYTES = 160;
+    private static final long POTION_EFFECT_BYTES = 64;
+    // 序列化格式版本，格式变化时递增
+    private static final byte FORMAT_VERSION = 3;
+    // 版本2的物品和药水效果全部使用Bukkit的序列化，仍可读取
+    private static final byte LEGACY_FORMAT_VERSION = 2;
+
+    private final UUID playerUUID;
+    private final InventorySnapshot items;
+    private int experience;
+    private int level;
+    private float exp;
+    private Collection<PotionEffect> potionEffects = Collections.emptyList();
+    private int foodLevel;
+    private float saturation;
+    private int fireTicks;
+    private int airLevel;
+    private double health;
+    private long timestamp;
+    private boolean pendingRestore;
+
+    public DeathBackupData(Player player) {
+        this.playerUUID = player.getUniqueId();
+        this.items = new InventorySnapshot(player);
+    }
+
+    private DeathBackupData(UUID playerUUID, InventorySnapshot items) {
+        this.playerUUID = playerUUID;
+        this.items = items;
+    }
+
+    /**
+     * 更新备份，物品只替换发生变化的格子
+     *
+     * @param pool 物品池，备份中的物品从物品池获取
+     * @return 发生变化的物品格子数量
+     */
+    public int capture(Player player, ItemPool pool) {
+        int changed = items.update(player, pool);
+        this.experience = player.getTotalExperience();
+        this.level = player.getLevel();
+        this.exp = player.getExp();
+        this.potionEffects = new ArrayList<>(player.getActivePotionEffects());
+        this.foodLevel = player.getFoodLevel();
+        this.saturation = player.getSaturation();
+        this.fireTicks = player.getFireTicks();
+        this.airLevel = player.getRemainingAir();
+        this.health = player.getHealth();
+        this.timestamp = System.currentTimeMillis();
+        return changed;
+    }
+
+    /**
+     * 恢复物品栏和末影箱中与备份不一致的格子
+     *
+     * @param diff 记录不一致的格子
+     * @return 恢复的格子数量，为0表示物品与备份一致
+     */
+    public int restoreItems(Player player, RestoreDiff diff) {
+        return items.restore(player, diff);
+    }
+
+    /**
+     * 恢复经验、药水效果、饥饿值等状态，只修改与备份不一致的部分
+     *
+     * @param diff 记录不一致的状态
+     */
+    public void restoreState(Player player, RestoreDiff diff) {
+        // 恢复经验
+        boolean expChanged = level > 0
+                ? player.getLevel() != level || player.getExp() != exp
+                : player.getTotalExperience() != experience;
+        if (expChanged) {
+            diff.addState("level", level, player.getLevel());
+            player.setTotalExperience(0);
+            player.setLevel(0);
+            player.setExp(0);
+            if (level > 0) {
+                player.setLevel(level);
+                player.setExp(exp);
+            } else {
+                player.giveExp(experience);
+            }
+        }
+
+        // 恢复药水效果，持续时间会不断减少，只比较类型和等级
+        Map<PotionEffectType, PotionEffect> active = new HashMap<>();
+        for (PotionEffect effect : player.getActivePotionEffects()) {
+            active.put(effect.getType(), effect);
+        }
+        for (PotionEffect effect : potionEffects) {
+            PotionEffect current = active.remove(effect.getType());
+            if (current != null && current.getAmplifier() == effect.getAmplifier()) {
+                continue;
+            }
+            diff.addState("effect:" + effect.getType().getName(), effect.getAmplifier(),
+                    current == null ? "none" : String.valueOf(current.getAmplifier()));
+            if (current != null) {
+                player.removePotionEffect(current.getType());
+            }
+            player.addPotionEffect(effect);
+        }
+        for (PotionEffect extra : active.values()) {
+            diff.addState("effect:" + extra.getType().getName(), "none", extra.getAmplifier());
+            player.removePotionEffect(extra.getType());
+        }
+
+        // 恢复饥饿和饱和度
+        if (player.getFoodLevel() != foodLevel) {
+            diff.addState("food", foodLevel, player.getFoodLevel());
+            player.setFoodLevel(foodLevel);
+        }
+        if (player.getSaturation() != saturation) {
+            diff.addState("saturation", saturation, player.getSaturation());
+            player.setSaturation(saturation);
+        }
+
+        // 恢复火焰时间
+        if (player.getFireTicks() != fireTicks) {
+            diff.addState("fire", fireTicks, player.getFireTicks());
+            player.setFireTicks(fireTicks);
+        }
+
+        // 恢复空气值
+        if (player.getRemainingAir() != airLevel) {
+            diff.addState("air", airLevel, player.getRemainingAir());
+            player.setRemainingAir(airLevel);
+        }
+
+        // 恢复生命值（使用更新的API替代已弃用的getMaxHealth()）
+        double maxHealth = player.getAttribute(Attribute.GENERIC_MAX_HEALTH).getValue();
+        if (health > 0 && health <= maxHealth && player.getHealth() != health) {
+            diff.addState("health", health, player.getHealth());
+            player.setHealth(health);
+        }
+    }
+
+    /**
+     * 将备份中的物品加入物品池，用于从日志读取的备份
+     */
+    public void intern(ItemPool pool) {
+        items.intern(pool);
+    }
+
+    /**
+     * 释放备份对物品池的引用，备份被删除时调用
+     */
+    public void release(ItemPool pool) {
+        items.release(pool);
+    }
+
+    /**
+     * 复制当前备份，之后的备份不会影响复制的结果，可以交给其他线程处理
+     * 复制的备份与原备份共享物品，不持有物品池的引用
+     */
+    public DeathBackupData copy() {
+        DeathBackupData copy = new DeathBackupData(playerUUID, items.copy());
+        copy.experience = experience;
+        copy.level = level;
+        copy.exp = exp;
+        copy.potionEffects = potionEffects;
+        copy.foodLevel = foodLevel;
+        copy.saturation = saturation;
+        copy.fireTicks = fireTicks;
+        copy.airLevel = airLevel;
+        copy.health = health;
+        copy.timestamp = timestamp;
+        return copy;
+    }
+
+    /**
+     * 序列化为二进制，药水效果只写入类型和参数，带元数据的物品使用Bukkit的序列化
+     */
+    public byte[] serialize() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        try (BukkitObjectOutputStream out = new BukkitObjectOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeLong(timestamp);
+            out.writeInt(experience);
+            out.writeInt(level);
+            out.writeFloat(exp);
+            out.writeInt(foodLevel);
+            out.writeFloat(saturation);
+            out.writeInt(fireTicks);
+            out.writeInt(airLevel);
+            out.writeDouble(health);
+            out.writeShort(potionEffects.size());
+            for (PotionEffect effect : potionEffects) {
+                out.writeUTF(effect.getType().getKey().toString());
+                out.writeInt(effect.getDuration());
+                out.writeInt(effect.getAmplifier());
+                out.writeByte((effect.isAmbient() ? 1 : 0) | (effect.hasParticles() ? 2 : 0)
+                        | (effect.hasIcon() ? 4 : 0));
+            }
+            items.writeTo(out);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static DeathBackupData deserialize(UUID playerUUID, byte[] data) throws IOException, ClassNotFoundException {
+        try (BukkitObjectInputStream in = new BukkitObjectInputStream(new ByteArrayInputStream(data))) {
+            byte version = in.readByte();
+            if (version != FORMAT_VERSION && version != LEGACY_FORMAT_VERSION) {
+                throw new IOException("不支持的备份格式版本: " + version);
+            }
+            long timestamp = in.readLong();
+            int experience = in.readInt();
+            int level = in.readInt();
+            float exp = in.readFloat();
+            int foodLevel = in.readInt();
+            float saturation = in.readFloat();
+            int fireTicks = in.readInt();
+            int airLevel = in.readInt();
+            double health = in.readDouble();
+            int effectCount = in.readShort();
+            List<PotionEffect> potionEffects = new ArrayList<>(effectCount);
+            for (int i = 0; i < effectCount; i++) {
+                if (version == LEGACY_FORMAT_VERSION) {
+                    potionEffects.add((PotionEffect) in.readObject());
+                    continue;
+                }
+                String key = in.readUTF();
+                int duration = in.readInt();
+                int amplifier = in.readInt();
+                byte flags = in.readByte();
+                NamespacedKey typeKey = NamespacedKey.fromString(key);
+                PotionEffectType type = typeKey == null ? null : PotionEffectType.getByKey(typeKey);
+                // 服务器版本变化后不存在的效果直接丢弃
+                if (type != null) {
+                    potionEffects.add(new PotionEffect(type, duration, amplifier,
+                            (flags & 1) != 0, (flags & 2) != 0, (flags & 4) != 0));
+                }
+            }
+
+            DeathBackupData backup = new DeathBackupData(playerUUID,
+                    InventorySnapshot.readFrom(in, version == FORMAT_VERSION));
+            backup.timestamp = timestamp;
+            backup.experience = experience;
+            backup.level = level;
+            backup.exp = exp;
+            backup.foodLevel = foodLevel;
+            backup.saturation = saturation;
+            backup.fireTicks = fireTicks;
+            backup.airLevel = airLevel;
+            backup.health = health;
+            backup.potionEffects = potionEffects;
+            return backup;
+        }
+    }
+
+    public UUID getPlayerUUID() {
+        return playerUUID;
+    }
+
+    /**
+     * @return 最后一次备份的时间（毫秒）
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public boolean isPendingRestore() {
+        return pendingRestore;
+    }
+
+    public void setPendingRestore(boolean pendingRestore) {
+        this.pendingRestore = pendingRestore;
+    }
+
+    /**
+     * @return 备份大约占用的堆内存（字节），不包括物品池中共享的物品
+     */
+    public long getEstimatedBytes() {
+        return RECORD_BYTES + items.getEstimatedBytes() + potionEffects.size() * POTION_EFFECT_BYTES;
+    }
+}
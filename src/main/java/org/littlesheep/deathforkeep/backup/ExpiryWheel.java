@@ -0,0 +1,143 @@
+/*
+  分层时间轮
+  按到期时间管理大量键，安排、取消和到期的开销与键的总数无关
+  推迟到期时间时只更新记录，原位置到期时再重新放置；只在主线程访问
+ */
+package org.littlesheep.deathforkeep.backup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class ExpiryWheel<K> {
+
+    // 4层，每层64格，1秒精度时最多覆盖约194天，更远的到期时间会在最高层循环等待
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final long MAX_DELTA = (1L << (BITS * LEVELS)) - 1;
+
+    private final long resolution;
+    private final List<Set<K>> buckets = new ArrayList<>(LEVELS * SLOTS);
+    // 键 -> 到期的格数（tick），以及键当前所在的格子
+    private final Map<K, Long> deadlines = new HashMap<>();
+    private final Map<K, Set<K>> placement = new HashMap<>();
+    private long currentTick;
+
+    /**
+     * @param resolution 每格的时间（毫秒），到期时间按此精度向上取整
+     * @param now 当前时间（毫秒）
+     */
+    public ExpiryWheel(long resolution, long now) {
+        this.resolution = Math.max(1L, resolution);
+        this.currentTick = now / this.resolution;
+        for (int i = 0; i < LEVELS * SLOTS; i++) {
+            buckets.add(new HashSet<>());
+        }
+    }
+
+    /**
+     * 安排键在指定时间到期，已安排的键会使用新的到期时间
+     *
+     * @param deadline 到期时间（毫秒）
+     */
+    public void schedule(K key, long deadline) {
+        long tick = (deadline + resolution - 1) / resolution;
+        Long previous = deadlines.put(key, tick);
+        if (previous == null) {
+            place(key, tick);
+        } else if (tick < previous) {
+            // 提前到期时需要移动到更早的格子
+            Set<K> bucket = placement.remove(key);
+            if (bucket != null) {
+                bucket.remove(key);
+            }
+            place(key, tick);
+        }
+    }
+
+    public void cancel(K key) {
+        if (deadlines.remove(key) != null) {
+            Set<K> bucket = placement.remove(key);
+            if (bucket != null) {
+                bucket.remove(key);
+            }
+        }
+    }
+
+    private void place(K key, long tick) {
+        long delta = tick - currentTick;
+        Set<K> bucket;
+        if (delta <= 0) {
+            // 已经到期，下一格处理
+            bucket = bucket(0, currentTick + 1);
+        } else {
+            long target = currentTick + Math.min(delta, MAX_DELTA);
+            int level = 0;
+            while (level < LEVELS - 1 && delta >= 1L << (BITS * (level + 1))) {
+                level++;
+            }
+            bucket = bucket(level, target);
+        }
+        bucket.add(key);
+        placement.put(key, bucket);
+    }
+
+    private Set<K> bucket(int level, long tick) {
+        return buckets.get(level * SLOTS + (int) ((tick >> (BITS * level)) & MASK));
+    }
+
+    /**
+     * 推进到当前时间，返回这段时间内到期的键，到期的键会被移除
+     *
+     * @param now 当前时间（毫秒）
+     */
+    public List<K> advance(long now) {
+        List<K> expired = new ArrayList<>();
+        long target = now / resolution;
+        while (currentTick < target) {
+            currentTick++;
+
+            // 低层转完一圈时，将高层对应格子中的键重新放置到低层，先处理更高的层
+            int wrapped = 0;
+            while (wrapped < LEVELS - 1 && (currentTick & ((1L << (BITS * (wrapped + 1))) - 1)) == 0) {
+                wrapped++;
+            }
+            for (int level = wrapped; level >= 1; level--) {
+                for (K key : drain(bucket(level, currentTick))) {
+                    placement.remove(key);
+                    place(key, deadlines.get(key));
+                }
+            }
+
+            for (K key : drain(bucket(0, currentTick))) {
+                placement.remove(key);
+                long deadline = deadlines.get(key);
+                if (deadline <= currentTick) {
+                    deadlines.remove(key);
+                    expired.add(key);
+                } else {
+                    place(key, deadline);
+                }
+            }
+        }
+        return expired;
+    }
+
+    private List<K> drain(Set<K> bucket) {
+        if (bucket.isEmpty()) {
+            return new ArrayList<>(0);
+        }
+        List<K> keys = new ArrayList<>(bucket);
+        bucket.clear();
+        return keys;
+    }
+
+    public int size() {
+        return deadlines.size();
+    }
+}
@@ -0,0 +1,244 @@
+/*
+  增量物品快照
+  每个玩家持有一份物品栏和末影箱的格子数组，更新时只替换发生变化的格子
+  物品本身由物品池共享，相同的物品只保存一份
+ */
+package org.littlesheep.deathforkeep.backup;
+
+import org.bukkit.Material;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class InventorySnapshot {
+
+    // 内存估算：数组每个格子的引用大约占用的字节数，物品由物品池统计
+    private static final long SLOT_BYTES = 8;
+    // 物品编码：没有元数据的物品只写入类型和数量，其余物品使用Bukkit的序列化
+    private static final byte ITEM_PLAIN = 0;
+    private static final byte ITEM_SERIALIZED = 1;
+
+    // 物品栏全部格子，包括盔甲和副手
+    private final ItemStack[] contents;
+    private final ItemStack[] enderChest;
+
+    public InventorySnapshot(Player player) {
+        this.contents = new ItemStack[player.getInventory().getContents().length];
+        this.enderChest = new ItemStack[player.getEnderChest().getSize()];
+    }
+
+    private InventorySnapshot(ItemStack[] contents, ItemStack[] enderChest) {
+        this.contents = contents;
+        this.enderChest = enderChest;
+    }
+
+    /**
+     * 复制快照，只复制格子数组，物品本身在快照中不会被修改，可以共享
+     */
+    public InventorySnapshot copy() {
+        return new InventorySnapshot(contents.clone(), enderChest.clone());
+    }
+
+    /**
+     * 与玩家当前的物品比较，只替换发生变化的格子
+     * 物品未变化时不会复制任何物品
+     *
+     * @param player 玩家
+     * @param pool 物品池
+     * @return 发生变化的格子数量
+     */
+    public int update(Player player, ItemPool pool) {
+        return sync(player.getInventory(), contents, pool) + sync(player.getEnderChest(), enderChest, pool);
+    }
+
+    private static int sync(Inventory inventory, ItemStack[] stored, ItemPool pool) {
+        int changed = 0;
+        int size = Math.min(stored.length, inventory.getSize());
+        for (int slot = 0; slot < size; slot++) {
+            ItemStack live = inventory.getItem(slot);
+            if (isSame(live, stored[slot])) {
+                continue;
+            }
+            // getItem返回的物品可能与物品栏共享数据，物品池只保存复制的物品
+            pool.release(stored[slot]);
+            stored[slot] = isEmpty(live) ? null : pool.intern(live);
+            changed++;
+        }
+        return changed;
+    }
+
+    /**
+     * 将快照中的物品换成物品池中的共享物品，用于从日志读取的快照
+     */
+    public void intern(ItemPool pool) {
+        intern(contents, pool);
+        intern(enderChest, pool);
+    }
+
+    private static void intern(ItemStack[] items, ItemPool pool) {
+        for (int slot = 0; slot < items.length; slot++) {
+            if (items[slot] != null) {
+                items[slot] = pool.intern(items[slot]);
+            }
+        }
+    }
+
+    /**
+     * 释放快照对物品池的引用，快照不再使用时调用
+     */
+    public void release(ItemPool pool) {
+        for (ItemStack item : contents) {
+            pool.release(item);
+        }
+        for (ItemStack item : enderChest) {
+            pool.release(item);
+        }
+    }
+
+    private static boolean isSame(ItemStack live, ItemStack stored) {
+        if (isEmpty(live)) {
+            return stored == null;
+        }
+        return stored != null && live.equals(stored);
+    }
+
+    /**
+     * @return 快照的格子数组大约占用的堆内存（字节），物品本身由物品池统计
+     */
+    public long getEstimatedBytes() {
+        return (contents.length + enderChest.length) * SLOT_BYTES;
+    }
+
+    /**
+     * 写入快照，先写入不同物品的列表，再按格子写入物品在列表中的位置
+     * 相同的物品只写入一次，空格子只占用格子总数中的位置，不单独写入
+     */
+    void writeTo(ObjectOutputStream out) throws IOException {
+        List<ItemStack> distinct = new ArrayList<>();
+        Map<ItemStack, Integer> indexes = new HashMap<>();
+        collect(contents, distinct, indexes);
+        collect(enderChest, distinct, indexes);
+
+        out.writeShort(distinct.size());
+        for (ItemStack item : distinct) {
+            writeItem(out, item);
+        }
+        writeSlots(out, contents, indexes);
+        writeSlots(out, enderChest, indexes);
+    }
+
+    /**
+     * @param compactItems 物品是否使用writeItem的编码，旧格式的物品全部使用Bukkit的序列化
+     */
+    static InventorySnapshot readFrom(ObjectInputStream in, boolean compactItems)
+            throws IOException, ClassNotFoundException {
+        ItemStack[] distinct = new ItemStack[in.readShort()];
+        for (int i = 0; i < distinct.length; i++) {
+            distinct[i] = compactItems ? readItem(in) : (ItemStack) in.readObject();
+        }
+        ItemStack[] contents = readSlots(in, distinct);
+        ItemStack[] enderChest = readSlots(in, distinct);
+        return new InventorySnapshot(contents, enderChest);
+    }
+
+    // 大部分物品（方块、矿物、食物）没有元数据，Bukkit的序列化会为每个物品写入类名和属性表
+    private static void writeItem(ObjectOutputStream out, ItemStack item) throws IOException {
+        if (item.hasItemMeta()) {
+            out.writeByte(ITEM_SERIALIZED);
+            out.writeObject(item);
+            return;
+        }
+        out.writeByte(ITEM_PLAIN);
+        out.writeUTF(item.getType().name());
+        out.writeShort(item.getAmount());
+    }
+
+    private static ItemStack readItem(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        byte tag = in.readByte();
+        if (tag == ITEM_SERIALIZED) {
+            return (ItemStack) in.readObject();
+        }
+        if (tag != ITEM_PLAIN) {
+            throw new IOException("无法识别的物品编码: " + tag);
+        }
+        String name = in.readUTF();
+        Material material = Material.getMaterial(name);
+        if (material == null) {
+            throw new IOException("未知的物品类型: " + name);
+        }
+        return new ItemStack(material, in.readShort());
+    }
+
+    private static void collect(ItemStack[] items, List<ItemStack> distinct, Map<ItemStack, Integer> indexes) {
+        for (ItemStack item : items) {
+            if (item != null && !indexes.containsKey(item)) {
+                indexes.put(item, distinct.size());
+                distinct.add(item);
+            }
+        }
+    }
+
+    private static void writeSlots(ObjectOutputStream out, ItemStack[] items, Map<ItemStack, Integer> indexes) throws IOException {
+        int count = 0;
+        for (ItemStack item : items) {
+            if (item != null) {
+                count++;
+            }
+        }
+        out.writeShort(items.length);
+        out.writeShort(count);
+        for (int slot = 0; slot < items.length; slot++) {
+            if (items[slot] != null) {
+                out.writeShort(slot);
+                out.writeShort(indexes.get(items[slot]));
+            }
+        }
+    }
+
+    // 读取的格子共享同一个物品对象，快照中的物品不会被修改
+    private static ItemStack[] readSlots(ObjectInputStream in, ItemStack[] distinct) throws IOException {
+        ItemStack[] items = new ItemStack[in.readShort()];
+        int count = in.readShort();
+        for (int i = 0; i < count; i++) {
+            items[in.readShort()] = distinct[in.readShort()];
+        }
+        return items;
+    }
+
+    private static boolean isEmpty(ItemStack item) {
+        return item == null || item.getType() == Material.AIR;
+    }
+
+    /**
+     * 只恢复与快照不一致的格子，setItem会复制物品，快照本身不会被修改
+     *
+     * @param diff 记录不一致的格子
+     * @return 恢复的格子数量
+     */
+    public int restore(Player player, RestoreDiff diff) {
+        return restoreDiverging(player.getInventory(), contents, "inventory", diff)
+                + restoreDiverging(player.getEnderChest(), enderChest, "enderchest", diff);
+    }
+
+    private static int restoreDiverging(Inventory inventory, ItemStack[] stored, String area, RestoreDiff diff) {
+        int restored = 0;
+        int size = Math.min(stored.length, inventory.getSize());
+        for (int slot = 0; slot < size; slot++) {
+            ItemStack live = inventory.getItem(slot);
+            if (!isSame(live, stored[slot])) {
+                diff.addSlot(area, slot, stored[slot], live);
+                inventory.setItem(slot, stored[slot]);
+                restored++;
+            }
+        }
+        return restored;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+  物品池
+  按物品内容共享备份中的物品，相同的物品在所有玩家的备份中只保存一份
+  物品进入物品池后不会再被修改，只在主线程访问
+ */
+package org.littlesheep.deathforkeep.backup;
+
+import org.bukkit.inventory.ItemStack;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class ItemPool {
+
+    // 内存估算：普通物品和带有ItemMeta的物品大约占用的字节数
+    private static final long ITEM_BYTES = 96;
+    private static final long ITEM_META_BYTES = 512;
+
+    private static class Entry {
+        private final ItemStack item;
+        private final long bytes;
+        private int refs;
+
+        private Entry(ItemStack item) {
+            this.item = item;
+            this.bytes = estimate(item);
+        }
+    }
+
+    // 以物品内容（类型、数量、ItemMeta）为键
+    private final Map<ItemStack, Entry> entries = new HashMap<>();
+    private long estimatedBytes;
+    private long savedBytes;
+    private long refs;
+
+    /**
+     * 获取与指定物品内容相同的共享物品，没有时复制一份加入物品池
+     * 每次调用都会增加一次引用，不再使用时需要调用release
+     *
+     * @param item 物品，可以是玩家物品栏中的物品，不会被保存
+     * @return 共享的物品，不能修改
+     */
+    public ItemStack intern(ItemStack item) {
+        Entry entry = entries.get(item);
+        if (entry == null) {
+            entry = new Entry(item.clone());
+            entries.put(entry.item, entry);
+            estimatedBytes += entry.bytes;
+        } else {
+            savedBytes += entry.bytes;
+        }
+        entry.refs++;
+        refs++;
+        return entry.item;
+    }
+
+    /**
+     * 释放一次引用，没有引用的物品会被移出物品池
+     * 不是由物品池返回的物品会被忽略
+     */
+    public void release(ItemStack item) {
+        if (item == null) {
+            return;
+        }
+        Entry entry = entries.get(item);
+        if (entry == null || entry.item != item) {
+            return;
+        }
+        refs--;
+        if (--entry.refs == 0) {
+            entries.remove(item);
+            estimatedBytes -= entry.bytes;
+        } else {
+            savedBytes -= entry.bytes;
+        }
+    }
+
+    static long estimate(ItemStack item) {
+        return item.hasItemMeta() ? ITEM_BYTES + ITEM_META_BYTES : ITEM_BYTES;
+    }
+
+    /**
+     * @return 物品池中不同物品的数量
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return 所有备份中引用物品的格子总数
+     */
+    public long getReferenceCount() {
+        return refs;
+    }
+
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * @return 与每个格子单独保存一份物品相比节省的字节数
+     */
+    public long getSavedBytes() {
+        return savedBytes;
+    }
+}
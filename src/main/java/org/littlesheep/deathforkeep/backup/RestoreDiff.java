@@ -0,0 +1,80 @@
+/*
+  恢复差异记录
+  记录一次恢复检查中与备份不一致的格子和状态，用于排查其他插件修改玩家物品的问题
+  输出为一行 key=value 格式，方便在日志中搜索和统计
+ */
+package org.littlesheep.deathforkeep.backup;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class RestoreDiff {
+
+    private final String playerName;
+    private final int pass;
+    private final long ticksSinceRespawn;
+    private final List<String> slots = new ArrayList<>();
+    private final List<String> states = new ArrayList<>();
+
+    /**
+     * @param pass 第几次检查
+     * @param ticksSinceRespawn 检查时距离重生的刻数
+     */
+    public RestoreDiff(String playerName, int pass, long ticksSinceRespawn) {
+        this.playerName = playerName;
+        this.pass = pass;
+        this.ticksSinceRespawn = ticksSinceRespawn;
+    }
+
+    /**
+     * @param area 物品所在的位置，例如 inventory 或 enderchest
+     * @param expected 备份中的物品
+     * @param actual 玩家当前的物品
+     */
+    public void addSlot(String area, int slot, ItemStack expected, ItemStack actual) {
+        slots.add(area + "[" + slot + "]=" + describe(actual) + "->" + describe(expected));
+    }
+
+    public void addState(String name, Object expected, Object actual) {
+        states.add(name + "=" + actual + "->" + expected);
+    }
+
+    private static String describe(ItemStack item) {
+        if (item == null || item.getType() == Material.AIR) {
+            return "AIR";
+        }
+        String text = item.getType().name() + "x" + item.getAmount();
+        return item.hasItemMeta() ? text + "+meta" : text;
+    }
+
+    public boolean isEmpty() {
+        return slots.isEmpty() && states.isEmpty();
+    }
+
+    public int getSlotCount() {
+        return slots.size();
+    }
+
+    public int getStateCount() {
+        return states.size();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("restore-diff player=").append(playerName)
+                .append(" pass=").append(pass)
+                .append(" tick=").append(ticksSinceRespawn)
+                .append(" slots=").append(slots.size())
+                .append(" states=").append(states.size());
+        for (String slot : slots) {
+            builder.append(' ').append(slot);
+        }
+        for (String state : states) {
+            builder.append(' ').append(state);
+        }
+        return builder.toString();
+    }
+}
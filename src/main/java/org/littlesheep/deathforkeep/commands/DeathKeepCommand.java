@@ -11,10 +11,19 @@ import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.TabCompleter;
 import org.bukkit.entity.Player;
-import org.bukkit.OfflinePlayer;
 import org.littlesheep.deathforkeep.DeathForKeep;
+import org.littlesheep.deathforkeep.backup.BackupCodec;
+import org.littlesheep.deathforkeep.backup.BackupJournal;
+import org.littlesheep.deathforkeep.backup.BackupPipeline;
+import org.littlesheep.deathforkeep.backup.BackupScheduler;
+import org.littlesheep.deathforkeep.backup.BackupStore;
+import org.littlesheep.deathforkeep.backup.ItemPool;
+import org.littlesheep.deathforkeep.data.ConnectionPool;
 import org.littlesheep.deathforkeep.data.PlayerData;
+import org.littlesheep.deathforkeep.data.PlayerDataStore;
+import org.littlesheep.deathforkeep.data.PlayerDataWriter;
 import org.littlesheep.deathforkeep.utils.Messages;
+import org.littlesheep.deathforkeep.utils.ProtectionClock;
 import org.bukkit.ChatColor;
 import org.apache.commons.lang.WordUtils;
 import org.bukkit.configuration.ConfigurationSection;
@@ -69,6 +78,8 @@ public class DeathKeepCommand implements CommandExecutor, TabCompleter {
                 return handleResetAll(sender);
             case "gui":
                 return handleGui(sender);    
+            case "stats":
+                return handleStats(sender);
             default:
                 sender.sendMessage(messages.getMessage("command.unknown"));
                 return true;
@@ -130,10 +141,7 @@ public class DeathKeepCommand implements CommandExecutor, TabCompleter {
                 uuid = target.getUniqueId();
             } else {
                 // 尝试获取离线玩家
-                OfflinePlayer offlinePlayer = Bukkit.getOfflinePlayer(name);
-                if (offlinePlayer.hasPlayedBefore()) {
-                    uuid = offlinePlayer.getUniqueId();
-                }
+                uuid = plugin.getNameCache().findUuid(name);
             }
             
             if (uuid != null) {
@@ -148,18 +156,24 @@ public class DeathKeepCommand implements CommandExecutor, TabCompleter {
             return true;
         }
         
-        // 执行批量操作
+        // 执行批量操作，修改在内存中完成后用一个批量事务保存
+        List<PlayerData> changed = new ArrayList<>();
         if ("add".equals(operation)) {
             for (UUID uuid : affectedPlayers) {
-                addProtectionDuration(uuid, seconds);
+                changed.add(addProtectionDuration(uuid, seconds));
             }
+            plugin.getPlayerDataWriter().saveAll(changed);
             sender.sendMessage(messages.getMessage("command.bulk.add-success")
                     .replace("%count%", String.valueOf(affectedPlayers.size()))
                     .replace("%duration%", formatDuration(seconds)));
         } else if ("remove".equals(operation)) {
             for (UUID uuid : affectedPlayers) {
-                removeProtectionDuration(uuid, seconds);
+                PlayerData data = removeProtectionDuration(uuid, seconds);
+                if (data != null) {
+                    changed.add(data);
+                }
             }
+            plugin.getPlayerDataWriter().saveAll(changed);
             sender.sendMessage(messages.getMessage("command.bulk.remove-success")
                     .replace("%count%", String.valueOf(affectedPlayers.size()))
                     .replace("%duration%", formatDuration(seconds)));
@@ -177,43 +191,47 @@ public class DeathKeepCommand implements CommandExecutor, TabCompleter {
         return true;
     }
 
-    private void addProtectionDuration(UUID uuid, int seconds) {
+    // 只修改内存中的数据，由调用方统一保存
+    private PlayerData addProtectionDuration(UUID uuid, int seconds) {
         PlayerData data = plugin.getPlayerData(uuid);
-        long currentTime = System.currentTimeMillis() / 1000;
+        long currentTime = ProtectionClock.now();
+        long duration = seconds * 1000L;
         long newExpiry;
         
         if (data == null) {
             // 如果玩家数据不存在，创建新的数据
-            data = new PlayerData(uuid, currentTime + seconds, true, null);
-            plugin.getPlayerDataMap().put(uuid, data);
+            data = new PlayerData(uuid, currentTime + duration, null);
+            plugin.getPlayerDataCache().put(data);
         } else if (data.isActive()) {
             // 如果当前有保护，增加时长
-            newExpiry = data.getExpiryTime() + seconds;
-            data.setExpiryTime(newExpiry);
+            newExpiry = data.getExpiryTime() + duration;
+            plugin.getProtectionService().setExpiryTime(data, newExpiry);
         } else {
             // 如果当前无保护，从现在开始计时
-            newExpiry = currentTime + seconds;
-            data.setExpiryTime(newExpiry);
+            newExpiry = currentTime + duration;
+            plugin.getProtectionService().setExpiryTime(data, newExpiry);
         }
         
-        plugin.savePlayerData(uuid);
+        return data;
     }
 
-    private void removeProtectionDuration(UUID uuid, int seconds) {
+    // 只修改内存中的数据，由调用方统一保存；没有修改时返回null
+    private PlayerData removeProtectionDuration(UUID uuid, int seconds) {
         PlayerData data = plugin.getPlayerData(uuid);
-        long currentTime = System.currentTimeMillis() / 1000;
+        long currentTime = ProtectionClock.now();
         
         if (data == null) {
             // 如果玩家数据不存在，跳过
-            return;
+            return null;
         }
         
         if (data.isActive()) {
             // 只有当前有保护时才减少
-            long newExpiry = Math.max(currentTime, data.getExpiryTime() - seconds);
-            data.setExpiryTime(newExpiry);
-            plugin.savePlayerData(uuid);
+            long newExpiry = Math.max(currentTime, data.getExpiryTime() - seconds * 1000L);
+            plugin.getProtectionService().setExpiryTime(data, newExpiry);
+            return data;
         }
+        return null;
     }
 
     private int parseDuration(String duration) {
@@ -378,12 +396,10 @@ public class DeathKeepCommand implements CommandExecutor, TabCompleter {
                 uuid = target.getUniqueId();
                 playerName = target.getName();
             } else {
-                @SuppressWarnings("deprecation")
-                OfflinePlayer offlinePlayer = Bukkit.getOfflinePlayer(name);
+                uuid = plugin.getNameCache().findUuid(name);
                 
-                if (offlinePlayer.hasPlayedBefore()) {
-                    uuid = offlinePlayer.getUniqueId();
-                    playerName = offlinePlayer.getName();
+                if (uuid != null) {
+                    playerName = plugin.getNameCache().getName(uuid, name);
                 } else {
                     sender.sendMessage(messages.getMessage("command.player-not-found", "player", name));
                     return true;
@@ -407,20 +423,18 @@ public class DeathKeepCommand implements CommandExecutor, TabCompleter {
         boolean hasSharedProtection = false;
         String sharerName = "";
         
-        for (Map.Entry<UUID, PlayerData> entry : plugin.getPlayerDataMap().entrySet()) {
-            PlayerData sharerData = entry.getValue();
-            if (sharerData.isActive() && uuid.equals(sharerData.getSharedWith())) {
+        for (PlayerData sharerData : plugin.getPlayerDataCache().findSharingWith(uuid)) {
+            if (sharerData.isActive()) {
                 hasSharedProtection = true;
                 // 获取分享者的名字
-                OfflinePlayer sharerPlayer = Bukkit.getOfflinePlayer(entry.getKey());
-                sharerName = sharerPlayer.getName() != null ? sharerPlayer.getName() : "未知玩家";
+                sharerName = plugin.getNameCache().getName(sharerData.getUuid(), "未知玩家");
                 break;
             }
         }
         
         if (hasDirectProtection) {
             @SuppressWarnings("null")
-            long timeLeft = data.getExpiryTime() - System.currentTimeMillis() / 1000;
+            long timeLeft = data.getRemainingSeconds();
             sender.sendMessage(messages.getMessage("command.check.has-protection", 
                     "player", playerName, 
                     "time", formatTime((int)timeLeft)));
@@ -538,11 +552,11 @@ public class DeathKeepCommand implements CommandExecutor, TabCompleter {
             player.sendMessage(messages.getMessage("command.particles.enabled"));
             // 如果玩家开启了粒子效果并且有保护，显示粒子效果
             if (plugin.hasActiveProtection(playerUUID)) {
-                if (plugin.getConfig().getBoolean("particles.on-toggle", true)) {
+                if (plugin.getSettings().isToggleParticles()) {
                     org.littlesheep.deathforkeep.utils.ParticleUtils.playProtectionGainedEffect(
                         plugin, 
                         player, 
-                        plugin.getConfig().getInt("particles.on-toggle.duration", 2)
+                        plugin.getSettings().getToggleParticleDuration()
                     );
                 }
             }
@@ -584,23 +598,26 @@ public class DeathKeepCommand implements CommandExecutor, TabCompleter {
         }
         
         UUID playerUUID = player.getUniqueId();
-        PlayerData data = plugin.getPlayerDataMap().get(playerUUID);
+        PlayerData data = plugin.getPlayerData(playerUUID);
         
         if (data == null || !data.isActive()) {
             player.sendMessage(messages.getMessage("command.share.no-protection"));
             return true;
         }
         
-        // 检查是否已经有共享
-        if (data.getSharedWith() != null) {
-            String currentSharedName = Bukkit.getOfflinePlayer(data.getSharedWith()).getName();
+        // 检查是否已经与该玩家共享
+        if (data.isSharedWith(target.getUniqueId())) {
             player.sendMessage(messages.getMessage("command.share.already-shared", 
-                    "player", currentSharedName != null ? currentSharedName : "未知玩家"));
+                    "player", target.getName()));
             return true;
         }
         
-        // 设置共享
-        plugin.shareProtection(playerUUID, target.getUniqueId());
+        // 设置共享，达到共享人数上限时失败
+        if (!plugin.shareProtection(playerUUID, target.getUniqueId())) {
+            player.sendMessage(messages.getMessage("command.share.limit-reached", 
+                    "max", String.valueOf(plugin.getProtectionService().getMaxShareCount())));
+            return true;
+        }
         
         player.sendMessage(messages.getMessage("command.share.success", "player", target.getName()));
         target.sendMessage(messages.getMessage("command.share.notify", "player", player.getName()));
@@ -629,11 +646,7 @@ public class DeathKeepCommand implements CommandExecutor, TabCompleter {
             targetUUID = target.getUniqueId();
         } else {
             // 尝试查找离线玩家
-            @SuppressWarnings("deprecation")
-            UUID offlineUUID = Bukkit.getOfflinePlayer(playerName).getUniqueId();
-            if (offlineUUID != null) {
-                targetUUID = offlineUUID;
-            }
+            targetUUID = plugin.getNameCache().findUuid(playerName);
         }
         
         if (targetUUID == null) {
@@ -646,13 +659,11 @@ public class DeathKeepCommand implements CommandExecutor, TabCompleter {
         
         // 检查是否有其他玩家与此玩家共享保护
         boolean foundSharing = false;
-        for (PlayerData otherData : plugin.getPlayerDataMap().values()) {
-            if (targetUUID.equals(otherData.getSharedWith()) && otherData.isActive()) {
-                String sharerName = Bukkit.getOfflinePlayer(otherData.getUuid()).getName();
-                if (sharerName != null) {
-                    sender.sendMessage(messages.getMessage("command.find.shared-by", "player", sharerName));
-                    foundSharing = true;
-                }
+        for (PlayerData otherData : plugin.getPlayerDataCache().findSharingWith(targetUUID)) {
+            if (otherData.isActive()) {
+                String sharerName = plugin.getNameCache().getName(otherData.getUuid(), "未知玩家");
+                sender.sendMessage(messages.getMessage("command.find.shared-by", "player", sharerName));
+                foundSharing = true;
             }
         }
         
@@ -699,6 +710,109 @@ public class DeathKeepCommand implements CommandExecutor, TabCompleter {
         return true;
     }
 
+    private boolean handleStats(CommandSender sender) {
+        Messages messages = plugin.getMessages();
+        
+        if (!sender.hasPermission("deathkeep.admin")) {
+            sender.sendMessage(messages.getMessageWithPrefix("command.no-permission"));
+            return true;
+        }
+        
+        sender.sendMessage(messages.getMessage("command.stats.title"));
+        
+        PlayerDataStore store = plugin.getDatabaseManager();
+        sender.sendMessage(messages.getMessage("command.stats.storage", "type", store.getStorageType()));
+        sender.sendMessage(messages.getMessage("command.stats.cache",
+                "loaded", String.valueOf(plugin.getPlayerDataCache().size()),
+                "online", String.valueOf(plugin.getPlayerDataCache().getOnlineCount())));
+        
+        ConnectionPool pool = store.getConnectionPool();
+        if (pool != null) {
+            sender.sendMessage(messages.getMessage("command.stats.pool",
+                    "active", String.valueOf(pool.getActiveCount()),
+                    "max", String.valueOf(pool.getMaxSize()),
+                    "idle", String.valueOf(pool.getIdleCount()),
+                    "open", String.valueOf(pool.getOpenCount())));
+            sender.sendMessage(messages.getMessage("command.stats.pool-wait",
+                    "avg", String.format("%.2f", pool.getAverageWaitMillis()),
+                    "max", String.format("%.2f", pool.getMaxWaitMillis()),
+                    "leases", String.valueOf(pool.getTotalLeases()),
+                    "timeouts", String.valueOf(pool.getTimeoutCount())));
+            if (pool.getStatementCacheSize() > 0) {
+                sender.sendMessage(messages.getMessage("command.stats.statements",
+                        "hits", String.valueOf(pool.getStatementHits()),
+                        "misses", String.valueOf(pool.getStatementMisses()),
+                        "size", String.valueOf(pool.getStatementCacheSize())));
+            }
+        }
+        
+        PlayerDataWriter writer = plugin.getPlayerDataWriter();
+        if (writer != null) {
+            sender.sendMessage(messages.getMessage("command.stats.writer",
+                    "pending", String.valueOf(writer.getPendingCount()),
+                    "written", String.valueOf(writer.getWrittenCount()),
+                    "flushes", String.valueOf(writer.getFlushCount()),
+                    "coalesced", String.valueOf(writer.getCoalescedCount()),
+                    "failed", String.valueOf(writer.getFailedFlushCount())));
+            sender.sendMessage(messages.getMessage("command.stats.writer-latency",
+                    "avg", String.format("%.2f", writer.getAverageBatchMillis()),
+                    "max", String.format("%.2f", writer.getMaxBatchMillis()),
+                    "row", String.format("%.3f", writer.getAverageRowMillis())));
+        }
+        
+        BackupScheduler backupScheduler = plugin.getDeathListener().getBackupScheduler();
+        if (backupScheduler.isRunning()) {
+            sender.sendMessage(messages.getMessage("command.stats.backup",
+                    "pending", String.valueOf(backupScheduler.getPendingCount()),
+                    "backups", String.valueOf(backupScheduler.getBackupCount()),
+                    "overdue", String.valueOf(backupScheduler.getOverdueBackupCount())));
+        }
+        
+        BackupStore backupStore = plugin.getDeathListener().getBackupStore();
+        if (backupStore.size() > 0) {
+            sender.sendMessage(messages.getMessage("command.stats.backup-memory",
+                    "count", String.valueOf(backupStore.size()),
+                    "total", String.valueOf(backupStore.getEstimatedBytes() / 1024),
+                    "avg", String.valueOf(backupStore.getEstimatedBytes() / backupStore.size() / 1024),
+                    "max", String.valueOf(backupStore.getMaxBytes() / 1024 / 1024),
+                    "evicted", String.valueOf(backupStore.getEvictedCount())));
+            ItemPool itemPool = backupStore.getItemPool();
+            sender.sendMessage(messages.getMessage("command.stats.item-pool",
+                    "unique", String.valueOf(itemPool.size()),
+                    "refs", String.valueOf(itemPool.getReferenceCount()),
+                    "saved", String.valueOf(itemPool.getSavedBytes() / 1024)));
+        }
+        
+        BackupPipeline pipeline = plugin.getDeathListener().getPipeline();
+        sender.sendMessage(messages.getMessage("command.stats.backup-pipeline",
+                "queued", String.valueOf(pipeline.getQueueDepth()),
+                "completed", String.valueOf(pipeline.getCompletedCount()),
+                "avg", String.format("%.2f", pipeline.getAverageMillis()),
+                "inline", String.valueOf(pipeline.getInlineCount()),
+                "dropped", String.valueOf(pipeline.getDroppedCount()),
+                "failed", String.valueOf(pipeline.getFailedCount())));
+        
+        BackupJournal journal = plugin.getDeathListener().getJournal();
+        if (journal != null) {
+            sender.sendMessage(messages.getMessage("command.stats.journal",
+                    "pending", String.valueOf(journal.getPendingCount()),
+                    "size", String.valueOf(journal.getSize() / 1024),
+                    "syncs", String.valueOf(journal.getSyncCount()),
+                    "compactions", String.valueOf(journal.getCompactionCount())));
+            
+            BackupCodec codec = plugin.getDeathListener().getCodec();
+            if (codec.getEncodedCount() > 0) {
+                sender.sendMessage(messages.getMessage("command.stats.compression",
+                        "codec", codec.getName(),
+                        "ratio", String.format("%.1f", codec.getRatio() * 100),
+                        "raw", String.valueOf(codec.getAverageRawBytes() / 1024),
+                        "cpu", String.format("%.1f", codec.getAverageMicros())));
+            }
+        }
+        
+        return true;
+    }
+
     private boolean handleGui(CommandSender sender) {
         if (!(sender instanceof Player)) {
             sender.sendMessage(plugin.getMessages().getMessage("command.player-only"));
@@ -726,6 +840,7 @@ public class DeathKeepCommand implements CommandExecutor, TabCompleter {
                 subCommands.add("find");
                 subCommands.add("resetall");
                 subCommands.add("reload");
+                subCommands.add("stats");
             }
             
             for (String subCommand : subCommands) {
@@ -791,19 +906,17 @@ public class DeathKeepCommand implements CommandExecutor, TabCompleter {
         boolean hasSharedProtection = false;
         String sharerName = "";
         
-        for (Map.Entry<UUID, PlayerData> entry : plugin.getPlayerDataMap().entrySet()) {
-            PlayerData sharerData = entry.getValue();
-            if (sharerData.isActive() && uuid.equals(sharerData.getSharedWith())) {
+        for (PlayerData sharerData : plugin.getPlayerDataCache().findSharingWith(uuid)) {
+            if (sharerData.isActive()) {
                 hasSharedProtection = true;
-                OfflinePlayer sharerPlayer = Bukkit.getOfflinePlayer(entry.getKey());
-                sharerName = sharerPlayer.getName() != null ? sharerPlayer.getName() : "未知玩家";
+                sharerName = plugin.getNameCache().getName(sharerData.getUuid(), "未知玩家");
                 break;
             }
         }
         
         if (hasDirectProtection) {
             @SuppressWarnings("null")
-            long timeLeft = data.getExpiryTime() - System.currentTimeMillis() / 1000;
+            long timeLeft = data.getRemainingSeconds();
             sender.sendMessage(messages.getMessage("command.check.has-protection", 
                     "player", playerName, 
                     "time", formatTime((int)timeLeft)));
@@ -0,0 +1,461 @@
+/*
+  数据库连接池
+  提供独占租借、归还校验和等待统计的有界连接池
+  可选为每个物理连接缓存预处理语句
+ */
+package org.littlesheep.deathforkeep.data;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ConnectionPool {
+
+    // 校验连接时的超时时间（秒）
+    private static final int VALIDATION_TIMEOUT = 2;
+
+    private final String url;
+    private final Properties properties;
+    private final int maxSize;
+    private final long waitTimeoutMillis;
+    private final ConnectionInitializer initializer;
+    private final int statementCacheSize;
+
+    // 空闲连接，后进先出以便复用最近使用过的连接
+    private final LinkedBlockingDeque<PooledConnection> idleConnections = new LinkedBlockingDeque<>();
+    // 许可数量即池的容量，保证同时租出的连接不超过上限
+    private final Semaphore permits;
+
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicInteger openCount = new AtomicInteger();
+    private final AtomicLong totalLeases = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong discardedCount = new AtomicLong();
+    private final AtomicLong statementHits = new AtomicLong();
+    private final AtomicLong statementMisses = new AtomicLong();
+
+    private volatile boolean closed = false;
+
+    public ConnectionPool(String url, Properties properties, int maxSize, long waitTimeoutMillis) {
+        this(url, properties, maxSize, waitTimeoutMillis, null, 0);
+    }
+
+    /**
+     * @param initializer 新建物理连接后执行的初始化操作，可为null
+     * @param statementCacheSize 每个物理连接缓存的预处理语句数量，0为不缓存
+     */
+    public ConnectionPool(String url, Properties properties, int maxSize, long waitTimeoutMillis,
+                          ConnectionInitializer initializer, int statementCacheSize) {
+        this.url = url;
+        this.properties = properties != null ? properties : new Properties();
+        this.maxSize = Math.max(1, maxSize);
+        this.waitTimeoutMillis = Math.max(0, waitTimeoutMillis);
+        this.initializer = initializer;
+        this.statementCacheSize = Math.max(0, statementCacheSize);
+        this.permits = new Semaphore(this.maxSize, true);
+    }
+
+    /**
+     * 从池中租借一个连接
+     * 返回的连接调用close()时会归还到池中，而不是真正关闭
+     *
+     * @return 独占的数据库连接
+     * @throws SQLException 等待超时或无法创建连接时抛出
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("连接池已关闭");
+        }
+
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(waitTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeoutCount.incrementAndGet();
+                throw new SQLException("等待数据库连接超时 (" + waitTimeoutMillis + "ms)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("等待数据库连接时被中断", e);
+        }
+        recordWait(System.nanoTime() - start);
+
+        try {
+            PooledConnection pooled = takeValidConnection();
+            activeCount.incrementAndGet();
+            totalLeases.incrementAndGet();
+            return wrap(pooled);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private PooledConnection takeValidConnection() throws SQLException {
+        PooledConnection pooled;
+        while ((pooled = idleConnections.pollFirst()) != null) {
+            if (isUsable(pooled.raw)) {
+                return pooled;
+            }
+            discard(pooled);
+        }
+
+        Connection conn = DriverManager.getConnection(url, properties);
+        pooled = new PooledConnection(conn);
+        openCount.incrementAndGet();
+        if (initializer != null) {
+            try {
+                initializer.initialize(conn);
+            } catch (SQLException | RuntimeException e) {
+                discard(pooled);
+                throw e;
+            }
+        }
+        return pooled;
+    }
+
+    private boolean isUsable(Connection conn) {
+        try {
+            return !conn.isClosed() && conn.isValid(VALIDATION_TIMEOUT);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void recordWait(long waitNanos) {
+        totalWaitNanos.addAndGet(waitNanos);
+        long currentMax;
+        do {
+            currentMax = maxWaitNanos.get();
+        } while (waitNanos > currentMax && !maxWaitNanos.compareAndSet(currentMax, waitNanos));
+    }
+
+    /**
+     * 归还连接，恢复默认状态后放回空闲队列
+     */
+    private void release(PooledConnection pooled) {
+        activeCount.decrementAndGet();
+        Connection raw = pooled.raw;
+        try {
+            if (closed || raw.isClosed()) {
+                discard(pooled);
+                return;
+            }
+
+            // 未提交的事务直接回滚，避免污染下一个租借者
+            if (!raw.getAutoCommit()) {
+                raw.rollback();
+                raw.setAutoCommit(true);
+            }
+            raw.clearWarnings();
+            idleConnections.offerFirst(pooled);
+        } catch (SQLException e) {
+            discard(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void discard(PooledConnection pooled) {
+        discardedCount.incrementAndGet();
+        openCount.decrementAndGet();
+        // 关闭物理连接时驱动会一并关闭其上的语句
+        pooled.statements.clear();
+        try {
+            pooled.raw.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    private Connection wrap(PooledConnection pooled) {
+        return (Connection) Proxy.newProxyInstance(
+                ConnectionPool.class.getClassLoader(),
+                new Class<?>[]{Connection.class, CachingConnection.class},
+                new LeaseHandler(pooled));
+    }
+
+    /**
+     * 通过连接所属物理连接的语句缓存创建预处理语句
+     * 只用于内容固定的SQL，按参数数量拼接的SQL应直接调用prepareStatement，避免挤出常用语句
+     * 连接不是从连接池租借的时等同于prepareStatement
+     */
+    public static PreparedStatement prepareCached(Connection connection, String sql) throws SQLException {
+        if (connection instanceof CachingConnection) {
+            return ((CachingConnection) connection).prepareCached(sql);
+        }
+        return connection.prepareStatement(sql);
+    }
+
+    /**
+     * 关闭连接池及所有空闲连接
+     * 仍被租借的连接会在归还时关闭
+     */
+    public void close() {
+        closed = true;
+        PooledConnection pooled;
+        while ((pooled = idleConnections.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    public int getIdleCount() {
+        return idleConnections.size();
+    }
+
+    public int getOpenCount() {
+        return openCount.get();
+    }
+
+    public long getTotalLeases() {
+        return totalLeases.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    public long getDiscardedCount() {
+        return discardedCount.get();
+    }
+
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    public long getStatementHits() {
+        return statementHits.get();
+    }
+
+    public long getStatementMisses() {
+        return statementMisses.get();
+    }
+
+    /**
+     * @return 平均等待时间（毫秒）
+     */
+    public double getAverageWaitMillis() {
+        long leases = totalLeases.get();
+        return leases == 0 ? 0 : totalWaitNanos.get() / 1_000_000.0 / leases;
+    }
+
+    /**
+     * @return 最长等待时间（毫秒）
+     */
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * 新建物理连接后的初始化操作，例如设置PRAGMA
+     */
+    public interface ConnectionInitializer {
+        void initialize(Connection connection) throws SQLException;
+    }
+
+    // 租借代理额外实现的接口，只有通过prepareCached()创建的语句会进入缓存
+    interface CachingConnection {
+        PreparedStatement prepareCached(String sql) throws SQLException;
+    }
+
+    // 物理连接及其预处理语句缓存，只会被当前租借者访问
+    private class PooledConnection {
+        final Connection raw;
+        final Map<String, CachedStatement> statements;
+
+        PooledConnection(Connection raw) {
+            this.raw = raw;
+            this.statements = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                    if (size() <= statementCacheSize) {
+                        return false;
+                    }
+                    // 正在使用的语句在归还时关闭
+                    CachedStatement cached = eldest.getValue();
+                    cached.evicted = true;
+                    if (!cached.inUse) {
+                        closeQuietly(cached.statement);
+                    }
+                    return true;
+                }
+            };
+        }
+
+        PreparedStatement prepare(String sql) throws SQLException {
+            CachedStatement cached = statements.get(sql);
+            if (cached != null && cached.evicted) {
+                // 复位失败的语句已被关闭，重新创建
+                statements.remove(sql);
+                cached = null;
+            }
+            if (cached != null && !cached.inUse) {
+                statementHits.incrementAndGet();
+            } else {
+                statementMisses.incrementAndGet();
+                if (cached != null) {
+                    // 同一语句在一次租借内被嵌套使用，临时创建一个不缓存的语句
+                    return raw.prepareStatement(sql);
+                }
+                cached = new CachedStatement(raw.prepareStatement(sql));
+                statements.put(sql, cached);
+            }
+            cached.inUse = true;
+            return wrapStatement(cached);
+        }
+    }
+
+    private static class CachedStatement {
+        final PreparedStatement statement;
+        boolean inUse = false;
+        boolean evicted = false;
+
+        CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+    }
+
+    private PreparedStatement wrapStatement(CachedStatement cached) {
+        return (PreparedStatement) Proxy.newProxyInstance(
+                ConnectionPool.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                new StatementHandler(cached));
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    // 租借代理：拦截close()以归还连接，归还后禁止继续使用
+    private class LeaseHandler implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean returned = false;
+
+        LeaseHandler(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            Connection raw = pooled.raw;
+
+            if ("close".equals(name)) {
+                if (!returned) {
+                    returned = true;
+                    release(pooled);
+                }
+                return null;
+            }
+            if ("isClosed".equals(name)) {
+                return returned || raw.isClosed();
+            }
+            if ("equals".equals(name)) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            }
+            if ("toString".equals(name)) {
+                return "PooledConnection[" + raw + "]";
+            }
+            if (returned) {
+                throw new SQLException("连接已归还到连接池");
+            }
+            if ("prepareCached".equals(name)) {
+                String sql = (String) args[0];
+                return statementCacheSize > 0 ? pooled.prepare(sql) : raw.prepareStatement(sql);
+            }
+
+            try {
+                return method.invoke(raw, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    // 语句代理：close()时清空参数留待下次复用，而不是真正关闭
+    private static class StatementHandler implements InvocationHandler {
+        private final CachedStatement cached;
+        private boolean returned = false;
+
+        StatementHandler(CachedStatement cached) {
+            this.cached = cached;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            PreparedStatement statement = cached.statement;
+
+            if ("close".equals(name)) {
+                if (!returned) {
+                    returned = true;
+                    cached.inUse = false;
+                    if (cached.evicted) {
+                        closeQuietly(statement);
+                    } else {
+                        try {
+                            statement.clearParameters();
+                            statement.clearBatch();
+                        } catch (SQLException e) {
+                            cached.evicted = true;
+                            closeQuietly(statement);
+                        }
+                    }
+                }
+                return null;
+            }
+            if ("isClosed".equals(name)) {
+                return returned || statement.isClosed();
+            }
+            if ("equals".equals(name)) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            }
+            if ("toString".equals(name)) {
+                return "CachedStatement[" + statement + "]";
+            }
+            if (returned) {
+                throw new SQLException("预处理语句已关闭");
+            }
+
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
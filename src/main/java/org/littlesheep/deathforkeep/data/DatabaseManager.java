@@ -1,324 +1,612 @@
 /*
   数据库管理器
-  处理数据库的初始化、连接和数据操作
+  基于JDBC的玩家数据存储基类，处理连接池、表结构和通用数据操作
+  不同数据库的差异由子类实现
  */
 package org.littlesheep.deathforkeep.data;
 
 import org.littlesheep.deathforkeep.DeathForKeep;
+import org.littlesheep.deathforkeep.utils.ProtectionClock;
 
-import java.io.File;
 import java.sql.*;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 
-public class DatabaseManager {
-    private final DeathForKeep plugin;
-    private Connection connection;
-    private final Map<String, Connection> connectionPool = new ConcurrentHashMap<>();
-    private final int MAX_POOL_SIZE = 10;
+public abstract class DatabaseManager implements PlayerDataStore {
+    // 玩家数据表的全部列，按绑定参数的顺序排列
+    protected static final String[] PLAYER_COLUMNS = {
+            "uuid", "expiry_time", "active", "particles_enabled", "shared_with",
+            "protection_level", "keep_exp", "particle_effect", "no_death_penalty"
+    };
+    protected static final String SELECT_COLUMNS = String.join(", ", PLAYER_COLUMNS);
+    // 与其他表连接查询时使用，player_data的别名为p
+    private static final String QUALIFIED_COLUMNS = "p." + String.join(", p.", PLAYER_COLUMNS);
+    // 玩家名称表的全部列，name_lower用于不区分大小写的查找
+    protected static final String[] NAME_COLUMNS = {"uuid", "name", "name_lower", "last_seen"};
+    // SQLite默认最多支持999个绑定参数
+    private static final int MAX_IN_PARAMETERS = 500;
+    // 小于此值的到期时间是以秒保存的旧数据（毫秒时间戳在1973年就已超过此值）
+    static final long SECONDS_THRESHOLD = 100000000000L;
+    // 与isSecondsTimestamp()的判断保持一致
+    private static final String SECONDS_CONDITION = "expiry_time > 0 AND expiry_time < " + SECONDS_THRESHOLD;
     
-    public DatabaseManager(DeathForKeep plugin) {
+    protected final DeathForKeep plugin;
+    private ConnectionPool connectionPool;
+    private final int batchChunkSize;
+    private String upsertSql;
+    private String nameUpsertSql;
+    
+    protected DatabaseManager(DeathForKeep plugin) {
         this.plugin = plugin;
-        initializeDatabase();
+        this.batchChunkSize = Math.max(1, plugin.getConfig().getInt("performance.batch-chunk-size", 500));
     }
     
-    private void initializeDatabase() {
-        File dataFolder = new File(plugin.getDataFolder(), "database");
-        if (!dataFolder.exists()) {
-            dataFolder.mkdirs();
+    /**
+     * 根据配置文件中的database.type创建对应的存储实现并完成初始化
+     * 
+     * @param plugin 插件实例
+     * @return 玩家数据存储
+     */
+    public static PlayerDataStore create(DeathForKeep plugin) {
+        String type = plugin.getConfig().getString("database.type", "sqlite").toLowerCase(Locale.ROOT);
+        DatabaseManager manager;
+        switch (type) {
+            case "mysql":
+            case "mariadb":
+                manager = new MySQLDataStore(plugin);
+                break;
+            case "sqlite":
+                manager = new SQLiteDataStore(plugin);
+                break;
+            default:
+                plugin.getColorLogger().warn("未知的数据库类型: " + type + "，将使用SQLite");
+                manager = new SQLiteDataStore(plugin);
+                break;
         }
-        
-        String url = "jdbc:sqlite:" + new File(dataFolder, "deathkeep.db").getAbsolutePath();
+        manager.initialize();
+        return manager;
+    }
+    
+    private void initialize() {
+        upsertSql = buildUpsertSql("player_data", PLAYER_COLUMNS);
+        nameUpsertSql = buildUpsertSql("player_names", NAME_COLUMNS);
         
         try {
-            Class.forName("org.sqlite.JDBC");
-            connection = DriverManager.getConnection(url);
-            
-            // 初始化连接池
-            for (int i = 0; i < MAX_POOL_SIZE; i++) {
-                Connection conn = DriverManager.getConnection(url);
-                connectionPool.put("conn-" + i, conn);
-            }
-            
-            // 创建基本表结构
-            try (Statement statement = connection.createStatement()) {
-                // 创建玩家数据表（基本结构）
-                statement.execute("CREATE TABLE IF NOT EXISTS player_data (" +
-                        "uuid TEXT PRIMARY KEY, " +
-                        "expiry_time BIGINT)");
-            }
+            // 初始化连接池，连接按需创建
+            connectionPool = createConnectionPool();
             
-            // 调用setupTables方法确保所有列都存在
+            // 确保表和所有列都存在
             setupTables();
             
-            plugin.getColorLogger().info("数据库初始化完成");
+            plugin.getColorLogger().info("数据库初始化完成 (" + getStorageType() + ")");
         } catch (SQLException | ClassNotFoundException e) {
-            plugin.getLogger().log(Level.SEVERE, "无法初始化数据库", e);
+            plugin.getLogger().log(Level.SEVERE, "无法初始化数据库 (" + getStorageType() + ")", e);
         }
     }
     
     /**
-     * 从连接池获取一个连接
+     * 加载驱动并创建该数据库使用的连接池
      */
-    private Connection getConnection() throws SQLException {
-        // 如果池中有连接，返回一个可用的连接
-        for (Map.Entry<String, Connection> entry : connectionPool.entrySet()) {
-            Connection conn = entry.getValue();
-            if (conn != null && !conn.isClosed()) {
-                return conn;
+    protected abstract ConnectionPool createConnectionPool() throws SQLException, ClassNotFoundException;
+    
+    /**
+     * 生成按uuid插入或更新一行的语句，参数顺序与columns一致
+     * 
+     * @param table 表名
+     * @param columns 需要写入的列，第一列为主键uuid
+     */
+    protected abstract String buildUpsertSql(String table, String[] columns);
+    
+    /**
+     * 生成 INSERT INTO table (...) VALUES (?, ...) 部分
+     */
+    protected static String insertPrefix(String table, String[] columns) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ").append(table).append(" (");
+        StringBuilder values = new StringBuilder(") VALUES (");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sql.append(", ");
+                values.append(", ");
             }
+            sql.append(columns[i]);
+            values.append('?');
         }
-        
-        // 如果没有可用连接，创建一个新的
-        String url = "jdbc:sqlite:" + new File(plugin.getDataFolder(), "database/deathkeep.db").getAbsolutePath();
-        return DriverManager.getConnection(url);
+        return sql.append(values).append(')').toString();
     }
     
+    /**
+     * 从连接池租借一个连接，使用完毕后调用close()归还
+     */
+    protected Connection getConnection() throws SQLException {
+        if (connectionPool == null) {
+            throw new SQLException("数据库连接池未初始化");
+        }
+        return connectionPool.getConnection();
+    }
+    
+    /**
+     * 创建内容固定的预处理语句，连接池开启语句缓存时会复用同一物理连接上的语句
+     */
+    protected static PreparedStatement prepareCached(Connection connection, String sql) throws SQLException {
+        return ConnectionPool.prepareCached(connection, sql);
+    }
+    
+    /**
+     * 获取连接池，用于查看连接池状态
+     */
+    @Override
+    public ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+    
+    @Override
     public void closeConnection() {
+        if (connectionPool == null) {
+            return;
+        }
+        
+        int active = connectionPool.getActiveCount();
+        if (active > 0) {
+            plugin.getLogger().warning("关闭连接池时仍有 " + active + " 个连接未归还");
+        }
+        
+        // 关闭所有连接池中的连接
+        connectionPool.close();
+        plugin.getLogger().info("数据库连接已成功关闭");
+    }
+    
+    /**
+     * 批量保存玩家数据，所有数据在同一个事务中写入
+     * 
+     * @param players 需要保存的玩家数据
+     * @return 是否全部写入成功
+     */
+    @Override
+    public boolean saveAll(Collection<PlayerData> players) {
+        return writeChanges(players, Collections.<UUID>emptyList());
+    }
+    
+    /**
+     * 在同一个事务中写入一组玩家数据修改
+     * 语句按performance.batch-chunk-size分块提交给驱动，最后统一提交事务
+     * 
+     * @param saves 需要保存的玩家数据
+     * @param deletes 需要删除的玩家UUID
+     * @return 是否全部写入成功，失败时事务已回滚
+     */
+    @Override
+    public boolean writeChanges(Collection<PlayerData> saves, Collection<UUID> deletes) {
+        Connection connection = null;
+        PreparedStatement upsert = null;
+        PreparedStatement delete = null;
+        PreparedStatement deleteShares = null;
+        PreparedStatement insertShare = null;
+        
         try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
+            connection = getConnection();
+            connection.setAutoCommit(false);
+            
+            if (!saves.isEmpty()) {
+                upsert = prepareCached(connection, upsertSql);
+                int count = 0;
+                for (PlayerData data : saves) {
+                    bindPlayerData(upsert, data);
+                    upsert.addBatch();
+                    executeBatchIfFull(upsert, ++count);
+                }
+                executeRemainingBatch(upsert, count);
             }
             
-            // 关闭所有连接池中的连接
-            for (Connection conn : connectionPool.values()) {
-                if (conn != null && !conn.isClosed()) {
-                    conn.close();
+            if (!deletes.isEmpty()) {
+                delete = prepareCached(connection, "DELETE FROM player_data WHERE uuid = ?");
+                int count = 0;
+                for (UUID uuid : deletes) {
+                    delete.setString(1, uuid.toString());
+                    delete.addBatch();
+                    executeBatchIfFull(delete, ++count);
                 }
+                executeRemainingBatch(delete, count);
             }
-            connectionPool.clear();
-            plugin.getLogger().info("数据库连接已成功关闭");
-        } catch (SQLException e) {
-            plugin.getLogger().log(Level.SEVERE, "关闭数据库连接时出错: " + e.getMessage(), e);
+            
+            // 只重写共享对象有修改的玩家，先整体删除再重新写入，与玩家数据在同一个事务中提交
+            List<PlayerData> shareChanges = new ArrayList<>();
+            for (PlayerData data : saves) {
+                if (data.isSharesChanged()) {
+                    shareChanges.add(data);
+                }
+            }
+            
+            if (!shareChanges.isEmpty() || !deletes.isEmpty()) {
+                deleteShares = prepareCached(connection, "DELETE FROM player_shares WHERE owner = ?");
+                int count = 0;
+                for (PlayerData data : shareChanges) {
+                    deleteShares.setString(1, data.getUuid().toString());
+                    deleteShares.addBatch();
+                    executeBatchIfFull(deleteShares, ++count);
+                }
+                for (UUID uuid : deletes) {
+                    deleteShares.setString(1, uuid.toString());
+                    deleteShares.addBatch();
+                    executeBatchIfFull(deleteShares, ++count);
+                }
+                executeRemainingBatch(deleteShares, count);
+            }
+            
+            if (!shareChanges.isEmpty()) {
+                insertShare = prepareCached(connection, "INSERT INTO player_shares (owner, target) VALUES (?, ?)");
+                int count = 0;
+                for (PlayerData data : shareChanges) {
+                    for (UUID target : data.getSharedWithAll()) {
+                        insertShare.setString(1, data.getUuid().toString());
+                        insertShare.setString(2, target.toString());
+                        insertShare.addBatch();
+                        executeBatchIfFull(insertShare, ++count);
+                    }
+                }
+                executeRemainingBatch(insertShare, count);
+            }
+            
+            connection.commit();
+            return true;
+        } catch (SQLException | RuntimeException e) {
+            plugin.getLogger().log(Level.SEVERE, "批量写入玩家数据失败 (" + saves.size() + " 条保存, " + 
+                    deletes.size() + " 条删除)", e);
+            rollbackQuietly(connection);
+            return false;
         } finally {
-            connection = null;
+            closeResources(null, insertShare, null);
+            closeResources(null, deleteShares, null);
+            closeResources(null, delete, null);
+            closeResources(connection, upsert, null);
         }
     }
     
-    public void savePlayerData(UUID uuid, long expiryTime, boolean particlesEnabled, UUID sharedWith) {
-        try (Connection conn = getConnection();
-             PreparedStatement ps = conn.prepareStatement(
-                "INSERT OR REPLACE INTO player_data (uuid, expiry_time, active, particles_enabled, shared_with) VALUES (?, ?, ?, ?, ?)")) {
-            ps.setString(1, uuid.toString());
-            ps.setLong(2, expiryTime);
-            // 根据过期时间计算active状态
-            long currentTime = System.currentTimeMillis() / 1000;
-            boolean active = expiryTime > currentTime;
-            ps.setBoolean(3, active);
-            ps.setBoolean(4, particlesEnabled);
-            ps.setString(5, sharedWith != null ? sharedWith.toString() : null);
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            plugin.getLogger().log(Level.SEVERE, "保存玩家数据时出错: " + uuid, e);
+    private void executeBatchIfFull(PreparedStatement statement, int count) throws SQLException {
+        if (count % batchChunkSize == 0) {
+            statement.executeBatch();
         }
     }
     
-    /**
-     * 异步保存玩家数据
-     */
-    public CompletableFuture<Void> savePlayerDataAsync(UUID uuid, long expiryTime, boolean particlesEnabled, UUID sharedWith) {
-        return CompletableFuture.runAsync(() -> {
-            savePlayerData(uuid, expiryTime, particlesEnabled, sharedWith);
-        }).exceptionally(ex -> {
-            plugin.getLogger().log(Level.SEVERE, "异步保存玩家数据时出错: " + uuid, ex);
-            return null;
-        });
+    private void executeRemainingBatch(PreparedStatement statement, int count) throws SQLException {
+        if (count % batchChunkSize != 0) {
+            statement.executeBatch();
+        }
     }
     
-    public Map<UUID, PlayerData> loadAllPlayerData() {
-        Map<UUID, PlayerData> playerDataMap = new ConcurrentHashMap<>();
-        Connection connection = null;
-        PreparedStatement statement = null;
-        ResultSet resultSet = null;
+    /**
+     * 从player_shares读取已加载玩家的全部共享对象
+     * 按performance.batch-chunk-size分批使用IN查询，避免逐个玩家查询
+     */
+    private void attachShares(Connection connection, List<PlayerData> players) throws SQLException {
+        Map<String, PlayerData> byUuid = new HashMap<>();
+        Map<String, List<UUID>> shares = new HashMap<>();
+        for (PlayerData data : players) {
+            byUuid.put(data.getUuid().toString(), data);
+        }
         
-        try {
-            connection = getConnection();
-            statement = connection.prepareStatement("SELECT * FROM player_data");
-            resultSet = statement.executeQuery();
+        List<String> owners = new ArrayList<>(byUuid.keySet());
+        int chunkSize = Math.min(batchChunkSize, MAX_IN_PARAMETERS);
+        for (int from = 0; from < owners.size(); from += chunkSize) {
+            List<String> chunk = owners.subList(from, Math.min(from + chunkSize, owners.size()));
+            StringBuilder sql = new StringBuilder("SELECT owner, target FROM player_shares WHERE owner IN (");
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i > 0 ? ", ?" : "?");
+            }
+            sql.append(')');
             
-            while (resultSet.next()) {
-                UUID playerUUID = UUID.fromString(resultSet.getString("uuid"));
-                long expiryTime = resultSet.getLong("expiry_time");
-                
-                // 使用默认值处理可能不存在的列
-                boolean active = false;
-                try {
-                    active = resultSet.getBoolean("active");
-                } catch (SQLException e) {
-                    // 如果active列不存在，使用计算值
-                    long currentTime = System.currentTimeMillis() / 1000;
-                    active = expiryTime > currentTime;
-                    
-                    // 记录警告
-                    plugin.getColorLogger().warn("数据库中缺少active列，为玩家 " + playerUUID + " 计算活动状态: " + active);
+            try (PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    statement.setString(i + 1, chunk.get(i));
                 }
-                
-                boolean particlesEnabled = true;
-                try {
-                    particlesEnabled = resultSet.getBoolean("particles_enabled");
-                } catch (SQLException ignored) {}
-                
-                String sharedWithStr = null;
-                try {
-                    sharedWithStr = resultSet.getString("shared_with");
-                } catch (SQLException ignored) {}
-                
-                UUID sharedWith = sharedWithStr != null ? UUID.fromString(sharedWithStr) : null;
-                
-                // 获取新增的保护等级相关数据，使用默认值处理可能不存在的列
-                String protectionLevel = null;
-                boolean keepExp = false;
-                String particleEffect = null;
-                boolean noDeathPenalty = false;
-                
-                try {
-                    protectionLevel = resultSet.getString("protection_level");
-                } catch (SQLException ignored) {}
-                
-                try {
-                    keepExp = resultSet.getBoolean("keep_exp");
-                } catch (SQLException ignored) {}
-                
-                try {
-                    particleEffect = resultSet.getString("particle_effect");
-                } catch (SQLException ignored) {}
-                
-                try {
-                    noDeathPenalty = resultSet.getBoolean("no_death_penalty");
-                } catch (SQLException ignored) {}
-                
-                PlayerData playerData = new PlayerData(playerUUID, expiryTime, active, sharedWith);
-                playerData.setParticlesEnabled(particlesEnabled);
-                playerData.setProtectionLevel(protectionLevel);
-                playerData.setKeepExp(keepExp);
-                playerData.setParticleEffect(particleEffect);
-                playerData.setNoDeathPenalty(noDeathPenalty);
-                
-                // 确保活动状态是根据过期时间计算的，除非强制设置为活动状态
-                if (active && playerData.getExpiryTime() < System.currentTimeMillis() / 1000) {
-                    playerData.setForcedActive(true);
-                    plugin.getColorLogger().info("玩家 " + playerUUID + " 的保护状态被强制设置为活动，尽管过期时间已过: " + 
-                                               new java.util.Date(playerData.getExpiryTime() * 1000));
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        shares.computeIfAbsent(resultSet.getString("owner"), key -> new ArrayList<>())
+                                .add(UUID.fromString(resultSet.getString("target")));
+                    }
                 }
-                
-                playerDataMap.put(playerUUID, playerData);
             }
-        } catch (SQLException e) {
-            plugin.getColorLogger().error("加载所有玩家数据失败: " + e.getMessage());
-        } finally {
-            closeResources(connection, statement, resultSet);
         }
         
-        return playerDataMap;
+        // player_shares是共享关系的唯一来源，shared_with列只为兼容旧版本保留
+        for (Map.Entry<String, PlayerData> entry : byUuid.entrySet()) {
+            List<UUID> targets = shares.get(entry.getKey());
+            entry.getValue().setSharedWithAll(targets != null ? targets : Collections.<UUID>emptyList());
+            // 与数据库一致，之后只有再次修改共享才需要重写
+            entry.getValue().setSharesChanged(false);
+        }
     }
     
-    public void removePlayerData(UUID uuid) {
-        try (PreparedStatement ps = connection.prepareStatement("DELETE FROM player_data WHERE uuid = ?")) {
-            ps.setString(1, uuid.toString());
-            ps.executeUpdate();
-        } catch (SQLException e) {
-            plugin.getLogger().log(Level.SEVERE, "删除玩家数据时出错: " + uuid, e);
-        }
+    private void bindPlayerData(PreparedStatement statement, PlayerData data) throws SQLException {
+        UUID sharedWith = data.getSharedWith();
+        statement.setString(1, data.getUuid().toString());
+        statement.setLong(2, data.getExpiryTime());
+        statement.setBoolean(3, data.isActive());
+        statement.setBoolean(4, data.isParticlesEnabled());
+        statement.setString(5, sharedWith != null ? sharedWith.toString() : null);
+        statement.setString(6, data.getProtectionLevel());
+        statement.setBoolean(7, data.isKeepExp());
+        statement.setString(8, data.getParticleEffect());
+        statement.setBoolean(9, data.isNoDeathPenalty());
     }
     
-    public void resetAllData() {
-        try (Statement statement = connection.createStatement()) {
-            statement.execute("DELETE FROM player_data");
+    private void rollbackQuietly(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.rollback();
         } catch (SQLException e) {
-            plugin.getLogger().log(Level.SEVERE, "重置所有数据时出错", e);
+            plugin.getLogger().log(Level.WARNING, "回滚事务失败: " + e.getMessage());
         }
     }
     
-    public void updateParticlesEnabled(UUID uuid, boolean enabled) {
-        try (PreparedStatement ps = connection.prepareStatement(
-                "UPDATE player_data SET particles_enabled = ? WHERE uuid = ?")) {
-            ps.setBoolean(1, enabled);
-            ps.setString(2, uuid.toString());
-            ps.executeUpdate();
+    @Override
+    public PlayerData loadPlayerData(UUID uuid) {
+        try (Connection connection = getConnection();
+             PreparedStatement statement = prepareCached(connection,
+                     "SELECT " + SELECT_COLUMNS + " FROM player_data WHERE uuid = ?")) {
+            statement.setString(1, uuid.toString());
+            PlayerData data;
+            try (ResultSet resultSet = statement.executeQuery()) {
+                data = resultSet.next() ? readPlayerData(resultSet) : null;
+            }
+            if (data != null) {
+                attachShares(connection, Collections.singletonList(data));
+            }
+            return data;
         } catch (SQLException e) {
-            plugin.getLogger().log(Level.SEVERE, "更新粒子设置时出错: " + uuid, e);
+            plugin.getLogger().log(Level.SEVERE, "加载玩家数据时出错: " + uuid, e);
+            return null;
         }
     }
     
-    public void updateSharedWith(UUID uuid, UUID sharedWith) {
-        try (PreparedStatement ps = connection.prepareStatement(
-                "UPDATE player_data SET shared_with = ? WHERE uuid = ?")) {
-            ps.setString(1, sharedWith != null ? sharedWith.toString() : null);
-            ps.setString(2, uuid.toString());
-            ps.executeUpdate();
+    @Override
+    public List<PlayerData> loadSharingWith(UUID target) {
+        List<PlayerData> result = new ArrayList<>();
+        try (Connection connection = getConnection();
+             PreparedStatement statement = prepareCached(connection,
+                     "SELECT " + SELECT_COLUMNS + " FROM player_data WHERE uuid IN " +
+                     "(SELECT owner FROM player_shares WHERE target = ?)")) {
+            statement.setString(1, target.toString());
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    result.add(readPlayerData(resultSet));
+                }
+            }
+            attachShares(connection, result);
         } catch (SQLException e) {
-            plugin.getLogger().log(Level.SEVERE, "更新共享设置时出错: " + uuid, e);
+            plugin.getLogger().log(Level.SEVERE, "加载共享给玩家的数据时出错: " + target, e);
         }
+        return result;
     }
     
-    public boolean createPlayerData(UUID playerUUID, long expiryTime, boolean active, boolean particlesEnabled, 
-                                  UUID sharedWith, String protectionLevel, boolean keepExp, 
-                                  String particleEffect, boolean noDeathPenalty) {
-        Connection connection = null;
-        PreparedStatement statement = null;
+    @Override
+    public boolean saveNames(Map<UUID, String> names, long lastSeen) {
+        if (names.isEmpty()) {
+            return true;
+        }
         
+        Connection connection = null;
+        PreparedStatement upsert = null;
         try {
             connection = getConnection();
-            statement = connection.prepareStatement(
-                    "INSERT INTO player_data (uuid, expiry_time, active, particles_enabled, shared_with, " +
-                    "protection_level, keep_exp, particle_effect, no_death_penalty) " +
-                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
-            
-            statement.setString(1, playerUUID.toString());
-            statement.setLong(2, expiryTime);
-            statement.setBoolean(3, active);
-            statement.setBoolean(4, particlesEnabled);
-            statement.setString(5, sharedWith != null ? sharedWith.toString() : null);
-            statement.setString(6, protectionLevel);
-            statement.setBoolean(7, keepExp);
-            statement.setString(8, particleEffect);
-            statement.setBoolean(9, noDeathPenalty);
-            
-            int result = statement.executeUpdate();
-            return result > 0;
+            connection.setAutoCommit(false);
+            upsert = prepareCached(connection, nameUpsertSql);
+            int count = 0;
+            for (Map.Entry<UUID, String> entry : names.entrySet()) {
+                upsert.setString(1, entry.getKey().toString());
+                upsert.setString(2, entry.getValue());
+                upsert.setString(3, entry.getValue().toLowerCase(Locale.ROOT));
+                upsert.setLong(4, lastSeen);
+                upsert.addBatch();
+                executeBatchIfFull(upsert, ++count);
+            }
+            executeRemainingBatch(upsert, count);
+            connection.commit();
+            return true;
         } catch (SQLException e) {
-            plugin.getColorLogger().error("创建玩家数据失败: " + e.getMessage());
+            plugin.getLogger().log(Level.SEVERE, "保存玩家名称失败 (" + names.size() + " 条)", e);
+            rollbackQuietly(connection);
             return false;
         } finally {
-            closeResources(connection, statement, null);
+            closeResources(connection, upsert, null);
         }
     }
     
-    public boolean updatePlayerData(UUID playerUUID, long expiryTime, boolean active, boolean particlesEnabled, 
-                                  UUID sharedWith, String protectionLevel, boolean keepExp, 
-                                  String particleEffect, boolean noDeathPenalty) {
-        Connection connection = null;
-        PreparedStatement statement = null;
+    @Override
+    public Map<UUID, String> loadRecentNames(int limit) {
+        // 先按时间倒序取最近的记录，再反转为从旧到新，方便按顺序放入LRU缓存
+        List<Map.Entry<UUID, String>> recent = new ArrayList<>();
+        try (Connection connection = getConnection();
+             PreparedStatement statement = prepareCached(connection,
+                     "SELECT uuid, name FROM player_names ORDER BY last_seen DESC LIMIT ?")) {
+            statement.setInt(1, limit);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    recent.add(new AbstractMap.SimpleImmutableEntry<>(
+                            UUID.fromString(resultSet.getString("uuid")), resultSet.getString("name")));
+                }
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.SEVERE, "加载玩家名称时出错", e);
+        }
         
-        try {
-            connection = getConnection();
-            statement = connection.prepareStatement(
-                    "UPDATE player_data SET expiry_time = ?, active = ?, particles_enabled = ?, " +
-                    "shared_with = ?, protection_level = ?, keep_exp = ?, particle_effect = ?, " +
-                    "no_death_penalty = ? WHERE uuid = ?");
-            
-            statement.setLong(1, expiryTime);
-            statement.setBoolean(2, active);
-            statement.setBoolean(3, particlesEnabled);
-            statement.setString(4, sharedWith != null ? sharedWith.toString() : null);
-            statement.setString(5, protectionLevel);
-            statement.setBoolean(6, keepExp);
-            statement.setString(7, particleEffect);
-            statement.setBoolean(8, noDeathPenalty);
-            statement.setString(9, playerUUID.toString());
-            
-            int result = statement.executeUpdate();
-            return result > 0;
+        Map<UUID, String> result = new LinkedHashMap<>();
+        for (int i = recent.size() - 1; i >= 0; i--) {
+            result.put(recent.get(i).getKey(), recent.get(i).getValue());
+        }
+        return result;
+    }
+    
+    @Override
+    public String loadName(UUID uuid) {
+        try (Connection connection = getConnection();
+             PreparedStatement statement = prepareCached(connection,
+                     "SELECT name FROM player_names WHERE uuid = ?")) {
+            statement.setString(1, uuid.toString());
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getString("name") : null;
+            }
         } catch (SQLException e) {
-            plugin.getColorLogger().error("更新玩家数据失败: " + e.getMessage());
-            return false;
-        } finally {
-            closeResources(connection, statement, null);
+            plugin.getLogger().log(Level.SEVERE, "加载玩家名称时出错: " + uuid, e);
+            return null;
+        }
+    }
+    
+    @Override
+    public UUID loadUuid(String name) {
+        try (Connection connection = getConnection();
+             PreparedStatement statement = prepareCached(connection,
+                     "SELECT uuid FROM player_names WHERE name_lower = ? ORDER BY last_seen DESC LIMIT 1")) {
+            statement.setString(1, name.toLowerCase(Locale.ROOT));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? UUID.fromString(resultSet.getString("uuid")) : null;
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.SEVERE, "按名称查找玩家时出错: " + name, e);
+            return null;
+        }
+    }
+    
+    @Override
+    public PlayerPage queryPlayers(PlayerQuery query, PlayerPage.Cursor after, int limit) {
+        boolean byName = query.getSort() == PlayerQuery.Sort.NAME;
+        long now = ProtectionClock.now();
+        StringBuilder sql = new StringBuilder();
+        List<Object> parameters = new ArrayList<>();
+        if (byName) {
+            // 排序键为COALESCE(n.name_lower, p.uuid)，没有记录名称的玩家按UUID排在名称之间，分页不会遗漏
+            // 按表达式排序无法使用索引，因此有名称和没有名称的玩家分别按索引读取一页，再合并排序
+            String afterKey = after != null ? after.getNameKey() : null;
+            sql.append("SELECT * FROM (SELECT ").append(QUALIFIED_COLUMNS)
+                    .append(", n.name, n.name_lower AS name_key FROM player_names n")
+                    .append(" INNER JOIN player_data p ON p.uuid = n.uuid");
+            appendConditions(sql, parameters, query, now, "n.name_lower", afterKey, after);
+            sql.append(" ORDER BY n.name_lower, p.uuid LIMIT ?) named UNION ALL SELECT * FROM (SELECT ")
+                    .append(QUALIFIED_COLUMNS).append(", NULL AS name, p.uuid AS name_key FROM player_data p");
+            parameters.add(limit + 1);
+            appendConditions(sql, parameters, query, now, "p.uuid", afterKey, after);
+            sql.append(" AND NOT EXISTS (SELECT 1 FROM player_names n WHERE n.uuid = p.uuid)")
+                    .append(" ORDER BY p.uuid LIMIT ?) unnamed ORDER BY name_key, uuid LIMIT ?");
+            parameters.add(limit + 1);
+        } else {
+            // 只包含有效保护时，到期时间的两个下限只保留较大的一个，SQLite在同一列上只用一个下限定位索引
+            PlayerQuery filters = query;
+            PlayerPage.Cursor from = after;
+            if (query.isActiveOnly() && after != null) {
+                if (after.getExpiryTime() > now) {
+                    filters = query.withActiveOnly(false);
+                } else {
+                    from = null;
+                }
+            }
+            sql.append("SELECT ").append(QUALIFIED_COLUMNS)
+                    .append(", n.name FROM player_data p LEFT JOIN player_names n ON n.uuid = p.uuid");
+            appendConditions(sql, parameters, filters, now, "p.expiry_time",
+                    from != null ? from.getExpiryTime() : null, from);
+            sql.append(" ORDER BY p.expiry_time, p.uuid LIMIT ?");
+        }
+        // 多读取一行，用于判断是否还有下一页
+        parameters.add(limit + 1);
+        
+        List<PlayerData> players = new ArrayList<>();
+        Map<UUID, String> names = new HashMap<>();
+        PlayerPage.Cursor next = null;
+        String lastNameKey = null;
+        try (Connection connection = getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql.toString())) {
+            for (int i = 0; i < parameters.size(); i++) {
+                statement.setObject(i + 1, parameters.get(i));
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    if (players.size() == limit) {
+                        PlayerData last = players.get(players.size() - 1);
+                        next = new PlayerPage.Cursor(last.getExpiryTime(), lastNameKey, last.getUuid());
+                        break;
+                    }
+                    PlayerData data = readPlayerData(resultSet);
+                    players.add(data);
+                    String name = resultSet.getString("name");
+                    if (name != null) {
+                        names.put(data.getUuid(), name);
+                    }
+                    if (byName) {
+                        lastNameKey = resultSet.getString("name_key");
+                    }
+                }
+            }
+            attachShares(connection, players);
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.SEVERE, "查询玩家列表时出错", e);
+        }
+        return new PlayerPage(players, names, next);
+    }
+    
+    /**
+     * 添加筛选条件和分页位置
+     *
+     * @param now 当前时间，只包含有效保护时使用
+     * @param key 排序列，同一排序键的玩家按UUID排序
+     * @param afterKey 上一页最后一行的排序键
+     * @param after 上一页返回的下一页位置，为null时从第一页开始
+     */
+    private static void appendConditions(StringBuilder sql, List<Object> parameters, PlayerQuery query, long now,
+                                         String key, Object afterKey, PlayerPage.Cursor after) {
+        sql.append(" WHERE 1 = 1");
+        // 保护是否有效只由到期时间决定，active列只是保存时的快照
+        if (query.isActiveOnly()) {
+            sql.append(" AND p.expiry_time > ?");
+            parameters.add(now);
+        }
+        if (query.isSharedOnly()) {
+            sql.append(" AND EXISTS (SELECT 1 FROM player_shares s WHERE s.owner = p.uuid)");
+        }
+        if (query.getLevel() != null) {
+            sql.append(" AND p.protection_level = ?");
+            parameters.add(query.getLevel());
+        }
+        
+        // 从上一页最后一行之后开始，>=条件让数据库直接从索引中的位置开始读取，不需要跳过前面的行
+        if (after != null) {
+            sql.append(" AND ").append(key).append(" >= ? AND (").append(key).append(" > ? OR p.uuid > ?)");
+            parameters.add(afterKey);
+            parameters.add(afterKey);
+            parameters.add(after.getUuid().toString());
+        }
+    }
+    
+    /**
+     * 读取当前行的玩家数据
+     * 表结构由setupTables保证完整，不再逐列检查
+     */
+    private PlayerData readPlayerData(ResultSet resultSet) throws SQLException {
+        UUID playerUUID = UUID.fromString(resultSet.getString("uuid"));
+        String sharedWithStr = resultSet.getString("shared_with");
+        UUID sharedWith = sharedWithStr != null ? UUID.fromString(sharedWithStr) : null;
+        
+        // active列只是保存时的状态快照，保护是否有效只由到期时间决定
+        PlayerData playerData = new PlayerData(playerUUID, resultSet.getLong("expiry_time"), sharedWith);
+        playerData.setParticlesEnabled(resultSet.getBoolean("particles_enabled"));
+        playerData.setProtectionLevel(resultSet.getString("protection_level"));
+        playerData.setKeepExp(resultSet.getBoolean("keep_exp"));
+        playerData.setParticleEffect(resultSet.getString("particle_effect"));
+        playerData.setNoDeathPenalty(resultSet.getBoolean("no_death_penalty"));
+        return playerData;
+    }
+    
+    @Override
+    public void resetAllData() {
+        try (Connection conn = getConnection();
+             Statement statement = conn.createStatement()) {
+            statement.execute("DELETE FROM player_shares");
+            statement.execute("DELETE FROM player_data");
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.SEVERE, "重置所有数据时出错", e);
         }
     }
     
+    @Override
     public void setupTables() {
         Connection connection = null;
         Statement statement = null;
@@ -340,36 +628,70 @@ public class DatabaseManager {
                     "no_death_penalty BOOLEAN DEFAULT FALSE" +
                     ")");
             
-            // 检查active列是否存在
-            ResultSet rsActive = connection.getMetaData().getColumns(null, null, "player_data", "active");
-            if (!rsActive.next()) {
-                // 添加active列
+            // 旧版本创建的表可能缺少部分列，逐列检查并补齐
+            Map<String, String> columns = new LinkedHashMap<>();
+            columns.put("active", "BOOLEAN DEFAULT FALSE");
+            columns.put("particles_enabled", "BOOLEAN DEFAULT TRUE");
+            columns.put("shared_with", "VARCHAR(36)");
+            columns.put("protection_level", "VARCHAR(50)");
+            columns.put("keep_exp", "BOOLEAN DEFAULT FALSE");
+            columns.put("particle_effect", "VARCHAR(50)");
+            columns.put("no_death_penalty", "BOOLEAN DEFAULT FALSE");
+            
+            DatabaseMetaData metaData = connection.getMetaData();
+            for (Map.Entry<String, String> column : columns.entrySet()) {
+                boolean exists;
+                try (ResultSet rs = metaData.getColumns(connection.getCatalog(), null, "player_data", column.getKey())) {
+                    exists = rs.next();
+                }
+                if (exists) {
+                    continue;
+                }
+                
                 try {
-                    statement.executeUpdate("ALTER TABLE player_data ADD COLUMN active BOOLEAN DEFAULT 0");
-                    plugin.getColorLogger().info("数据库表结构已更新，添加了active字段");
+                    statement.executeUpdate("ALTER TABLE player_data ADD COLUMN " + column.getKey() + " " + column.getValue());
+                    plugin.getColorLogger().info("数据库表结构已更新，添加了" + column.getKey() + "字段");
                 } catch (SQLException e) {
-                    // SQLite可能不支持某些ALTER TABLE操作，忽略错误
-                    plugin.getColorLogger().warn("无法添加active列，将使用计算值: " + e.getMessage());
+                    plugin.getColorLogger().warn("无法添加" + column.getKey() + "列: " + e.getMessage());
                 }
             }
-            rsActive.close();
             
-            // 检查是否需要更新表结构添加新列
-            ResultSet rs = connection.getMetaData().getColumns(null, null, "player_data", "protection_level");
-            if (!rs.next()) {
-                // 添加新列
-                try {
-                    statement.executeUpdate("ALTER TABLE player_data ADD COLUMN protection_level VARCHAR(50)");
-                    statement.executeUpdate("ALTER TABLE player_data ADD COLUMN keep_exp BOOLEAN DEFAULT FALSE");
-                    statement.executeUpdate("ALTER TABLE player_data ADD COLUMN particle_effect VARCHAR(50)");
-                    statement.executeUpdate("ALTER TABLE player_data ADD COLUMN no_death_penalty BOOLEAN DEFAULT FALSE");
-                    plugin.getColorLogger().info("数据库表结构已更新，添加了保护等级相关字段");
-                } catch (SQLException e) {
-                    // SQLite可能不支持某些ALTER TABLE操作，忽略错误
-                    plugin.getColorLogger().warn("无法添加保护等级相关列: " + e.getMessage());
+            ensureIndex(connection, statement, "player_data", "idx_player_data_shared_with", "shared_with");
+            // 玩家列表按到期时间分页和筛选，按保护等级筛选时也按到期时间顺序读取，不需要排序
+            ensureIndex(connection, statement, "player_data", "idx_player_data_expiry_time", "expiry_time, uuid");
+            ensureIndex(connection, statement, "player_data", "idx_player_data_level_expiry",
+                    "protection_level, expiry_time, uuid");
+            migrateExpiryTimeUnit(connection, statement);
+            
+            // 共享关系表，一个玩家可以与多个玩家共享保护
+            boolean sharesExist;
+            try (ResultSet rs = metaData.getTables(connection.getCatalog(), null, "player_shares", null)) {
+                sharesExist = rs.next();
+            }
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS player_shares (" +
+                    "owner VARCHAR(36) NOT NULL, " +
+                    "target VARCHAR(36) NOT NULL, " +
+                    "PRIMARY KEY (owner, target)" +
+                    ")");
+            ensureIndex(connection, statement, "player_shares", "idx_player_shares_target", "target");
+            
+            // 玩家名称表，代替可能读取磁盘或请求Mojang的OfflinePlayer查询
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS player_names (" +
+                    "uuid VARCHAR(36) PRIMARY KEY, " +
+                    "name VARCHAR(16) NOT NULL, " +
+                    "name_lower VARCHAR(16) NOT NULL, " +
+                    "last_seen BIGINT" +
+                    ")");
+            ensureIndex(connection, statement, "player_names", "idx_player_names_name_lower", "name_lower");
+            
+            if (!sharesExist) {
+                // 首次创建时迁移旧版本shared_with列中的共享关系
+                int migrated = statement.executeUpdate("INSERT INTO player_shares (owner, target) " +
+                        "SELECT uuid, shared_with FROM player_data WHERE shared_with IS NOT NULL");
+                if (migrated > 0) {
+                    plugin.getColorLogger().info("已迁移 " + migrated + " 条共享关系到player_shares表");
                 }
             }
-            rs.close();
             
         } catch (SQLException e) {
             plugin.getColorLogger().error("设置数据库表失败: " + e.getMessage());
@@ -378,6 +700,62 @@ public class DatabaseManager {
         }
     }
     
+    /**
+     * 判断到期时间是否是需要迁移的秒级时间戳，0表示没有保护，不迁移
+     */
+    static boolean isSecondsTimestamp(long expiryTime) {
+        return expiryTime > 0 && expiryTime < SECONDS_THRESHOLD;
+    }
+
+    /**
+     * 旧版本的到期时间大多以秒保存，部分代码写入的是毫秒
+     * 首次运行时把秒级时间戳统一转换为毫秒，完成后记录在plugin_meta中，之后不再执行
+     */
+    private void migrateExpiryTimeUnit(Connection connection, Statement statement) throws SQLException {
+        statement.executeUpdate("CREATE TABLE IF NOT EXISTS plugin_meta (" +
+                "meta_key VARCHAR(64) PRIMARY KEY, " +
+                "meta_value VARCHAR(255)" +
+                ")");
+        try (ResultSet rs = statement.executeQuery("SELECT meta_value FROM plugin_meta WHERE meta_key = 'time_unit'")) {
+            if (rs.next()) {
+                return;
+            }
+        }
+        
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            int migrated = statement.executeUpdate("UPDATE player_data SET expiry_time = expiry_time * 1000 " +
+                    "WHERE " + SECONDS_CONDITION);
+            statement.executeUpdate("INSERT INTO plugin_meta (meta_key, meta_value) VALUES ('time_unit', 'millis')");
+            connection.commit();
+            if (migrated > 0) {
+                plugin.getColorLogger().info("已将 " + migrated + " 条到期时间从秒转换为毫秒");
+            }
+        } catch (SQLException e) {
+            rollbackQuietly(connection);
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+    
+    /**
+     * 索引不存在时创建，MySQL不支持CREATE INDEX IF NOT EXISTS，因此先查询元数据
+     */
+    protected void ensureIndex(Connection connection, Statement statement, String table, String name, String column) {
+        try (ResultSet rs = connection.getMetaData().getIndexInfo(connection.getCatalog(), null, table, false, false)) {
+            while (rs.next()) {
+                if (name.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return;
+                }
+            }
+            statement.executeUpdate("CREATE INDEX " + name + " ON " + table + " (" + column + ")");
+        } catch (SQLException e) {
+            plugin.getColorLogger().warn("无法创建索引" + name + ": " + e.getMessage());
+        }
+    }
+    
     private void closeResources(Connection connection, Statement statement, ResultSet resultSet) {
         try {
             if (resultSet != null) {
@@ -386,7 +764,8 @@ public class DatabaseManager {
             if (statement != null) {
                 statement.close();
             }
-            if (connection != null && !connection.isClosed()) {
+            if (connection != null) {
+                // 归还到连接池
                 connection.close();
             }
         } catch (SQLException e) {
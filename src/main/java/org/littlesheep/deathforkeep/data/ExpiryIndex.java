@@ -0,0 +1,93 @@
+/*
+  到期时间索引
+  按到期时间排序的玩家索引，用于查找在某个时间段内跨过提醒时间点的玩家
+ */
+package org.littlesheep.deathforkeep.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+public class ExpiryIndex {
+
+    // 到期时间 -> 在该时间到期的玩家
+    private final ConcurrentSkipListMap<Long, Set<UUID>> byExpiry = new ConcurrentSkipListMap<>();
+    // 玩家当前被索引的到期时间，用于更新时移除旧位置
+    private final Map<UUID, Long> indexed = new ConcurrentHashMap<>();
+
+    /**
+     * 更新玩家在索引中的到期时间
+     *
+     * @param uuid 玩家UUID
+     * @param expiryTime 到期时间（毫秒）
+     */
+    public synchronized void update(UUID uuid, long expiryTime) {
+        Long previous = indexed.put(uuid, expiryTime);
+        if (previous != null) {
+            if (previous == expiryTime) {
+                return;
+            }
+            unlink(uuid, previous);
+        }
+        byExpiry.computeIfAbsent(expiryTime, key -> ConcurrentHashMap.newKeySet()).add(uuid);
+    }
+
+    public synchronized void remove(UUID uuid) {
+        Long previous = indexed.remove(uuid);
+        if (previous != null) {
+            unlink(uuid, previous);
+        }
+    }
+
+    private void unlink(UUID uuid, long expiryTime) {
+        Set<UUID> players = byExpiry.get(expiryTime);
+        if (players != null) {
+            players.remove(uuid);
+            if (players.isEmpty()) {
+                byExpiry.remove(expiryTime, players);
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        byExpiry.clear();
+        indexed.clear();
+    }
+
+    /**
+     * 查找到期时间在 (from, to] 区间内的玩家
+     * 只会访问区间内的条目，开销与结果数量成正比
+     *
+     * @param fromExclusive 区间起点（不包含）
+     * @param toInclusive 区间终点（包含）
+     * @return 玩家UUID列表
+     */
+    public List<UUID> findExpiringBetween(long fromExclusive, long toInclusive) {
+        List<UUID> result = new ArrayList<>();
+        if (toInclusive <= fromExclusive) {
+            return result;
+        }
+
+        NavigableMap<Long, Set<UUID>> range = byExpiry.subMap(fromExclusive, false, toInclusive, true);
+        for (Set<UUID> players : range.values()) {
+            result.addAll(players);
+        }
+        return result;
+    }
+
+    /**
+     * @return 玩家被索引的到期时间（毫秒），玩家不在索引中时返回null
+     */
+    public Long getExpiryTime(UUID uuid) {
+        return indexed.get(uuid);
+    }
+
+    public int size() {
+        return indexed.size();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+  MySQL数据存储
+  适用于多个服务器共享同一份玩家数据，兼容MariaDB
+ */
+package org.littlesheep.deathforkeep.data;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.littlesheep.deathforkeep.DeathForKeep;
+
+import java.util.Properties;
+
+public class MySQLDataStore extends DatabaseManager {
+
+    public MySQLDataStore(DeathForKeep plugin) {
+        super(plugin);
+    }
+
+    @Override
+    public String getStorageType() {
+        return "mysql";
+    }
+
+    @Override
+    protected ConnectionPool createConnectionPool() throws ClassNotFoundException {
+        ConfigurationSection config = plugin.getConfig().getConfigurationSection("database.mysql");
+        if (config == null) {
+            config = plugin.getConfig().createSection("database.mysql");
+        }
+
+        String host = config.getString("host", "localhost");
+        int port = config.getInt("port", 3306);
+        String database = config.getString("database", "deathforkeep");
+        String url = "jdbc:mysql://" + host + ":" + port + "/" + database;
+
+        Properties properties = new Properties();
+        properties.setProperty("user", config.getString("username", "root"));
+        properties.setProperty("password", config.getString("password", ""));
+        properties.setProperty("useSSL", String.valueOf(config.getBoolean("ssl", false)));
+        properties.setProperty("characterEncoding", "utf8");
+        // 使用服务端预处理语句并缓存，避免每次写入都重新解析SQL
+        properties.setProperty("useServerPrepStmts", "true");
+        properties.setProperty("cachePrepStmts", "true");
+        properties.setProperty("prepStmtCacheSize", "250");
+        properties.setProperty("prepStmtCacheSqlLimit", "2048");
+        // 将批量写入合并为多行语句，减少网络往返
+        properties.setProperty("rewriteBatchedStatements", "true");
+
+        // 关闭连接池时只保留一个连接
+        int poolSize = config.getBoolean("connection-pool", true) ? config.getInt("max-pool-size", 10) : 1;
+        long waitTimeout = plugin.getConfig().getLong("performance.connection-timeout", 5000);
+
+        loadDriver();
+        return new ConnectionPool(url, properties, poolSize, waitTimeout);
+    }
+
+    private void loadDriver() throws ClassNotFoundException {
+        try {
+            Class.forName("com.mysql.cj.jdbc.Driver");
+        } catch (ClassNotFoundException e) {
+            // 旧版本服务端自带的驱动
+            Class.forName("com.mysql.jdbc.Driver");
+        }
+    }
+
+    @Override
+    protected String buildUpsertSql(String table, String[] columns) {
+        StringBuilder sql = new StringBuilder(insertPrefix(table, columns)).append(" ON DUPLICATE KEY UPDATE ");
+        for (int i = 1; i < columns.length; i++) {
+            if (i > 1) {
+                sql.append(", ");
+            }
+            sql.append(columns[i]).append(" = VALUES(").append(columns[i]).append(")");
+        }
+        return sql.toString();
+    }
+}
@@ -4,24 +4,44 @@
  */
 package org.littlesheep.deathforkeep.data;
 
+import org.littlesheep.deathforkeep.utils.ProtectionClock;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 public class PlayerData {
     private final UUID playerUUID;
-    private long expiryTime;
-    private UUID sharedWith;
+    // 到期时间，毫秒时间戳
+    private volatile long expiryTime;
+    // 共享对象按添加顺序保存，数量由share.max-share-count限制
+    private final Set<UUID> sharedWith = new CopyOnWriteArraySet<>();
     private boolean particlesEnabled = true;
     private String protectionLevel;
     private boolean keepExp;
     private String particleEffect;
     private boolean noDeathPenalty;
     private boolean forcedActive;
+    // 每次修改影响保护效果的字段时递增，用于判断保护快照是否过期
+    private volatile int version;
+    private volatile ProtectionSnapshot snapshot;
+    // 共享对象在交给写入队列后是否又被修改，只有修改过共享的玩家才需要重写player_shares
+    private volatile boolean sharesChanged;
     
-    public PlayerData(UUID playerUUID, long expiryTime, boolean active, UUID sharedWith) {
+    /**
+     * @param playerUUID 玩家UUID
+     * @param expiryTime 到期时间（毫秒）
+     * @param sharedWith 共享对象，可以为null
+     */
+    public PlayerData(UUID playerUUID, long expiryTime, UUID sharedWith) {
         this.playerUUID = playerUUID;
         this.expiryTime = expiryTime;
-        this.sharedWith = sharedWith;
-        this.forcedActive = active;
+        if (sharedWith != null) {
+            this.sharedWith.add(sharedWith);
+            this.sharesChanged = true;
+        }
     }
     
     public UUID getUuid() {
@@ -34,6 +54,7 @@ public class PlayerData {
     
     public void setExpiryTime(long expiryTime) {
         this.expiryTime = expiryTime;
+        this.version++;
     }
     
     public boolean isParticlesEnabled() {
@@ -42,23 +63,84 @@ public class PlayerData {
     
     public void setParticlesEnabled(boolean particlesEnabled) {
         this.particlesEnabled = particlesEnabled;
+        this.version++;
     }
     
+    /**
+     * 获取第一个共享对象，兼容只支持单人共享的旧代码
+     */
     public UUID getSharedWith() {
-        return sharedWith;
+        for (UUID target : sharedWith) {
+            return target;
+        }
+        return null;
     }
     
+    /**
+     * 设置唯一的共享对象，为null时取消所有共享
+     */
     public void setSharedWith(UUID sharedWith) {
-        this.sharedWith = sharedWith;
+        if (sharedWith == null) {
+            setSharedWithAll(Collections.<UUID>emptySet());
+        } else {
+            setSharedWithAll(Collections.singleton(sharedWith));
+        }
     }
     
-    public boolean isActive() {
-        if (forcedActive) {
+    /**
+     * @return 所有共享对象的只读视图
+     */
+    public Set<UUID> getSharedWithAll() {
+        return Collections.unmodifiableSet(sharedWith);
+    }
+    
+    /**
+     * 替换所有共享对象，先移除不再共享的对象再添加新的对象，读取时不会看到共享关系被清空的中间状态
+     */
+    public void setSharedWithAll(Collection<UUID> targets) {
+        boolean removed = this.sharedWith.retainAll(targets);
+        boolean added = this.sharedWith.addAll(targets);
+        if (removed || added) {
+            sharesChanged = true;
+        }
+    }
+    
+    public boolean addSharedWith(UUID target) {
+        if (sharedWith.add(target)) {
+            sharesChanged = true;
+            return true;
+        }
+        return false;
+    }
+    
+    public boolean removeSharedWith(UUID target) {
+        if (sharedWith.remove(target)) {
+            sharesChanged = true;
             return true;
         }
-        
-        long currentTime = System.currentTimeMillis() / 1000;
-        return expiryTime > currentTime;
+        return false;
+    }
+    
+    public boolean isSharedWith(UUID target) {
+        return sharedWith.contains(target);
+    }
+    
+    public int getShareCount() {
+        return sharedWith.size();
+    }
+    
+    /**
+     * 保护是否有效，所有保护检查都应使用此方法
+     */
+    public boolean isActive() {
+        return forcedActive || expiryTime > ProtectionClock.now();
+    }
+    
+    /**
+     * @return 剩余保护秒数，已过期时返回0
+     */
+    public long getRemainingSeconds() {
+        return ProtectionClock.remainingSeconds(expiryTime);
     }
 
     public String getProtectionLevel() {
@@ -67,6 +149,7 @@ public class PlayerData {
 
     public void setProtectionLevel(String protectionLevel) {
         this.protectionLevel = protectionLevel;
+        this.version++;
     }
 
     public boolean isKeepExp() {
@@ -75,6 +158,7 @@ public class PlayerData {
 
     public void setKeepExp(boolean keepExp) {
         this.keepExp = keepExp;
+        this.version++;
     }
 
     public String getParticleEffect() {
@@ -83,6 +167,7 @@ public class PlayerData {
 
     public void setParticleEffect(String particleEffect) {
         this.particleEffect = particleEffect;
+        this.version++;
     }
 
     public boolean isNoDeathPenalty() {
@@ -91,13 +176,55 @@ public class PlayerData {
 
     public void setNoDeathPenalty(boolean noDeathPenalty) {
         this.noDeathPenalty = noDeathPenalty;
+        this.version++;
     }
 
     public void setForcedActive(boolean forcedActive) {
         this.forcedActive = forcedActive;
+        this.version++;
     }
     
     public boolean getForcedActive() {
         return this.forcedActive;
     }
+    
+    public int getVersion() {
+        return version;
+    }
+    
+    boolean isSharesChanged() {
+        return sharesChanged;
+    }
+    
+    void setSharesChanged(boolean sharesChanged) {
+        this.sharesChanged = sharesChanged;
+    }
+    
+    /**
+     * 复制当前保存到数据库的字段和共享修改标记，不包括版本和保护快照
+     * 在修改数据的线程上调用，复制的数据交给写入线程后不会再被修改
+     */
+    public PlayerData copy() {
+        PlayerData copy = new PlayerData(playerUUID, expiryTime, null);
+        copy.sharedWith.addAll(sharedWith);
+        copy.particlesEnabled = particlesEnabled;
+        copy.protectionLevel = protectionLevel;
+        copy.keepExp = keepExp;
+        copy.particleEffect = particleEffect;
+        copy.noDeathPenalty = noDeathPenalty;
+        copy.forcedActive = forcedActive;
+        copy.sharesChanged = sharesChanged;
+        return copy;
+    }
+    
+    /**
+     * @return 缓存的保护快照，可能已过期，需要与getVersion()比较
+     */
+    public ProtectionSnapshot getSnapshot() {
+        return snapshot;
+    }
+    
+    public void setSnapshot(ProtectionSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,304 @@
+/*
+  玩家数据缓存
+  按需从数据库加载玩家数据，在线玩家常驻，离线玩家超时后淘汰
+ */
+package org.littlesheep.deathforkeep.data;
+
+import org.littlesheep.deathforkeep.DeathForKeep;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class PlayerDataCache {
+
+    private final PlayerDataStore store;
+    private final PlayerDataWriter writer;
+    private final ExpiryIndex expiryIndex;
+    private final ShareIndex shareIndex;
+
+    // 已加载的玩家，data为null表示数据库中没有该玩家的数据
+    private final Map<UUID, Entry> entries = new ConcurrentHashMap<>();
+    // 在线玩家的数据不会被淘汰
+    private final Set<UUID> onlinePlayers = ConcurrentHashMap.newKeySet();
+
+    private volatile long timeoutMillis;
+    private volatile int maxSize;
+
+    public PlayerDataCache(DeathForKeep plugin, PlayerDataStore store, PlayerDataWriter writer,
+                           ExpiryIndex expiryIndex, ShareIndex shareIndex) {
+        this.store = store;
+        this.writer = writer;
+        this.expiryIndex = expiryIndex;
+        this.shareIndex = shareIndex;
+        reloadSettings(plugin);
+    }
+
+    /**
+     * 重新读取performance.cache-timeout和performance.cache-max-size
+     */
+    public void reloadSettings(DeathForKeep plugin) {
+        this.timeoutMillis = Math.max(0L, plugin.getConfig().getLong("performance.cache-timeout", 300)) * 1000L;
+        this.maxSize = Math.max(0, plugin.getConfig().getInt("performance.cache-max-size", 5000));
+    }
+
+    /**
+     * 获取玩家数据，未加载时从数据库读取
+     * 读取数据库会阻塞当前线程，适用于管理命令和离线玩家查询
+     *
+     * @param uuid 玩家UUID
+     * @return 玩家数据，如果不存在则返回null
+     */
+    public PlayerData get(UUID uuid) {
+        Entry entry = entries.get(uuid);
+        if (entry == null) {
+            entry = load(uuid);
+        }
+        entry.touch();
+        return entry.data;
+    }
+
+    /**
+     * 获取已加载的玩家数据，不会访问数据库
+     */
+    public PlayerData getIfLoaded(UUID uuid) {
+        Entry entry = entries.get(uuid);
+        if (entry == null) {
+            return null;
+        }
+        entry.touch();
+        return entry.data;
+    }
+
+    public boolean isLoaded(UUID uuid) {
+        return entries.containsKey(uuid);
+    }
+
+    private Entry load(UUID uuid) {
+        return insertIfAbsent(uuid, resolve(uuid, null));
+    }
+
+    private Entry insertIfAbsent(UUID uuid, PlayerData data) {
+        Entry loaded = new Entry(data);
+        Entry existing = entries.putIfAbsent(uuid, loaded);
+        if (existing != null) {
+            return existing;
+        }
+        if (data != null) {
+            index(data);
+        }
+        return loaded;
+    }
+
+    private void index(PlayerData data) {
+        expiryIndex.update(data.getUuid(), data.getExpiryTime());
+        shareIndex.update(data.getUuid(), data.getSharedWithAll());
+    }
+
+    private void unindex(UUID uuid) {
+        expiryIndex.remove(uuid);
+        shareIndex.remove(uuid);
+    }
+
+    // 尚未写入的修改比数据库中的数据更新
+    private PlayerData resolve(UUID uuid, PlayerData fromStore) {
+        return writer.resolve(uuid, () -> fromStore != null ? fromStore : store.loadPlayerData(uuid));
+    }
+
+    /**
+     * 预加载玩家及与其共享保护的玩家数据
+     * 在玩家登录前的异步线程中调用，进入服务器后即可直接从缓存读取
+     *
+     * @param uuid 玩家UUID
+     */
+    public void preload(UUID uuid) {
+        load(uuid).touch();
+        for (PlayerData sharer : store.loadSharingWith(uuid)) {
+            if (!entries.containsKey(sharer.getUuid())) {
+                insertIfAbsent(sharer.getUuid(), resolve(sharer.getUuid(), sharer));
+            }
+        }
+    }
+
+    /**
+     * 查找与指定玩家共享保护的玩家数据
+     * 在线玩家的共享者已在登录时加载，离线玩家会查询数据库
+     *
+     * @param target 被共享的玩家UUID
+     */
+    public List<PlayerData> findSharingWith(UUID target) {
+        Map<UUID, PlayerData> result = new LinkedHashMap<>();
+        if (!onlinePlayers.contains(target)) {
+            for (PlayerData stored : store.loadSharingWith(target)) {
+                UUID owner = stored.getUuid();
+                Entry entry = entries.get(owner);
+                // 已加载的数据比数据库中的更新
+                PlayerData data = entry != null ? entry.data : resolve(owner, stored);
+                if (data != null && data.isSharedWith(target)) {
+                    result.put(owner, data);
+                }
+            }
+        }
+
+        // 已加载的共享者，包括尚未写入数据库的共享设置
+        for (UUID owner : shareIndex.getOwners(target)) {
+            Entry entry = entries.get(owner);
+            if (entry != null && entry.data != null && entry.data.isSharedWith(target)) {
+                result.put(owner, entry.data);
+            }
+        }
+        return new ArrayList<>(result.values());
+    }
+
+    public void put(PlayerData data) {
+        entries.put(data.getUuid(), new Entry(data));
+        index(data);
+    }
+
+    public void remove(UUID uuid) {
+        entries.remove(uuid);
+        unindex(uuid);
+    }
+
+    /**
+     * 清空缓存，在线玩家的数据需要重新预加载
+     */
+    public void clear() {
+        entries.clear();
+        expiryIndex.clear();
+        shareIndex.clear();
+    }
+
+    /**
+     * 所有数据被删除后调用，在线玩家标记为没有数据，避免在删除完成前读到旧数据
+     */
+    public void reset() {
+        entries.clear();
+        expiryIndex.clear();
+        shareIndex.clear();
+        for (UUID uuid : onlinePlayers) {
+            entries.put(uuid, new Entry(null));
+        }
+    }
+
+    /**
+     * @return 所有已加载的玩家数据
+     */
+    public Collection<PlayerData> values() {
+        List<PlayerData> result = new ArrayList<>(entries.size());
+        for (Entry entry : entries.values()) {
+            if (entry.data != null) {
+                result.add(entry.data);
+            }
+        }
+        return result;
+    }
+
+    public void setOnline(UUID uuid) {
+        onlinePlayers.add(uuid);
+    }
+
+    public void setOffline(UUID uuid) {
+        onlinePlayers.remove(uuid);
+        Entry entry = entries.get(uuid);
+        if (entry != null) {
+            entry.touch();
+        }
+    }
+
+    /**
+     * 淘汰超时未访问的离线玩家数据，超过容量上限时再按访问时间淘汰最旧的数据
+     * 未写入的修改保留在写入队列中，淘汰后重新读取时会优先使用
+     *
+     * @return 淘汰的数量
+     */
+    public int evictExpired() {
+        long now = System.currentTimeMillis();
+        int evicted = 0;
+        List<Candidate> candidates = new ArrayList<>();
+
+        for (Map.Entry<UUID, Entry> mapEntry : entries.entrySet()) {
+            if (isPinned(mapEntry.getKey(), mapEntry.getValue())) {
+                continue;
+            }
+            if (now - mapEntry.getValue().lastAccess >= timeoutMillis) {
+                if (entries.remove(mapEntry.getKey(), mapEntry.getValue())) {
+                    unindex(mapEntry.getKey());
+                    evicted++;
+                }
+            } else {
+                candidates.add(new Candidate(mapEntry.getKey(), mapEntry.getValue()));
+            }
+        }
+
+        int excess = entries.size() - maxSize;
+        if (maxSize > 0 && excess > 0) {
+            candidates.sort(Comparator.comparingLong(candidate -> candidate.lastAccess));
+            for (int i = 0; i < candidates.size() && excess > 0; i++) {
+                Candidate candidate = candidates.get(i);
+                if (entries.remove(candidate.uuid, candidate.entry)) {
+                    unindex(candidate.uuid);
+                    evicted++;
+                    excess--;
+                }
+            }
+        }
+        return evicted;
+    }
+
+    // 在线玩家和与在线玩家共享保护的玩家不会被淘汰
+    private boolean isPinned(UUID uuid, Entry entry) {
+        if (onlinePlayers.contains(uuid)) {
+            return true;
+        }
+        if (entry.data == null) {
+            return false;
+        }
+        for (UUID target : entry.data.getSharedWithAll()) {
+            if (onlinePlayers.contains(target)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int getOnlineCount() {
+        return onlinePlayers.size();
+    }
+
+    private static final class Entry {
+        final PlayerData data;
+        volatile long lastAccess = System.currentTimeMillis();
+
+        Entry(PlayerData data) {
+            this.data = data;
+        }
+
+        void touch() {
+            lastAccess = System.currentTimeMillis();
+        }
+    }
+
+    // 排序时使用的访问时间快照，避免排序过程中访问时间被修改
+    private static final class Candidate {
+        final UUID uuid;
+        final Entry entry;
+        final long lastAccess;
+
+        Candidate(UUID uuid, Entry entry) {
+            this.uuid = uuid;
+            this.entry = entry;
+            this.lastAccess = entry.lastAccess;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+  玩家数据存储接口
+  定义玩家保护数据的持久化操作，由不同的数据库后端实现
+ */
+package org.littlesheep.deathforkeep.data;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public interface PlayerDataStore {
+
+    /**
+     * 获取存储类型名称，例如 sqlite、mysql
+     */
+    String getStorageType();
+
+    /**
+     * 获取连接池，用于查看连接池状态
+     */
+    ConnectionPool getConnectionPool();
+
+    /**
+     * 关闭存储及其所有连接
+     */
+    void closeConnection();
+
+    /**
+     * 创建或更新数据表结构
+     */
+    void setupTables();
+
+    /**
+     * 加载单个玩家的数据
+     *
+     * @param uuid 玩家UUID
+     * @return 玩家数据，不存在时返回null
+     */
+    PlayerData loadPlayerData(UUID uuid);
+
+    /**
+     * 加载所有与指定玩家共享保护的玩家数据
+     *
+     * @param target 被共享的玩家UUID
+     */
+    List<PlayerData> loadSharingWith(UUID target);
+
+    /**
+     * 按条件分页查询玩家数据，从after之后开始，顺序稳定
+     *
+     * @param query 排序和筛选条件
+     * @param after 上一页返回的下一页位置，为null时从第一页开始
+     * @param limit 每页数量
+     */
+    PlayerPage queryPlayers(PlayerQuery query, PlayerPage.Cursor after, int limit);
+
+    /**
+     * 批量保存玩家数据，所有数据在同一个事务中写入
+     *
+     * @param players 需要保存的玩家数据
+     * @return 是否全部写入成功
+     */
+    boolean saveAll(Collection<PlayerData> players);
+
+    /**
+     * 在同一个事务中写入一组玩家数据修改
+     *
+     * @param saves 需要保存的玩家数据
+     * @param deletes 需要删除的玩家UUID
+     * @return 是否全部写入成功，失败时事务已回滚
+     */
+    boolean writeChanges(Collection<PlayerData> saves, Collection<UUID> deletes);
+
+    void resetAllData();
+
+    /**
+     * 批量保存玩家名称，所有名称在同一个事务中写入
+     *
+     * @param names 玩家UUID和名称
+     * @param lastSeen 最后一次看到这些名称的时间（毫秒）
+     * @return 是否全部写入成功
+     */
+    boolean saveNames(Map<UUID, String> names, long lastSeen);
+
+    /**
+     * 加载最近出现过的玩家名称
+     *
+     * @param limit 最多加载的数量
+     * @return 按最后出现时间从旧到新排列的UUID和名称
+     */
+    Map<UUID, String> loadRecentNames(int limit);
+
+    /**
+     * @return 玩家名称，没有记录时返回null
+     */
+    String loadName(UUID uuid);
+
+    /**
+     * 按名称查找玩家UUID，不区分大小写
+     *
+     * @return 玩家UUID，没有记录时返回null
+     */
+    UUID loadUuid(String name);
+}
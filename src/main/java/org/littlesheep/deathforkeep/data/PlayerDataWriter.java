@@ -0,0 +1,303 @@
+/*
+  玩家数据写入器
+  单线程延迟写入队列，按UUID合并脏数据并批量提交到数据库
+ */
+package org.littlesheep.deathforkeep.data;
+
+import org.littlesheep.deathforkeep.DeathForKeep;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+public class PlayerDataWriter {
+
+    // 删除标记，队列中出现该对象表示需要删除对应玩家的数据
+    private static final PlayerData DELETED = new PlayerData(new UUID(0L, 0L), 0L, null);
+
+    private final DeathForKeep plugin;
+    private final PlayerDataStore databaseManager;
+    private final ScheduledExecutorService executor;
+    private final int batchSize;
+
+    // 等待写入的数据副本，同一玩家的多次修改只保留最新一次
+    // 队列中的对象在加入后不会再被修改，写入线程读取时不会与主线程的修改交错
+    // 提交成功后才从队列中移除，写入期间读取玩家数据仍能看到这些修改而不会读到数据库中的旧数据
+    private final Map<UUID, PlayerData> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong failedFlushCount = new AtomicLong();
+    // 成功写入批次的耗时统计，用于比较不同存储配置下的保存延迟
+    private final AtomicLong totalWriteNanos = new AtomicLong();
+    private final AtomicLong maxWriteNanos = new AtomicLong();
+
+    private volatile boolean shutdown = false;
+
+    public PlayerDataWriter(DeathForKeep plugin, PlayerDataStore databaseManager) {
+        this.plugin = plugin;
+        this.databaseManager = databaseManager;
+
+        long interval = Math.max(50L, plugin.getConfig().getLong("performance.write-behind.flush-interval", 2000));
+        this.batchSize = Math.max(1, plugin.getConfig().getInt("performance.write-behind.batch-size", 200));
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "DeathForKeep-Writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 标记玩家数据需要保存
+     * 保存的是调用时的数据副本，应在修改数据的线程上、修改完成后调用，实际写入由写入线程完成
+     *
+     * @param data 玩家数据
+     */
+    public void markDirty(PlayerData data) {
+        if (data == null) {
+            return;
+        }
+        enqueue(data.getUuid(), copyForWrite(data));
+    }
+
+    /**
+     * 标记玩家数据需要删除
+     *
+     * @param uuid 玩家UUID
+     */
+    public void markDeleted(UUID uuid) {
+        enqueue(uuid, DELETED);
+    }
+
+    private void enqueue(UUID uuid, PlayerData value) {
+        if (shutdown) {
+            plugin.getLogger().warning("写入队列已关闭，丢弃玩家数据写入: " + uuid);
+            return;
+        }
+
+        queue(uuid, value);
+
+        // 超过阈值时立即安排一次写入
+        if (pending.size() >= batchSize && flushRequested.compareAndSet(false, true)) {
+            executor.execute(this::flush);
+        }
+    }
+
+    /**
+     * 在写入线程上用一个批量事务保存一组玩家数据
+     * 适用于批量命令等一次修改大量玩家的场景
+     * 与markDirty一样保存调用时的数据副本
+     *
+     * @param players 需要保存的玩家数据
+     */
+    public void saveAll(Collection<PlayerData> players) {
+        if (players.isEmpty()) {
+            return;
+        }
+        if (shutdown) {
+            plugin.getLogger().warning("写入队列已关闭，丢弃 " + players.size() + " 条玩家数据写入");
+            return;
+        }
+
+        // 放入队列替换之前排队的写入，随后立即写入，与队列中的其他修改在同一个事务中提交
+        for (PlayerData data : players) {
+            queue(data.getUuid(), copyForWrite(data));
+        }
+        executor.execute(this::flush);
+    }
+
+    // 共享修改由这份副本负责写入，原数据的标记随之清除
+    private static PlayerData copyForWrite(PlayerData data) {
+        PlayerData copy = data.copy();
+        data.setSharesChanged(false);
+        return copy;
+    }
+
+    private void queue(UUID uuid, PlayerData value) {
+        pending.merge(uuid, value, (previous, current) -> {
+            coalescedCount.incrementAndGet();
+            // 被替换的数据中尚未写入的共享修改由新数据一并写入，删除后重新保存时需要重写共享关系
+            if (current != DELETED && (previous == DELETED || previous.isSharesChanged())) {
+                current.setSharesChanged(true);
+            }
+            return current;
+        });
+    }
+
+    /**
+     * 在写入线程上清空所有待写数据并重置数据库
+     * 保证在此之前排队的写入不会在重置后重新写回
+     */
+    public void resetAll() {
+        pending.clear();
+        executor.execute(() -> {
+            pending.clear();
+            databaseManager.resetAllData();
+        });
+    }
+
+    /**
+     * 立即写入所有待写数据并等待完成
+     *
+     * @param timeoutMillis 最长等待时间（毫秒）
+     */
+    public void flushNow(long timeoutMillis) {
+        Future<?> future = executor.submit(this::flush);
+        try {
+            future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            plugin.getLogger().log(Level.WARNING, "等待玩家数据写入完成时出错", e);
+        }
+    }
+
+    // 只在写入线程上执行
+    private void flush() {
+        flushRequested.set(false);
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<PlayerData> saves = new ArrayList<>();
+        List<UUID> deletes = new ArrayList<>();
+
+        for (Map.Entry<UUID, PlayerData> entry : pending.entrySet()) {
+            if (entry.getValue() == DELETED) {
+                deletes.add(entry.getKey());
+            } else {
+                saves.add(entry.getValue());
+            }
+        }
+
+        if (saves.isEmpty() && deletes.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        if (databaseManager.writeChanges(saves, deletes)) {
+            recordWrite(saves.size() + deletes.size(), System.nanoTime() - start);
+            // 只移除已写入的数据，写入期间产生的新修改留在队列中等待下一次写入
+            for (PlayerData data : saves) {
+                pending.remove(data.getUuid(), data);
+            }
+            for (UUID uuid : deletes) {
+                pending.remove(uuid, DELETED);
+            }
+        } else {
+            // 写入失败时数据仍在队列中，下一次写入时重试
+            failedFlushCount.incrementAndGet();
+        }
+    }
+
+    private void recordWrite(int rows, long nanos) {
+        writtenCount.addAndGet(rows);
+        flushCount.incrementAndGet();
+        totalWriteNanos.addAndGet(nanos);
+        long currentMax;
+        do {
+            currentMax = maxWriteNanos.get();
+        } while (nanos > currentMax && !maxWriteNanos.compareAndSet(currentMax, nanos));
+    }
+
+    /**
+     * 停止写入线程，并在退出前写入所有剩余数据
+     *
+     * @param timeoutMillis 最长等待时间（毫秒）
+     */
+    public void shutdown(long timeoutMillis) {
+        shutdown = true;
+        executor.execute(this::flush);
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                plugin.getLogger().severe("写入线程未能在 " + timeoutMillis + "ms 内完成，剩余 " + pending.size() + " 条数据未保存");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+
+        // 写入线程异常退出时在当前线程兜底写入
+        if (!pending.isEmpty()) {
+            flush();
+        }
+    }
+
+    /**
+     * 读取玩家数据，尚未写入数据库的修改优先于数据库中的数据
+     * 队列只读取一次；数据在提交成功后才离开队列，不在队列中时数据库已是最新状态
+     *
+     * @param uuid 玩家UUID
+     * @param loader 不在队列中时读取数据的方式
+     * @return 等待保存的玩家数据的副本，可以修改；等待删除时返回null；不在队列中时返回loader的结果
+     */
+    public PlayerData resolve(UUID uuid, Supplier<PlayerData> loader) {
+        PlayerData value = pending.get(uuid);
+        if (value == null) {
+            return loader.get();
+        }
+        return value == DELETED ? null : value.copy();
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    public long getFailedFlushCount() {
+        return failedFlushCount.get();
+    }
+
+    /**
+     * @return 每批写入的平均耗时（毫秒）
+     */
+    public double getAverageBatchMillis() {
+        long flushes = flushCount.get();
+        return flushes == 0 ? 0 : totalWriteNanos.get() / 1_000_000.0 / flushes;
+    }
+
+    /**
+     * @return 每条数据的平均写入耗时（毫秒）
+     */
+    public double getAverageRowMillis() {
+        long written = writtenCount.get();
+        return written == 0 ? 0 : totalWriteNanos.get() / 1_000_000.0 / written;
+    }
+
+    /**
+     * @return 单批写入的最长耗时（毫秒）
+     */
+    public double getMaxBatchMillis() {
+        return maxWriteNanos.get() / 1_000_000.0;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+  玩家名称缓存
+  UUID和名称的双向缓存，玩家进入服务器时更新并保存到player_names表
+  按UUID查询名称只读取内存，未命中时在异步线程中从数据库加载，代替可能读取磁盘或请求Mojang的OfflinePlayer查询
+ */
+package org.littlesheep.deathforkeep.data;
+
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.Player;
+import org.littlesheep.deathforkeep.DeathForKeep;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class PlayerNameCache {
+
+    private final DeathForKeep plugin;
+    private final PlayerDataStore store;
+    private final int maxSize;
+
+    // UUID -> 名称，按访问顺序排列，超过上限时淘汰最久未使用的名称
+    private final LinkedHashMap<UUID, String> names;
+    // 小写名称 -> UUID
+    private final Map<String, UUID> uuids = new HashMap<>();
+    // 正在从数据库加载的UUID，避免重复查询
+    private final Set<UUID> loading = ConcurrentHashMap.newKeySet();
+    // 每次记录名称时递增
+    private volatile int version;
+
+    public PlayerNameCache(DeathForKeep plugin, PlayerDataStore store) {
+        this.plugin = plugin;
+        this.store = store;
+        this.maxSize = Math.max(16, plugin.getConfig().getInt("performance.name-cache-size", 10000));
+        this.names = new LinkedHashMap<UUID, String>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, String> eldest) {
+                if (size() > maxSize) {
+                    uuids.remove(eldest.getValue().toLowerCase(Locale.ROOT), eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 在异步线程中加载最近出现过的玩家名称
+     * 名称表为空时（首次使用），从服务器已知的离线玩家导入一次
+     */
+    public void load() {
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            Map<UUID, String> recent = store.loadRecentNames(maxSize);
+            if (recent.isEmpty()) {
+                Bukkit.getScheduler().runTask(plugin, this::importOfflinePlayers);
+                return;
+            }
+            synchronized (this) {
+                for (Map.Entry<UUID, String> entry : recent.entrySet()) {
+                    // 加载期间进入服务器的玩家已有最新的名称
+                    if (!names.containsKey(entry.getKey())) {
+                        put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+            plugin.getLogger().info("已加载 " + recent.size() + " 个玩家名称");
+        });
+    }
+
+    private void importOfflinePlayers() {
+        Map<UUID, String> known = new LinkedHashMap<>();
+        for (OfflinePlayer player : Bukkit.getOfflinePlayers()) {
+            if (player.getName() != null) {
+                known.put(player.getUniqueId(), player.getName());
+            }
+        }
+        if (known.isEmpty()) {
+            return;
+        }
+
+        synchronized (this) {
+            for (Map.Entry<UUID, String> entry : known.entrySet()) {
+                if (!names.containsKey(entry.getKey())) {
+                    put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            if (store.saveNames(known, System.currentTimeMillis())) {
+                plugin.getLogger().info("已导入 " + known.size() + " 个玩家名称");
+            }
+        });
+    }
+
+    /**
+     * 记录在线玩家的名称，玩家进入服务器时调用
+     */
+    public void update(Player player) {
+        UUID uuid = player.getUniqueId();
+        String name = player.getName();
+        synchronized (this) {
+            put(uuid, name);
+        }
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () ->
+                store.saveNames(Collections.singletonMap(uuid, name), System.currentTimeMillis()));
+    }
+
+    // 调用方需持有锁
+    private void put(UUID uuid, String name) {
+        version++;
+        String previous = names.put(uuid, name);
+        if (previous != null && !previous.equalsIgnoreCase(name)) {
+            uuids.remove(previous.toLowerCase(Locale.ROOT), uuid);
+        }
+        uuids.put(name.toLowerCase(Locale.ROOT), uuid);
+    }
+
+    /**
+     * 获取玩家名称，不会读取磁盘或数据库，可在主线程调用
+     * 未命中时在异步线程中从数据库加载，之后的查询可以得到名称
+     *
+     * @return 玩家名称，尚未加载时返回null
+     */
+    public String getName(UUID uuid) {
+        synchronized (this) {
+            String name = names.get(uuid);
+            if (name != null) {
+                return name;
+            }
+        }
+
+        Player online = Bukkit.getPlayer(uuid);
+        if (online != null) {
+            synchronized (this) {
+                put(uuid, online.getName());
+            }
+            return online.getName();
+        }
+
+        if (loading.add(uuid)) {
+            Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+                try {
+                    String stored = store.loadName(uuid);
+                    if (stored != null) {
+                        synchronized (this) {
+                            if (!names.containsKey(uuid)) {
+                                put(uuid, stored);
+                            }
+                        }
+                    }
+                } finally {
+                    loading.remove(uuid);
+                }
+            });
+        }
+        return null;
+    }
+
+    /**
+     * @param fallback 名称尚未加载时返回的值
+     */
+    public String getName(UUID uuid, String fallback) {
+        String name = getName(uuid);
+        return name != null ? name : fallback;
+    }
+
+    /**
+     * 按名称查找玩家UUID，不区分大小写
+     * 内存中没有时查询数据库，会阻塞当前线程，适用于管理命令
+     *
+     * @return 玩家UUID，从未记录过该名称时返回null
+     */
+    public UUID findUuid(String name) {
+        Player online = Bukkit.getPlayerExact(name);
+        if (online != null) {
+            return online.getUniqueId();
+        }
+
+        synchronized (this) {
+            UUID uuid = uuids.get(name.toLowerCase(Locale.ROOT));
+            if (uuid != null) {
+                return uuid;
+            }
+        }
+        return store.loadUuid(name);
+    }
+
+    /**
+     * 名称缓存的版本，记录新名称后变化
+     * 使用了默认名称的缓存结果可以据此判断名称是否可能已经加载
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    public synchronized int size() {
+        return names.size();
+    }
+}
@@ -0,0 +1,76 @@
+/*
+  玩家列表分页结果
+  使用上一页最后一行的位置查询下一页（keyset分页），查询耗时与页码和数据总量无关
+ */
+package org.littlesheep.deathforkeep.data;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public final class PlayerPage {
+
+    /**
+     * 一页的起始位置，查询排在此位置之后的玩家
+     */
+    public static final class Cursor {
+        private final long expiryTime;
+        private final String nameKey;
+        private final UUID uuid;
+
+        public Cursor(long expiryTime, String nameKey, UUID uuid) {
+            this.expiryTime = expiryTime;
+            this.nameKey = nameKey;
+            this.uuid = uuid;
+        }
+
+        public long getExpiryTime() {
+            return expiryTime;
+        }
+
+        /**
+         * @return 小写的玩家名称，没有记录名称时为UUID，按名称排序时使用
+         */
+        public String getNameKey() {
+            return nameKey;
+        }
+
+        public UUID getUuid() {
+            return uuid;
+        }
+    }
+
+    private final List<PlayerData> players;
+    private final Map<UUID, String> names;
+    private final Cursor next;
+
+    /**
+     * @param names 查询时一起读取的玩家名称
+     * @param next 下一页的起始位置，没有下一页时为null
+     */
+    public PlayerPage(List<PlayerData> players, Map<UUID, String> names, Cursor next) {
+        this.players = Collections.unmodifiableList(players);
+        this.names = Collections.unmodifiableMap(names);
+        this.next = next;
+    }
+
+    public List<PlayerData> getPlayers() {
+        return players;
+    }
+
+    /**
+     * @return 玩家名称，player_names中没有记录时返回null
+     */
+    public String getName(UUID uuid) {
+        return names.get(uuid);
+    }
+
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    public Cursor getNext() {
+        return next;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+  玩家列表查询
+  管理员玩家列表的排序和筛选条件，不可变，修改条件时返回新的查询
+ */
+package org.littlesheep.deathforkeep.data;
+
+public final class PlayerQuery {
+
+    public enum Sort {
+        // 按到期时间从早到晚
+        EXPIRY,
+        // 按玩家名称，没有记录名称的玩家按UUID排序
+        NAME
+    }
+
+    public static final PlayerQuery ALL = new PlayerQuery(Sort.EXPIRY, false, false, null);
+
+    private final Sort sort;
+    private final boolean activeOnly;
+    private final boolean sharedOnly;
+    private final String level;
+
+    private PlayerQuery(Sort sort, boolean activeOnly, boolean sharedOnly, String level) {
+        this.sort = sort;
+        this.activeOnly = activeOnly;
+        this.sharedOnly = sharedOnly;
+        this.level = level;
+    }
+
+    public PlayerQuery withSort(Sort sort) {
+        return new PlayerQuery(sort, activeOnly, sharedOnly, level);
+    }
+
+    public PlayerQuery withActiveOnly(boolean activeOnly) {
+        return new PlayerQuery(sort, activeOnly, sharedOnly, level);
+    }
+
+    public PlayerQuery withSharedOnly(boolean sharedOnly) {
+        return new PlayerQuery(sort, activeOnly, sharedOnly, level);
+    }
+
+    /**
+     * @param level 保护等级，为null时不按等级筛选
+     */
+    public PlayerQuery withLevel(String level) {
+        return new PlayerQuery(sort, activeOnly, sharedOnly, level);
+    }
+
+    public Sort getSort() {
+        return sort;
+    }
+
+    /**
+     * @return 是否只包含保护仍然有效的玩家
+     */
+    public boolean isActiveOnly() {
+        return activeOnly;
+    }
+
+    /**
+     * @return 是否只包含正在与其他玩家共享保护的玩家
+     */
+    public boolean isSharedOnly() {
+        return sharedOnly;
+    }
+
+    public String getLevel() {
+        return level;
+    }
+}
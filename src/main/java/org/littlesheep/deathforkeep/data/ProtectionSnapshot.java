@@ -0,0 +1,90 @@
+/*
+  保护快照
+  玩家数据与保护等级配置合并后的结果，死亡时直接读取，不再查询配置
+ */
+package org.littlesheep.deathforkeep.data;
+
+import org.littlesheep.deathforkeep.utils.PluginSettings;
+import org.littlesheep.deathforkeep.utils.ProtectionClock;
+
+public final class ProtectionSnapshot {
+
+    // 没有玩家数据时使用
+    public static final ProtectionSnapshot NONE = new ProtectionSnapshot(0L, false, false, false, null, false, -1, -1);
+
+    private final long expiryTime;
+    private final boolean forcedActive;
+    private final boolean keepExp;
+    private final boolean noDeathPenalty;
+    private final String particleEffect;
+    private final boolean particlesEnabled;
+    // 生成快照时的玩家数据版本和配置版本，任一变化后快照失效
+    private final int dataVersion;
+    private final int generation;
+
+    public ProtectionSnapshot(long expiryTime, boolean forcedActive, boolean keepExp, boolean noDeathPenalty,
+                              String particleEffect, boolean particlesEnabled, int dataVersion, int generation) {
+        this.expiryTime = expiryTime;
+        this.forcedActive = forcedActive;
+        this.keepExp = keepExp;
+        this.noDeathPenalty = noDeathPenalty;
+        this.particleEffect = particleEffect;
+        this.particlesEnabled = particlesEnabled;
+        this.dataVersion = dataVersion;
+        this.generation = generation;
+    }
+
+    /**
+     * 合并玩家数据和保护等级配置生成快照
+     *
+     * @param level 玩家保护等级的配置，没有设置等级时为null
+     * @param generation 当前配置版本
+     */
+    public static ProtectionSnapshot of(PlayerData data, PluginSettings.Level level, int generation) {
+        // 先读取版本，生成期间的修改会使快照在下次读取时失效
+        int version = data.getVersion();
+
+        boolean keepExp = data.isKeepExp() || (level != null && level.isKeepExp());
+        boolean noDeathPenalty = data.isNoDeathPenalty() || (level != null && level.isNoDeathPenalty());
+        String particleEffect = data.getParticleEffect();
+        if (particleEffect == null && level != null) {
+            particleEffect = level.getParticleEffect();
+        }
+
+        return new ProtectionSnapshot(data.getExpiryTime(), data.getForcedActive(), keepExp, noDeathPenalty,
+                particleEffect, data.isParticlesEnabled(), version, generation);
+    }
+
+    /**
+     * 保护是否有效，与PlayerData.isActive()的判断一致
+     */
+    public boolean isActive() {
+        return forcedActive || expiryTime > ProtectionClock.now();
+    }
+
+    public boolean isKeepExp() {
+        return keepExp;
+    }
+
+    public boolean isNoDeathPenalty() {
+        return noDeathPenalty;
+    }
+
+    /**
+     * @return 死亡时播放的粒子效果，没有设置时返回null
+     */
+    public String getParticleEffect() {
+        return particleEffect;
+    }
+
+    public boolean isParticlesEnabled() {
+        return particlesEnabled;
+    }
+
+    /**
+     * 检查快照是否仍与玩家数据和当前配置一致
+     */
+    public boolean isCurrent(PlayerData data, int currentGeneration) {
+        return dataVersion == data.getVersion() && generation == currentGeneration;
+    }
+}
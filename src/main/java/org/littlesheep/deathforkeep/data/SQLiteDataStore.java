@@ -0,0 +1,105 @@
+/*
+  SQLite数据存储
+  使用插件目录下的本地数据库文件保存玩家数据
+ */
+package org.littlesheep.deathforkeep.data;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.littlesheep.deathforkeep.DeathForKeep;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+public class SQLiteDataStore extends DatabaseManager {
+
+    private static final List<String> SYNCHRONOUS_MODES = Arrays.asList("OFF", "NORMAL", "FULL", "EXTRA");
+    private static final List<String> TEMP_STORE_MODES = Arrays.asList("DEFAULT", "FILE", "MEMORY");
+
+    public SQLiteDataStore(DeathForKeep plugin) {
+        super(plugin);
+    }
+
+    @Override
+    public String getStorageType() {
+        return "sqlite";
+    }
+
+    @Override
+    protected ConnectionPool createConnectionPool() throws ClassNotFoundException {
+        File dataFolder = new File(plugin.getDataFolder(), "database");
+        if (!dataFolder.exists()) {
+            dataFolder.mkdirs();
+        }
+
+        String url = "jdbc:sqlite:" + new File(dataFolder, "deathkeep.db").getAbsolutePath();
+        int poolSize = plugin.getConfig().getInt("performance.connection-pool-size", 10);
+        long waitTimeout = plugin.getConfig().getLong("performance.connection-timeout", 5000);
+
+        ConfigurationSection config = plugin.getConfig().getConfigurationSection("performance.sqlite");
+        if (config == null) {
+            config = plugin.getConfig().createSection("performance.sqlite");
+        }
+        final List<String> pragmas = buildPragmas(config);
+        int statementCacheSize = config.getInt("statement-cache-size", 16);
+
+        Class.forName("org.sqlite.JDBC");
+        return new ConnectionPool(url, null, poolSize, waitTimeout, connection -> applyPragmas(connection, pragmas),
+                statementCacheSize);
+    }
+
+    /**
+     * 根据performance.sqlite配置生成每个新连接需要执行的PRAGMA
+     */
+    private List<String> buildPragmas(ConfigurationSection config) {
+        List<String> pragmas = new ArrayList<>();
+
+        // WAL模式下读取不会阻塞写入，提交时也只需追加日志
+        pragmas.add("PRAGMA journal_mode=" + (config.getBoolean("wal", true) ? "WAL" : "DELETE"));
+
+        String synchronous = config.getString("synchronous", "NORMAL").toUpperCase(Locale.ROOT);
+        if (!SYNCHRONOUS_MODES.contains(synchronous)) {
+            plugin.getColorLogger().warn("无效的performance.sqlite.synchronous: " + synchronous + "，将使用NORMAL");
+            synchronous = "NORMAL";
+        }
+        pragmas.add("PRAGMA synchronous=" + synchronous);
+
+        String tempStore = config.getString("temp-store", "MEMORY").toUpperCase(Locale.ROOT);
+        if (!TEMP_STORE_MODES.contains(tempStore)) {
+            plugin.getColorLogger().warn("无效的performance.sqlite.temp-store: " + tempStore + "，将使用MEMORY");
+            tempStore = "MEMORY";
+        }
+        pragmas.add("PRAGMA temp_store=" + tempStore);
+
+        pragmas.add("PRAGMA mmap_size=" + Math.max(0L, config.getLong("mmap-size", 268435456L)));
+        // 负数表示以KB为单位
+        pragmas.add("PRAGMA cache_size=-" + Math.max(1, config.getInt("cache-size", 8192)));
+        pragmas.add("PRAGMA busy_timeout=" + Math.max(0, config.getInt("busy-timeout", 5000)));
+        return pragmas;
+    }
+
+    private void applyPragmas(Connection connection, List<String> pragmas) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String pragma : pragmas) {
+                statement.execute(pragma);
+            }
+        }
+    }
+
+    @Override
+    protected String buildUpsertSql(String table, String[] columns) {
+        StringBuilder sql = new StringBuilder(insertPrefix(table, columns)).append(" ON CONFLICT(").append(columns[0]).append(") DO UPDATE SET ");
+        for (int i = 1; i < columns.length; i++) {
+            if (i > 1) {
+                sql.append(", ");
+            }
+            sql.append(columns[i]).append(" = excluded.").append(columns[i]);
+        }
+        return sql.toString();
+    }
+}
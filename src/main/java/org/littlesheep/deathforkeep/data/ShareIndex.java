@@ -0,0 +1,96 @@
+/*
+  共享反向索引
+  记录每个玩家被哪些玩家共享了保护，避免遍历所有玩家数据
+ */
+package org.littlesheep.deathforkeep.data;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ShareIndex {
+
+    // 被共享的玩家 -> 共享者
+    private final Map<UUID, Set<UUID>> ownersByTarget = new ConcurrentHashMap<>();
+    // 共享者 -> 当前被索引的共享对象，用于更新时移除旧的记录
+    private final Map<UUID, Set<UUID>> targetsByOwner = new ConcurrentHashMap<>();
+    // 每次修改后递增，用于判断依赖共享关系的缓存是否失效
+    private volatile int version;
+
+    /**
+     * 更新共享者的所有共享对象
+     *
+     * @param owner 共享者UUID
+     * @param targets 当前的共享对象
+     */
+    public synchronized void update(UUID owner, Collection<UUID> targets) {
+        version++;
+        Set<UUID> previous = targetsByOwner.get(owner);
+        if (previous != null) {
+            for (UUID target : previous) {
+                if (!targets.contains(target)) {
+                    unlink(owner, target);
+                }
+            }
+        }
+
+        if (targets.isEmpty()) {
+            targetsByOwner.remove(owner);
+            return;
+        }
+
+        for (UUID target : targets) {
+            ownersByTarget.computeIfAbsent(target, key -> ConcurrentHashMap.newKeySet()).add(owner);
+        }
+        targetsByOwner.put(owner, new HashSet<>(targets));
+    }
+
+    public synchronized void remove(UUID owner) {
+        version++;
+        Set<UUID> previous = targetsByOwner.remove(owner);
+        if (previous != null) {
+            for (UUID target : previous) {
+                unlink(owner, target);
+            }
+        }
+    }
+
+    private void unlink(UUID owner, UUID target) {
+        Set<UUID> owners = ownersByTarget.get(target);
+        if (owners != null) {
+            owners.remove(owner);
+            if (owners.isEmpty()) {
+                ownersByTarget.remove(target, owners);
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        version++;
+        ownersByTarget.clear();
+        targetsByOwner.clear();
+    }
+
+    /**
+     * 获取与指定玩家共享保护的玩家
+     *
+     * @param target 被共享的玩家UUID
+     * @return 共享者UUID的只读视图，没有时返回空集合
+     */
+    public Set<UUID> getOwners(UUID target) {
+        Set<UUID> owners = ownersByTarget.get(target);
+        return owners != null ? Collections.unmodifiableSet(owners) : Collections.<UUID>emptySet();
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return ownersByTarget.size();
+    }
+}
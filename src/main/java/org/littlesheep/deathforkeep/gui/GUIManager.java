@@ -7,7 +7,6 @@ package org.littlesheep.deathforkeep.gui;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.Material;
-import org.bukkit.OfflinePlayer;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
@@ -19,9 +18,13 @@ import org.bukkit.inventory.meta.ItemMeta;
 import org.bukkit.inventory.meta.SkullMeta;
 import org.littlesheep.deathforkeep.DeathForKeep;
 import org.littlesheep.deathforkeep.data.PlayerData;
+import org.littlesheep.deathforkeep.data.PlayerDataWriter;
+import org.littlesheep.deathforkeep.data.PlayerPage;
+import org.littlesheep.deathforkeep.data.PlayerQuery;
 import org.littlesheep.deathforkeep.utils.Messages;
+import org.littlesheep.deathforkeep.utils.PluginSettings;
+import org.littlesheep.deathforkeep.utils.TimeUtils;
 import me.clip.placeholderapi.PlaceholderAPI;
-import java.text.SimpleDateFormat;
 import java.util.*;
 import org.bukkit.metadata.FixedMetadataValue;
 import org.bukkit.metadata.MetadataValue;
@@ -34,10 +37,12 @@ public class GUIManager implements Listener {
     
     private final DeathForKeep plugin;
     private final Map<UUID, GUIType> openInventories = new HashMap<>();
-    private final Map<UUID, Integer> adminPageMap = new HashMap<>();
+    // 管理员正在浏览的玩家列表
+    private final Map<UUID, PlayerListState> playerListStates = new HashMap<>();
     private final Map<UUID, List<UUID>> selectedPlayers = new HashMap<>();
-    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
     private static final int PLAYERS_PER_PAGE = 45;
+    // 查询玩家列表前等待待写数据写入的最长时间（毫秒）
+    private static final long QUERY_FLUSH_TIMEOUT = 2000L;
     public enum GUIType {
         MAIN_MENU,
         DURATION_MENU,
@@ -63,7 +68,7 @@ public class GUIManager implements Listener {
                 messages.getMessage("gui.main.title")));
         
         // 购买保护按钮
-        double price1d = plugin.getConfig().getDouble("prices.1d");
+        double price1d = plugin.getSettings().getPrice(1, 0);
         String priceStr = String.format("%.2f", price1d); // 格式化价格为两位小数
         ItemStack buyItem = createItem(player, Material.EMERALD, 
                 messages.getMessage("gui.main.buy"), 
@@ -78,10 +83,8 @@ public class GUIManager implements Listener {
         String timeLeft = "";
         
         if (hasProtection) {
-            long currentTime = System.currentTimeMillis() / 1000;
             @SuppressWarnings("null")
-            long expiryTime = playerData.getExpiryTime();
-            long secondsLeft = expiryTime - currentTime;
+            long secondsLeft = playerData.getRemainingSeconds();
             
             if (secondsLeft > 0) {
                 timeLeft = formatTime(secondsLeft);
@@ -178,7 +181,7 @@ public class GUIManager implements Listener {
                         }
                         
                         // 计算1天的价格
-                        double price1d = plugin.getConfig().getDouble("prices.1d") * priceMultiplier;
+                        double price1d = plugin.getSettings().getPrice(1, 0) * priceMultiplier;
                         
                         // 创建物品
                         Material material = Material.EMERALD;
@@ -205,9 +208,9 @@ public class GUIManager implements Listener {
                 }
             } else {
                 // 如果没有配置等级，使用旧版本的购买选项
-                double price1d = plugin.getConfig().getDouble("prices.1d");
-                double price7d = plugin.getConfig().getDouble("prices.7d");
-                double price30d = plugin.getConfig().getDouble("prices.30d");
+                double price1d = plugin.getSettings().getPrice(1, 0);
+                double price7d = plugin.getSettings().getPrice(7, 0);
+                double price30d = plugin.getSettings().getPrice(30, 0);
                 
                 ItemStack item1d = createItem(player, Material.EMERALD, 
                         messages.getMessage("gui.buy.one-day"), 
@@ -283,42 +286,79 @@ public class GUIManager implements Listener {
         openInventories.put(player.getUniqueId(), GUIType.ADMIN_MENU);
     }
     
-    public void openPlayerListMenu(Player player, int page) {
+    /**
+     * 打开玩家列表第一页，使用默认的排序和筛选条件
+     */
+    public void openPlayerListMenu(Player player) {
+        PlayerListState state = new PlayerListState(PlayerQuery.ALL);
+        playerListStates.put(player.getUniqueId(), state);
+        showPlayerListPage(player, state, 0);
+    }
+    
+    /**
+     * 在异步线程中查询一页玩家，查询完成后回到主线程打开界面
+     * 筛选和排序由数据库完成，查询前先写入尚未保存的修改，避免按旧数据筛选
+     */
+    private void showPlayerListPage(Player player, PlayerListState state, int page) {
+        if (page < 0 || page >= state.pageStarts.size()) {
+            return;
+        }
+        
+        UUID adminUUID = player.getUniqueId();
+        PlayerQuery query = state.query;
+        PlayerPage.Cursor after = state.pageStarts.get(page);
+        int request = ++state.request;
+        
+        PlayerDataWriter writer = plugin.getPlayerDataWriter();
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            if (writer != null && writer.getPendingCount() > 0) {
+                writer.flushNow(QUERY_FLUSH_TIMEOUT);
+            }
+            PlayerPage result = plugin.getDatabaseManager().queryPlayers(query, after, PLAYERS_PER_PAGE);
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                Player admin = Bukkit.getPlayer(adminUUID);
+                // 管理员已离线，或查询期间又翻页、修改了条件时丢弃结果
+                if (admin == null || playerListStates.get(adminUUID) != state || state.request != request) {
+                    return;
+                }
+                
+                state.page = page;
+                while (state.pageStarts.size() > page + 1) {
+                    state.pageStarts.remove(state.pageStarts.size() - 1);
+                }
+                if (result.hasNext()) {
+                    state.pageStarts.add(result.getNext());
+                }
+                renderPlayerList(admin, state, result);
+            });
+        });
+    }
+    
+    private void renderPlayerList(Player player, PlayerListState state, PlayerPage result) {
         Messages messages = plugin.getMessages();
         Inventory inventory = Bukkit.createInventory(null, 54, 
                 ChatColor.translateAlternateColorCodes('&', messages.getMessage("gui.player-list.title")
-                        .replace("%page%", String.valueOf(page + 1))));
-        
-        // 获取所有玩家数据
-        Map<UUID, PlayerData> playerDataMap = plugin.getPlayerDataMap();
-        List<Map.Entry<UUID, PlayerData>> entries = new ArrayList<>(playerDataMap.entrySet());
-        
-        // 计算总页数
-        int totalPages = (int) Math.ceil((double) entries.size() / PLAYERS_PER_PAGE);
-        if (totalPages == 0) totalPages = 1;
-        
-        // 确保页码有效
-        if (page < 0) page = 0;
-        if (page >= totalPages) page = totalPages - 1;
-        
-        // 保存当前页码
-        adminPageMap.put(player.getUniqueId(), page);
-        
-        // 显示玩家列表
-        int startIndex = page * PLAYERS_PER_PAGE;
-        int endIndex = Math.min(startIndex + PLAYERS_PER_PAGE, entries.size());
-        
-        for (int i = startIndex; i < endIndex; i++) {
-            Map.Entry<UUID, PlayerData> entry = entries.get(i);
-            UUID uuid = entry.getKey();
-            PlayerData data = entry.getValue();
+                        .replace("%page%", String.valueOf(state.page + 1))));
+        
+        // 已加载的玩家使用缓存中的最新数据
+        List<PlayerData> entries = result.getPlayers();
+        List<UUID> pageUuids = new ArrayList<>(entries.size());
+        
+        for (int i = 0; i < entries.size(); i++) {
+            PlayerData stored = entries.get(i);
+            UUID uuid = stored.getUuid();
+            PlayerData cached = plugin.getPlayerDataCache().getIfLoaded(uuid);
+            PlayerData data = cached != null ? cached : stored;
+            pageUuids.add(uuid);
             
-            OfflinePlayer offlinePlayer = Bukkit.getOfflinePlayer(uuid);
-            String playerName = offlinePlayer.getName() != null ? offlinePlayer.getName() : uuid.toString();
+            String playerName = result.getName(uuid);
+            if (playerName == null) {
+                playerName = plugin.getNameCache().getName(uuid, uuid.toString());
+            }
             
             boolean isActive = data.isActive();
             String expiryTime = isActive ? 
-                    dateFormat.format(new Date(data.getExpiryTime() * 1000)) : 
+                    TimeUtils.formatDateTime(data.getExpiryTime()) : 
                     messages.getMessage("gui.player-list.expired");
             
             Material material = isActive ? Material.LIME_WOOL : Material.RED_WOOL;
@@ -326,10 +366,9 @@ public class GUIManager implements Listener {
             List<String> lore = new ArrayList<>();
             lore.add(messages.getMessage("gui.player-list.expires").replace("%time%", expiryTime));
             
-            if (data.getSharedWith() != null) {
-                OfflinePlayer sharedWith = Bukkit.getOfflinePlayer(data.getSharedWith());
+            for (UUID sharedUUID : data.getSharedWithAll()) {
                 lore.add(messages.getMessage("gui.player-list.shared-with")
-                        .replace("%player%", sharedWith.getName() != null ? sharedWith.getName() : "Unknown"));
+                        .replace("%player%", plugin.getNameCache().getName(sharedUUID, "Unknown")));
             }
             
             lore.add(messages.getMessage("gui.player-list.particles")
@@ -342,11 +381,12 @@ public class GUIManager implements Listener {
                             .replace("%player%", playerName), 
                     lore);
             
-            inventory.setItem(i - startIndex, playerItem);
+            inventory.setItem(i, playerItem);
         }
+        state.entries = pageUuids;
         
         // 上一页按钮
-        if (page > 0) {
+        if (state.page > 0) {
             ItemStack prevItem = createItem(player, Material.ARROW, 
                     messages.getMessage("gui.common.previous-page"), 
                     Arrays.asList(messages.getMessage("gui.common.previous-page-lore").split("\n")));
@@ -354,19 +394,53 @@ public class GUIManager implements Listener {
         }
         
         // 下一页按钮
-        if (page < totalPages - 1) {
+        if (result.hasNext()) {
             ItemStack nextItem = createItem(player, Material.ARROW, 
                     messages.getMessage("gui.common.next-page"), 
                     Arrays.asList(messages.getMessage("gui.common.next-page-lore").split("\n")));
             inventory.setItem(53, nextItem);
         }
         
+        PlayerQuery query = state.query;
+        String enabled = messages.getMessage("gui.common.enabled");
+        String disabled = messages.getMessage("gui.common.disabled");
+        
+        // 排序方式按钮
+        ItemStack sortItem = createItem(player, Material.HOPPER, 
+                messages.getMessage("gui.player-list.sort")
+                        .replace("%sort%", messages.getMessage(query.getSort() == PlayerQuery.Sort.NAME ? 
+                                "gui.player-list.sort-name" : "gui.player-list.sort-expiry")), 
+                Arrays.asList(messages.getMessage("gui.player-list.sort-lore").split("\n")));
+        inventory.setItem(47, sortItem);
+        
+        // 只显示有效保护按钮
+        ItemStack activeItem = createItem(player, Material.CLOCK, 
+                messages.getMessage("gui.player-list.filter-active")
+                        .replace("%status%", query.isActiveOnly() ? enabled : disabled), 
+                Arrays.asList(messages.getMessage("gui.player-list.filter-lore").split("\n")));
+        inventory.setItem(48, activeItem);
+        
         // 返回按钮
         ItemStack backItem = createItem(player, Material.BARRIER, 
                 messages.getMessage("gui.common.back"), 
                 Arrays.asList(messages.getMessage("gui.common.back-lore").split("\n")));
         inventory.setItem(49, backItem);
         
+        // 只显示共享中的玩家按钮
+        ItemStack sharedItem = createItem(player, Material.NAME_TAG, 
+                messages.getMessage("gui.player-list.filter-shared")
+                        .replace("%status%", query.isSharedOnly() ? enabled : disabled), 
+                Arrays.asList(messages.getMessage("gui.player-list.filter-lore").split("\n")));
+        inventory.setItem(50, sharedItem);
+        
+        // 保护等级筛选按钮
+        ItemStack levelItem = createItem(player, Material.EXPERIENCE_BOTTLE, 
+                messages.getMessage("gui.player-list.filter-level")
+                        .replace("%level%", query.getLevel() != null ? 
+                                query.getLevel() : messages.getMessage("gui.player-list.filter-level-all")), 
+                Arrays.asList(messages.getMessage("gui.player-list.filter-level-lore").split("\n")));
+        inventory.setItem(51, levelItem);
+        
         player.openInventory(inventory);
         openInventories.put(player.getUniqueId(), GUIType.ADMIN_PLAYER_LIST);
     }
@@ -572,15 +646,16 @@ public class GUIManager implements Listener {
                     "&6选择" + WordUtils.capitalize(levelKey) + "保护天数"));
             
             // 获取价格
-            double price1d = plugin.getConfig().getDouble("prices.1d") * multiplier;
-            double price7d = plugin.getConfig().getDouble("prices.7d") * multiplier;
-            double price30d = plugin.getConfig().getDouble("prices.30d") * multiplier;
+            double price1d = plugin.getSettings().getPrice(1, 0) * multiplier;
+            double price7d = plugin.getSettings().getPrice(7, 0) * multiplier;
+            double price30d = plugin.getSettings().getPrice(30, 0) * multiplier;
             
             // 获取当前等级的详细特性
-            ConfigurationSection levelConfig = plugin.getConfig().getConfigurationSection("protection-levels." + levelKey);
-            boolean keepExp = levelConfig != null && levelConfig.getBoolean("keep-exp", false);
-            String particleEffect = levelConfig != null ? levelConfig.getString("particle-effect", "无") : "无";
-            boolean noDeathPenalty = levelConfig != null && levelConfig.getBoolean("no-death-penalty", false);
+            PluginSettings.Level levelConfig = plugin.getSettings().getLevel(levelKey);
+            boolean keepExp = levelConfig != null && levelConfig.isKeepExp();
+            String particleEffect = levelConfig != null && levelConfig.getParticleEffect() != null ?
+                    levelConfig.getParticleEffect() : "无";
+            boolean noDeathPenalty = levelConfig != null && levelConfig.isNoDeathPenalty();
             
             // 构建特性描述
             StringBuilder features = new StringBuilder("&7特性：");
@@ -662,10 +737,11 @@ public class GUIManager implements Listener {
     
     private void confirmLevelPurchase(Player player, String level, int days, double multiplier) {
         // 计算价格
-        double basePrice = plugin.getConfig().getDouble("prices." + days + "d", 0);
+        PluginSettings settings = plugin.getSettings();
+        double basePrice = settings.getPrice(days, 0);
         if (basePrice == 0) {
             // 如果没有找到对应天数的价格，使用1d价格乘以天数
-            basePrice = plugin.getConfig().getDouble("prices.1d", 100) * days;
+            basePrice = settings.getPrice(1, 100) * days;
         }
         
         double price = basePrice * multiplier;
@@ -676,10 +752,10 @@ public class GUIManager implements Listener {
             plugin.getEconomy().withdrawPlayer(player, price);
             
             // 获取等级配置
-            ConfigurationSection levelConfig = plugin.getConfig().getConfigurationSection("protection-levels." + level);
-            boolean keepExp = levelConfig != null && levelConfig.getBoolean("keep-exp", false);
-            String particleEffect = levelConfig != null ? levelConfig.getString("particle-effect") : null;
-            boolean noDeathPenalty = levelConfig != null && levelConfig.getBoolean("no-death-penalty", false);
+            PluginSettings.Level levelConfig = settings.getLevel(level);
+            boolean keepExp = levelConfig != null && levelConfig.isKeepExp();
+            String particleEffect = levelConfig != null ? levelConfig.getParticleEffect() : null;
+            boolean noDeathPenalty = levelConfig != null && levelConfig.isNoDeathPenalty();
             
             // 添加保护，并存储保护等级信息
             plugin.addProtection(player.getUniqueId(), days * 86400);
@@ -715,9 +791,9 @@ public class GUIManager implements Listener {
         
         if (playerData == null) {
             // 如果玩家数据不存在，创建新的数据
-            long currentTime = System.currentTimeMillis() / 1000;
-            playerData = new PlayerData(uuid, currentTime, false, null); // 默认设置粒子效果为关闭
-            plugin.getPlayerDataMap().put(uuid, playerData);
+            playerData = new PlayerData(uuid, 0L, null);
+            playerData.setParticlesEnabled(plugin.isParticlesEnabled(uuid));
+            plugin.getPlayerDataCache().put(playerData);
         }
         
         // 切换粒子效果状态
@@ -725,7 +801,7 @@ public class GUIManager implements Listener {
         playerData.setParticlesEnabled(newState);
         
         // 保存到数据库
-        plugin.getDatabaseManager().updateParticlesEnabled(uuid, newState);
+        plugin.savePlayerData(uuid);
         
         // 发送消息
         Messages messages = plugin.getMessages();
@@ -734,18 +810,18 @@ public class GUIManager implements Listener {
         
         // 如果开启了粒子效果并且玩家有保护状态，显示粒子效果
         if (newState && plugin.hasActiveProtection(uuid)) {
-            if (plugin.getConfig().getBoolean("particles.on-toggle", true)) {
+            if (plugin.getSettings().isToggleParticles()) {
                 org.littlesheep.deathforkeep.utils.ParticleUtils.playProtectionGainedEffect(
                     plugin, 
                     player, 
-                    plugin.getConfig().getInt("particles.on-toggle.duration", 2)
+                    plugin.getSettings().getToggleParticleDuration()
                 );
             }
         }
     }
     
     private void confirmPurchase(Player player, int days) {
-        double price = plugin.getConfig().getDouble("prices." + days + "d");
+        double price = plugin.getSettings().getPrice(days, 0);
         if (plugin.getEconomy().has(player, price)) {
             plugin.getEconomy().withdrawPlayer(player, price);
             plugin.addProtection(player.getUniqueId(), days * 86400);
@@ -828,8 +904,11 @@ public class GUIManager implements Listener {
                     // 接受分享的处理
                     PlayerData senderData = plugin.getPlayerData(player.getUniqueId());
                     if (senderData != null && senderData.isActive()) {
-                        senderData.setSharedWith(targetUUID);
-                        plugin.getDatabaseManager().updateSharedWith(player.getUniqueId(), targetUUID);
+                        if (!plugin.shareProtection(player.getUniqueId(), targetUUID)) {
+                            player.sendMessage(plugin.getMessages().getMessage("command.share.limit-reached", 
+                                    "max", String.valueOf(plugin.getProtectionService().getMaxShareCount())));
+                            return;
+                        }
                         player.sendMessage(plugin.getMessages().getMessage("command.share.success", "player", targetPlayer.getName()));
                         targetPlayer.sendMessage(plugin.getMessages().getMessage("command.share.received", "player", player.getName()));
                         
@@ -847,16 +926,17 @@ public class GUIManager implements Listener {
 
     // 显示获得或失去保护时的粒子效果
     public void showProtectionEffects(Player player, boolean gained) {
-        if (plugin.getConfig().getBoolean("particles.status-change", true)) {
+        PluginSettings settings = plugin.getSettings();
+        if (settings.isStatusChangeParticles()) {
             String particleType = gained ? 
-                    plugin.getConfig().getString("particles.gain-protection", "TOTEM") : 
-                    plugin.getConfig().getString("particles.lose-protection", "SMOKE_NORMAL");
+                    settings.getGainProtectionParticle() : 
+                    settings.getLoseProtectionParticle();
             
-            int count = plugin.getConfig().getInt("particles.count", 50);
-            double offsetX = plugin.getConfig().getDouble("particles.offset-x", 0.5);
-            double offsetY = plugin.getConfig().getDouble("particles.offset-y", 1.0);
-            double offsetZ = plugin.getConfig().getDouble("particles.offset-z", 0.5);
-            double speed = plugin.getConfig().getDouble("particles.speed", 0.1);
+            int count = settings.getParticleCount();
+            double offsetX = settings.getParticleOffsetX();
+            double offsetY = settings.getParticleOffsetY();
+            double offsetZ = settings.getParticleOffsetZ();
+            double speed = settings.getParticleSpeed();
             
             try {
                 Particle particle = Particle.valueOf(particleType);
@@ -877,8 +957,8 @@ public class GUIManager implements Listener {
 
     // 添加打开玩家详情菜单的方法
     public void openPlayerDetailsMenu(Player admin, UUID targetUUID) {
-        OfflinePlayer target = Bukkit.getOfflinePlayer(targetUUID);
-        String targetName = target.getName() != null ? target.getName() : "未知玩家";
+        Player target = Bukkit.getPlayer(targetUUID);
+        String targetName = plugin.getNameCache().getName(targetUUID, "未知玩家");
         
         Messages messages = plugin.getMessages();
         Inventory inventory = Bukkit.createInventory(null, 36, 
@@ -887,7 +967,7 @@ public class GUIManager implements Listener {
         
         // 玩家头像
         ItemStack playerHead = new ItemStack(Material.PLAYER_HEAD);
-        if (target.isOnline()) {
+        if (target != null) {
             SkullMeta meta = (SkullMeta) playerHead.getItemMeta();
             meta.setOwningPlayer(target);
             meta.setDisplayName(ChatColor.YELLOW + targetName);
@@ -901,10 +981,8 @@ public class GUIManager implements Listener {
         String timeLeft = "";
         
         if (hasProtection) {
-            long currentTime = System.currentTimeMillis() / 1000;
             @SuppressWarnings("null")
-            long expiryTime = data.getExpiryTime();
-            long secondsLeft = expiryTime - currentTime;
+            long secondsLeft = data.getRemainingSeconds();
             
             if (secondsLeft > 0) {
                 timeLeft = formatTime(secondsLeft);
@@ -943,7 +1021,7 @@ public class GUIManager implements Listener {
         // 分享保护按钮 (仅当自己查看自己或管理员查看非自己时显示)
         if (admin.getUniqueId().equals(targetUUID) || 
                 (admin.hasPermission("deathkeep.admin") && !admin.getUniqueId().equals(targetUUID))) {
-            if (target.isOnline()) {
+            if (target != null) {
                 ItemStack shareItem = createItem(admin, Material.GOLD_INGOT, 
                         messages.getMessage("gui.player-details.share-protection"), 
                         Arrays.asList(messages.getMessage("gui.player-details.share-protection-lore").split("\n")));
@@ -992,7 +1070,7 @@ public class GUIManager implements Listener {
             return;
         }
         
-        OfflinePlayer target = Bukkit.getOfflinePlayer(targetUUID);
+        Player target = Bukkit.getPlayer(targetUUID);
         
         switch (slot) {
             case 11: // 添加保护 (仅管理员)
@@ -1012,7 +1090,7 @@ public class GUIManager implements Listener {
                 break;
                 
             case 15: // 分享保护
-                if (target.isOnline()) {
+                if (target != null) {
                     shareProtection(player, targetUUID);
                 } else {
                     player.sendMessage(plugin.getMessages().getMessage("command.share.player-offline"));
@@ -1022,7 +1100,12 @@ public class GUIManager implements Listener {
             case 31: // 返回
                 // 如果是从玩家列表打开的，返回玩家列表
                 if (player.hasPermission("deathkeep.admin")) {
-                    openPlayerListMenu(player, adminPageMap.getOrDefault(player.getUniqueId(), 0));
+                    PlayerListState state = playerListStates.get(player.getUniqueId());
+                    if (state != null) {
+                        showPlayerListPage(player, state, state.page);
+                    } else {
+                        openPlayerListMenu(player);
+                    }
                 } else {
                     // 否则返回主菜单
                     openMainMenu(player);
@@ -1035,7 +1118,7 @@ public class GUIManager implements Listener {
     private void handleAdminMenuClick(Player player, int slot) {
         switch (slot) {
             case 11: // 玩家列表
-                openPlayerListMenu(player, 0);
+                openPlayerListMenu(player);
                 break;
                 
             case 13: // 批量增加
@@ -1059,41 +1142,60 @@ public class GUIManager implements Listener {
 
     // 重新添加丢失的handlePlayerListClick方法
     private void handlePlayerListClick(Player player, int slot) {
+        PlayerListState state = playerListStates.get(player.getUniqueId());
+        if (state == null) {
+            openPlayerListMenu(player);
+            return;
+        }
+        
         if (slot >= 0 && slot < 45) {
             // 玩家项目点击
-            Map<UUID, PlayerData> playerDataMap = plugin.getPlayerDataMap();
-            List<Map.Entry<UUID, PlayerData>> entries = new ArrayList<>(playerDataMap.entrySet());
-            
-            int page = adminPageMap.getOrDefault(player.getUniqueId(), 0);
-            int startIndex = page * PLAYERS_PER_PAGE;
-            
-            if (startIndex + slot < entries.size()) {
-                Map.Entry<UUID, PlayerData> entry = entries.get(startIndex + slot);
-                UUID targetUUID = entry.getKey();
+            if (slot < state.entries.size()) {
+                UUID targetUUID = state.entries.get(slot);
                 
                 // 打开玩家详情菜单
                 openPlayerDetailsMenu(player, targetUUID);
             }
         } else if (slot == 45) {
             // 上一页
-            int page = adminPageMap.getOrDefault(player.getUniqueId(), 0);
-            if (page > 0) {
-                openPlayerListMenu(player, page - 1);
+            if (state.page > 0) {
+                showPlayerListPage(player, state, state.page - 1);
             }
         } else if (slot == 53) {
-            // 下一页
-            int page = adminPageMap.getOrDefault(player.getUniqueId(), 0);
-            Map<UUID, PlayerData> playerDataMap = plugin.getPlayerDataMap();
-            int totalPages = (int) Math.ceil((double) playerDataMap.size() / PLAYERS_PER_PAGE);
-            
-            if (page < totalPages - 1) {
-                openPlayerListMenu(player, page + 1);
+            // 下一页，只有查询到下一页的起始位置时才能翻页
+            if (state.page + 1 < state.pageStarts.size()) {
+                showPlayerListPage(player, state, state.page + 1);
             }
+        } else if (slot == 47) {
+            // 切换排序方式
+            PlayerQuery.Sort sort = state.query.getSort() == PlayerQuery.Sort.EXPIRY ? 
+                    PlayerQuery.Sort.NAME : PlayerQuery.Sort.EXPIRY;
+            changePlayerListQuery(player, state.query.withSort(sort));
+        } else if (slot == 48) {
+            // 只显示有效保护
+            changePlayerListQuery(player, state.query.withActiveOnly(!state.query.isActiveOnly()));
+        } else if (slot == 50) {
+            // 只显示共享中的玩家
+            changePlayerListQuery(player, state.query.withSharedOnly(!state.query.isSharedOnly()));
+        } else if (slot == 51) {
+            // 按配置顺序切换保护等级，最后一个之后回到全部等级
+            List<String> levels = new ArrayList<>(plugin.getSettings().getLevelNames());
+            int next = levels.indexOf(state.query.getLevel()) + 1;
+            changePlayerListQuery(player, state.query.withLevel(next < levels.size() ? levels.get(next) : null));
         } else if (slot == 49) {
             // 返回
             openAdminMenu(player);
         }
     }
+    
+    /**
+     * 修改排序或筛选条件后从第一页重新查询
+     */
+    private void changePlayerListQuery(Player player, PlayerQuery query) {
+        PlayerListState state = new PlayerListState(query);
+        playerListStates.put(player.getUniqueId(), state);
+        showPlayerListPage(player, state, 0);
+    }
 
     // 重新添加丢失的handleBatchActionsClick方法
     private void handleBatchActionsClick(Player player, int slot) {
@@ -1165,4 +1267,23 @@ public class GUIManager implements Listener {
             }
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * 管理员浏览玩家列表的状态，只在主线程中访问
+     */
+    private static final class PlayerListState {
+        private final PlayerQuery query;
+        // 每页的起始位置，第一页为null，下一页的位置在查询当前页时得到
+        private final List<PlayerPage.Cursor> pageStarts = new ArrayList<>();
+        // 当前页显示的玩家，按格子顺序排列
+        private List<UUID> entries = Collections.emptyList();
+        private int page;
+        // 最近一次查询的序号，用于丢弃过期的查询结果
+        private int request;
+
+        private PlayerListState(PlayerQuery query) {
+            this.query = query;
+            this.pageStarts.add(null);
+        }
+    }
+}
@@ -1,16 +1,32 @@
+/*
+  PlaceholderAPI 扩展
+  计分板和Tab插件每tick都可能请求变量，每个玩家的结果缓存在 PlaceholderState 中，
+  玩家数据、共享关系或配置变化后才重新生成；剩余时间按秒缓存
+ */
 package org.littlesheep.deathforkeep.hooks;
 
 import me.clip.placeholderapi.expansion.PlaceholderExpansion;
-import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.jetbrains.annotations.NotNull;
 import org.littlesheep.deathforkeep.DeathForKeep;
+import org.littlesheep.deathforkeep.data.PlayerData;
+import org.littlesheep.deathforkeep.utils.Messages;
+import org.littlesheep.deathforkeep.utils.ProtectionClock;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
-public class PlaceholderHook extends PlaceholderExpansion {
+public class PlaceholderHook extends PlaceholderExpansion implements Listener {
 
     private final DeathForKeep plugin;
+    private final Map<UUID, PlaceholderState> states = new ConcurrentHashMap<>();
 
     public PlaceholderHook(DeathForKeep plugin) {
         this.plugin = plugin;
@@ -42,27 +58,105 @@ public class PlaceholderHook extends PlaceholderExpansion {
             return "";
         }
 
+        PlaceholderState state = getState(player.getUniqueId());
+        Messages messages = plugin.getMessages();
         switch (identifier) {
             case "time":
-                return plugin.getRemainingTimeFormatted(player.getUniqueId());
+                return state.getTime();
+            case "seconds_left":
+                return String.valueOf(ProtectionClock.remainingSeconds(state.getExpiryTime()));
+            case "expiry_epoch":
+                return String.valueOf(state.getExpiryTime() / 1000L);
             case "status":
-                return plugin.hasActiveProtection(player.getUniqueId()) ? 
-                       plugin.getMessages().getMessage("placeholder.status-active") :
-                       plugin.getMessages().getMessage("placeholder.status-expired");
+                return state.getData() != null && state.getData().isActive() ?
+                       messages.getMessage("placeholder.status-active") :
+                       messages.getMessage("placeholder.status-expired");
+            case "level":
+                String level = state.getData() != null ? state.getData().getProtectionLevel() : null;
+                return level != null ? level : messages.getMessage("placeholder.status-none");
             case "particles":
-                return plugin.getPlayerData(player.getUniqueId()).isParticlesEnabled() ?
-                       plugin.getMessages().getMessage("gui.common.enabled") :
-                       plugin.getMessages().getMessage("gui.common.disabled");
+                boolean particles = state.getData() != null ? state.getData().isParticlesEnabled() :
+                        plugin.getSettings().isParticlesByDefault();
+                return particles ?
+                       messages.getMessage("gui.common.enabled") :
+                       messages.getMessage("gui.common.disabled");
             case "share_status":
-                UUID sharedWith = plugin.getPlayerData(player.getUniqueId()).getSharedWith();
-                if (sharedWith != null) {
-                    String playerName = Bukkit.getOfflinePlayer(sharedWith).getName();
-                    return plugin.getMessages().getMessage("placeholder.shared-with")
-                            .replace("%player%", playerName != null ? playerName : "Unknown");
-                }
-                return plugin.getMessages().getMessage("placeholder.not-shared");
+                return state.getShareStatus();
+            case "shared_by":
+                return state.getSharedBy();
         }
 
         return null;
     }
-} 
\ No newline at end of file
+
+    private PlaceholderState getState(UUID uuid) {
+        PlayerData data = plugin.getPlayerDataCache().get(uuid);
+        int shareVersion = plugin.getProtectionService().getShareIndex().getVersion();
+        int generation = plugin.getProtectionService().getGeneration();
+        int nameVersion = plugin.getNameCache().getVersion();
+
+        PlaceholderState state = states.get(uuid);
+        if (state == null || !state.isCurrent(data, shareVersion, generation, nameVersion)) {
+            state = createState(uuid, data, shareVersion, generation, nameVersion);
+            states.put(uuid, state);
+        }
+        return state;
+    }
+
+    private PlaceholderState createState(UUID uuid, PlayerData data, int shareVersion, int generation,
+                                         int nameVersion) {
+        Messages messages = plugin.getMessages();
+
+        String shareStatus = messages.getMessage("placeholder.not-shared");
+        NameList sharedWithNames = new NameList();
+        if (data != null) {
+            Collection<UUID> sharedWith = data.getSharedWithAll();
+            if (!sharedWith.isEmpty()) {
+                for (UUID target : sharedWith) {
+                    sharedWithNames.add(target);
+                }
+                shareStatus = messages.getMessage("placeholder.shared-with", "player", sharedWithNames.toString());
+            }
+        }
+
+        List<PlayerData> sharers = plugin.getPlayerDataCache().findSharingWith(uuid);
+        String sharedBy = messages.getMessage("placeholder.not-shared");
+        NameList sharerNames = new NameList();
+        if (!sharers.isEmpty()) {
+            for (PlayerData sharer : sharers) {
+                sharerNames.add(sharer.getUuid());
+            }
+            sharedBy = messages.getMessage("placeholder.shared-from", "player", sharerNames.toString());
+        }
+
+        return new PlaceholderState(data, shareVersion, generation, sharers, shareStatus, sharedBy,
+                sharedWithNames.missing || sharerNames.missing, nameVersion);
+    }
+
+    /**
+     * 拼接玩家名称，名称尚未加载时显示为Unknown并记录下来
+     */
+    private final class NameList {
+        private final StringJoiner names = new StringJoiner(", ");
+        private boolean missing;
+
+        private void add(UUID uuid) {
+            String name = plugin.getNameCache().getName(uuid);
+            if (name == null) {
+                name = "Unknown";
+                missing = true;
+            }
+            names.add(name);
+        }
+
+        @Override
+        public String toString() {
+            return names.toString();
+        }
+    }
+
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        states.remove(event.getPlayer().getUniqueId());
+    }
+}
@@ -0,0 +1,117 @@
+/*
+  变量缓存
+  单个玩家的变量结果，是否有效只在读取时比较版本，到期与否随时间变化，不缓存
+ */
+package org.littlesheep.deathforkeep.hooks;
+
+import org.littlesheep.deathforkeep.data.PlayerData;
+import org.littlesheep.deathforkeep.utils.ProtectionClock;
+import org.littlesheep.deathforkeep.utils.TimeUtils;
+
+import java.util.List;
+
+final class PlaceholderState {
+
+    private final PlayerData data;
+    private final int dataVersion;
+    private final int shareVersion;
+    private final int generation;
+    // 与此玩家共享保护的玩家数据，以及生成缓存时的版本
+    private final List<PlayerData> sharers;
+    private final int[] sharerVersions;
+    private final String shareStatus;
+    private final String sharedBy;
+    // 生成时有名称尚未加载（显示为默认名称），名称缓存变化后需要重新生成
+    private final boolean missingNames;
+    private final int nameVersion;
+    private volatile TimeText time = new TimeText(-1L, "0");
+
+    /**
+     * @param missingNames 是否有名称尚未加载
+     * @param nameVersion 生成前读取的名称缓存版本
+     */
+    PlaceholderState(PlayerData data, int shareVersion, int generation, List<PlayerData> sharers,
+                     String shareStatus, String sharedBy, boolean missingNames, int nameVersion) {
+        this.data = data;
+        this.dataVersion = data != null ? data.getVersion() : -1;
+        this.shareVersion = shareVersion;
+        this.generation = generation;
+        this.sharers = sharers;
+        this.sharerVersions = new int[sharers.size()];
+        for (int i = 0; i < sharerVersions.length; i++) {
+            sharerVersions[i] = sharers.get(i).getVersion();
+        }
+        this.shareStatus = shareStatus;
+        this.sharedBy = sharedBy;
+        this.missingNames = missingNames;
+        this.nameVersion = nameVersion;
+    }
+
+    boolean isCurrent(PlayerData current, int currentShareVersion, int currentGeneration, int currentNameVersion) {
+        if (current != data || shareVersion != currentShareVersion || generation != currentGeneration) {
+            return false;
+        }
+        if (missingNames && nameVersion != currentNameVersion) {
+            return false;
+        }
+        if (data != null && data.getVersion() != dataVersion) {
+            return false;
+        }
+        for (int i = 0; i < sharerVersions.length; i++) {
+            if (sharers.get(i).getVersion() != sharerVersions[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return 玩家数据，没有数据时返回null
+     */
+    PlayerData getData() {
+        return data;
+    }
+
+    String getShareStatus() {
+        return shareStatus;
+    }
+
+    String getSharedBy() {
+        return sharedBy;
+    }
+
+    /**
+     * @return 当前生效的保护的到期时间（毫秒），自己的保护优先，其次是共享的保护，都没有时返回0
+     */
+    long getExpiryTime() {
+        if (data != null && data.isActive()) {
+            return data.getExpiryTime();
+        }
+        for (PlayerData sharer : sharers) {
+            if (sharer.isActive()) {
+                return sharer.getExpiryTime();
+            }
+        }
+        return 0L;
+    }
+
+    String getTime() {
+        long seconds = ProtectionClock.remainingSeconds(getExpiryTime());
+        TimeText cached = time;
+        if (cached.seconds != seconds) {
+            cached = new TimeText(seconds, TimeUtils.formatTime(seconds));
+            time = cached;
+        }
+        return cached.text;
+    }
+
+    private static final class TimeText {
+        private final long seconds;
+        private final String text;
+
+        private TimeText(long seconds, String text) {
+            this.seconds = seconds;
+            this.text = text;
+        }
+    }
+}
@@ -5,7 +5,6 @@
 package org.littlesheep.deathforkeep.listeners;
 
 import org.bukkit.Bukkit;
-import org.bukkit.OfflinePlayer;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
@@ -14,6 +13,7 @@ import org.bukkit.event.player.AsyncPlayerChatEvent;
 import org.bukkit.metadata.MetadataValue;
 import org.littlesheep.deathforkeep.DeathForKeep;
 import org.littlesheep.deathforkeep.data.PlayerData;
+import org.littlesheep.deathforkeep.utils.ProtectionClock;
 
 import java.util.List;
 import java.util.UUID;
@@ -138,20 +138,20 @@ public class ChatListener implements Listener {
                 plugin.addProtection(targetUUID, seconds);
                 
                 // 发送成功消息
-                OfflinePlayer target = Bukkit.getOfflinePlayer(targetUUID);
-                String targetName = target.getName() != null ? target.getName() : targetUUID.toString();
+                Player target = Bukkit.getPlayer(targetUUID);
+                String targetName = plugin.getNameCache().getName(targetUUID, targetUUID.toString());
                 player.sendMessage(plugin.getMessages().getMessage("command.admin.protection-added", 
                         "player", targetName, 
                         "days", String.valueOf(days)));
                 
                 // 如果目标玩家在线，给他们发送通知
-                if (target.isOnline() && target.getPlayer() != null) {
-                    target.getPlayer().sendMessage(plugin.getMessages().getMessage("command.admin.received-protection", 
+                if (target != null) {
+                    target.sendMessage(plugin.getMessages().getMessage("command.admin.received-protection", 
                             "days", String.valueOf(days)));
                     
                     // 显示获得保护的粒子效果
-                    if (target.getPlayer() != null) {
-                        plugin.getGuiManager().showProtectionEffects(target.getPlayer(), true);
+                    if (target != null) {
+                        plugin.getGuiManager().showProtectionEffects(target, true);
                     }
                 }
                 
@@ -208,27 +208,27 @@ public class ChatListener implements Listener {
                 }
                 
                 // 移除保护时长
-                int seconds = days * 86400; // 天数转为秒
-                long currentTime = System.currentTimeMillis() / 1000;
-                long newExpiry = Math.max(currentTime, data.getExpiryTime() - seconds);
-                data.setExpiryTime(newExpiry);
+                long duration = days * 86400000L; // 天数转为毫秒
+                long currentTime = ProtectionClock.now();
+                long newExpiry = Math.max(currentTime, data.getExpiryTime() - duration);
+                plugin.getProtectionService().setExpiryTime(data, newExpiry);
                 plugin.savePlayerData(targetUUID);
                 
                 // 发送成功消息
-                OfflinePlayer target = Bukkit.getOfflinePlayer(targetUUID);
-                String targetName = target.getName() != null ? target.getName() : targetUUID.toString();
+                Player target = Bukkit.getPlayer(targetUUID);
+                String targetName = plugin.getNameCache().getName(targetUUID, targetUUID.toString());
                 player.sendMessage(plugin.getMessages().getMessage("command.admin.protection-removed", 
                         "player", targetName, 
                         "days", String.valueOf(days)));
                 
                 // 如果目标玩家在线，给他们发送通知
-                if (target.isOnline() && target.getPlayer() != null) {
-                    target.getPlayer().sendMessage(plugin.getMessages().getMessage("command.admin.lost-protection", 
+                if (target != null) {
+                    target.sendMessage(plugin.getMessages().getMessage("command.admin.lost-protection", 
                             "days", String.valueOf(days)));
                     
                     // 显示失去保护的粒子效果
-                    if (data.getExpiryTime() <= currentTime && target.getPlayer() != null) {
-                        plugin.getGuiManager().showProtectionEffects(target.getPlayer(), false);
+                    if (data.getExpiryTime() <= currentTime && target != null) {
+                        plugin.getGuiManager().showProtectionEffects(target, false);
                     }
                 }
                 
@@ -14,253 +14,299 @@ import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.entity.PlayerDeathEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerRespawnEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
-import org.bukkit.inventory.ItemStack;
-import org.bukkit.potion.PotionEffect;
-import org.bukkit.GameMode;
+import org.bukkit.scheduler.BukkitTask;
 import org.littlesheep.deathforkeep.DeathForKeep;
+import org.littlesheep.deathforkeep.backup.BackupCodec;
+import org.littlesheep.deathforkeep.backup.BackupJournal;
+import org.littlesheep.deathforkeep.backup.BackupPipeline;
+import org.littlesheep.deathforkeep.backup.BackupScheduler;
+import org.littlesheep.deathforkeep.backup.BackupStore;
+import org.littlesheep.deathforkeep.backup.DeathBackupData;
+import org.littlesheep.deathforkeep.backup.RestoreDiff;
 import org.littlesheep.deathforkeep.utils.Messages;
-import org.littlesheep.deathforkeep.data.PlayerData;
-import org.bukkit.configuration.ConfigurationSection;
+import org.littlesheep.deathforkeep.utils.PluginSettings;
+import org.littlesheep.deathforkeep.data.ProtectionSnapshot;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
-import java.util.Collection;
-import java.util.List;
-import java.util.ArrayList;
-import java.util.concurrent.ConcurrentHashMap;
 
 public class DeathListener implements Listener {
 
     private final DeathForKeep plugin;
-    // 用于存储玩家的物品备份，使用ConcurrentHashMap提高并发性能
-    private final Map<UUID, ItemStack[]> inventoryBackups = new ConcurrentHashMap<>();
-    private final Map<UUID, ItemStack[]> armorBackups = new ConcurrentHashMap<>();
-    private final Map<UUID, ItemStack[]> enderChestBackups = new ConcurrentHashMap<>();
-    private final Map<UUID, Integer> expBackups = new ConcurrentHashMap<>();
-    private final Map<UUID, Collection<PotionEffect>> potionEffectBackups = new ConcurrentHashMap<>();
-    private final Map<UUID, Integer> foodLevelBackups = new ConcurrentHashMap<>();
-    private final Map<UUID, Float> saturationBackups = new ConcurrentHashMap<>();
-    private final Map<UUID, Integer> fireTicks = new ConcurrentHashMap<>();
-    private final Map<UUID, Long> backupTimestamps = new ConcurrentHashMap<>();
-    private final Map<UUID, Boolean> pendingRestore = new ConcurrentHashMap<>();
-    private final Map<UUID, DeathBackupData> completeBackups = new ConcurrentHashMap<>();
+    // 每个玩家一份备份记录，包含物品、状态、备份时间和恢复状态，只在主线程访问
+    private final BackupStore backupStore = new BackupStore();
+    // 死亡备份日志，服务器崩溃后用于恢复，未启用时为null
+    private BackupJournal journal;
+    // 备份序列化等耗时工作在工作线程执行
+    private final BackupPipeline pipeline;
+    private final BackupCodec codec;
+    // 正在恢复的玩家，每个玩家同时只有一个待执行的检查
+    private final Map<UUID, RestoreSession> restoreSessions = new HashMap<>();
     private int periodicTaskId = -1;
+    private final BackupScheduler backupScheduler = new BackupScheduler(this::backupIfEligible);
     
-    // 死亡备份数据类，存储所有需要备份的玩家数据
-    private class DeathBackupData {
-        @SuppressWarnings("unused")
-        private final UUID playerUUID;
-        @SuppressWarnings("unused")
-        private final long timestamp;
-        private final ItemStack[] inventory;
-        private final ItemStack[] armor;
-        private final ItemStack[] enderChest;
-        private final ItemStack[] extraSlots; // 副手等
-        private final int experience;
-        private final int level;
-        private final float exp;
-        private final Collection<PotionEffect> potionEffects;
-        private final int foodLevel;
-        private final float saturation;
-        private final int fireTicks;
-        private final int airLevel;
-        private final double health;
-        @SuppressWarnings("unused")
-        private final GameMode gameMode;
+    // 恢复后再次检查的间隔（刻）
+    private static final long RESTORE_RETRY_DELAY = 5L;
+    // 玩家登出后清理备份的延迟（毫秒）
+    private static final long QUIT_CLEANUP_DELAY = 5000L;
+    
+    // 玩家重生后的恢复状态
+    private static class RestoreSession {
+        private BukkitTask task;
+        private long elapsedTicks;
+        private int checks;
+        private int attempts;
+        private boolean stateRestored;
+    }
+    
+    public DeathListener(DeathForKeep plugin) {
+        this.plugin = plugin;
+        PluginSettings settings = plugin.getSettings();
         
-        public DeathBackupData(Player player) {
-            this.playerUUID = player.getUniqueId();
-            this.timestamp = System.currentTimeMillis();
-            this.inventory = player.getInventory().getContents().clone();
-            this.armor = player.getInventory().getArmorContents().clone();
-            this.extraSlots = player.getInventory().getExtraContents().clone();
-            this.enderChest = player.getEnderChest().getContents().clone();
-            this.experience = player.getTotalExperience();
-            this.level = player.getLevel();
-            this.exp = player.getExp();
-            this.potionEffects = new ArrayList<>(player.getActivePotionEffects());
-            this.foodLevel = player.getFoodLevel();
-            this.saturation = player.getSaturation();
-            this.fireTicks = player.getFireTicks();
-            this.airLevel = player.getRemainingAir();
-            this.health = player.getHealth();
-            this.gameMode = player.getGameMode();
-        }
+        // 内存预算，超出时淘汰最旧的备份
+        backupStore.setMaxBytes(settings.getMaxBackupMemoryMb() * 1024L * 1024L);
         
-        // 恢复所有数据到玩家
-        public void restore(Player player) {
-            // 清空当前物品栏，防止物品重叠
-            player.getInventory().clear();
+        // 备份在最后一次更新后保留的时间，由时间轮每秒处理到期的备份
+        int cleanupTime = settings.getCleanupTime(); // 默认1小时
+        backupStore.setTimeToLive(cleanupTime * 1000L);
+        Bukkit.getScheduler().runTaskTimer(plugin, () -> {
+            int removed = backupStore.expire(System.currentTimeMillis());
             
-            // 恢复物品
-            player.getInventory().setContents(inventory);
-            player.getInventory().setArmorContents(armor);
-            player.getInventory().setExtraContents(extraSlots);
-            
-            // 恢复末影箱
-            player.getEnderChest().setContents(enderChest);
-            
-            // 恢复经验
-            player.setTotalExperience(0);
-            player.setLevel(0);
-            player.setExp(0);
-            if (level > 0) {
-                player.setLevel(level);
-                player.setExp(exp);
-            } else {
-                player.giveExp(experience);
+            if (plugin.getSettings().isDebugMode() && removed > 0) {
+                plugin.getLogger().info("已清理 " + removed + " 个过期的备份数据");
             }
-            
-            // 恢复药水效果
-            for (PotionEffect effect : player.getActivePotionEffects()) {
-                player.removePotionEffect(effect.getType());
+        }, 20L, 20L);
+        
+        this.pipeline = new BackupPipeline(plugin,
+                settings.getPipelineThreads(),
+                settings.getPipelineQueueSize());
+        this.codec = new BackupCodec(
+                settings.getCompressionCodec(),
+                settings.getCompressionLevel());
+        
+        // 打开死亡备份日志，并恢复在线玩家未完成的备份（插件重载时）
+        openJournal();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            replayJournal(player);
+        }
+        
+        // 启动定期备份任务
+        startPeriodicBackupTask();
+    }
+    
+    private void openJournal() {
+        if (!plugin.getSettings().isBackupEnabled() || !plugin.getSettings().isJournalEnabled()) {
+            return;
+        }
+        
+        File file = new File(plugin.getDataFolder(), "backup/journal.dat");
+        long compactThreshold = plugin.getSettings().getJournalCompactThresholdKb() * 1024L;
+        BackupJournal opened = new BackupJournal(plugin, file, compactThreshold);
+        try {
+            opened.open();
+            opened.start(plugin.getSettings().getJournalSyncInterval());
+            journal = opened;
+            if (opened.getPendingCount() > 0) {
+                plugin.getLogger().info("备份日志中有 " + opened.getPendingCount() + " 份未恢复的死亡备份");
             }
-            player.addPotionEffects(potionEffects);
-            
-            // 恢复饥饿和饱和度
-            player.setFoodLevel(foodLevel);
-            player.setSaturation(saturation);
-            
-            // 恢复火焰时间
-            player.setFireTicks(fireTicks);
-            
-            // 恢复空气值
-            player.setRemainingAir(airLevel);
+        } catch (IOException e) {
+            plugin.getLogger().severe("打开备份日志时出错，死亡备份将只保存在内存中: " + e.getMessage());
+        }
+    }
+    
+    // 恢复服务器崩溃前或玩家离线前未完成恢复的死亡备份
+    // 内存中仍有等待恢复的备份时（登出清理前重新进入）直接使用，否则从日志读取
+    private void replayJournal(Player player) {
+        UUID uuid = player.getUniqueId();
+        if (!isPendingRestore(uuid) && !readJournal(player)) {
+            return;
+        }
+        
+        // 死亡状态的玩家在重生时恢复
+        if (!player.isDead()) {
+            startRestore(player);
+        }
+    }
+    
+    /**
+     * @return 是否从日志读取到未恢复的备份
+     */
+    private boolean readJournal(Player player) {
+        if (journal == null) {
+            return false;
+        }
+        
+        UUID uuid = player.getUniqueId();
+        byte[] payload = journal.getPending(uuid);
+        if (payload == null) {
+            return false;
+        }
+        
+        try {
+            DeathBackupData backup = DeathBackupData.deserialize(uuid, BackupCodec.decode(payload));
+            backup.setPendingRestore(true);
+            backupStore.put(backup);
             
-            // 恢复生命值（使用更新的API替代已弃用的getMaxHealth()）
-            if (health > 0 && health <= player.getAttribute(org.bukkit.attribute.Attribute.GENERIC_MAX_HEALTH).getValue()) {
-                player.setHealth(Math.min(health, player.getAttribute(org.bukkit.attribute.Attribute.GENERIC_MAX_HEALTH).getValue()));
+            if (plugin.getSettings().isDebugMode()) {
+                plugin.getLogger().info("已从备份日志读取玩家 " + player.getName() + " 未恢复的死亡备份");
             }
-            
-            // 更新物品栏
-            player.updateInventory();
+            return true;
+        } catch (IOException | ClassNotFoundException e) {
+            plugin.getLogger().warning("读取玩家 " + player.getName() + " 的死亡备份时出错: " + e.getMessage());
+            journal.markRestored(uuid);
+            return false;
         }
     }
-
-    public DeathListener(DeathForKeep plugin) {
-        this.plugin = plugin;
+    
+    // 主线程只复制备份的引用，序列化、压缩和写入日志在工作线程完成
+    private void writeJournal(DeathBackupData backup) {
+        BackupJournal target = journal;
+        if (target == null) {
+            return;
+        }
         
-        // 注册任务以定期清理过期备份（根据配置的时间自动清理）
-        int cleanupTime = plugin.getConfig().getInt("backup.cleanup-time", 3600); // 默认1小时
-        Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, () -> {
-            long now = System.currentTimeMillis();
-            backupTimestamps.entrySet().removeIf(entry -> 
-                (now - entry.getValue() > cleanupTime * 1000)); // 根据配置的秒数转换为毫秒
-            
-            // 清理所有备份数据
-            List<UUID> toRemove = new ArrayList<>();
-            for (UUID uuid : completeBackups.keySet()) {
-                if (!backupTimestamps.containsKey(uuid)) {
-                    toRemove.add(uuid);
+        UUID uuid = backup.getPlayerUUID();
+        long ticket = target.reserve(uuid);
+        DeathBackupData frame = backup.copy();
+        pipeline.submit(() -> {
+            try {
+                if (!target.append(uuid, ticket, codec.encode(frame.serialize()))) {
+                    // 序列化完成前玩家已恢复或再次死亡
+                    pipeline.recordDropped();
                 }
+            } catch (IOException e) {
+                plugin.getLogger().warning("写入玩家 " + uuid + " 的死亡备份日志时出错: " + e.getMessage());
             }
-            
-            for (UUID uuid : toRemove) {
-                completeBackups.remove(uuid);
-                pendingRestore.remove(uuid);
-                inventoryBackups.remove(uuid);
-                armorBackups.remove(uuid);
-                enderChestBackups.remove(uuid);
-                expBackups.remove(uuid);
-                potionEffectBackups.remove(uuid);
-                foodLevelBackups.remove(uuid);
-                saturationBackups.remove(uuid);
-                fireTicks.remove(uuid);
-            }
-            
-            if (plugin.getConfig().getBoolean("backup.debug-mode", false) && !toRemove.isEmpty()) {
-                plugin.getLogger().info("已清理 " + toRemove.size() + " 个过期的备份数据");
-            }
-        }, 20 * 60 * 10, 20 * 60 * 10); // 每10分钟执行一次
-        
-        // 启动定期备份任务
-        startPeriodicBackupTask();
+        });
+    }
+    
+    // 恢复完成后清除等待状态，日志中的记录不再重放
+    private void finishRestore(DeathBackupData backup) {
+        backup.setPendingRestore(false);
+        if (journal != null) {
+            journal.markRestored(backup.getPlayerUUID());
+        }
     }
     
     /**
      * 启动定期备份任务
+     * event模式下只备份物品或经验发生变化的玩家，interval模式下按固定间隔备份所有玩家
      */
     private void startPeriodicBackupTask() {
-        if (plugin.getConfig().getBoolean("backup.periodic.enabled", true)) {
-            int interval = plugin.getConfig().getInt("backup.periodic.interval", 20); // 默认1秒（20刻）
-            boolean onlyProtected = plugin.getConfig().getBoolean("backup.periodic.only-protected", true);
+        PluginSettings settings = plugin.getSettings();
+        if (settings.isPeriodicBackup()) {
+            int interval = settings.getPeriodicInterval(); // 默认1秒（20刻）
+            String mode = settings.getPeriodicMode();
             
             // 取消现有任务
             stopPeriodicBackupTask();
             
-            // 创建新任务
-            periodicTaskId = Bukkit.getScheduler().runTaskTimer(plugin, () -> {
-                for (Player player : Bukkit.getOnlinePlayers()) {
-                    // 如果设置只备份有保护的玩家，则检查玩家是否有保护
-                    if (onlyProtected && !plugin.hasActiveProtection(player.getUniqueId())) {
-                        continue;
+            if ("interval".equalsIgnoreCase(mode)) {
+                // 创建新任务
+                periodicTaskId = Bukkit.getScheduler().runTaskTimer(plugin, () -> {
+                    for (Player player : Bukkit.getOnlinePlayers()) {
+                        backupIfEligible(player);
                     }
-                    
-                    // 执行备份
-                    createBackup(player);
+                }, interval, interval).getTaskId();
+            } else {
+                // 备份间隔作为最大延迟，超时的玩家不受每tick预算限制
+                backupScheduler.start(plugin,
+                        settings.getMaxPlayersPerTick(),
+                        settings.getMaxMicrosPerTick(),
+                        interval);
+                for (Player player : Bukkit.getOnlinePlayers()) {
+                    backupScheduler.markDirty(player.getUniqueId());
                 }
-            }, interval, interval).getTaskId();
+            }
             
-            if (plugin.getConfig().getBoolean("backup.debug-mode", false)) {
-                plugin.getLogger().info("已启动定期备份任务（间隔：" + interval + "刻）");
+            if (plugin.getSettings().isDebugMode()) {
+                plugin.getLogger().info("已启动定期备份任务（模式：" + mode + "，间隔：" + interval + "刻）");
             }
         }
     }
     
+    // 定期备份时跳过不需要备份的玩家
+    private void backupIfEligible(Player player) {
+        // 死亡后等待恢复期间不能覆盖备份
+        if (player.isDead() || isPendingRestore(player.getUniqueId())) {
+            return;
+        }
+        
+        // 如果设置只备份有保护的玩家，则检查玩家是否有保护
+        if (plugin.getSettings().isOnlyProtected() && 
+            !plugin.getProtectionService().getSnapshot(player.getUniqueId()).isActive()) {
+            return;
+        }
+        
+        // 执行备份
+        createBackup(player);
+    }
+    
     /**
      * 停止定期备份任务
      */
     private void stopPeriodicBackupTask() {
+        backupScheduler.stop();
         if (periodicTaskId != -1) {
             Bukkit.getScheduler().cancelTask(periodicTaskId);
             periodicTaskId = -1;
             
-            if (plugin.getConfig().getBoolean("backup.debug-mode", false)) {
+            if (plugin.getSettings().isDebugMode()) {
                 plugin.getLogger().info("已停止定期备份任务");
             }
         }
     }
     
+    public BackupScheduler getBackupScheduler() {
+        return backupScheduler;
+    }
+    
+    public BackupStore getBackupStore() {
+        return backupStore;
+    }
+    
+    public BackupJournal getJournal() {
+        return journal;
+    }
+    
+    public BackupPipeline getPipeline() {
+        return pipeline;
+    }
+    
+    public BackupCodec getCodec() {
+        return codec;
+    }
+    
+    private boolean isPendingRestore(UUID uuid) {
+        DeathBackupData backup = backupStore.get(uuid);
+        return backup != null && backup.isPendingRestore();
+    }
+    
     /**
      * 为指定玩家创建备份
      * @param player 要备份的玩家
      */
     private void createBackup(Player player) {
-        if (!plugin.getConfig().getBoolean("use-inventory-backup", true) || 
-            !plugin.getConfig().getBoolean("backup.enabled", true)) {
+        if (!plugin.getSettings().isBackupEnabled()) {
             return;
         }
         
-        UUID playerUUID = player.getUniqueId();
-        
         try {
-            // 创建完整备份
-            DeathBackupData backup = new DeathBackupData(player);
-            completeBackups.put(playerUUID, backup);
-            backupTimestamps.put(playerUUID, System.currentTimeMillis());
-            
-            // 同时保留单独的备份，用于兼容现有代码
-            inventoryBackups.put(playerUUID, player.getInventory().getContents().clone());
-            armorBackups.put(playerUUID, player.getInventory().getArmorContents().clone());
-            
-            // 根据配置决定是否进行全面备份
-            if (plugin.getConfig().getBoolean("backup.comprehensive", true)) {
-                enderChestBackups.put(playerUUID, player.getEnderChest().getContents().clone());
-                expBackups.put(playerUUID, player.getTotalExperience());
-                potionEffectBackups.put(playerUUID, player.getActivePotionEffects());
-                foodLevelBackups.put(playerUUID, player.getFoodLevel());
-                saturationBackups.put(playerUUID, player.getSaturation());
-                fireTicks.put(playerUUID, player.getFireTicks());
-            }
+            // 更新玩家的备份，物品没有变化时不会复制
+            int changed = backupStore.capture(player);
             
-            if (plugin.getConfig().getBoolean("backup.debug-mode", false)) {
-                plugin.getLogger().info("已为玩家 " + player.getName() + " 创建定期备份");
+            if (plugin.getSettings().isDebugMode()) {
+                plugin.getLogger().info("已为玩家 " + player.getName() + " 更新备份（" + changed + " 个格子发生变化）");
             }
         } catch (Exception e) {
             plugin.getLogger().warning("为玩家 " + player.getName() + " 创建备份时出错: " + e.getMessage());
-            if (plugin.getConfig().getBoolean("backup.debug-mode", false)) {
+            if (plugin.getSettings().isDebugMode()) {
                 e.printStackTrace();
             }
         }
@@ -272,19 +318,23 @@ public class DeathListener implements Listener {
         Player player = event.getEntity();
         UUID playerUUID = player.getUniqueId();
         
-        if (plugin.hasActiveProtection(playerUUID)) {
+        if (plugin.getProtectionService().getSnapshot(playerUUID).isActive()) {
             // 备份玩家物品和经验(如果启用了备份功能)
-            if (plugin.getConfig().getBoolean("use-inventory-backup", true) && 
-                plugin.getConfig().getBoolean("backup.enabled", true) && 
-                plugin.getConfig().getBoolean("backup.periodic.save-on-death", true)) {
+            if (plugin.getSettings().isBackupEnabled() && plugin.getSettings().isSaveOnDeath()) {
                 
                 // 使用共用方法创建备份
                 createBackup(player);
                 
                 // 标记为等待恢复
-                pendingRestore.put(playerUUID, true);
+                DeathBackupData backup = backupStore.get(playerUUID);
+                if (backup != null) {
+                    backup.setPendingRestore(true);
+                    
+                    // 写入备份日志，服务器在重生前崩溃时仍可恢复
+                    writeJournal(backup);
+                }
                 
-                if (plugin.getConfig().getBoolean("backup.debug-mode", false)) {
+                if (plugin.getSettings().isDebugMode()) {
                     plugin.getLogger().info("已为玩家 " + player.getName() + " 创建死亡时刻备份");
                 }
             }
@@ -300,10 +350,7 @@ public class DeathListener implements Listener {
     // 使用NORMAL优先级重新确认死亡事件的设置
     @EventHandler(priority = EventPriority.NORMAL)
     public void onPlayerDeathNormal(PlayerDeathEvent event) {
-        Player player = event.getEntity();
-        UUID playerUUID = player.getUniqueId();
-        
-        if (plugin.hasActiveProtection(playerUUID)) {
+        if (plugin.getProtectionService().getSnapshot(event.getEntity().getUniqueId()).isActive()) {
             // 再次确认设置，防止被其他插件覆盖
             event.setKeepInventory(true);
             event.setKeepLevel(true);
@@ -315,10 +362,7 @@ public class DeathListener implements Listener {
     // 使用HIGH优先级再次确认死亡事件的设置
     @EventHandler(priority = EventPriority.HIGH)
     public void onPlayerDeathHigh(PlayerDeathEvent event) {
-        Player player = event.getEntity();
-        UUID playerUUID = player.getUniqueId();
-        
-        if (plugin.hasActiveProtection(playerUUID)) {
+        if (plugin.getProtectionService().getSnapshot(event.getEntity().getUniqueId()).isActive()) {
             // 再次确认设置，防止被其他插件覆盖
             event.setKeepInventory(true);
             event.setKeepLevel(true);
@@ -327,184 +371,126 @@ public class DeathListener implements Listener {
         }
     }
     
-    // 监听玩家重生事件，恢复物品 (LOWEST优先级确保我们是最先尝试恢复的)
-    @EventHandler(priority = EventPriority.LOWEST)
-    public void onPlayerRespawnEarly(PlayerRespawnEvent event) {
-        tryRestorePlayerData(event.getPlayer(), 1);
+    // 监听玩家重生事件，只安排一次恢复检查，之后由检查结果决定是否需要重试
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerRespawn(PlayerRespawnEvent event) {
+        startRestore(event.getPlayer());
     }
     
-    // 使用NORMAL优先级再次尝试恢复物品
-    @EventHandler(priority = EventPriority.NORMAL)
-    public void onPlayerRespawnNormal(PlayerRespawnEvent event) {
-        tryRestorePlayerData(event.getPlayer(), 5);
+    // 开始恢复玩家数据，替换玩家之前未完成的恢复
+    private void startRestore(Player player) {
+        if (!plugin.getSettings().isBackupEnabled()) {
+            return;
+        }
+        
+        UUID uuid = player.getUniqueId();
+        if (!isPendingRestore(uuid)) {
+            return;
+        }
+        
+        cancelRestore(uuid);
+        RestoreSession session = new RestoreSession();
+        restoreSessions.put(uuid, session);
+        scheduleRestoreCheck(uuid, session, 1L);
     }
     
-    // 使用HIGH优先级再次尝试恢复物品
-    @EventHandler(priority = EventPriority.HIGH)
-    public void onPlayerRespawnHigh(PlayerRespawnEvent event) {
-        tryRestorePlayerData(event.getPlayer(), 10);
+    private void scheduleRestoreCheck(UUID uuid, RestoreSession session, long delay) {
+        session.elapsedTicks += delay;
+        session.task = Bukkit.getScheduler().runTaskLater(plugin, () -> checkRestore(uuid, session), delay);
     }
     
-    // 使用HIGHEST优先级最后一次尝试恢复
-    @EventHandler(priority = EventPriority.HIGHEST)
-    public void onPlayerRespawnHighest(PlayerRespawnEvent event) {
-        tryRestorePlayerData(event.getPlayer(), 20);
+    private void cancelRestore(UUID uuid) {
+        RestoreSession session = restoreSessions.remove(uuid);
+        if (session != null && session.task != null) {
+            session.task.cancel();
+        }
     }
     
-    // 使用MONITOR优先级对恢复进行最终检查
-    @EventHandler(priority = EventPriority.MONITOR)
-    public void onPlayerRespawnMonitor(PlayerRespawnEvent event) {
-        final Player player = event.getPlayer();
-        final UUID uuid = player.getUniqueId();
+    /**
+     * 比较玩家当前的物品和备份，只恢复不一致的格子
+     * 有格子被恢复时稍后再次检查，防止被其他插件再次修改，最多重试backup.retry-attempts次
+     * 没有不一致时在backup.final-delay时做最后一次检查
+     */
+    private void checkRestore(UUID uuid, RestoreSession session) {
+        if (restoreSessions.get(uuid) != session) {
+            return;
+        }
         
-        // 再次确认最终恢复
-        if (pendingRestore.containsKey(uuid) && pendingRestore.get(uuid)) {
-            int finalDelay = plugin.getConfig().getInt("backup.final-delay", 40); // 默认2秒(40刻)
-            
-            Bukkit.getScheduler().runTaskLater(plugin, () -> {
-                // 最后的恢复检查
-                if (pendingRestore.containsKey(uuid) && pendingRestore.get(uuid)) {
-                    // 如果正常恢复没有成功，使用最终的完全恢复方法
-                    if (completeBackups.containsKey(uuid)) {
-                        completeBackups.get(uuid).restore(player);
-                        
-                        if (plugin.getConfig().getBoolean("backup.debug-mode", false)) {
-                            plugin.getLogger().info("已为玩家 " + player.getName() + " 执行最终备份恢复");
-                        }
-                        
-                        pendingRestore.put(uuid, false);
-                    }
+        Player player = Bukkit.getPlayer(uuid);
+        DeathBackupData backup = backupStore.get(uuid);
+        if (player == null || !player.isOnline() || player.isDead() || backup == null || !backup.isPendingRestore()) {
+            // 玩家离线时保留等待状态，重新进入时从日志恢复；再次死亡时由下一次重生重新开始
+            restoreSessions.remove(uuid);
+            return;
+        }
+        
+        PluginSettings settings = plugin.getSettings();
+        int retryAttempts = Math.max(1, settings.getRetryAttempts());
+        long finalDelay = settings.getFinalDelay(); // 默认2秒(40刻)
+        
+        int restored;
+        RestoreDiff diff = new RestoreDiff(player.getName(), ++session.checks, session.elapsedTicks);
+        try {
+            restored = backup.restoreItems(player, diff);
+            if (!session.stateRestored) {
+                backup.restoreState(player, diff);
+                session.stateRestored = true;
+                // 物品已经发放，之后崩溃或重新进入时不再从日志重放，避免重复发放
+                // 内存中的备份仍保持等待状态，供之后的检查使用
+                if (journal != null) {
+                    journal.markRestored(uuid);
                 }
-            }, finalDelay);
+            }
+        } catch (Exception e) {
+            plugin.getLogger().severe("恢复玩家 " + player.getName() + " 的数据时出错: " + e.getMessage());
+            if (settings.isDebugMode()) {
+                e.printStackTrace();
+            }
+            restored = -1;
         }
-    }
-    
-    // 尝试使用指定的延迟恢复玩家数据
-    private void tryRestorePlayerData(Player player, long delay) {
-        if (!plugin.getConfig().getBoolean("use-inventory-backup", true) || 
-            !plugin.getConfig().getBoolean("backup.enabled", true)) {
+        
+        // 物品被修改时输出差异，只有状态不一致（例如死亡后清除的药水效果）时仅在调试模式输出
+        if ((diff.getSlotCount() > 0 && settings.isDiffReport())
+                || (!diff.isEmpty() && settings.isDebugMode())) {
+            plugin.getLogger().info(diff.toString());
+        }
+        
+        if (restored != 0) {
+            session.attempts++;
+            if (session.attempts < retryAttempts) {
+                scheduleRestoreCheck(uuid, session, RESTORE_RETRY_DELAY);
+                return;
+            }
+            plugin.getLogger().warning("玩家 " + player.getName() + " 的物品在恢复 " + session.attempts + " 次后仍被修改，已停止恢复");
+        } else if (session.elapsedTicks < finalDelay) {
+            // 物品已一致，在最终检查时间再确认一次
+            scheduleRestoreCheck(uuid, session, finalDelay - session.elapsedTicks);
             return;
         }
         
-        UUID playerUUID = player.getUniqueId();
+        restoreSessions.remove(uuid);
+        finishRestore(backup);
         
-        if (pendingRestore.containsKey(playerUUID) && pendingRestore.get(playerUUID)) {
-            Bukkit.getScheduler().runTaskLater(plugin, new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        if (!player.isOnline()) return;
-                        
-                        // 检查是否已经恢复或是否仍需要恢复
-                        if (!pendingRestore.containsKey(playerUUID) || !pendingRestore.get(playerUUID)) {
-                            return;
-                        }
-                        
-                        // 优先使用完整备份恢复
-                        if (completeBackups.containsKey(playerUUID)) {
-                            completeBackups.get(playerUUID).restore(player);
-                            
-                            if (plugin.getConfig().getBoolean("backup.debug-mode", false)) {
-                                plugin.getLogger().info("已使用完整备份恢复玩家 " + player.getName() + " 的数据（延迟: " + delay + "）");
-                            }
-                            
-                            pendingRestore.put(playerUUID, false);
-                            return;
-                        }
-                        
-                        // 使用旧的单独备份方式恢复
-                        if (inventoryBackups.containsKey(playerUUID)) {
-                            // 恢复物品
-                            if (inventoryBackups.get(playerUUID) != null) {
-                                player.getInventory().setContents(inventoryBackups.get(playerUUID));
-                            }
-                            
-                            if (armorBackups.get(playerUUID) != null) {
-                                player.getInventory().setArmorContents(armorBackups.get(playerUUID));
-                            }
-                            
-                            // 恢复经验
-                            if (expBackups.containsKey(playerUUID)) {
-                                player.setTotalExperience(0);
-                                player.setLevel(0);
-                                player.setExp(0);
-                                player.giveExp(expBackups.get(playerUUID));
-                            }
-                            
-                            // 如果启用了全面备份，恢复额外数据
-                            if (plugin.getConfig().getBoolean("backup.comprehensive", true)) {
-                                // 恢复药水效果
-                                if (potionEffectBackups.containsKey(playerUUID)) {
-                                    for (PotionEffect effect : player.getActivePotionEffects()) {
-                                        player.removePotionEffect(effect.getType());
-                                    }
-                                    player.addPotionEffects(potionEffectBackups.get(playerUUID));
-                                }
-                                
-                                // 恢复饥饿度和饱和度
-                                if (foodLevelBackups.containsKey(playerUUID)) {
-                                    player.setFoodLevel(foodLevelBackups.get(playerUUID));
-                                }
-                                
-                                if (saturationBackups.containsKey(playerUUID)) {
-                                    player.setSaturation(saturationBackups.get(playerUUID));
-                                }
-                                
-                                // 恢复火焰效果
-                                if (fireTicks.containsKey(playerUUID)) {
-                                    player.setFireTicks(fireTicks.get(playerUUID));
-                                }
-                                
-                                // 恢复末影箱内容
-                                if (enderChestBackups.containsKey(playerUUID) && enderChestBackups.get(playerUUID) != null) {
-                                    player.getEnderChest().setContents(enderChestBackups.get(playerUUID));
-                                }
-                            }
-                            
-                            // 更新物品栏
-                            player.updateInventory();
-                            
-                            if (plugin.getConfig().getBoolean("backup.debug-mode", false)) {
-                                plugin.getLogger().info("已使用单独备份恢复玩家 " + player.getName() + " 的数据（延迟: " + delay + "）");
-                            }
-                            
-                            pendingRestore.put(playerUUID, false);
-                        }
-                    } catch (Exception e) {
-                        plugin.getLogger().severe("恢复玩家 " + player.getName() + " 的数据时出错（延迟: " + delay + "）: " + e.getMessage());
-                        if (plugin.getConfig().getBoolean("backup.debug-mode", false)) {
-                            e.printStackTrace();
-                        }
-                    }
-                }
-            }, delay);
+        if (settings.isDebugMode()) {
+            plugin.getLogger().info("玩家 " + player.getName() + " 的备份恢复已完成");
         }
     }
     
+    @EventHandler
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        // 在登出清理之前重新进入时保留备份
+        backupStore.resetExpiry(event.getPlayer().getUniqueId());
+        replayJournal(event.getPlayer());
+    }
+    
     // 在玩家登出时清理数据
     @EventHandler
     public void onPlayerQuit(PlayerQuitEvent event) {
         UUID uuid = event.getPlayer().getUniqueId();
+        cancelRestore(uuid);
         
-        // 延迟清理，确保其他插件处理完成
-        Bukkit.getScheduler().runTaskLater(plugin, () -> {
-            cleanupPlayerBackups(uuid);
-        }, 100L); // 5秒后清理
-    }
-    
-    // 清理玩家的备份数据
-    private void cleanupPlayerBackups(UUID uuid) {
-        completeBackups.remove(uuid);
-        pendingRestore.remove(uuid);
-        inventoryBackups.remove(uuid);
-        armorBackups.remove(uuid);
-        enderChestBackups.remove(uuid);
-        expBackups.remove(uuid);
-        potionEffectBackups.remove(uuid);
-        foodLevelBackups.remove(uuid);
-        saturationBackups.remove(uuid);
-        fireTicks.remove(uuid);
-        backupTimestamps.remove(uuid);
+        // 延迟清理，确保其他插件处理完成，未恢复的死亡备份仍保留在日志中
+        backupStore.expireAfter(uuid, QUIT_CLEANUP_DELAY);
     }
     
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
@@ -512,84 +498,66 @@ public class DeathListener implements Listener {
         Player player = event.getEntity();
         UUID uuid = player.getUniqueId();
         
-        // 检查是否有保护
-        if (plugin.hasActiveProtection(uuid)) {
-            PlayerData playerData = plugin.getPlayerData(uuid);
+        // 检查是否有保护，保护等级的效果已在快照中合并
+        ProtectionSnapshot snapshot = plugin.getProtectionService().getSnapshot(uuid);
+        if (snapshot.isActive()) {
+            // 保留经验值
+            if (snapshot.isKeepExp()) {
+                event.setKeepLevel(true);
+                event.setDroppedExp(0);
+            }
             
-            if (playerData != null) {
-                // 获取保护等级
-                String level = playerData.getProtectionLevel();
-                ConfigurationSection levelConfig = null;
-                
-                if (level != null) {
-                    levelConfig = plugin.getConfig().getConfigurationSection("protection-levels." + level);
-                }
-                
-                // 保留经验值
-                boolean keepExp = playerData.isKeepExp() || 
-                                 (levelConfig != null && levelConfig.getBoolean("keep-exp", false));
-                if (keepExp) {
-                    event.setKeepLevel(true);
-                    event.setDroppedExp(0);
-                }
-                
-                // 避免死亡惩罚
-                boolean noDeathPenalty = playerData.isNoDeathPenalty() || 
-                                        (levelConfig != null && levelConfig.getBoolean("no-death-penalty", false));
-                if (noDeathPenalty) {
-                    // 避免其他死亡惩罚（例如饥饿值减少、耐久度减少等）
-                    // 这里可以添加相关实现
-                }
-                
-                // 保留物品
-                event.setKeepInventory(true);
-                event.getDrops().clear();
-                
-                // 播放粒子效果
-                String particleEffect = playerData.getParticleEffect();
-                if (particleEffect == null && levelConfig != null) {
-                    particleEffect = levelConfig.getString("particle-effect");
-                }
-                
-                if (particleEffect != null && plugin.areParticlesEnabled(uuid)) {
-                    try {
-                        final String effectName = particleEffect;
-                        Bukkit.getScheduler().runTaskLater(plugin, () -> {
-                            try {
-                                Particle particle = Particle.valueOf(effectName.toUpperCase());
-                                player.getWorld().spawnParticle(particle, player.getLocation().add(0, 1, 0), 
-                                                               50, 0.5, 0.5, 0.5, 0.1);
-                            } catch (Exception ex) {
-                                plugin.getColorLogger().error("无效的粒子效果类型: " + effectName);
-                            }
-                        }, 5L);
-                    } catch (Exception e) {
-                        plugin.getColorLogger().error("显示粒子效果出错: " + e.getMessage());
-                    }
+            // 避免死亡惩罚
+            if (snapshot.isNoDeathPenalty()) {
+                // 避免其他死亡惩罚（例如饥饿值减少、耐久度减少等）
+                // 这里可以添加相关实现
+            }
+            
+            // 保留物品
+            event.setKeepInventory(true);
+            event.getDrops().clear();
+            
+            // 播放粒子效果
+            String particleEffect = snapshot.getParticleEffect();
+            if (particleEffect != null && snapshot.isParticlesEnabled()) {
+                try {
+                    final String effectName = particleEffect;
+                    Bukkit.getScheduler().runTaskLater(plugin, () -> {
+                        try {
+                            Particle particle = Particle.valueOf(effectName.toUpperCase());
+                            player.getWorld().spawnParticle(particle, player.getLocation().add(0, 1, 0), 
+                                                           50, 0.5, 0.5, 0.5, 0.1);
+                        } catch (Exception ex) {
+                            plugin.getColorLogger().error("无效的粒子效果类型: " + effectName);
+                        }
+                    }, 5L);
+                } catch (Exception e) {
+                    plugin.getColorLogger().error("显示粒子效果出错: " + e.getMessage());
                 }
+            }
+            
+            // 播放声音
+            PluginSettings settings = plugin.getSettings();
+            if (settings.isProtectionSoundEnabled()) {
+                String soundName = settings.getProtectionSound();
+                float volume = settings.getProtectionSoundVolume();
+                float pitch = settings.getProtectionSoundPitch();
                 
-                // 播放声音
-                if (plugin.getConfig().getBoolean("sounds.protection-used.enabled", true)) {
-                    String soundName = plugin.getConfig().getString("sounds.protection-used.sound", "ENTITY_TOTEM_USE");
-                    float volume = (float) plugin.getConfig().getDouble("sounds.protection-used.volume", 1.0);
-                    float pitch = (float) plugin.getConfig().getDouble("sounds.protection-used.pitch", 1.0);
-                    
-                    try {
-                        Sound sound = Sound.valueOf(soundName.toUpperCase());
-                        player.getWorld().playSound(player.getLocation(), sound, volume, pitch);
-                    } catch (Exception e) {
-                        plugin.getColorLogger().error("无效的声音类型: " + soundName);
-                    }
+                try {
+                    Sound sound = Sound.valueOf(soundName.toUpperCase());
+                    player.getWorld().playSound(player.getLocation(), sound, volume, pitch);
+                } catch (Exception e) {
+                    plugin.getColorLogger().error("无效的声音类型: " + soundName);
                 }
-                
-                // 发送消息
-                Bukkit.getScheduler().runTaskLater(plugin, () -> {
-                    player.sendMessage(plugin.getMessages().getMessage("protection.activated"));
-                }, 20L);
-                
-                // 即时保存玩家数据，防止出现意外
-                plugin.savePlayerData(uuid);
             }
+            
+            // 发送消息
+            Bukkit.getScheduler().runTaskLater(plugin, () -> {
+                player.sendMessage(plugin.getMessages().getMessage("protection.activated"));
+            }, 20L);
+            
+            // 即时保存玩家数据，防止出现意外
+            plugin.savePlayerData(uuid);
         }
     }
     
@@ -606,8 +574,8 @@ public class DeathListener implements Listener {
         }
         
         try {
-            String particleType = plugin.getConfig().getString("particles.type", "TOTEM");
-            int count = plugin.getConfig().getInt("particles.count", 50);
+            String particleType = plugin.getSettings().getParticleType();
+            int count = plugin.getSettings().getParticleCount();
             
             try {
                 Particle particle = Particle.valueOf(particleType);
@@ -628,7 +596,7 @@ public class DeathListener implements Listener {
      */
     @SuppressWarnings("unused")
     private void broadcastDeathProtection(Player player) {
-        String broadcastRange = plugin.getConfig().getString("broadcast-range", "world");
+        String broadcastRange = plugin.getSettings().getBroadcastRange();
         Messages messages = plugin.getMessages();
         String message = messages.getMessage("death.broadcast", "player", player.getName());
         
@@ -656,5 +624,11 @@ public class DeathListener implements Listener {
     // 在插件禁用时停止所有任务
     public void onDisable() {
         stopPeriodicBackupTask();
+        // 等待排队的备份写入日志后再关闭日志
+        pipeline.shutdown(5000);
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
     }
 } 
\ No newline at end of file
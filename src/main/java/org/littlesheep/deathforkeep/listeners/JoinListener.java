@@ -1,46 +1,54 @@
 /*
   加入监听器
-  处理玩家加入事件
+  处理玩家加入和退出事件，并在登录前预加载玩家数据
  */
 package org.littlesheep.deathforkeep.listeners;
 
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.littlesheep.deathforkeep.DeathForKeep;
 import org.littlesheep.deathforkeep.data.PlayerData;
 import org.littlesheep.deathforkeep.utils.Messages;
+import org.littlesheep.deathforkeep.utils.TimeUtils;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.UUID;
 
 public class JoinListener implements Listener {
 
     private final DeathForKeep plugin;
-    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 
     public JoinListener(DeathForKeep plugin) {
         this.plugin = plugin;
     }
 
-    @EventHandler
+    // 登录前在异步线程中加载数据，进入服务器后不再需要读取数据库
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onAsyncPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            return;
+        }
+        plugin.getPlayerDataCache().preload(event.getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.LOWEST)
     public void onPlayerJoin(PlayerJoinEvent event) {
         Player player = event.getPlayer();
         UUID playerUUID = player.getUniqueId();
-        PlayerData data = plugin.getPlayerDataMap().get(playerUUID);
+        plugin.getPlayerDataCache().setOnline(playerUUID);
+        plugin.getNameCache().update(player);
+        PlayerData data = plugin.getPlayerData(playerUUID);
         Messages messages = plugin.getMessages();
         
         if (data != null) {
-            long expiryTime = data.getExpiryTime();
-            long currentTime = System.currentTimeMillis() / 1000;
-            
-            if (expiryTime > currentTime) {
+            if (data.isActive()) {
                 // 保护仍然有效
-                Date date = new Date(expiryTime * 1000);
                 player.sendMessage(messages.getMessage("join.protection-active", 
-                        "time", dateFormat.format(date)));
+                        "time", TimeUtils.formatDateTime(data.getExpiryTime())));
             } else {
                 // 保护已过期
                 player.sendMessage(messages.getMessage("join.protection-expired"));
@@ -48,12 +56,22 @@ public class JoinListener implements Listener {
         }
         
         // 检查是否有其他玩家与此玩家共享保护
-        for (PlayerData otherData : plugin.getPlayerDataMap().values()) {
-            if (playerUUID.equals(otherData.getSharedWith()) && otherData.isActive()) {
+        for (PlayerData otherData : plugin.getPlayerDataCache().findSharingWith(playerUUID)) {
+            if (otherData.isActive()) {
                 player.sendMessage(messages.getMessage("join.shared-protection", 
-                        "player", plugin.getServer().getOfflinePlayer(otherData.getUuid()).getName()));
+                        "player", plugin.getNameCache().getName(otherData.getUuid(), "未知玩家")));
                 break;
             }
         }
+        
+        // 离线期间进入提醒区间的玩家不会被定时检查提醒，进入时补发一次
+        if (plugin.getReminderTask() != null) {
+            plugin.getReminderTask().remindOnJoin(player);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        plugin.getPlayerDataCache().setOffline(event.getPlayer().getUniqueId());
     }
-} 
\ No newline at end of file
+}
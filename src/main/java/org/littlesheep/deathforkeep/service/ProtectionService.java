@@ -5,21 +5,113 @@
 package org.littlesheep.deathforkeep.service;
 
 import org.littlesheep.deathforkeep.DeathForKeep;
-import org.littlesheep.deathforkeep.data.DatabaseManager;
+import org.littlesheep.deathforkeep.data.ExpiryIndex;
 import org.littlesheep.deathforkeep.data.PlayerData;
+import org.littlesheep.deathforkeep.data.PlayerDataCache;
+import org.littlesheep.deathforkeep.data.PlayerDataWriter;
+import org.littlesheep.deathforkeep.data.ProtectionSnapshot;
+import org.littlesheep.deathforkeep.data.ShareIndex;
+import org.littlesheep.deathforkeep.utils.ProtectionClock;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
 public class ProtectionService {
     private final DeathForKeep plugin;
-    private final DatabaseManager databaseManager;
-    private final Map<UUID, PlayerData> playerDataMap;
+    private final PlayerDataWriter playerDataWriter;
+    private final PlayerDataCache playerDataCache;
+    private final ExpiryIndex expiryIndex;
+    private final ShareIndex shareIndex;
+    // 配置版本，重新加载配置后所有保护快照失效
+    private volatile int generation;
 
-    public ProtectionService(DeathForKeep plugin, DatabaseManager databaseManager, Map<UUID, PlayerData> playerDataMap) {
+    public ProtectionService(DeathForKeep plugin, PlayerDataWriter playerDataWriter, PlayerDataCache playerDataCache,
+                             ExpiryIndex expiryIndex, ShareIndex shareIndex) {
         this.plugin = plugin;
-        this.databaseManager = databaseManager;
-        this.playerDataMap = playerDataMap;
+        this.playerDataWriter = playerDataWriter;
+        this.playerDataCache = playerDataCache;
+        this.expiryIndex = expiryIndex;
+        this.shareIndex = shareIndex;
+    }
+
+    /**
+     * 修改玩家的到期时间并更新到期索引
+     * 所有对到期时间的修改都应通过此方法，以保证到期提醒准确触发
+     * @param data 玩家数据
+     * @param expiryTime 新的到期时间（毫秒）
+     */
+    public void setExpiryTime(PlayerData data, long expiryTime) {
+        data.setExpiryTime(expiryTime);
+        expiryIndex.update(data.getUuid(), expiryTime);
+    }
+
+    public ExpiryIndex getExpiryIndex() {
+        return expiryIndex;
+    }
+
+    public ShareIndex getShareIndex() {
+        return shareIndex;
+    }
+
+    /**
+     * @return 每个玩家最多可以共享保护的人数，小于等于0表示不限制
+     */
+    public int getMaxShareCount() {
+        return plugin.getSettings().getMaxShareCount();
+    }
+
+    /**
+     * 检查玩家是否已达到共享人数上限
+     * @param data 玩家数据
+     * @return 是否已达到上限
+     */
+    public boolean isShareLimitReached(PlayerData data) {
+        int max = getMaxShareCount();
+        return max > 0 && data.getShareCount() >= max;
+    }
+
+    /**
+     * 与目标玩家共享保护并更新共享索引
+     * @param ownerUUID 保护拥有者UUID
+     * @param targetUUID 目标玩家UUID
+     * @return 是否成功，没有数据或已达到共享上限时返回false
+     */
+    public boolean shareProtection(UUID ownerUUID, UUID targetUUID) {
+        PlayerData data = playerDataCache.get(ownerUUID);
+        if (data == null) return false;
+
+        synchronized (data) {
+            if (!data.isSharedWith(targetUUID)) {
+                if (isShareLimitReached(data)) return false;
+                data.addSharedWith(targetUUID);
+            }
+            shareIndex.update(ownerUUID, data.getSharedWithAll());
+        }
+
+        // 加入写入队列，由写入线程保存到数据库
+        playerDataWriter.markDirty(data);
+        return true;
+    }
+
+    /**
+     * 取消与目标玩家的共享
+     * @param ownerUUID 保护拥有者UUID
+     * @param targetUUID 目标玩家UUID
+     * @return 是否存在该共享
+     */
+    public boolean unshareProtection(UUID ownerUUID, UUID targetUUID) {
+        PlayerData data = playerDataCache.get(ownerUUID);
+        if (data == null) return false;
+
+        synchronized (data) {
+            if (!data.removeSharedWith(targetUUID)) return false;
+            shareIndex.update(ownerUUID, data.getSharedWithAll());
+        }
+
+        playerDataWriter.markDirty(data);
+        return true;
     }
 
     /**
@@ -28,13 +120,44 @@ public class ProtectionService {
      * @return 是否有效保护
      */
     public boolean hasActiveProtection(UUID uuid) {
-        PlayerData data = playerDataMap.get(uuid);
-        if (data == null) return false;
+        PlayerData data = playerDataCache.get(uuid);
+        return data != null && data.isActive();
+    }
+    
+    /**
+     * 配置重新加载后调用，保护快照会在下次读取时重新生成
+     */
+    public void reloadSettings() {
+        generation++;
+    }
+    
+    /**
+     * @return 配置版本，每次重新加载配置后递增
+     */
+    public int getGeneration() {
+        return generation;
+    }
+    
+    /**
+     * 获取玩家的保护快照，死亡处理只读取快照
+     * 快照只在玩家数据修改或配置重新加载后重新生成
+     * @param uuid 玩家UUID
+     * @return 保护快照，没有数据时返回ProtectionSnapshot.NONE
+     */
+    public ProtectionSnapshot getSnapshot(UUID uuid) {
+        PlayerData data = playerDataCache.get(uuid);
+        if (data == null) return ProtectionSnapshot.NONE;
         
-        long expiryTime = data.getExpiryTime();
-        return expiryTime > System.currentTimeMillis();
+        ProtectionSnapshot snapshot = data.getSnapshot();
+        int currentGeneration = generation;
+        if (snapshot == null || !snapshot.isCurrent(data, currentGeneration)) {
+            snapshot = ProtectionSnapshot.of(data,
+                    plugin.getSettings().getLevel(data.getProtectionLevel()), currentGeneration);
+            data.setSnapshot(snapshot);
+        }
+        return snapshot;
     }
-
+    
     /**
      * 为玩家添加保护天数
      * @param uuid 玩家UUID
@@ -42,32 +165,58 @@ public class ProtectionService {
      * @return 是否成功
      */
     public boolean addProtectionDays(UUID uuid, int days) {
-        if (days <= 0) return false;
+        PlayerData data = applyProtectionDays(uuid, days);
+        if (data == null) return false;
+        
+        // 加入写入队列，由写入线程保存到数据库
+        playerDataWriter.markDirty(data);
+        
+        return true;
+    }
+    
+    /**
+     * 批量为玩家添加保护天数，所有修改在一个数据库事务中保存
+     * @param playerDays 玩家UUID与天数
+     * @return 成功添加的玩家数量
+     */
+    public int addProtectionDays(Map<UUID, Integer> playerDays) {
+        List<PlayerData> changed = new ArrayList<>();
+        for (Map.Entry<UUID, Integer> entry : playerDays.entrySet()) {
+            PlayerData data = applyProtectionDays(entry.getKey(), entry.getValue());
+            if (data != null) {
+                changed.add(data);
+            }
+        }
+        
+        playerDataWriter.saveAll(changed);
+        return changed.size();
+    }
+    
+    /**
+     * 修改内存中的保护时间，不保存到数据库
+     * @return 修改后的玩家数据，天数无效时返回null
+     */
+    private PlayerData applyProtectionDays(UUID uuid, int days) {
+        if (days <= 0) return null;
         
-        PlayerData data = playerDataMap.get(uuid);
-        long currentTime = System.currentTimeMillis();
+        PlayerData data = playerDataCache.get(uuid);
+        long currentTime = ProtectionClock.now();
         long expiryTime;
-        boolean particlesEnabled = true;
         
         if (data == null) {
             // 新建数据
             expiryTime = currentTime + (days * 24L * 60L * 60L * 1000L);
-            data = new PlayerData(uuid, expiryTime, particlesEnabled, null);
+            data = new PlayerData(uuid, expiryTime, null);
         } else {
-            // 获取当前设置
-            particlesEnabled = data.isParticlesEnabled();
             // 如果已经有保护，延长时间，否则从当前时间开始计算
             expiryTime = Math.max(data.getExpiryTime(), currentTime) + (days * 24L * 60L * 60L * 1000L);
-            data.setExpiryTime(expiryTime);
+            setExpiryTime(data, expiryTime);
         }
         
         // 更新数据
-        playerDataMap.put(uuid, data);
+        playerDataCache.put(data);
         
-        // 异步保存到数据库
-        databaseManager.savePlayerDataAsync(uuid, expiryTime, particlesEnabled, data.getSharedWith());
-        
-        return true;
+        return data;
     }
     
     /**
@@ -76,30 +225,46 @@ public class ProtectionService {
      * @return 是否成功
      */
     public boolean removeProtection(UUID uuid) {
-        if (!playerDataMap.containsKey(uuid)) return false;
+        PlayerData data = playerDataCache.get(uuid);
+        if (data == null) return false;
         
-        PlayerData data = playerDataMap.get(uuid);
-        data.setExpiryTime(0); // 设置为过期
+        setExpiryTime(data, 0); // 设置为过期
         
-        // 异步保存到数据库
-        databaseManager.savePlayerDataAsync(uuid, 0, data.isParticlesEnabled(), data.getSharedWith());
+        // 加入写入队列，由写入线程保存到数据库
+        playerDataWriter.markDirty(data);
         
         return true;
     }
     
+    /**
+     * 批量移除玩家的保护，所有修改在一个数据库事务中保存
+     * @param uuids 玩家UUID
+     * @return 成功移除的玩家数量
+     */
+    public int removeProtection(Iterable<UUID> uuids) {
+        List<PlayerData> changed = new ArrayList<>();
+        for (UUID uuid : uuids) {
+            PlayerData data = playerDataCache.get(uuid);
+            if (data != null) {
+                setExpiryTime(data, 0); // 设置为过期
+                changed.add(data);
+            }
+        }
+        
+        playerDataWriter.saveAll(changed);
+        return changed.size();
+    }
+    
     /**
      * 获取玩家剩余保护时间（毫秒）
      * @param uuid 玩家UUID
      * @return 剩余时间，无保护则返回0
      */
     public long getProtectionTimeLeft(UUID uuid) {
-        PlayerData data = playerDataMap.get(uuid);
+        PlayerData data = playerDataCache.get(uuid);
         if (data == null) return 0;
         
-        long expiryTime = data.getExpiryTime();
-        long currentTime = System.currentTimeMillis();
-        
-        return Math.max(0, expiryTime - currentTime);
+        return ProtectionClock.remainingMillis(data.getExpiryTime());
     }
     
     /**
@@ -108,16 +273,17 @@ public class ProtectionService {
      * @param enabled 是否启用
      */
     public void setParticlesEnabled(UUID uuid, boolean enabled) {
-        PlayerData data = playerDataMap.get(uuid);
+        PlayerData data = playerDataCache.get(uuid);
         if (data == null) {
-            data = new PlayerData(uuid, 0, enabled, null);
-            playerDataMap.put(uuid, data);
+            data = new PlayerData(uuid, 0, null);
+            data.setParticlesEnabled(enabled);
+            playerDataCache.put(data);
         } else {
             data.setParticlesEnabled(enabled);
         }
         
-        // 异步保存到数据库
-        databaseManager.updateParticlesEnabled(uuid, enabled);
+        // 加入写入队列，由写入线程保存到数据库
+        playerDataWriter.markDirty(data);
     }
     
     /**
@@ -126,10 +292,10 @@ public class ProtectionService {
      * @return 是否启用
      */
     public boolean isParticlesEnabled(UUID uuid) {
-        PlayerData data = playerDataMap.get(uuid);
+        PlayerData data = playerDataCache.get(uuid);
         if (data == null) {
             // 默认启用
-            return plugin.getConfig().getBoolean("particles.enabled-by-default", true);
+            return plugin.getSettings().isParticlesByDefault();
         }
         
         return data.isParticlesEnabled();
@@ -8,32 +8,35 @@ import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.bukkit.scheduler.BukkitTask;
 import org.littlesheep.deathforkeep.DeathForKeep;
+import org.littlesheep.deathforkeep.data.ExpiryIndex;
 import org.littlesheep.deathforkeep.data.PlayerData;
 import org.littlesheep.deathforkeep.utils.Messages;
+import org.littlesheep.deathforkeep.utils.PluginSettings;
+import org.littlesheep.deathforkeep.utils.ProtectionClock;
 
-import java.util.Map;
 import java.util.UUID;
 
 public class ReminderTask {
 
     private final DeathForKeep plugin;
     private BukkitTask task;
-    
-    // 提醒时间（秒）
-    private static final long HOUR_REMINDER = 3600;
-    private static final long TEN_MINUTE_REMINDER = 600;
-    
-    // 已提醒的玩家记录
-    private final Map<UUID, Long> hourReminderSent = new java.util.HashMap<>();
-    private final Map<UUID, Long> tenMinuteReminderSent = new java.util.HashMap<>();
+
+    // 提醒时间（毫秒）
+    private static final long HOUR_REMINDER = 3600000L;
+    private static final long TEN_MINUTE_REMINDER = 600000L;
+    private static final long EXPIRED_REMINDER = 0;
+
+    // 上次检查的时间，每次只处理在两次检查之间跨过提醒时间点的玩家
+    private long lastCheck;
 
     public ReminderTask(DeathForKeep plugin) {
         this.plugin = plugin;
     }
 
     public void startTask() {
-        // 每分钟检查一次
-        task = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, this::checkExpirations, 20L * 60L, 20L * 60L);
+        lastCheck = ProtectionClock.now();
+        // 每秒检查一次，只查询到期索引中跨过提醒时间点的玩家
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this::checkExpirations, 20L, 20L);
     }
 
     public void cancelTask() {
@@ -43,94 +46,141 @@ public class ReminderTask {
                 task = null;
                 plugin.getLogger().info("提醒任务已成功取消");
             }
-            // 清理资源
-            hourReminderSent.clear();
-            tenMinuteReminderSent.clear();
         } catch (Exception e) {
             plugin.getLogger().severe("取消提醒任务时出错: " + e.getMessage());
         }
     }
 
     private void checkExpirations() {
-        long currentTime = System.currentTimeMillis() / 1000;
-        Map<UUID, PlayerData> playerDataMap = plugin.getPlayerDataMap();
-        Messages messages = plugin.getMessages();
+        long currentTime = ProtectionClock.now();
+        long previousCheck = lastCheck;
+        if (currentTime <= previousCheck) {
+            return;
+        }
+        lastCheck = currentTime;
+
+        ExpiryIndex expiryIndex = plugin.getProtectionService().getExpiryIndex();
+
+        remind(expiryIndex, previousCheck, currentTime, HOUR_REMINDER, "reminder.hour", "reminder.shared.hour", 0);
+        remind(expiryIndex, previousCheck, currentTime, TEN_MINUTE_REMINDER,
+                "reminder.ten-minutes", "reminder.shared.ten-minutes", 0);
+        remind(expiryIndex, previousCheck, currentTime, EXPIRED_REMINDER,
+                "reminder.expired", "reminder.shared.expired", 0);
 
-        for (Map.Entry<UUID, PlayerData> entry : playerDataMap.entrySet()) {
-            UUID playerUUID = entry.getKey();
-            PlayerData data = entry.getValue();
-            
-            if (!data.isActive()) {
+        // BossBar 到期提醒
+        PluginSettings settings = plugin.getSettings();
+        if (settings.isExpirationReminder()) {
+            for (int hours : settings.getExpirationReminderIntervals()) {
+                if (hours > 0) {
+                    remind(expiryIndex, previousCheck, currentTime, hours * 3600000L, null, null, hours);
+                }
+            }
+        }
+    }
+
+    /**
+     * 提醒在 (from, to] 之间跨过“到期前 offset 毫秒”时间点的玩家
+     *
+     * @param messageKey 聊天提醒消息，为null时只显示BossBar
+     * @param bossBarHours 大于0时显示BossBar提醒
+     */
+    private void remind(ExpiryIndex expiryIndex, long from, long to, long offset,
+                        String messageKey, String sharedMessageKey, int bossBarHours) {
+        for (UUID playerUUID : expiryIndex.findExpiringBetween(from + offset, to + offset)) {
+            PlayerData data = plugin.getPlayerDataCache().getIfLoaded(playerUUID);
+            if (data == null) {
                 continue;
             }
-            
-            long expiryTime = data.getExpiryTime();
-            long timeLeft = expiryTime - currentTime;
-            
+
+            // 到期提醒只发给真正过期的玩家，其余提醒只发给仍有保护的玩家
+            if (data.isActive() == (offset == EXPIRED_REMINDER)) {
+                continue;
+            }
+
             Player player = Bukkit.getPlayer(playerUUID);
             if (player != null && player.isOnline()) {
-                // 1小时提醒
-                if (timeLeft <= HOUR_REMINDER && timeLeft > TEN_MINUTE_REMINDER) {
-                    Long lastReminder = hourReminderSent.get(playerUUID);
-                    if (lastReminder == null || currentTime - lastReminder > HOUR_REMINDER) {
-                        player.sendMessage(messages.getMessage("reminder.hour"));
-                        hourReminderSent.put(playerUUID, currentTime);
-                    }
-                }
-                
-                // 10分钟提醒
-                if (timeLeft <= TEN_MINUTE_REMINDER && timeLeft > 0) {
-                    Long lastReminder = tenMinuteReminderSent.get(playerUUID);
-                    if (lastReminder == null || currentTime - lastReminder > TEN_MINUTE_REMINDER) {
-                        player.sendMessage(messages.getMessage("reminder.ten-minutes"));
-                        tenMinuteReminderSent.put(playerUUID, currentTime);
-                    }
-                }
-                
-                // 已过期提醒
-                if (timeLeft <= 0) {
-                    player.sendMessage(messages.getMessage("reminder.expired"));
-                    // 清除提醒记录
-                    hourReminderSent.remove(playerUUID);
-                    tenMinuteReminderSent.remove(playerUUID);
-                }
+                notify(player, messageKey, null, bossBarHours);
             }
-            
+
             // 检查共享保护
-            UUID sharedWith = data.getSharedWith();
-            if (sharedWith != null) {
+            for (UUID sharedWith : data.getSharedWithAll()) {
                 Player sharedPlayer = Bukkit.getPlayer(sharedWith);
                 if (sharedPlayer != null && sharedPlayer.isOnline()) {
-                    // 1小时提醒
-                    if (timeLeft <= HOUR_REMINDER && timeLeft > TEN_MINUTE_REMINDER) {
-                        Long lastReminder = hourReminderSent.get(sharedWith);
-                        if (lastReminder == null || currentTime - lastReminder > HOUR_REMINDER) {
-                            sharedPlayer.sendMessage(messages.getMessage("reminder.shared.hour", 
-                                    "player", Bukkit.getOfflinePlayer(playerUUID).getName()));
-                            hourReminderSent.put(sharedWith, currentTime);
-                        }
-                    }
-                    
-                    // 10分钟提醒
-                    if (timeLeft <= TEN_MINUTE_REMINDER && timeLeft > 0) {
-                        Long lastReminder = tenMinuteReminderSent.get(sharedWith);
-                        if (lastReminder == null || currentTime - lastReminder > TEN_MINUTE_REMINDER) {
-                            sharedPlayer.sendMessage(messages.getMessage("reminder.shared.ten-minutes", 
-                                    "player", Bukkit.getOfflinePlayer(playerUUID).getName()));
-                            tenMinuteReminderSent.put(sharedWith, currentTime);
-                        }
-                    }
-                    
-                    // 已过期提醒
-                    if (timeLeft <= 0) {
-                        sharedPlayer.sendMessage(messages.getMessage("reminder.shared.expired", 
-                                "player", Bukkit.getOfflinePlayer(playerUUID).getName()));
-                        // 清除提醒记录
-                        hourReminderSent.remove(sharedWith);
-                        tenMinuteReminderSent.remove(sharedWith);
-                    }
+                    String sharerName = plugin.getNameCache().getName(playerUUID, playerUUID.toString());
+                    notify(sharedPlayer, sharedMessageKey, sharerName, bossBarHours);
                 }
             }
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * 玩家进入服务器时补发提醒
+     * 定时检查只提醒在线期间跨过提醒时间点的玩家，进入服务器时已在提醒区间内的玩家按所处的区间提醒一次
+     */
+    public void remindOnJoin(Player player) {
+        UUID playerUUID = player.getUniqueId();
+        ExpiryIndex expiryIndex = plugin.getProtectionService().getExpiryIndex();
+        long currentTime = ProtectionClock.now();
+
+        PlayerData data = plugin.getPlayerDataCache().getIfLoaded(playerUUID);
+        Long expiryTime = expiryIndex.getExpiryTime(playerUUID);
+        if (data != null && data.isActive() && expiryTime != null) {
+            catchUp(player, expiryTime - currentTime, "reminder.hour", "reminder.ten-minutes", null);
+        }
+
+        // 与此玩家共享保护的玩家
+        for (PlayerData sharer : plugin.getPlayerDataCache().findSharingWith(playerUUID)) {
+            Long sharerExpiry = expiryIndex.getExpiryTime(sharer.getUuid());
+            if (sharer.isActive() && sharerExpiry != null) {
+                String sharerName = plugin.getNameCache().getName(sharer.getUuid(), sharer.getUuid().toString());
+                catchUp(player, sharerExpiry - currentTime, "reminder.shared.hour", "reminder.shared.ten-minutes", sharerName);
+            }
+        }
+    }
+
+    private void catchUp(Player player, long remaining, String hourKey, String tenMinuteKey, String sharerName) {
+        if (remaining <= 0) {
+            return;
+        }
+
+        if (remaining <= TEN_MINUTE_REMINDER) {
+            notify(player, tenMinuteKey, sharerName, 0);
+        } else if (remaining <= HOUR_REMINDER) {
+            notify(player, hourKey, sharerName, 0);
+        }
+
+        // BossBar 只显示包含剩余时间的最小提醒区间
+        PluginSettings settings = plugin.getSettings();
+        if (settings.isExpirationReminder()) {
+            int window = 0;
+            for (int hours : settings.getExpirationReminderIntervals()) {
+                if (hours > 0 && remaining <= hours * 3600000L && (window == 0 || hours < window)) {
+                    window = hours;
+                }
+            }
+            if (window > 0) {
+                notify(player, null, sharerName, window);
+            }
+        }
+    }
+
+    private void notify(Player player, String messageKey, String sharerName, int bossBarHours) {
+        Messages messages = plugin.getMessages();
+
+        if (messageKey != null) {
+            if (sharerName != null) {
+                player.sendMessage(messages.getMessage(messageKey, "player", sharerName));
+            } else {
+                player.sendMessage(messages.getMessage(messageKey));
+            }
+        }
+
+        if (bossBarHours > 0) {
+            if (sharerName != null) {
+                plugin.getBossBarManager().showSharedExpirationReminder(player, sharerName, bossBarHours);
+            } else {
+                plugin.getBossBarManager().showExpirationReminder(player, bossBarHours);
+            }
+        }
+    }
+}
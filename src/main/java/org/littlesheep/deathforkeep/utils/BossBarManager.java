@@ -62,22 +62,19 @@ public class BossBarManager {
      * 显示获取保护时的BossBar
      * 
      * @param player 玩家
-     * @param expiryTime 保护到期时间
+     * @param expiryTime 保护到期时间（毫秒）
      */
     public void showProtectionGainedMessage(Player player, long expiryTime) {
-        if (!plugin.getConfig().getBoolean("bossbar.enabled", true) || 
-            !plugin.getConfig().getBoolean("bossbar.protection-gained.enabled", true)) {
+        PluginSettings settings = plugin.getSettings();
+        if (!settings.isProtectionGainedBar()) {
             return;
         }
         
         Messages messages = plugin.getMessages();
-        String formattedTime = TimeUtils.formatDateTime(expiryTime * 1000);
+        String formattedTime = TimeUtils.formatDateTime(expiryTime);
         String message = messages.getMessage("bossbar.protection-gained", "time", formattedTime);
         
-        BarColor color = getBarColor("bossbar.protection-gained.color", BarColor.GREEN);
-        int duration = plugin.getConfig().getInt("bossbar.protection-gained.duration", 10);
-        
-        showBossBar(player, message, color, duration);
+        showBossBar(player, message, settings.getProtectionGainedBarColor(), settings.getProtectionGainedBarDuration());
     }
     
     /**
@@ -85,64 +82,61 @@ public class BossBarManager {
      * 
      * @param player 接收共享的玩家
      * @param sharerName 共享者名称
-     * @param expiryTime 保护到期时间
+     * @param expiryTime 保护到期时间（毫秒）
      */
     public void showProtectionSharedMessage(Player player, String sharerName, long expiryTime) {
-        if (!plugin.getConfig().getBoolean("bossbar.enabled", true) || 
-            !plugin.getConfig().getBoolean("bossbar.protection-gained.enabled", true)) {
+        PluginSettings settings = plugin.getSettings();
+        if (!settings.isProtectionGainedBar()) {
             return;
         }
         
         Messages messages = plugin.getMessages();
-        String formattedTime = TimeUtils.formatDateTime(expiryTime * 1000);
+        String formattedTime = TimeUtils.formatDateTime(expiryTime);
         String message = messages.getMessage("bossbar.protection-shared", 
                                              "player", sharerName,
                                              "time", formattedTime);
         
-        BarColor color = getBarColor("bossbar.protection-gained.color", BarColor.GREEN);
-        int duration = plugin.getConfig().getInt("bossbar.protection-gained.duration", 10);
-        
-        showBossBar(player, message, color, duration);
+        showBossBar(player, message, settings.getProtectionGainedBarColor(), settings.getProtectionGainedBarDuration());
     }
     
     public void showHourReminder(Player player) {
-        if (!plugin.getConfig().getBoolean("bossbar.enabled", true)) {
+        if (!plugin.getSettings().isBossBarEnabled()) {
             return;
         }
         
         Messages messages = plugin.getMessages();
         String message = messages.getMessage("bossbar.hour");
-        BarColor color = getBarColor("bossbar.hour-color", BarColor.YELLOW);
+        BarColor color = plugin.getSettings().getHourBarColor();
         
         showBossBar(player, message, color, HOUR_REMINDER_DURATION);
     }
     
     public void showTenMinuteReminder(Player player) {
-        if (!plugin.getConfig().getBoolean("bossbar.enabled", true)) {
+        if (!plugin.getSettings().isBossBarEnabled()) {
             return;
         }
         
         Messages messages = plugin.getMessages();
         String message = messages.getMessage("bossbar.ten-minutes");
-        BarColor color = getBarColor("bossbar.ten-minute-color", BarColor.RED);
+        BarColor color = plugin.getSettings().getTenMinuteBarColor();
         
         showBossBar(player, message, color, TEN_MINUTE_REMINDER_DURATION);
     }
     
     public void showExpiryReminder(Player player) {
-        if (!plugin.getConfig().getBoolean("bossbar.enabled", true)) {
+        if (!plugin.getSettings().isBossBarEnabled()) {
             return;
         }
         
         Messages messages = plugin.getMessages();
         String message = messages.getMessage("bossbar.expired");
-        BarColor color = getBarColor("bossbar.expiry-color", BarColor.RED);
+        BarColor color = plugin.getSettings().getExpiryBarColor();
         
         showBossBar(player, message, color, EXPIRY_REMINDER_DURATION);
     }
     
     public void showSharedHourReminder(Player player, String sharer) {
-        if (!plugin.getConfig().getBoolean("bossbar.enabled", true)) {
+        if (!plugin.getSettings().isBossBarEnabled()) {
             return;
         }
         
@@ -153,7 +147,7 @@ public class BossBarManager {
     }
     
     public void showSharedTenMinuteReminder(Player player, String sharer) {
-        if (!plugin.getConfig().getBoolean("bossbar.enabled", true)) {
+        if (!plugin.getSettings().isBossBarEnabled()) {
             return;
         }
         
@@ -164,7 +158,7 @@ public class BossBarManager {
     }
     
     public void showSharedExpiryReminder(Player player, String sharer) {
-        if (!plugin.getConfig().getBoolean("bossbar.enabled", true)) {
+        if (!plugin.getSettings().isBossBarEnabled()) {
             return;
         }
         
@@ -174,18 +168,35 @@ public class BossBarManager {
         showBossBar(player, message, BarColor.RED, EXPIRY_REMINDER_DURATION);
     }
     
-    private BarColor getBarColor(String configPath, BarColor defaultColor) {
-        String colorName = plugin.getConfig().getString(configPath);
-        if (colorName == null) {
-            return defaultColor;
+    /**
+     * 显示保护即将到期的BossBar，时间点由bossbar.expiration-reminder.intervals配置
+     * 
+     * @param player 玩家
+     * @param hours 距离到期的小时数
+     */
+    public void showExpirationReminder(Player player, int hours) {
+        if (!plugin.getSettings().isExpirationReminder()) {
+            return;
         }
         
-        try {
-            return BarColor.valueOf(colorName.toUpperCase());
-        } catch (IllegalArgumentException e) {
-            plugin.getLogger().warning("无效的 BossBar 颜色: " + colorName + "，使用默认值");
-            return defaultColor;
+        String message = plugin.getMessages().getMessage("bossbar.expiration-reminder", "hours", String.valueOf(hours));
+        showExpirationBossBar(player, message);
+    }
+    
+    public void showSharedExpirationReminder(Player player, String sharer, int hours) {
+        if (!plugin.getSettings().isExpirationReminder()) {
+            return;
         }
+        
+        String message = plugin.getMessages().getMessage("bossbar.shared-expiration-reminder", 
+                                                          "player", sharer,
+                                                          "hours", String.valueOf(hours));
+        showExpirationBossBar(player, message);
+    }
+    
+    private void showExpirationBossBar(Player player, String message) {
+        PluginSettings settings = plugin.getSettings();
+        showBossBar(player, message, settings.getExpirationReminderColor(), settings.getExpirationReminderDuration());
     }
     
     private void showBossBar(Player player, String message, BarColor color, long durationSeconds) {
@@ -0,0 +1,104 @@
+/*
+  消息模板
+  语言文件中的消息在加载时编译一次：颜色代码预先转换，%key% 占位符拆分为固定文本和占位符
+  渲染时按顺序拼接，不再逐个占位符替换整条消息
+ */
+package org.littlesheep.deathforkeep.utils;
+
+import org.bukkit.ChatColor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+final class MessageTemplate {
+
+    private final String text;
+    // literals比names多一个，依次为 文本0 占位符0 文本1 ... 文本n
+    private final String[] literals;
+    private final String[] names;
+
+    private MessageTemplate(String text, String[] literals, String[] names) {
+        this.text = text;
+        this.literals = literals;
+        this.names = names;
+    }
+
+    /**
+     * 编译消息，占位符名称只能包含字母、数字、下划线、短横线和点，其他 % 按普通文本处理
+     */
+    static MessageTemplate compile(String message) {
+        String text = ChatColor.translateAlternateColorCodes('&', message);
+        List<String> literals = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+
+        int start = 0;
+        int index = text.indexOf('%');
+        while (index >= 0) {
+            int end = text.indexOf('%', index + 1);
+            if (end < 0) {
+                break;
+            }
+            if (end > index + 1 && isName(text, index + 1, end)) {
+                literals.add(text.substring(start, index));
+                names.add(text.substring(index + 1, end));
+                start = end + 1;
+                index = text.indexOf('%', start);
+            } else {
+                // 不是占位符，从后一个 % 继续查找
+                index = end;
+            }
+        }
+        literals.add(text.substring(start));
+
+        return new MessageTemplate(text, literals.toArray(new String[0]), names.toArray(new String[0]));
+    }
+
+    private static boolean isName(String text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '_' && c != '-' && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param replacements 占位符名称和值交替排列，没有提供值的占位符原样保留
+     * @param builder 用于拼接的缓冲区，调用前会被清空
+     */
+    String render(Object[] replacements, StringBuilder builder) {
+        if (names.length == 0 || replacements == null || replacements.length == 0) {
+            return text;
+        }
+
+        builder.setLength(0);
+        for (int i = 0; i < names.length; i++) {
+            builder.append(literals[i]);
+            Object value = find(names[i], replacements);
+            if (value != null) {
+                builder.append(value);
+            } else {
+                builder.append('%').append(names[i]).append('%');
+            }
+        }
+        builder.append(literals[names.length]);
+        return builder.toString();
+    }
+
+    private static Object find(String name, Object[] replacements) {
+        for (int i = 0; i + 1 < replacements.length; i += 2) {
+            if (replacements[i] != null && replacements[i + 1] != null && name.equals(replacements[i].toString())) {
+                return replacements[i + 1];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return 转换颜色后的完整消息，不替换占位符
+     */
+    String getText() {
+        return text;
+    }
+}
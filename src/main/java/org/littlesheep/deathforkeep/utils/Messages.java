@@ -5,6 +5,7 @@
 package org.littlesheep.deathforkeep.utils;
 
 import org.bukkit.ChatColor;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.littlesheep.deathforkeep.DeathForKeep;
@@ -13,16 +14,18 @@ import java.io.File;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Messages {
     
     private final DeathForKeep plugin;
-    private FileConfiguration langConfig;
-    private final Map<String, String> messageCache = new HashMap<>();
-    private String prefix;
+    // 聊天事件和异步任务也会读取消息，重新加载时整体替换
+    private volatile FileConfiguration langConfig;
+    private volatile Map<String, MessageTemplate> templates = new ConcurrentHashMap<>();
+    private volatile String prefix;
+    private static final ThreadLocal<StringBuilder> BUILDER = ThreadLocal.withInitial(() -> new StringBuilder(128));
     
     public Messages(DeathForKeep plugin) {
         this.plugin = plugin;
@@ -30,7 +33,6 @@ public class Messages {
     }
     
     public void loadLanguage() {
-        messageCache.clear();
         String language = plugin.getConfig().getString("language", "zh-CN");
         
         // 确保语言文件夹存在
@@ -50,19 +52,37 @@ public class Messages {
             langFile = new File(langFolder, "zh-CN.yml");
         }
         
-        langConfig = YamlConfiguration.loadConfiguration(langFile);
+        FileConfiguration loaded = YamlConfiguration.loadConfiguration(langFile);
         
         // 加载默认语言文件作为备用
         InputStreamReader defaultLangStream = new InputStreamReader(
                 plugin.getResource("lang/zh-CN.yml"), StandardCharsets.UTF_8);
         if (defaultLangStream != null) {
             YamlConfiguration defaultLang = YamlConfiguration.loadConfiguration(defaultLangStream);
-            langConfig.setDefaults(defaultLang);
+            loaded.setDefaults(defaultLang);
         }
         
+        // 预先编译所有消息，包括只存在于默认语言文件中的消息
+        Map<String, MessageTemplate> compiled = new ConcurrentHashMap<>();
+        compileAll(loaded.getDefaults(), loaded, compiled);
+        compileAll(loaded, loaded, compiled);
+        
         // 加载前缀
         prefix = ChatColor.translateAlternateColorCodes('&', 
-                langConfig.getString("general.prefix", "&6[DeathForKeep] &r"));
+                loaded.getString("general.prefix", "&6[DeathForKeep] &r"));
+        langConfig = loaded;
+        templates = compiled;
+    }
+    
+    private void compileAll(ConfigurationSection keys, FileConfiguration config, Map<String, MessageTemplate> compiled) {
+        if (keys == null) {
+            return;
+        }
+        for (String key : keys.getKeys(true)) {
+            if (keys.isString(key)) {
+                compiled.put(key, MessageTemplate.compile(config.getString(key)));
+            }
+        }
     }
     
     private void saveDefaultLanguageFile(String fileName) {
@@ -73,48 +93,32 @@ public class Messages {
     }
     
     public String getMessage(String key, Object... replacements) {
-        // 检查缓存
-        if (messageCache.containsKey(key)) {
-            return formatMessage(messageCache.get(key), replacements);
+        MessageTemplate template = templates.get(key);
+        if (template == null) {
+            template = templates.computeIfAbsent(key, this::compileMissing);
         }
         
-        // 从配置获取消息
+        if (replacements != null && replacements.length % 2 != 0) {
+            plugin.getLogger().warning("替换参数数量不正确: " + key);
+            return template.getText();
+        }
+        return template.render(replacements, BUILDER.get());
+    }
+    
+    // 预编译时不存在的键，例如列表或其他插件写入的键，只在第一次获取时查找
+    private MessageTemplate compileMissing(String key) {
         String message = langConfig.getString(key);
         if (message == null) {
             message = "Missing message: " + key;
             plugin.getLogger().warning("找不到语言键: " + key);
         }
-        
-        // 缓存消息
-        messageCache.put(key, message);
-        
-        return formatMessage(message, replacements);
+        return MessageTemplate.compile(message);
     }
     
     public String getMessageWithPrefix(String key, Object... replacements) {
         return prefix + getMessage(key, replacements);
     }
     
-    private String formatMessage(String message, Object... replacements) {
-        String formattedMessage = ChatColor.translateAlternateColorCodes('&', message);
-        
-        // 处理替换
-        if (replacements != null && replacements.length > 0) {
-            if (replacements.length % 2 == 0) {
-                for (int i = 0; i < replacements.length; i += 2) {
-                    if (replacements[i] != null && replacements[i + 1] != null) {
-                        formattedMessage = formattedMessage.replace(
-                                "%" + replacements[i] + "%", replacements[i + 1].toString());
-                    }
-                }
-            } else {
-                plugin.getLogger().warning("替换参数数量不正确: " + message);
-            }
-        }
-        
-        return formattedMessage;
-    }
-    
     public String getPrefix() {
         return prefix;
     }
@@ -67,8 +67,8 @@ public class ParticleUtils {
         if (player == null || !player.isOnline()) return;
         
         String effectId = player.getUniqueId().toString() + "-gain-" + System.currentTimeMillis();
-        String particleType = plugin.getConfig().getString("particles.on-protection-gained.type", "TOTEM");
-        int count = plugin.getConfig().getInt("particles.on-protection-gained.count", 200);
+        String particleType = plugin.getSettings().getProtectionGainedParticle();
+        int count = plugin.getSettings().getProtectionGainedParticleCount();
         
         try {
             Particle particle = Particle.valueOf(particleType);
@@ -0,0 +1,514 @@
+/*
+  插件设置
+  启动和重载时从配置文件读取一次的不可变设置，运行期间直接读取字段，不再查找配置
+  重载时整体替换，读取方始终看到同一份完整的设置
+ */
+package org.littlesheep.deathforkeep.utils;
+
+import org.bukkit.boss.BarColor;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+public final class PluginSettings {
+
+    /**
+     * 保护等级设置
+     */
+    public static final class Level {
+        private final double priceMultiplier;
+        private final boolean keepExp;
+        private final boolean noDeathPenalty;
+        private final String particleEffect;
+
+        private Level(ConfigurationSection section) {
+            this(section.getDouble("price-multiplier", 1.0),
+                    section.getBoolean("keep-exp", false),
+                    section.getBoolean("no-death-penalty", false),
+                    section.getString("particle-effect"));
+        }
+
+        public Level(double priceMultiplier, boolean keepExp, boolean noDeathPenalty, String particleEffect) {
+            this.priceMultiplier = priceMultiplier;
+            this.keepExp = keepExp;
+            this.noDeathPenalty = noDeathPenalty;
+            this.particleEffect = particleEffect;
+        }
+
+        public double getPriceMultiplier() {
+            return priceMultiplier;
+        }
+
+        public boolean isKeepExp() {
+            return keepExp;
+        }
+
+        public boolean isNoDeathPenalty() {
+            return noDeathPenalty;
+        }
+
+        public String getParticleEffect() {
+            return particleEffect;
+        }
+    }
+
+    // 价格
+    private final double pricePerDay;
+    private final Map<String, Double> worldPrices;
+    private final Map<Integer, Double> prices;
+    private final Map<String, Level> levels;
+
+    // 共享
+    private final int maxShareCount;
+    private final double shareFeePercentage;
+
+    // 死亡
+    private final String broadcastRange;
+    private final boolean protectionSoundEnabled;
+    private final String protectionSound;
+    private final float protectionSoundVolume;
+    private final float protectionSoundPitch;
+
+    // 备份
+    private final boolean inventoryBackup;
+    private final boolean backupEnabled;
+    private final boolean debugMode;
+    private final boolean diffReport;
+    private final int retryAttempts;
+    private final long finalDelay;
+    private final int cleanupTime;
+    private final long maxBackupMemoryMb;
+    private final boolean journalEnabled;
+    private final long journalSyncInterval;
+    private final long journalCompactThresholdKb;
+    private final String compressionCodec;
+    private final int compressionLevel;
+    private final int pipelineThreads;
+    private final int pipelineQueueSize;
+    private final boolean periodicBackup;
+    private final String periodicMode;
+    private final int periodicInterval;
+    private final int maxPlayersPerTick;
+    private final long maxMicrosPerTick;
+    private final boolean onlyProtected;
+    private final boolean saveOnDeath;
+
+    // 粒子
+    private final boolean particlesByDefault;
+    private final String particleType;
+    private final int particleCount;
+    private final double particleOffsetX;
+    private final double particleOffsetY;
+    private final double particleOffsetZ;
+    private final double particleSpeed;
+    private final boolean shareParticles;
+    private final boolean statusChangeParticles;
+    private final String gainProtectionParticle;
+    private final String loseProtectionParticle;
+    private final String protectionGainedParticle;
+    private final int protectionGainedParticleCount;
+    private final boolean toggleParticles;
+    private final int toggleParticleDuration;
+
+    // BossBar
+    private final boolean bossBarEnabled;
+    private final boolean protectionGainedBar;
+    private final int protectionGainedBarDuration;
+    private final BarColor protectionGainedBarColor;
+    private final BarColor hourBarColor;
+    private final BarColor tenMinuteBarColor;
+    private final BarColor expiryBarColor;
+    private final boolean expirationReminder;
+    private final int expirationReminderDuration;
+    private final BarColor expirationReminderColor;
+    private final List<Integer> expirationReminderIntervals;
+
+    private PluginSettings(FileConfiguration config, Logger logger) {
+        this.pricePerDay = config.getDouble("price-per-day", 1000);
+        Map<String, Double> worldPrices = new HashMap<>();
+        ConfigurationSection worlds = config.getConfigurationSection("worlds");
+        if (worlds != null) {
+            for (String world : worlds.getKeys(false)) {
+                if (worlds.contains(world + ".price")) {
+                    worldPrices.put(world, worlds.getDouble(world + ".price", pricePerDay));
+                }
+            }
+        }
+        this.worldPrices = Collections.unmodifiableMap(worldPrices);
+
+        // 价格键的格式为 <天数>d
+        Map<Integer, Double> prices = new HashMap<>();
+        ConfigurationSection priceSection = config.getConfigurationSection("prices");
+        if (priceSection != null) {
+            for (String key : priceSection.getKeys(false)) {
+                try {
+                    prices.put(Integer.parseInt(key.substring(0, key.length() - 1)), priceSection.getDouble(key));
+                } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+                    logger.warning("无效的价格设置: prices." + key);
+                }
+            }
+        }
+        this.prices = Collections.unmodifiableMap(prices);
+
+        // 保持配置文件中的顺序，玩家列表按此顺序切换等级筛选
+        Map<String, Level> levels = new LinkedHashMap<>();
+        ConfigurationSection levelSection = config.getConfigurationSection("protection-levels");
+        if (levelSection != null) {
+            for (String key : levelSection.getKeys(false)) {
+                ConfigurationSection section = levelSection.getConfigurationSection(key);
+                if (section != null) {
+                    levels.put(key, new Level(section));
+                }
+            }
+        }
+        this.levels = Collections.unmodifiableMap(levels);
+
+        this.maxShareCount = config.getInt("share.max-share-count", 3);
+        this.shareFeePercentage = config.getDouble("share.fee-percentage", 10.0);
+
+        this.broadcastRange = config.getString("broadcast-range", "world");
+        this.protectionSoundEnabled = config.getBoolean("sounds.protection-used.enabled", true);
+        this.protectionSound = config.getString("sounds.protection-used.sound", "ENTITY_TOTEM_USE");
+        this.protectionSoundVolume = (float) config.getDouble("sounds.protection-used.volume", 1.0);
+        this.protectionSoundPitch = (float) config.getDouble("sounds.protection-used.pitch", 1.0);
+
+        this.inventoryBackup = config.getBoolean("use-inventory-backup", true);
+        this.backupEnabled = config.getBoolean("backup.enabled", true);
+        this.debugMode = config.getBoolean("backup.debug-mode", false);
+        this.diffReport = config.getBoolean("backup.diff-report", true);
+        this.retryAttempts = config.getInt("backup.retry-attempts", 5);
+        this.finalDelay = config.getLong("backup.final-delay", 40);
+        this.cleanupTime = config.getInt("backup.cleanup-time", 3600);
+        this.maxBackupMemoryMb = config.getLong("backup.max-memory-mb", 64);
+        this.journalEnabled = config.getBoolean("backup.journal.enabled", true);
+        this.journalSyncInterval = config.getLong("backup.journal.sync-interval", 20);
+        this.journalCompactThresholdKb = config.getLong("backup.journal.compact-threshold-kb", 1024);
+        this.compressionCodec = config.getString("backup.compression.codec", "deflate");
+        this.compressionLevel = config.getInt("backup.compression.level", 6);
+        this.pipelineThreads = config.getInt("backup.pipeline.threads", 1);
+        this.pipelineQueueSize = config.getInt("backup.pipeline.queue-size", 256);
+        this.periodicBackup = config.getBoolean("backup.periodic.enabled", true);
+        this.periodicMode = config.getString("backup.periodic.mode", "event");
+        this.periodicInterval = config.getInt("backup.periodic.interval", 20);
+        this.maxPlayersPerTick = config.getInt("backup.periodic.max-players-per-tick", 10);
+        this.maxMicrosPerTick = config.getLong("backup.periodic.max-micros-per-tick", 2000);
+        this.onlyProtected = config.getBoolean("backup.periodic.only-protected", true);
+        this.saveOnDeath = config.getBoolean("backup.periodic.save-on-death", true);
+
+        this.particlesByDefault = config.getBoolean("particles.enabled-by-default", true);
+        this.particleType = config.getString("particles.type", "TOTEM");
+        this.particleCount = config.getInt("particles.count", 50);
+        this.particleOffsetX = config.getDouble("particles.offset-x", 0.5);
+        this.particleOffsetY = config.getDouble("particles.offset-y", 1.0);
+        this.particleOffsetZ = config.getDouble("particles.offset-z", 0.5);
+        this.particleSpeed = config.getDouble("particles.speed", 0.1);
+        this.shareParticles = config.getBoolean("particles.share-effect", true);
+        this.statusChangeParticles = config.getBoolean("particles.status-change", true);
+        this.gainProtectionParticle = config.getString("particles.gain-protection", "TOTEM");
+        this.loseProtectionParticle = config.getString("particles.lose-protection", "SMOKE_NORMAL");
+        this.protectionGainedParticle = config.getString("particles.on-protection-gained.type", "TOTEM");
+        this.protectionGainedParticleCount = config.getInt("particles.on-protection-gained.count", 200);
+        this.toggleParticles = config.getBoolean("particles.on-toggle", true);
+        this.toggleParticleDuration = config.getInt("particles.on-toggle.duration", 2);
+
+        this.bossBarEnabled = config.getBoolean("bossbar.enabled", true);
+        this.protectionGainedBar = config.getBoolean("bossbar.protection-gained.enabled", true);
+        this.protectionGainedBarDuration = config.getInt("bossbar.protection-gained.duration", 10);
+        this.protectionGainedBarColor = barColor(config, "bossbar.protection-gained.color", BarColor.GREEN, logger);
+        this.hourBarColor = barColor(config, "bossbar.hour-color", BarColor.YELLOW, logger);
+        this.tenMinuteBarColor = barColor(config, "bossbar.ten-minute-color", BarColor.RED, logger);
+        this.expiryBarColor = barColor(config, "bossbar.expiry-color", BarColor.RED, logger);
+        this.expirationReminder = config.getBoolean("bossbar.expiration-reminder.enabled", true);
+        this.expirationReminderDuration = config.getInt("bossbar.expiration-reminder.duration", 30);
+        this.expirationReminderColor = barColor(config, "bossbar.expiration-reminder.color", BarColor.YELLOW, logger);
+        this.expirationReminderIntervals = Collections.unmodifiableList(
+                config.getIntegerList("bossbar.expiration-reminder.intervals"));
+    }
+
+    /**
+     * 从配置文件读取设置
+     */
+    public static PluginSettings load(FileConfiguration config, Logger logger) {
+        return new PluginSettings(config, logger);
+    }
+
+    private static BarColor barColor(FileConfiguration config, String path, BarColor defaultColor, Logger logger) {
+        String colorName = config.getString(path);
+        if (colorName == null) {
+            return defaultColor;
+        }
+
+        try {
+            return BarColor.valueOf(colorName.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.warning("无效的 BossBar 颜色: " + colorName + "，使用默认值");
+            return defaultColor;
+        }
+    }
+
+    public double getPricePerDay() {
+        return pricePerDay;
+    }
+
+    /**
+     * @return 世界的每日价格，没有单独设置时使用price-per-day
+     */
+    public double getWorldPrice(String world) {
+        Double price = worldPrices.get(world);
+        return price != null ? price : pricePerDay;
+    }
+
+    /**
+     * @return prices中对应天数的价格，没有设置时返回defaultPrice
+     */
+    public double getPrice(int days, double defaultPrice) {
+        Double price = prices.get(days);
+        return price != null ? price : defaultPrice;
+    }
+
+    /**
+     * @return 配置的保护等级名称，按配置文件中的顺序
+     */
+    public Set<String> getLevelNames() {
+        return levels.keySet();
+    }
+
+    /**
+     * @return 保护等级设置，不存在时返回null
+     */
+    public Level getLevel(String name) {
+        return name != null ? levels.get(name) : null;
+    }
+
+    public int getMaxShareCount() {
+        return maxShareCount;
+    }
+
+    public double getShareFeePercentage() {
+        return shareFeePercentage;
+    }
+
+    public String getBroadcastRange() {
+        return broadcastRange;
+    }
+
+    public boolean isProtectionSoundEnabled() {
+        return protectionSoundEnabled;
+    }
+
+    public String getProtectionSound() {
+        return protectionSound;
+    }
+
+    public float getProtectionSoundVolume() {
+        return protectionSoundVolume;
+    }
+
+    public float getProtectionSoundPitch() {
+        return protectionSoundPitch;
+    }
+
+    /**
+     * @return use-inventory-backup和backup.enabled是否都已开启
+     */
+    public boolean isBackupEnabled() {
+        return inventoryBackup && backupEnabled;
+    }
+
+    public boolean isDebugMode() {
+        return debugMode;
+    }
+
+    public boolean isDiffReport() {
+        return diffReport;
+    }
+
+    public int getRetryAttempts() {
+        return retryAttempts;
+    }
+
+    public long getFinalDelay() {
+        return finalDelay;
+    }
+
+    /**
+     * @return 备份保留时间（秒）
+     */
+    public int getCleanupTime() {
+        return cleanupTime;
+    }
+
+    public long getMaxBackupMemoryMb() {
+        return maxBackupMemoryMb;
+    }
+
+    public boolean isJournalEnabled() {
+        return journalEnabled;
+    }
+
+    public long getJournalSyncInterval() {
+        return journalSyncInterval;
+    }
+
+    public long getJournalCompactThresholdKb() {
+        return journalCompactThresholdKb;
+    }
+
+    public String getCompressionCodec() {
+        return compressionCodec;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public int getPipelineThreads() {
+        return pipelineThreads;
+    }
+
+    public int getPipelineQueueSize() {
+        return pipelineQueueSize;
+    }
+
+    public boolean isPeriodicBackup() {
+        return periodicBackup;
+    }
+
+    public String getPeriodicMode() {
+        return periodicMode;
+    }
+
+    public int getPeriodicInterval() {
+        return periodicInterval;
+    }
+
+    public int getMaxPlayersPerTick() {
+        return maxPlayersPerTick;
+    }
+
+    public long getMaxMicrosPerTick() {
+        return maxMicrosPerTick;
+    }
+
+    public boolean isOnlyProtected() {
+        return onlyProtected;
+    }
+
+    public boolean isSaveOnDeath() {
+        return saveOnDeath;
+    }
+
+    public boolean isParticlesByDefault() {
+        return particlesByDefault;
+    }
+
+    public String getParticleType() {
+        return particleType;
+    }
+
+    public int getParticleCount() {
+        return particleCount;
+    }
+
+    public double getParticleOffsetX() {
+        return particleOffsetX;
+    }
+
+    public double getParticleOffsetY() {
+        return particleOffsetY;
+    }
+
+    public double getParticleOffsetZ() {
+        return particleOffsetZ;
+    }
+
+    public double getParticleSpeed() {
+        return particleSpeed;
+    }
+
+    public boolean isShareParticles() {
+        return shareParticles;
+    }
+
+    public boolean isStatusChangeParticles() {
+        return statusChangeParticles;
+    }
+
+    public String getGainProtectionParticle() {
+        return gainProtectionParticle;
+    }
+
+    public String getLoseProtectionParticle() {
+        return loseProtectionParticle;
+    }
+
+    public String getProtectionGainedParticle() {
+        return protectionGainedParticle;
+    }
+
+    public int getProtectionGainedParticleCount() {
+        return protectionGainedParticleCount;
+    }
+
+    public boolean isToggleParticles() {
+        return toggleParticles;
+    }
+
+    public int getToggleParticleDuration() {
+        return toggleParticleDuration;
+    }
+
+    public boolean isBossBarEnabled() {
+        return bossBarEnabled;
+    }
+
+    public boolean isProtectionGainedBar() {
+        return bossBarEnabled && protectionGainedBar;
+    }
+
+    public int getProtectionGainedBarDuration() {
+        return protectionGainedBarDuration;
+    }
+
+    public BarColor getProtectionGainedBarColor() {
+        return protectionGainedBarColor;
+    }
+
+    public BarColor getHourBarColor() {
+        return hourBarColor;
+    }
+
+    public BarColor getTenMinuteBarColor() {
+        return tenMinuteBarColor;
+    }
+
+    public BarColor getExpiryBarColor() {
+        return expiryBarColor;
+    }
+
+    /**
+     * @return bossbar.enabled和bossbar.expiration-reminder.enabled是否都已开启
+     */
+    public boolean isExpirationReminder() {
+        return bossBarEnabled && expirationReminder;
+    }
+
+    public int getExpirationReminderDuration() {
+        return expirationReminderDuration;
+    }
+
+    public BarColor getExpirationReminderColor() {
+        return expirationReminderColor;
+    }
+
+    public List<Integer> getExpirationReminderIntervals() {
+        return expirationReminderIntervals;
+    }
+}
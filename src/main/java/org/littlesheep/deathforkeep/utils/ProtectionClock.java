@@ -0,0 +1,80 @@
+/*
+  保护时钟
+  所有保护时间统一使用毫秒时间戳，死亡等频繁调用的路径读取每tick更新一次的缓存时间
+ */
+package org.littlesheep.deathforkeep.utils;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.concurrent.TimeUnit;
+
+public final class ProtectionClock {
+
+    private static volatile long now = System.currentTimeMillis();
+    private static volatile boolean running;
+    private static BukkitTask task;
+
+    private ProtectionClock() {
+    }
+
+    /**
+     * 启动时钟，每tick更新一次缓存的当前时间
+     */
+    public static synchronized void start(Plugin plugin) {
+        stop();
+        tick();
+        task = Bukkit.getScheduler().runTaskTimer(plugin, ProtectionClock::tick, 1L, 1L);
+        running = true;
+    }
+
+    public static synchronized void stop() {
+        running = false;
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * 把时钟固定在指定时间，供测试使用
+     */
+    static synchronized void fix(long time) {
+        stop();
+        now = time;
+        running = true;
+    }
+
+    private static void tick() {
+        now = System.currentTimeMillis();
+    }
+
+    /**
+     * 获取当前时间（毫秒），精度为一个tick
+     * 时钟未启动时直接读取系统时间
+     */
+    public static long now() {
+        return running ? now : System.currentTimeMillis();
+    }
+
+    /**
+     * 计算到期时间距现在的剩余毫秒数
+     *
+     * @param expiryTime 到期时间（毫秒）
+     * @return 剩余毫秒数，已过期时返回0
+     */
+    public static long remainingMillis(long expiryTime) {
+        return Math.max(0L, expiryTime - now());
+    }
+
+    /**
+     * 计算到期时间距现在的剩余秒数，用于显示
+     *
+     * @param expiryTime 到期时间（毫秒）
+     * @return 剩余秒数，已过期时返回0
+     */
+    public static long remainingSeconds(long expiryTime) {
+        return TimeUnit.MILLISECONDS.toSeconds(remainingMillis(expiryTime));
+    }
+}
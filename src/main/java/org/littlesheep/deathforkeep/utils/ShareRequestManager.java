@@ -7,6 +7,7 @@ package org.littlesheep.deathforkeep.utils;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.littlesheep.deathforkeep.DeathForKeep;
+import org.littlesheep.deathforkeep.data.PlayerData;
 import org.littlesheep.deathforkeep.gui.ConfirmGUI;
 
 import java.util.HashMap;
@@ -40,6 +41,14 @@ public class ShareRequestManager {
             return;
         }
         
+        // 检查是否已达到共享人数上限
+        PlayerData senderData = plugin.getPlayerData(senderUUID);
+        if (senderData != null && plugin.getProtectionService().isShareLimitReached(senderData)) {
+            sender.sendMessage(messages.getMessage("command.share.limit-reached", 
+                    "max", String.valueOf(plugin.getProtectionService().getMaxShareCount())));
+            return;
+        }
+        
         // 计算手续费
         double fee = calculateShareFee(senderUUID);
         
@@ -115,6 +124,16 @@ public class ShareRequestManager {
             return;
         }
         
+        // 请求发出后可能已与其他玩家共享
+        PlayerData senderData = plugin.getPlayerData(senderUUID);
+        if (senderData != null && !senderData.isSharedWith(targetUUID)
+                && plugin.getProtectionService().isShareLimitReached(senderData)) {
+            String max = String.valueOf(plugin.getProtectionService().getMaxShareCount());
+            target.sendMessage(messages.getMessage("command.share.limit-reached-target", "player", sender.getName()));
+            sender.sendMessage(messages.getMessage("command.share.limit-reached", "max", max));
+            return;
+        }
+        
         // 收取手续费
         if (fee > 0) {
             plugin.getEconomy().withdrawPlayer(sender, fee);
@@ -139,7 +158,7 @@ public class ShareRequestManager {
         plugin.getBossBarManager().showProtectionSharedMessage(target, sender.getName(), expiryTime);
         
         // 播放共享成功的粒子效果
-        if (plugin.getConfig().getBoolean("particles.share-effect", true)) {
+        if (plugin.getSettings().isShareParticles()) {
             Bukkit.getScheduler().runTask(plugin, () -> {
                 ParticleUtils.playShareEffect(sender, target);
             });
@@ -170,7 +189,8 @@ public class ShareRequestManager {
     }
     
     private double calculateShareFee(UUID playerUUID) {
-        double feePercentage = plugin.getConfig().getDouble("share.fee-percentage", 10.0);
+        PluginSettings settings = plugin.getSettings();
+        double feePercentage = settings.getShareFeePercentage();
         
         if (feePercentage <= 0) {
             return 0;
@@ -178,7 +198,7 @@ public class ShareRequestManager {
         
         // 获取玩家的保护价值
         long remainingSeconds = plugin.getRemainingSeconds(playerUUID);
-        double pricePerDay = plugin.getConfig().getDouble("price-per-day", 1000);
+        double pricePerDay = settings.getPricePerDay();
         double protectionValue = (pricePerDay / 86400) * remainingSeconds;
         
         // 计算手续费
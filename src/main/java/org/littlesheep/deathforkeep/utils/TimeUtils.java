@@ -4,8 +4,9 @@
  */
 package org.littlesheep.deathforkeep.utils;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -13,7 +14,9 @@ import java.util.regex.Pattern;
 public class TimeUtils {
     
     private static final Pattern TIME_PATTERN = Pattern.compile("(\\d+)([smhdw])");
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    // DateTimeFormatter可以在多个线程中共享，SimpleDateFormat不行
+    private static final DateTimeFormatter DATE_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
     
     /**
      * 将时间字符串转换为秒数
@@ -73,7 +76,7 @@ public class TimeUtils {
      * @return 格式化后的日期时间字符串
      */
     public static String formatDateTime(long timestamp) {
-        return DATE_FORMAT.format(new Date(timestamp));
+        return DATE_FORMAT.format(Instant.ofEpochMilli(timestamp));
     }
     
     /**
@@ -0,0 +1,53 @@
+package org.littlesheep.deathforkeep;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * 测试用物品，需要先调用TestServer.install()
+ * 元数据按序列化后的键值表共用同一个对象，内容相同的元数据相等
+ */
+public final class TestItems {
+
+    private static final Map<Map<String, Object>, ItemMeta> METAS = new ConcurrentHashMap<>();
+
+    private TestItems() {
+    }
+
+    public static ItemStack named(Material type, int amount, String name) {
+        Map<String, Object> meta = new LinkedHashMap<>();
+        meta.put("meta-type", "UNSPECIFIC");
+        meta.put("display-name", "{\"extra\":[{\"text\":\"" + name + "\"}],\"text\":\"\"}");
+        return withMeta(type, amount, meta);
+    }
+
+    /**
+     * @param meta 元数据序列化后的键值表，与服务端ItemMeta.serialize()的结构相同
+     */
+    public static ItemStack withMeta(Material type, int amount, Map<String, Object> meta) {
+        ItemStack item = new ItemStack(type, amount);
+        item.setItemMeta(METAS.computeIfAbsent(Collections.unmodifiableMap(new LinkedHashMap<>(meta)),
+                TestItems::meta));
+        return item;
+    }
+
+    // 元数据不会被修改，复制时返回自身
+    private static ItemMeta meta(Map<String, Object> serialized) {
+        ItemMeta meta = mock(ItemMeta.class, withSettings().stubOnly());
+        when(meta.hasDisplayName()).thenReturn(serialized.containsKey("display-name"));
+        when(meta.getDisplayName()).thenReturn((String) serialized.get("display-name"));
+        when(meta.serialize()).thenReturn(serialized);
+        when(meta.clone()).thenReturn(meta);
+        return meta;
+    }
+}
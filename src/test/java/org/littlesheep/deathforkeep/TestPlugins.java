@@ -0,0 +1,32 @@
+package org.littlesheep.deathforkeep;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.littlesheep.deathforkeep.utils.ColorLogger;
+
+import java.io.File;
+import java.util.logging.Logger;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * 测试用插件实例
+ * 插件主类只能由服务端加载，测试中用模拟对象提供配置、日志和数据目录
+ * 模拟对象不记录调用，基准测试中的大量调用不会累积在内存中
+ */
+public final class TestPlugins {
+
+    private TestPlugins() {
+    }
+
+    public static DeathForKeep create(File dataFolder, YamlConfiguration config) {
+        Logger logger = Logger.getLogger("DeathForKeepTest");
+        DeathForKeep plugin = mock(DeathForKeep.class, withSettings().stubOnly());
+        when(plugin.getConfig()).thenReturn(config);
+        when(plugin.getLogger()).thenReturn(logger);
+        when(plugin.getColorLogger()).thenReturn(new ColorLogger(logger));
+        when(plugin.getDataFolder()).thenReturn(dataFolder);
+        return plugin;
+    }
+}
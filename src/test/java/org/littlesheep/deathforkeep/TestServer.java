@@ -0,0 +1,78 @@
+package org.littlesheep.deathforkeep;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.Server;
+import org.bukkit.UnsafeValues;
+import org.bukkit.inventory.ItemFactory;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Collections;
+import java.util.Objects;
+import java.util.logging.Logger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * 测试用服务端
+ * Bukkit只允许设置一次服务端实例，所有测试共用同一个模拟对象，计划任务不会执行
+ * 模拟对象不记录调用，避免共用的服务端在整个测试过程中累积调用记录
+ */
+public final class TestServer {
+
+    private TestServer() {
+    }
+
+    public static synchronized Server install() {
+        if (Bukkit.getServer() == null) {
+            Bukkit.setServer(create());
+        }
+        return Bukkit.getServer();
+    }
+
+    /**
+     * 物品工厂把null视为没有元数据，元数据按对象比较，由TestItems创建
+     */
+    private static ItemFactory createItemFactory() {
+        ItemFactory factory = mock(ItemFactory.class, withSettings().stubOnly());
+        when(factory.equals(any(), any())).thenAnswer(invocation ->
+                Objects.equals(invocation.getArgument(0), invocation.getArgument(1)));
+        when(factory.isApplicable(any(ItemMeta.class), any(Material.class))).thenReturn(true);
+        when(factory.isApplicable(any(ItemMeta.class), any(ItemStack.class))).thenReturn(true);
+        when(factory.asMetaFor(any(ItemMeta.class), any(Material.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(factory.asMetaFor(any(ItemMeta.class), any(ItemStack.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        return factory;
+    }
+
+    private static Server create() {
+        Server server = mock(Server.class, withSettings().stubOnly());
+        when(server.getLogger()).thenReturn(Logger.getLogger("TestServer"));
+        when(server.isPrimaryThread()).thenReturn(true);
+        doReturn(Collections.emptyList()).when(server).getOnlinePlayers();
+
+        BukkitTask task = mock(BukkitTask.class, withSettings().stubOnly());
+        BukkitScheduler scheduler = mock(BukkitScheduler.class, withSettings().stubOnly());
+        when(scheduler.runTask(any(Plugin.class), any(Runnable.class))).thenReturn(task);
+        when(scheduler.runTaskLater(any(Plugin.class), any(Runnable.class), anyLong())).thenReturn(task);
+        when(scheduler.runTaskTimer(any(Plugin.class), any(Runnable.class), anyLong(), anyLong())).thenReturn(task);
+        when(scheduler.runTaskAsynchronously(any(Plugin.class), any(Runnable.class))).thenReturn(task);
+        when(server.getScheduler()).thenReturn(scheduler);
+
+        ItemFactory itemFactory = createItemFactory();
+        when(server.getItemFactory()).thenReturn(itemFactory);
+        UnsafeValues unsafe = mock(UnsafeValues.class, withSettings().stubOnly());
+        // 1.20.1
+        when(unsafe.getDataVersion()).thenReturn(3465);
+        when(server.getUnsafe()).thenReturn(unsafe);
+        return server;
+    }
+}
@@ -0,0 +1,188 @@
+package org.littlesheep.deathforkeep.backup;
+
+import org.bukkit.Material;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.littlesheep.deathforkeep.TestItems;
+import org.littlesheep.deathforkeep.TestServer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BackupCodecTest {
+
+    private static final int INVENTORY_SIZE = 41;
+    private static final int ENDER_CHEST_SIZE = 27;
+    private static final Material[] PLAIN = {Material.DIRT, Material.COBBLESTONE, Material.OAK_LOG,
+            Material.TORCH, Material.BREAD, Material.IRON_INGOT, Material.DIAMOND, Material.COAL, Material.REDSTONE,
+            Material.GLASS, Material.STONE_BRICKS, Material.ARROW};
+    private static final Material[] GEAR = {Material.NETHERITE_SWORD, Material.DIAMOND_PICKAXE, Material.IRON_AXE,
+            Material.DIAMOND_HELMET, Material.DIAMOND_CHESTPLATE, Material.NETHERITE_LEGGINGS, Material.IRON_BOOTS,
+            Material.BOW};
+    private static final String[] ENCHANTS = {"DAMAGE_ALL", "DIG_SPEED", "DURABILITY", "MENDING",
+            "PROTECTION_ENVIRONMENTAL", "LOOT_BONUS_BLOCKS"};
+
+    @BeforeAll
+    static void installServer() {
+        TestServer.install();
+    }
+
+    @Test
+    void roundTrip() throws IOException, ClassNotFoundException {
+        byte[] raw = payload(new Random(1), new ItemPool());
+        for (String name : new String[]{"none", "deflate"}) {
+            BackupCodec codec = new BackupCodec(name, 6);
+            assertArrayEquals(raw, BackupCodec.decode(codec.encode(raw)), name);
+        }
+        assertTrue(new BackupCodec("deflate", 6).encode(raw).length < raw.length);
+
+        // 只有无元数据物品的备份可以在测试中读回，带元数据的物品需要服务端注册的ItemMeta类
+        Player player = player(new Random(2), 0);
+        DeathBackupData backup = new DeathBackupData(player);
+        backup.capture(player, new ItemPool());
+        byte[] plain = backup.serialize();
+        byte[] decoded = BackupCodec.decode(new BackupCodec("deflate", 6).encode(plain));
+        assertArrayEquals(plain, DeathBackupData.deserialize(player.getUniqueId(), decoded).serialize());
+    }
+
+    @Test
+    void rejectsDamagedData() {
+        byte[] encoded = new BackupCodec("deflate", 6).encode(new byte[4096]);
+        assertThrows(IOException.class, () -> BackupCodec.decode(Arrays.copyOf(encoded, encoded.length / 2)));
+        assertThrows(IOException.class, () -> BackupCodec.decode(new byte[]{9, 0, 0}));
+        assertThrows(IOException.class, () -> BackupCodec.decode(new byte[0]));
+    }
+
+    /**
+     * 每种压缩方式和级别的压缩比，以及每份备份的压缩和解压耗时
+     * 备份由DeathBackupData.serialize()生成
+     * 运行：mvn test -Pbenchmark
+     */
+    @Test
+    @Tag("benchmark")
+    void compressionCost(TestReporter reporter) throws IOException {
+        Random random = new Random(42);
+        ItemPool pool = new ItemPool();
+        List<byte[]> payloads = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            payloads.add(payload(random, pool));
+        }
+
+        String[] names = {"none", "deflate", "deflate", "deflate"};
+        int[] levels = {1, 1, 6, 9};
+        for (int c = 0; c < names.length; c++) {
+            // 预热
+            BackupCodec warmup = new BackupCodec(names[c], levels[c]);
+            for (byte[] raw : payloads) {
+                BackupCodec.decode(warmup.encode(raw));
+            }
+
+            BackupCodec codec = new BackupCodec(names[c], levels[c]);
+            List<byte[]> encoded = new ArrayList<>(payloads.size());
+            for (byte[] raw : payloads) {
+                encoded.add(codec.encode(raw));
+            }
+            List<byte[]> decoded = new ArrayList<>(encoded.size());
+            long start = System.nanoTime();
+            for (byte[] bytes : encoded) {
+                decoded.add(BackupCodec.decode(bytes));
+            }
+            double decodeMicros = (System.nanoTime() - start) / 1000.0 / encoded.size();
+            for (int i = 0; i < decoded.size(); i++) {
+                assertArrayEquals(payloads.get(i), decoded.get(i));
+            }
+
+            reporter.publishEntry(codec.getName() + "-" + levels[c],
+                    String.format("平均 %d 字节, 压缩比 %.3f, 压缩 %.1f us, 解压 %.1f us",
+                            codec.getAverageRawBytes(), codec.getRatio(), codec.getAverageMicros(), decodeMicros));
+            if (names[c].equals("deflate")) {
+                assertTrue(codec.getRatio() < 0.5, "预置字典下的压缩比应低于0.5: " + codec.getRatio());
+            } else {
+                assertTrue(codec.getRatio() >= 1.0, "不压缩时编码后不应变小: " + codec.getRatio());
+            }
+        }
+    }
+
+    /**
+     * 一份死亡备份：大部分是无元数据的物品，少量带附魔和名称的装备
+     */
+    private static byte[] payload(Random random, ItemPool pool) throws IOException {
+        Player player = player(random, 2 + random.nextInt(6));
+        DeathBackupData backup = new DeathBackupData(player);
+        backup.capture(player, pool);
+        byte[] serialized = backup.serialize();
+        backup.release(pool);
+        return serialized;
+    }
+
+    private static Player player(Random random, int gear) {
+        ItemStack[] contents = new ItemStack[INVENTORY_SIZE];
+        ItemStack[] enderChest = new ItemStack[ENDER_CHEST_SIZE];
+        int plain = 10 + random.nextInt(15);
+        int slot = 0;
+        for (int i = 0; i < plain; i++) {
+            contents[slot++] = new ItemStack(PLAIN[random.nextInt(PLAIN.length)], 1 + random.nextInt(64));
+        }
+        for (int i = 0; i < gear; i++) {
+            contents[slot++] = gearItem(random);
+        }
+
+        PlayerInventory inventory = mock(PlayerInventory.class);
+        when(inventory.getContents()).thenReturn(contents);
+        when(inventory.getSize()).thenReturn(contents.length);
+        when(inventory.getItem(anyInt())).thenAnswer(invocation -> contents[invocation.<Integer>getArgument(0)]);
+        Inventory ender = mock(Inventory.class);
+        when(ender.getSize()).thenReturn(enderChest.length);
+        when(ender.getItem(anyInt())).thenAnswer(invocation -> enderChest[invocation.<Integer>getArgument(0)]);
+
+        Player player = mock(Player.class);
+        when(player.getUniqueId()).thenReturn(UUID.randomUUID());
+        when(player.getInventory()).thenReturn(inventory);
+        when(player.getEnderChest()).thenReturn(ender);
+        when(player.getTotalExperience()).thenReturn(random.nextInt(5000));
+        when(player.getLevel()).thenReturn(random.nextInt(50));
+        when(player.getExp()).thenReturn(random.nextFloat());
+        when(player.getActivePotionEffects()).thenReturn(Collections.emptyList());
+        when(player.getFoodLevel()).thenReturn(20);
+        when(player.getSaturation()).thenReturn(5.0f);
+        when(player.getRemainingAir()).thenReturn(300);
+        when(player.getHealth()).thenReturn(20.0);
+        return player;
+    }
+
+    // 元数据的结构与服务端ItemMeta.serialize()相同
+    private static ItemStack gearItem(Random random) {
+        Map<String, Object> enchants = new LinkedHashMap<>();
+        for (int i = 0, count = 1 + random.nextInt(3); i < count; i++) {
+            enchants.put(ENCHANTS[random.nextInt(ENCHANTS.length)], 1 + random.nextInt(5));
+        }
+        Map<String, Object> meta = new LinkedHashMap<>();
+        meta.put("meta-type", "UNSPECIFIC");
+        if (random.nextBoolean()) {
+            meta.put("display-name", "{\"extra\":[{\"text\":\"Item " + random.nextInt(1000) + "\"}],\"text\":\"\"}");
+        }
+        meta.put("enchants", enchants);
+        meta.put("Damage", random.nextInt(300));
+        return TestItems.withMeta(GEAR[random.nextInt(GEAR.length)], 1, meta);
+    }
+}
@@ -0,0 +1,125 @@
+package org.littlesheep.deathforkeep.backup;
+
+import org.bukkit.plugin.Plugin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BackupJournalTest {
+
+    private static final Plugin PLUGIN = (Plugin) Proxy.newProxyInstance(Plugin.class.getClassLoader(),
+            new Class<?>[]{Plugin.class}, (proxy, method, args) -> {
+                if (method.getName().equals("getLogger")) {
+                    return Logger.getLogger("BackupJournalTest");
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+
+    private File folder;
+    private File file;
+    private BackupJournal journal;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        folder = Files.createTempDirectory("journal").toFile();
+        file = new File(folder, "journal.dat");
+        journal = open();
+    }
+
+    @AfterEach
+    void tearDown() {
+        journal.close();
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                child.delete();
+            }
+        }
+        folder.delete();
+    }
+
+    private BackupJournal open() throws IOException {
+        BackupJournal opened = new BackupJournal(PLUGIN, file, 0);
+        opened.open();
+        return opened;
+    }
+
+    private void append(UUID uuid, byte[] payload) throws IOException {
+        assertTrue(journal.append(uuid, journal.reserve(uuid), payload));
+    }
+
+    @Test
+    void replaysPendingAfterReopen() throws IOException {
+        UUID kept = UUID.randomUUID();
+        UUID restored = UUID.randomUUID();
+        append(kept, new byte[]{1, 2, 3});
+        append(restored, new byte[]{4});
+        journal.markRestored(restored);
+
+        journal.close();
+        journal = open();
+        assertArrayEquals(new byte[]{1, 2, 3}, journal.getPending(kept));
+        assertNull(journal.getPending(restored));
+    }
+
+    @Test
+    void compactionRotatesToNextGeneration() throws IOException {
+        UUID kept = UUID.randomUUID();
+        append(kept, new byte[]{1, 2, 3});
+        for (int i = 0; i < 10; i++) {
+            UUID restored = UUID.randomUUID();
+            append(restored, new byte[64]);
+            journal.markRestored(restored);
+        }
+        int before = journal.getSize();
+
+        journal.compact();
+        assertEquals(1L, journal.getCompactionCount());
+        assertTrue(journal.getSize() < before);
+        assertTrue(new File(folder, "journal.dat.1").exists());
+
+        // 压缩后仍可继续写入新文件
+        UUID later = UUID.randomUUID();
+        append(later, new byte[]{9});
+
+        journal.close();
+        journal = open();
+        assertArrayEquals(new byte[]{1, 2, 3}, journal.getPending(kept));
+        assertArrayEquals(new byte[]{9}, journal.getPending(later));
+        assertEquals(2, journal.getPendingCount());
+        assertFalse(new File(folder, "journal.dat").exists());
+    }
+
+    @Test
+    void failedRotationKeepsCurrentFile() throws IOException {
+        UUID kept = UUID.randomUUID();
+        append(kept, new byte[]{1});
+        // 占用下一代文件名使改名失败
+        assertTrue(new File(folder, "journal.dat.1").mkdir());
+
+        journal.compact();
+        assertEquals(0L, journal.getCompactionCount());
+
+        UUID later = UUID.randomUUID();
+        append(later, new byte[]{2});
+        journal.close();
+        assertTrue(new File(folder, "journal.dat.1").delete());
+
+        journal = open();
+        assertArrayEquals(new byte[]{1}, journal.getPending(kept));
+        assertArrayEquals(new byte[]{2}, journal.getPending(later));
+    }
+}
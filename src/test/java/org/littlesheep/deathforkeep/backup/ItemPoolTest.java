@@ -0,0 +1,138 @@
+package org.littlesheep.deathforkeep.backup;
+
+import org.bukkit.Material;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.littlesheep.deathforkeep.TestItems;
+import org.littlesheep.deathforkeep.TestServer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ItemPoolTest {
+
+    private static final int SNAPSHOTS = 10;
+    private static final int INVENTORY_SIZE = 41;
+    private static final int ENDER_CHEST_SIZE = 27;
+
+    @BeforeAll
+    static void installServer() {
+        TestServer.install();
+    }
+
+    @Test
+    void snapshotsShareItems() {
+        ItemStack[] contents = new ItemStack[INVENTORY_SIZE];
+        ItemStack[] enderChest = new ItemStack[ENDER_CHEST_SIZE];
+        contents[0] = TestItems.named(Material.DIAMOND_SWORD, 1, "Excalibur");
+        contents[1] = new ItemStack(Material.DIAMOND, 64);
+        contents[2] = new ItemStack(Material.DIAMOND, 64);
+        contents[3] = new ItemStack(Material.ARROW, 16);
+        contents[40] = new ItemStack(Material.SHIELD, 1);
+        enderChest[0] = new ItemStack(Material.DIAMOND, 64);
+        enderChest[5] = TestItems.named(Material.PAPER, 1, "Map");
+        int filled = 7;
+        long distinctBytes = 2 * ItemPool.estimate(contents[0]) + 3 * ItemPool.estimate(contents[1]);
+        long snapshotBytes = 2 * ItemPool.estimate(contents[0]) + 5 * ItemPool.estimate(contents[1]);
+        // 带有ItemMeta的物品按更大的占用估算
+        assertTrue(ItemPool.estimate(contents[0]) > ItemPool.estimate(contents[1]));
+
+        Player player = player(contents, enderChest);
+        ItemPool pool = new ItemPool();
+        List<InventorySnapshot> snapshots = new ArrayList<>();
+        for (int i = 0; i < SNAPSHOTS; i++) {
+            InventorySnapshot snapshot = new InventorySnapshot(player);
+            assertEquals(filled, snapshot.update(player, pool));
+            snapshots.add(snapshot);
+        }
+
+        // 每种物品只保存一份，其余格子都引用同一个物品
+        assertEquals(5, pool.size());
+        assertEquals(SNAPSHOTS * filled, pool.getReferenceCount());
+        assertEquals(distinctBytes, pool.getEstimatedBytes());
+        assertEquals(SNAPSHOTS * snapshotBytes - distinctBytes, pool.getSavedBytes());
+
+        // 物品未变化时不替换任何格子
+        for (InventorySnapshot snapshot : snapshots) {
+            assertEquals(0, snapshot.update(player, pool));
+        }
+        assertEquals(5, pool.size());
+        assertEquals(SNAPSHOTS * filled, pool.getReferenceCount());
+
+        // 剑换成另一把，旧的剑在所有快照更新后移出物品池
+        contents[0] = TestItems.named(Material.DIAMOND_SWORD, 1, "Durendal");
+        assertEquals(1, snapshots.get(0).update(player, pool));
+        assertEquals(6, pool.size());
+        for (InventorySnapshot snapshot : snapshots.subList(1, SNAPSHOTS)) {
+            assertEquals(1, snapshot.update(player, pool));
+        }
+        assertEquals(5, pool.size());
+        assertEquals(SNAPSHOTS * filled, pool.getReferenceCount());
+        assertEquals(distinctBytes, pool.getEstimatedBytes());
+        assertEquals(SNAPSHOTS * snapshotBytes - distinctBytes, pool.getSavedBytes());
+
+        // 清空一个格子
+        contents[3] = null;
+        for (InventorySnapshot snapshot : snapshots) {
+            assertEquals(1, snapshot.update(player, pool));
+        }
+        long arrowBytes = ItemPool.estimate(new ItemStack(Material.ARROW, 16));
+        assertEquals(4, pool.size());
+        assertEquals(SNAPSHOTS * (filled - 1), pool.getReferenceCount());
+        assertEquals(distinctBytes - arrowBytes, pool.getEstimatedBytes());
+        assertEquals(SNAPSHOTS * (snapshotBytes - arrowBytes) - (distinctBytes - arrowBytes), pool.getSavedBytes());
+
+        // 释放所有快照后引用计数归零
+        for (InventorySnapshot snapshot : snapshots) {
+            snapshot.release(pool);
+        }
+        assertEquals(0, pool.size());
+        assertEquals(0, pool.getReferenceCount());
+        assertEquals(0, pool.getEstimatedBytes());
+        assertEquals(0, pool.getSavedBytes());
+    }
+
+    @Test
+    void internCopiesItem() {
+        ItemPool pool = new ItemPool();
+        ItemStack live = new ItemStack(Material.GOLD_INGOT, 3);
+        ItemStack shared = pool.intern(live);
+        assertNotSame(live, shared);
+        assertEquals(live, shared);
+
+        // 玩家物品栏中的物品变化不影响物品池
+        live.setAmount(4);
+        assertEquals(3, shared.getAmount());
+
+        // 不是由物品池返回的物品不会释放引用
+        pool.release(new ItemStack(Material.GOLD_INGOT, 3));
+        assertEquals(1, pool.getReferenceCount());
+        pool.release(shared);
+        assertEquals(0, pool.size());
+    }
+
+    private static Player player(ItemStack[] contents, ItemStack[] enderChest) {
+        PlayerInventory inventory = mock(PlayerInventory.class);
+        when(inventory.getContents()).thenReturn(contents);
+        when(inventory.getSize()).thenReturn(contents.length);
+        when(inventory.getItem(anyInt())).thenAnswer(invocation -> contents[invocation.<Integer>getArgument(0)]);
+        Inventory ender = mock(Inventory.class);
+        when(ender.getSize()).thenReturn(enderChest.length);
+        when(ender.getItem(anyInt())).thenAnswer(invocation -> enderChest[invocation.<Integer>getArgument(0)]);
+        Player player = mock(Player.class);
+        when(player.getInventory()).thenReturn(inventory);
+        when(player.getEnderChest()).thenReturn(ender);
+        return player;
+    }
+}
@@ -0,0 +1,93 @@
+package org.littlesheep.deathforkeep.data;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConnectionPoolTest {
+
+    @TempDir
+    File folder;
+
+    private ConnectionPool pool;
+
+    @AfterEach
+    void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    private ConnectionPool open(int statementCacheSize) {
+        pool = new ConnectionPool("jdbc:sqlite:" + new File(folder, "pool.db").getAbsolutePath(), null, 2, 1000,
+                null, statementCacheSize);
+        return pool;
+    }
+
+    private static void query(PreparedStatement statement) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery()) {
+            assertTrue(resultSet.next());
+        }
+    }
+
+    @Test
+    void cachedStatementReusedAcrossLeases() throws SQLException {
+        open(2);
+        for (int i = 0; i < 3; i++) {
+            try (Connection connection = pool.getConnection();
+                 PreparedStatement statement = ConnectionPool.prepareCached(connection, "SELECT ?")) {
+                statement.setInt(1, i);
+                query(statement);
+            }
+        }
+        assertEquals(1L, pool.getStatementMisses());
+        assertEquals(2L, pool.getStatementHits());
+    }
+
+    @Test
+    void generatedSqlDoesNotEvictCachedStatements() throws SQLException {
+        open(2);
+        try (Connection connection = pool.getConnection()) {
+            try (PreparedStatement statement = ConnectionPool.prepareCached(connection, "SELECT 1")) {
+                query(statement);
+            }
+            // 按参数数量拼接的SQL每次都不同，不应进入缓存
+            for (int i = 1; i <= 10; i++) {
+                StringBuilder sql = new StringBuilder("SELECT 1 WHERE 1 IN (");
+                for (int j = 0; j < i; j++) {
+                    sql.append(j > 0 ? ", 1" : "1");
+                }
+                try (PreparedStatement statement = connection.prepareStatement(sql.append(')').toString())) {
+                    query(statement);
+                }
+            }
+            try (PreparedStatement statement = ConnectionPool.prepareCached(connection, "SELECT 1")) {
+                query(statement);
+            }
+        }
+        assertEquals(1L, pool.getStatementMisses());
+        assertEquals(1L, pool.getStatementHits());
+    }
+
+    @Test
+    void disabledCachePreparesDirectly() throws SQLException {
+        open(0);
+        for (int i = 0; i < 2; i++) {
+            try (Connection connection = pool.getConnection();
+                 PreparedStatement statement = ConnectionPool.prepareCached(connection, "SELECT 1")) {
+                query(statement);
+            }
+        }
+        assertEquals(0L, pool.getStatementMisses());
+        assertEquals(0L, pool.getStatementHits());
+    }
+}
@@ -0,0 +1,114 @@
+package org.littlesheep.deathforkeep.data;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.littlesheep.deathforkeep.TestPlugins;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExpiryTimeMigrationTest {
+
+    private static final long SECONDS = 1700000000L;
+    private static final long MILLIS = 1700000000000L;
+
+    @TempDir
+    File folder;
+
+    @Test
+    void noProtectionIsNotMigrated() {
+        assertFalse(DatabaseManager.isSecondsTimestamp(0L));
+        assertFalse(DatabaseManager.isSecondsTimestamp(-1L));
+    }
+
+    @Test
+    void lowerEdge() {
+        assertTrue(DatabaseManager.isSecondsTimestamp(1L));
+    }
+
+    @Test
+    void upperEdge() {
+        assertTrue(DatabaseManager.isSecondsTimestamp(DatabaseManager.SECONDS_THRESHOLD - 1));
+        assertFalse(DatabaseManager.isSecondsTimestamp(DatabaseManager.SECONDS_THRESHOLD));
+    }
+
+    @Test
+    void realTimestamps() {
+        // 2023-11-14 22:13:20 UTC
+        assertTrue(DatabaseManager.isSecondsTimestamp(1700000000L));
+        assertFalse(DatabaseManager.isSecondsTimestamp(1700000000000L));
+        // 2100-01-01 00:00:00 UTC，以秒保存的远期时间仍然需要迁移
+        assertTrue(DatabaseManager.isSecondsTimestamp(4102444800L));
+    }
+
+    @Test
+    void migratesSecondsOnce() throws SQLException {
+        // 旧版本创建的表，缺少后来添加的列
+        File database = new File(folder, "database");
+        assertTrue(database.mkdirs());
+        String url = "jdbc:sqlite:" + new File(database, "deathkeep.db").getAbsolutePath();
+        UUID seconds = UUID.randomUUID();
+        UUID millis = UUID.randomUUID();
+        UUID none = UUID.randomUUID();
+        UUID later = UUID.randomUUID();
+        try (Connection connection = DriverManager.getConnection(url);
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE player_data (uuid VARCHAR(36) PRIMARY KEY, expiry_time BIGINT, " +
+                    "shared_with VARCHAR(36))");
+            statement.executeUpdate("INSERT INTO player_data (uuid, expiry_time) VALUES " +
+                    "('" + seconds + "', " + SECONDS + "), ('" + millis + "', " + MILLIS + "), ('" + none + "', 0)");
+        }
+
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("database.type", "sqlite");
+        PlayerDataStore store = DatabaseManager.create(TestPlugins.create(folder, config));
+        try {
+            assertEquals(SECONDS * 1000L, store.loadPlayerData(seconds).getExpiryTime());
+            assertEquals(MILLIS, store.loadPlayerData(millis).getExpiryTime());
+            assertEquals(0L, store.loadPlayerData(none).getExpiryTime());
+            assertEquals("millis", queryString(store, "SELECT meta_value FROM plugin_meta WHERE meta_key = 'time_unit'"));
+
+            // 迁移完成后写入的小数值不再被当作秒处理，再次初始化表结构也不会重复迁移
+            try (Connection connection = store.getConnectionPool().getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.executeUpdate("INSERT INTO player_data (uuid, expiry_time) VALUES ('" + later + "', " +
+                        SECONDS + ")");
+            }
+            store.setupTables();
+            assertEquals(SECONDS * 1000L, store.loadPlayerData(seconds).getExpiryTime());
+            assertEquals(SECONDS, store.loadPlayerData(later).getExpiryTime());
+        } finally {
+            store.closeConnection();
+        }
+
+        // 重新启动后同样不会再次迁移
+        store = DatabaseManager.create(TestPlugins.create(folder, config));
+        try {
+            assertEquals(SECONDS * 1000L, store.loadPlayerData(seconds).getExpiryTime());
+            assertEquals(MILLIS, store.loadPlayerData(millis).getExpiryTime());
+            assertEquals(SECONDS, store.loadPlayerData(later).getExpiryTime());
+            assertEquals("1", queryString(store, "SELECT COUNT(*) FROM plugin_meta"));
+        } finally {
+            store.closeConnection();
+        }
+    }
+
+    private static String queryString(PlayerDataStore store, String sql) throws SQLException {
+        try (Connection connection = store.getConnectionPool().getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            assertTrue(resultSet.next());
+            return resultSet.getString(1);
+        }
+    }
+}
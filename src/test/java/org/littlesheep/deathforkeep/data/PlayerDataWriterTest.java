@@ -0,0 +1,179 @@
+package org.littlesheep.deathforkeep.data;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.littlesheep.deathforkeep.DeathForKeep;
+import org.littlesheep.deathforkeep.TestPlugins;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PlayerDataWriterTest {
+
+    private static final long STALE = 1000L;
+    private static final long FRESH = 2000L;
+
+    @TempDir
+    File folder;
+
+    private final PlayerDataStore store = mock(PlayerDataStore.class);
+    private final CountDownLatch writing = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile boolean succeed = true;
+
+    private DeathForKeep plugin;
+    private PlayerDataWriter writer;
+    private PlayerDataCache cache;
+
+    @BeforeEach
+    void setUp() {
+        YamlConfiguration config = new YamlConfiguration();
+        // 只在测试中手动触发写入
+        config.set("performance.write-behind.flush-interval", 3600000L);
+        plugin = TestPlugins.create(folder, config);
+
+        // 数据库中始终是旧数据，写入在测试放行前一直阻塞
+        when(store.loadPlayerData(any(UUID.class))).thenAnswer(invocation ->
+                new PlayerData(invocation.getArgument(0), STALE, null));
+        when(store.writeChanges(anyCollection(), anyCollection())).thenAnswer(invocation -> {
+            writing.countDown();
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            return succeed;
+        });
+
+        writer = new PlayerDataWriter(plugin, store);
+        cache = new PlayerDataCache(plugin, store, writer, new ExpiryIndex(), new ShareIndex());
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        writer.shutdown(5000);
+    }
+
+    private Thread flushInBackground() throws InterruptedException {
+        Thread thread = new Thread(() -> writer.flushNow(5000));
+        thread.start();
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+        return thread;
+    }
+
+    @Test
+    void savedDataVisibleWhileCommitting() throws InterruptedException {
+        UUID uuid = UUID.randomUUID();
+        writer.markDirty(new PlayerData(uuid, FRESH, null));
+        Thread flush = flushInBackground();
+
+        // 写入尚未提交，读取时不能装载数据库中的旧数据
+        assertEquals(FRESH, cache.get(uuid).getExpiryTime());
+        assertEquals(1, writer.getPendingCount());
+
+        release.countDown();
+        flush.join();
+        assertEquals(0, writer.getPendingCount());
+        assertEquals(1L, writer.getWrittenCount());
+    }
+
+    @Test
+    void deleteVisibleWhileCommitting() throws InterruptedException {
+        UUID uuid = UUID.randomUUID();
+        writer.markDeleted(uuid);
+        Thread flush = flushInBackground();
+
+        assertNull(cache.get(uuid));
+
+        release.countDown();
+        flush.join();
+        assertEquals(0, writer.getPendingCount());
+    }
+
+    @Test
+    void saveAllVisibleWhileCommitting() throws InterruptedException {
+        UUID uuid = UUID.randomUUID();
+        writer.saveAll(Collections.singletonList(new PlayerData(uuid, FRESH, null)));
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        assertEquals(FRESH, cache.get(uuid).getExpiryTime());
+
+        release.countDown();
+        writer.flushNow(5000);
+        assertEquals(0, writer.getPendingCount());
+    }
+
+    @Test
+    void newerChangeKeptAfterCommit() throws InterruptedException {
+        UUID uuid = UUID.randomUUID();
+        writer.markDirty(new PlayerData(uuid, FRESH, null));
+        Thread flush = flushInBackground();
+
+        // 写入期间的新修改不会被正在提交的批次移除
+        writer.markDirty(new PlayerData(uuid, FRESH + 1, null));
+        release.countDown();
+        flush.join();
+
+        assertEquals(1, writer.getPendingCount());
+        assertEquals(FRESH + 1, cache.get(uuid).getExpiryTime());
+    }
+
+    @Test
+    void shareChangeSurvivesCoalescing() throws InterruptedException {
+        List<PlayerData> written = new ArrayList<>();
+        doAnswer(invocation -> {
+            written.addAll(invocation.getArgument(0));
+            return true;
+        }).when(store).writeChanges(anyCollection(), anyCollection());
+
+        PlayerData data = new PlayerData(UUID.randomUUID(), FRESH, null);
+        data.addSharedWith(UUID.randomUUID());
+        writer.markDirty(data);
+        assertFalse(data.isSharesChanged());
+
+        // 第二次保存没有修改共享，替换排队的数据后仍需写入之前的共享修改
+        data.setExpiryTime(FRESH + 1);
+        writer.markDirty(data);
+        writer.flushNow(5000);
+        assertEquals(1, written.size());
+        assertTrue(written.get(0).isSharesChanged());
+
+        written.clear();
+        data.setExpiryTime(FRESH + 2);
+        writer.markDirty(data);
+        writer.flushNow(5000);
+        assertFalse(written.get(0).isSharesChanged());
+    }
+
+    @Test
+    void failedCommitStaysQueued() throws InterruptedException {
+        succeed = false;
+        UUID uuid = UUID.randomUUID();
+        writer.markDirty(new PlayerData(uuid, FRESH, null));
+        Thread flush = flushInBackground();
+        release.countDown();
+        flush.join();
+
+        assertEquals(1L, writer.getFailedFlushCount());
+        assertEquals(1, writer.getPendingCount());
+        PlayerData data = cache.get(uuid);
+        assertNotNull(data);
+        assertEquals(FRESH, data.getExpiryTime());
+    }
+}
@@ -0,0 +1,182 @@
+package org.littlesheep.deathforkeep.data;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.junit.jupiter.api.io.TempDir;
+import org.littlesheep.deathforkeep.TestPlugins;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 40万名玩家时管理员玩家列表的翻页耗时
+ * 比较keyset分页在列表开头、中间和末尾的耗时，以及同一位置使用LIMIT/OFFSET的耗时
+ * 运行：mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+class PlayerPagingBenchmarkTest {
+
+    private static final int PLAYERS = 400000;
+    // 与GUIManager每页显示的玩家数量相同
+    private static final int PAGE_SIZE = 45;
+    // 每个位置连续翻页的次数
+    private static final int PAGES = 10;
+    private static final String[] LEVELS = {null, "basic", "vip", "mvp"};
+
+    @TempDir
+    File folder;
+
+    @Test
+    void pagingLatency(TestReporter reporter) throws SQLException {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("database.type", "sqlite");
+        PlayerDataStore store = DatabaseManager.create(TestPlugins.create(folder, config));
+        try {
+            Random random = new Random(25);
+            long now = System.currentTimeMillis();
+            List<PlayerData> players = new ArrayList<>(PLAYERS);
+            Map<UUID, String> names = new HashMap<>();
+            for (int i = 0; i < PLAYERS; i++) {
+                // 一半的玩家保护已过期
+                PlayerData data = new PlayerData(UUID.randomUUID(), now + random.nextInt(7200000) - 3600000L, null);
+                data.setProtectionLevel(LEVELS[i % LEVELS.length]);
+                players.add(data);
+                // 十分之一的玩家没有记录名称
+                if (i % 10 != 0) {
+                    names.put(data.getUuid(), "Player" + i);
+                }
+            }
+            long start = System.nanoTime();
+            assertTrue(store.saveAll(players));
+            assertTrue(store.saveNames(names, now));
+            reporter.publishEntry("insert", String.format("%d 名玩家, %.0f ms", PLAYERS,
+                    (System.nanoTime() - start) / 1000000.0));
+
+            for (PlayerQuery query : new PlayerQuery[]{
+                    PlayerQuery.ALL,
+                    PlayerQuery.ALL.withSort(PlayerQuery.Sort.NAME),
+                    PlayerQuery.ALL.withActiveOnly(true),
+                    PlayerQuery.ALL.withLevel("vip")}) {
+                String name = query.getSort() + (query.isActiveOnly() ? "/active" : "")
+                        + (query.getLevel() != null ? "/" + query.getLevel() : "");
+                int total = count(store, query);
+                for (double position : new double[]{0.0, 0.5, 0.99}) {
+                    int offset = (int) (total * position);
+                    PlayerPage.Cursor after = cursorAt(store, query, offset);
+
+                    // 预热
+                    page(store, query, after);
+                    start = System.nanoTime();
+                    PlayerPage.Cursor cursor = after;
+                    int rows = 0;
+                    for (int i = 0; i < PAGES && (i == 0 || cursor != null); i++) {
+                        PlayerPage page = store.queryPlayers(query, cursor, PAGE_SIZE);
+                        rows += page.getPlayers().size();
+                        cursor = page.getNext();
+                    }
+                    double keysetMillis = (System.nanoTime() - start) / 1000000.0 / PAGES;
+                    assertTrue(rows > 0, name + " 在位置 " + offset + " 没有读取到玩家");
+
+                    start = System.nanoTime();
+                    for (int i = 0; i < PAGES; i++) {
+                        offsetPage(store, query, offset + i * PAGE_SIZE);
+                    }
+                    double offsetMillis = (System.nanoTime() - start) / 1000000.0 / PAGES;
+
+                    reporter.publishEntry(name + "@" + offset, String.format(
+                            "keyset %.2f ms/页, OFFSET %.2f ms/页 (共 %d 名玩家)", keysetMillis, offsetMillis, total));
+                }
+            }
+        } finally {
+            store.closeConnection();
+        }
+    }
+
+    private static PlayerPage page(PlayerDataStore store, PlayerQuery query, PlayerPage.Cursor after) {
+        PlayerPage page = store.queryPlayers(query, after, PAGE_SIZE);
+        assertNotNull(page);
+        return page;
+    }
+
+    /**
+     * @return 排在前offset名玩家之后的位置，offset为0时返回null
+     */
+    private static PlayerPage.Cursor cursorAt(PlayerDataStore store, PlayerQuery query, int offset) {
+        if (offset == 0) {
+            return null;
+        }
+        PlayerPage page = store.queryPlayers(query, null, offset);
+        assertEquals(offset, page.getPlayers().size());
+        return page.getNext();
+    }
+
+    private static int count(PlayerDataStore store, PlayerQuery query) throws SQLException {
+        try (Connection connection = store.getConnectionPool().getConnection();
+             PreparedStatement statement = connection.prepareStatement(
+                     "SELECT COUNT(*) FROM player_data p" + where(query))) {
+            bind(statement, query, 1);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                assertTrue(resultSet.next());
+                return resultSet.getInt(1);
+            }
+        }
+    }
+
+    /**
+     * 改用keyset分页之前的查询方式，跳过前offset行
+     */
+    private static void offsetPage(PlayerDataStore store, PlayerQuery query, int offset) throws SQLException {
+        String order = query.getSort() == PlayerQuery.Sort.NAME
+                ? " ORDER BY COALESCE(n.name_lower, p.uuid), p.uuid" : " ORDER BY p.expiry_time, p.uuid";
+        try (Connection connection = store.getConnectionPool().getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT p.*, n.name FROM player_data p"
+                     + " LEFT JOIN player_names n ON n.uuid = p.uuid" + where(query) + order + " LIMIT ? OFFSET ?")) {
+            int index = bind(statement, query, 1);
+            statement.setInt(index++, PAGE_SIZE);
+            statement.setInt(index, offset);
+            int rows = 0;
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    rows++;
+                }
+            }
+            assertTrue(rows > 0 || offset > 0);
+        }
+    }
+
+    private static String where(PlayerQuery query) {
+        StringBuilder sql = new StringBuilder(" WHERE 1 = 1");
+        if (query.isActiveOnly()) {
+            sql.append(" AND p.expiry_time > ?");
+        }
+        if (query.getLevel() != null) {
+            sql.append(" AND p.protection_level = ?");
+        }
+        return sql.toString();
+    }
+
+    private static int bind(PreparedStatement statement, PlayerQuery query, int index) throws SQLException {
+        if (query.isActiveOnly()) {
+            statement.setLong(index++, System.currentTimeMillis());
+        }
+        if (query.getLevel() != null) {
+            statement.setString(index++, query.getLevel());
+        }
+        return index;
+    }
+}
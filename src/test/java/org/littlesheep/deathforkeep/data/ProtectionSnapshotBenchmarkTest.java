@@ -0,0 +1,200 @@
+package org.littlesheep.deathforkeep.data;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.event.entity.PlayerDeathEvent;
+import org.bukkit.inventory.ItemStack;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.junit.jupiter.api.io.TempDir;
+import org.littlesheep.deathforkeep.DeathForKeep;
+import org.littlesheep.deathforkeep.TestPlugins;
+import org.littlesheep.deathforkeep.TestServer;
+import org.littlesheep.deathforkeep.listeners.DeathListener;
+import org.littlesheep.deathforkeep.service.ProtectionService;
+import org.littlesheep.deathforkeep.utils.PluginSettings;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 死亡事件读取缓存快照与每次重新合并玩家数据和等级配置的耗时对比
+ * 插件方法由模拟对象提供，每次调用的开销单独输出，比较两种情况时应扣除
+ * 运行：mvn test -Pbenchmark
+ */
+class ProtectionSnapshotBenchmarkTest {
+
+    private static final int PLAYERS = 200;
+    private static final int ROUNDS = 10;
+    private static final String[] LEVELS = {null, "basic", "vip", "mvp"};
+
+    @TempDir
+    File folder;
+
+    private PlayerDataWriter writer;
+    private PlayerDataCache cache;
+    private ProtectionService service;
+    private DeathForKeep plugin;
+    private DeathListener listener;
+
+    @BeforeEach
+    void setUp() {
+        TestServer.install();
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("backup.enabled", false);
+        config.set("backup.periodic.enabled", false);
+        config.set("sounds.protection-used.enabled", false);
+        config.set("performance.write-behind.flush-interval", 3600000L);
+        config.set("protection-levels.basic.price-multiplier", 1.0);
+        config.set("protection-levels.vip.keep-exp", true);
+        config.set("protection-levels.vip.particle-effect", "FLAME");
+        config.set("protection-levels.mvp.keep-exp", true);
+        config.set("protection-levels.mvp.no-death-penalty", true);
+        plugin = TestPlugins.create(folder, config);
+        PluginSettings settings = PluginSettings.load(config, plugin.getLogger());
+        when(plugin.getSettings()).thenReturn(settings);
+
+        // 所有玩家都已在缓存中，不会读取数据库
+        PlayerDataStore store = mock(PlayerDataStore.class);
+        ExpiryIndex expiryIndex = new ExpiryIndex();
+        ShareIndex shareIndex = new ShareIndex();
+        writer = new PlayerDataWriter(plugin, store);
+        cache = new PlayerDataCache(plugin, store, writer, expiryIndex, shareIndex);
+        service = new ProtectionService(plugin, writer, cache, expiryIndex, shareIndex);
+        when(plugin.getProtectionService()).thenReturn(service);
+        listener = new DeathListener(plugin);
+    }
+
+    @AfterEach
+    void tearDown() {
+        listener.onDisable();
+        writer.shutdown(1000L);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void snapshotVersusRecompute(TestReporter reporter) {
+        long expiry = System.currentTimeMillis() + 3600000L;
+        Player[] players = new Player[PLAYERS];
+        for (int i = 0; i < PLAYERS; i++) {
+            PlayerData data = new PlayerData(UUID.randomUUID(), i % 5 == 0 ? 0L : expiry, null);
+            data.setProtectionLevel(LEVELS[i % LEVELS.length]);
+            cache.put(data);
+            players[i] = player(data.getUuid());
+        }
+
+        // 预热
+        for (int i = 0; i < 5; i++) {
+            runDeaths(players, false);
+            runDeaths(players, true);
+        }
+
+        ProtectionSnapshot[] before = snapshots(players);
+        long start = System.nanoTime();
+        int cached = runDeaths(players, false);
+        long cachedNanos = System.nanoTime() - start;
+        // 没有修改时死亡处理不会重新生成快照
+        assertArrayEquals(before, snapshots(players));
+
+        start = System.nanoTime();
+        int recomputed = runDeaths(players, true);
+        long recomputeNanos = System.nanoTime() - start;
+
+        assertEquals(recomputed, cached);
+        assertEquals(PLAYERS / 5 * 4 * ROUNDS, cached);
+
+        start = System.nanoTime();
+        for (int i = 0; i < PLAYERS * ROUNDS; i++) {
+            plugin.getProtectionService();
+        }
+        long mockNanos = System.nanoTime() - start;
+
+        long deaths = (long) PLAYERS * ROUNDS;
+        reporter.publishEntry("cached", String.format("%.1f ns/次死亡", (double) cachedNanos / deaths));
+        reporter.publishEntry("recompute", String.format("%.1f ns/次死亡", (double) recomputeNanos / deaths));
+        reporter.publishEntry("mock", String.format("%.1f ns/次插件方法调用", (double) mockNanos / deaths));
+    }
+
+    private ProtectionSnapshot[] snapshots(Player[] players) {
+        ProtectionSnapshot[] result = new ProtectionSnapshot[players.length];
+        for (int i = 0; i < players.length; i++) {
+            result[i] = service.getSnapshot(players[i].getUniqueId());
+        }
+        return result;
+    }
+
+    /**
+     * 依次调用死亡事件的全部处理方法，invalidate为true时每次死亡前使快照失效
+     *
+     * @return 保留了物品的死亡次数
+     */
+    private int runDeaths(Player[] players, boolean invalidate) {
+        int kept = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (Player player : players) {
+                if (invalidate) {
+                    service.reloadSettings();
+                }
+                PlayerDeathEvent event = new PlayerDeathEvent(player, new ArrayList<ItemStack>(), 10, "");
+                listener.onPlayerDeathEarly(event);
+                listener.onPlayerDeathNormal(event);
+                listener.onPlayerDeathHigh(event);
+                listener.onPlayerDeath(event);
+                if (event.getKeepInventory()) {
+                    kept++;
+                }
+            }
+        }
+        return kept;
+    }
+
+    // 只实现死亡处理用到的方法，避免模拟框架的调用开销计入结果
+    private static Player player(UUID uuid) {
+        return (Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[]{Player.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getUniqueId":
+                            return uuid;
+                        case "getName":
+                            return uuid.toString().substring(0, 8);
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    @Test
+    void snapshotInvalidatedByChanges() {
+        PlayerData data = new PlayerData(UUID.randomUUID(), System.currentTimeMillis() + 3600000L, null);
+        data.setProtectionLevel("vip");
+        cache.put(data);
+
+        ProtectionSnapshot first = service.getSnapshot(data.getUuid());
+        assertTrue(first.isKeepExp());
+        assertEquals("FLAME", first.getParticleEffect());
+        assertSame(first, service.getSnapshot(data.getUuid()));
+
+        data.setNoDeathPenalty(true);
+        ProtectionSnapshot second = service.getSnapshot(data.getUuid());
+        assertNotSame(first, second);
+        assertTrue(second.isNoDeathPenalty());
+
+        // 重载配置
+        service.reloadSettings();
+        assertNotSame(second, service.getSnapshot(data.getUuid()));
+        assertSame(ProtectionSnapshot.NONE, service.getSnapshot(UUID.randomUUID()));
+    }
+}
@@ -0,0 +1,291 @@
+package org.littlesheep.deathforkeep.data;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.littlesheep.deathforkeep.TestPlugins;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SQLiteDataStoreTest {
+
+    @TempDir
+    File folder;
+
+    private final YamlConfiguration config = new YamlConfiguration();
+    private PlayerDataStore store;
+
+    @AfterEach
+    void tearDown() {
+        if (store != null) {
+            store.closeConnection();
+        }
+    }
+
+    private PlayerDataStore open() {
+        config.set("database.type", "sqlite");
+        store = DatabaseManager.create(TestPlugins.create(folder, config));
+        assertNotNull(store.getConnectionPool());
+        return store;
+    }
+
+    private static PlayerData player(long expiryTime, UUID... shares) {
+        PlayerData data = new PlayerData(UUID.randomUUID(), expiryTime, null);
+        data.setSharedWithAll(Arrays.asList(shares));
+        return data;
+    }
+
+    private String pragma(String name) throws SQLException {
+        try (Connection connection = store.getConnectionPool().getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("PRAGMA " + name)) {
+            assertTrue(resultSet.next());
+            return resultSet.getString(1);
+        }
+    }
+
+    private int count(String sql) throws SQLException {
+        try (Connection connection = store.getConnectionPool().getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            assertTrue(resultSet.next());
+            return resultSet.getInt(1);
+        }
+    }
+
+    @Test
+    void defaultPragmas() throws SQLException {
+        open();
+        assertEquals("wal", pragma("journal_mode"));
+        // NORMAL = 1, MEMORY = 2
+        assertEquals("1", pragma("synchronous"));
+        assertEquals("2", pragma("temp_store"));
+        assertEquals("-8192", pragma("cache_size"));
+        assertEquals("5000", pragma("busy_timeout"));
+    }
+
+    @Test
+    void configuredPragmas() throws SQLException {
+        config.set("performance.sqlite.wal", false);
+        config.set("performance.sqlite.synchronous", "full");
+        config.set("performance.sqlite.temp-store", "file");
+        config.set("performance.sqlite.cache-size", 1024);
+        config.set("performance.sqlite.busy-timeout", 250);
+        open();
+        assertEquals("delete", pragma("journal_mode"));
+        assertEquals("2", pragma("synchronous"));
+        assertEquals("1", pragma("temp_store"));
+        assertEquals("-1024", pragma("cache_size"));
+        assertEquals("250", pragma("busy_timeout"));
+    }
+
+    @Test
+    void invalidPragmaFallsBack() throws SQLException {
+        config.set("performance.sqlite.synchronous", "sometimes");
+        config.set("performance.sqlite.temp-store", "disk");
+        open();
+        assertEquals("1", pragma("synchronous"));
+        assertEquals("2", pragma("temp_store"));
+    }
+
+    @Test
+    void writeChangesRoundTrip() throws SQLException {
+        // 分块小于数据量，覆盖分块提交和最后不满一块的提交
+        config.set("performance.batch-chunk-size", 2);
+        open();
+        UUID target = UUID.randomUUID();
+        PlayerData kept = player(1700000000000L, target, UUID.randomUUID());
+        kept.setProtectionLevel("advanced");
+        kept.setKeepExp(true);
+        kept.setParticleEffect("HEART");
+        PlayerData removed = player(1700000001000L, target);
+        PlayerData plain = player(0L);
+        assertTrue(store.writeChanges(Arrays.asList(kept, removed, plain), Collections.<UUID>emptyList()));
+
+        PlayerData loaded = store.loadPlayerData(kept.getUuid());
+        assertNotNull(loaded);
+        assertEquals(1700000000000L, loaded.getExpiryTime());
+        assertEquals("advanced", loaded.getProtectionLevel());
+        assertTrue(loaded.isKeepExp());
+        assertEquals("HEART", loaded.getParticleEffect());
+        assertEquals(kept.getSharedWithAll(), loaded.getSharedWithAll());
+        assertTrue(store.loadPlayerData(plain.getUuid()).getSharedWithAll().isEmpty());
+        assertEquals(2, store.loadSharingWith(target).size());
+
+        // 同一事务中更新和删除，删除时一并清除共享关系
+        kept.setExpiryTime(1800000000000L);
+        kept.setSharedWithAll(Collections.singletonList(target));
+        assertTrue(store.writeChanges(Collections.singletonList(kept), Collections.singletonList(removed.getUuid())));
+
+        assertNull(store.loadPlayerData(removed.getUuid()));
+        loaded = store.loadPlayerData(kept.getUuid());
+        assertEquals(1800000000000L, loaded.getExpiryTime());
+        assertEquals(Collections.singleton(target), loaded.getSharedWithAll());
+        List<PlayerData> sharing = store.loadSharingWith(target);
+        assertEquals(1, sharing.size());
+        assertEquals(kept.getUuid(), sharing.get(0).getUuid());
+        assertEquals(0, count("SELECT COUNT(*) FROM player_shares WHERE owner = '" + removed.getUuid() + "'"));
+        assertEquals(2, count("SELECT COUNT(*) FROM player_data"));
+    }
+
+    @Test
+    void saveAllRoundTrip() throws SQLException {
+        config.set("performance.batch-chunk-size", 7);
+        open();
+        UUID target = UUID.randomUUID();
+        List<PlayerData> players = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            players.add(i % 5 == 0 ? player(1700000000000L + i, target) : player(1700000000000L + i));
+        }
+        assertTrue(store.saveAll(players));
+        assertEquals(50, count("SELECT COUNT(*) FROM player_data"));
+        assertEquals(10, store.loadSharingWith(target).size());
+
+        // 再次保存同一批玩家时更新原有数据而不是插入新行
+        for (PlayerData data : players) {
+            data.setExpiryTime(data.getExpiryTime() + 1000L);
+            data.setSharedWithAll(Collections.<UUID>emptyList());
+        }
+        assertTrue(store.saveAll(players));
+        assertEquals(50, count("SELECT COUNT(*) FROM player_data"));
+        assertEquals(0, count("SELECT COUNT(*) FROM player_shares"));
+        for (PlayerData data : players) {
+            assertEquals(data.getExpiryTime(), store.loadPlayerData(data.getUuid()).getExpiryTime());
+        }
+    }
+
+    @Test
+    void unchangedSharesNotRewritten() throws SQLException {
+        open();
+        UUID target = UUID.randomUUID();
+        UUID other = UUID.randomUUID();
+        assertTrue(store.saveAll(Collections.singletonList(player(1700000000000L, target))));
+
+        // 从数据库读取的数据没有共享修改，只保存到期时间时不应删除和重写共享关系
+        PlayerData loaded = store.loadPlayerData(store.loadSharingWith(target).get(0).getUuid());
+        assertFalse(loaded.isSharesChanged());
+        execute("INSERT INTO player_shares (owner, target) VALUES ('" + loaded.getUuid() + "', '" + other + "')");
+        loaded.setExpiryTime(1800000000000L);
+        assertTrue(store.writeChanges(Collections.singletonList(loaded), Collections.<UUID>emptyList()));
+        assertEquals(2, count("SELECT COUNT(*) FROM player_shares WHERE owner = '" + loaded.getUuid() + "'"));
+        assertEquals(1800000000000L, store.loadPlayerData(loaded.getUuid()).getExpiryTime());
+
+        // 修改共享后整体重写
+        loaded.removeSharedWith(target);
+        assertTrue(loaded.isSharesChanged());
+        assertTrue(store.writeChanges(Collections.singletonList(loaded), Collections.<UUID>emptyList()));
+        assertEquals(0, count("SELECT COUNT(*) FROM player_shares WHERE owner = '" + loaded.getUuid() + "'"));
+    }
+
+    @Test
+    void nameSortIncludesUnnamedPlayers() {
+        open();
+        List<PlayerData> players = new ArrayList<>();
+        Map<UUID, String> names = new HashMap<>();
+        for (int i = 0; i < 23; i++) {
+            PlayerData data = player(1700000000000L + i);
+            data.setProtectionLevel(i % 2 == 0 ? "vip" : null);
+            players.add(data);
+            // 三分之一的玩家没有记录名称，名称大小写混合
+            if (i % 3 != 0) {
+                names.put(data.getUuid(), (i % 2 == 0 ? "Player" : "player") + (char) ('a' + i));
+            }
+        }
+        // 同名的玩家按UUID排序
+        names.put(players.get(4).getUuid(), "PLAYERC");
+        assertTrue(store.saveAll(players));
+        assertTrue(store.saveNames(names, 1L));
+
+        Comparator<PlayerData> byName = Comparator.<PlayerData, String>comparing(data -> {
+            String name = names.get(data.getUuid());
+            return name != null ? name.toLowerCase() : data.getUuid().toString();
+        }).thenComparing(data -> data.getUuid().toString());
+        PlayerQuery query = PlayerQuery.ALL.withSort(PlayerQuery.Sort.NAME);
+        assertEquals(sorted(players, byName), page(query));
+        
+        List<PlayerData> vip = new ArrayList<>();
+        for (PlayerData data : players) {
+            if ("vip".equals(data.getProtectionLevel())) {
+                vip.add(data);
+            }
+        }
+        assertEquals(sorted(vip, byName), page(query.withLevel("vip")));
+    }
+
+    @Test
+    void expirySortPagesInOrder() {
+        open();
+        List<PlayerData> players = new ArrayList<>();
+        for (int i = 0; i < 23; i++) {
+            // 每三名玩家的到期时间相同，按UUID排序
+            players.add(player(1700000000000L + i / 3));
+        }
+        assertTrue(store.saveAll(players));
+
+        Comparator<PlayerData> byExpiry = Comparator.comparingLong(PlayerData::getExpiryTime)
+                .thenComparing(data -> data.getUuid().toString());
+        assertEquals(sorted(players, byExpiry), page(PlayerQuery.ALL));
+    }
+
+    private static List<UUID> sorted(List<PlayerData> players, Comparator<PlayerData> order) {
+        List<UUID> result = new ArrayList<>();
+        players.stream().sorted(order).forEach(data -> result.add(data.getUuid()));
+        return result;
+    }
+
+    /**
+     * 每页4名玩家，逐页读取到最后一页
+     */
+    private List<UUID> page(PlayerQuery query) {
+        List<UUID> result = new ArrayList<>();
+        PlayerPage.Cursor after = null;
+        do {
+            PlayerPage page = store.queryPlayers(query, after, 4);
+            assertTrue(page.getPlayers().size() <= 4);
+            for (PlayerData data : page.getPlayers()) {
+                result.add(data.getUuid());
+            }
+            after = page.getNext();
+        } while (after != null);
+        return result;
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Connection connection = store.getConnectionPool().getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.executeUpdate(sql);
+        }
+    }
+
+    @Test
+    void failedBatchRollsBack() throws SQLException {
+        open();
+        PlayerData data = player(1700000000000L);
+        assertTrue(store.saveAll(Collections.singletonList(data)));
+
+        // 主键为空的一行使整个事务失败，之前的删除也不会生效
+        PlayerData invalid = new PlayerData(null, 0L, null);
+        assertFalse(store.writeChanges(Collections.singletonList(invalid), Collections.singletonList(data.getUuid())));
+        assertNotNull(store.loadPlayerData(data.getUuid()));
+        assertEquals(1, count("SELECT COUNT(*) FROM player_data"));
+    }
+}
@@ -0,0 +1,104 @@
+package org.littlesheep.deathforkeep.data;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.junit.jupiter.api.io.TempDir;
+import org.littlesheep.deathforkeep.TestPlugins;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 开启和关闭语句缓存、以及旧版SQLite设置下的玩家数据保存延迟对比
+ * 所有访问都经过连接池，连接池本身无法关闭，对比的是连接池上的语句缓存和连接初始化设置
+ * 运行：mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+class SaveLatencyBenchmarkTest {
+
+    private static final int PLAYERS = 200;
+    private static final int SAVES = 3000;
+    // 与写入队列一次合并的数量相近
+    private static final int BATCH = 5;
+
+    @TempDir
+    File folder;
+
+    @Test
+    void statementCacheAndSqliteProfile(TestReporter reporter) {
+        double cached = run("cached", reporter, 16, true);
+        double uncached = run("uncached", reporter, 0, true);
+        double legacy = run("legacy", reporter, 0, false);
+        reporter.publishEntry("speedup", String.format("缓存/不缓存: %.2fx, 缓存/旧版设置: %.2fx",
+                uncached / cached, legacy / cached));
+    }
+
+    /**
+     * @return 每次保存的平均耗时（微秒）
+     */
+    private double run(String name, TestReporter reporter, int statementCacheSize, boolean profile) {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("database.type", "sqlite");
+        config.set("performance.sqlite.statement-cache-size", statementCacheSize);
+        if (!profile) {
+            // 改动前SQLite使用驱动默认的回滚日志和完全同步
+            config.set("performance.sqlite.wal", false);
+            config.set("performance.sqlite.synchronous", "FULL");
+        }
+        File dataFolder = new File(folder, name);
+        PlayerDataStore store = DatabaseManager.create(TestPlugins.create(dataFolder, config));
+        try {
+            List<PlayerData> players = new ArrayList<>();
+            UUID target = UUID.randomUUID();
+            for (int i = 0; i < PLAYERS; i++) {
+                PlayerData data = new PlayerData(UUID.randomUUID(), 1700000000000L, null);
+                if (i % 4 == 0) {
+                    data.addSharedWith(target);
+                }
+                players.add(data);
+            }
+            assertTrue(store.saveAll(players));
+
+            // 预热
+            save(store, players, SAVES / 10);
+            long start = System.nanoTime();
+            save(store, players, SAVES);
+            long elapsed = System.nanoTime() - start;
+
+            ConnectionPool pool = store.getConnectionPool();
+            if (statementCacheSize > 0) {
+                assertTrue(pool.getStatementHits() > pool.getStatementMisses());
+            } else {
+                assertEquals(0L, pool.getStatementHits());
+            }
+            assertEquals(players.get(0).getExpiryTime(), store.loadPlayerData(players.get(0).getUuid()).getExpiryTime());
+
+            double micros = elapsed / 1000.0 / SAVES;
+            reporter.publishEntry(name, String.format("%.1f µs/次保存 (%d 名玩家/批, 语句缓存 %d, 命中 %d)",
+                    micros, BATCH, statementCacheSize, pool.getStatementHits()));
+            return micros;
+        } finally {
+            store.closeConnection();
+        }
+    }
+
+    private static void save(PlayerDataStore store, List<PlayerData> players, int saves) {
+        for (int i = 0; i < saves; i++) {
+            List<PlayerData> batch = new ArrayList<>(BATCH);
+            for (int j = 0; j < BATCH; j++) {
+                PlayerData data = players.get((i * BATCH + j) % players.size());
+                data.setExpiryTime(data.getExpiryTime() + 1);
+                batch.add(data.copy());
+            }
+            assertTrue(store.writeChanges(batch, Collections.<UUID>emptyList()));
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package org.littlesheep.deathforkeep.hooks;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.junit.jupiter.api.io.TempDir;
+import org.littlesheep.deathforkeep.DeathForKeep;
+import org.littlesheep.deathforkeep.TestPlugins;
+import org.littlesheep.deathforkeep.data.ExpiryIndex;
+import org.littlesheep.deathforkeep.data.PlayerData;
+import org.littlesheep.deathforkeep.data.PlayerDataCache;
+import org.littlesheep.deathforkeep.data.PlayerNameCache;
+import org.littlesheep.deathforkeep.data.ShareIndex;
+import org.littlesheep.deathforkeep.service.ProtectionService;
+import org.littlesheep.deathforkeep.utils.Messages;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+class PlaceholderStateTest {
+
+    private static final int PLAYERS = 100;
+    // 每个玩家每tick请求的变量数，相当于计分板上的5行
+    private static final String[] PLACEHOLDERS = {"time", "seconds_left", "status", "share_status", "shared_by"};
+    private static final int TICKS = 100;
+
+    @TempDir
+    File folder;
+
+    private final Map<UUID, PlayerData> players = new ConcurrentHashMap<>();
+    private final Map<UUID, List<PlayerData>> sharing = new ConcurrentHashMap<>();
+    private final Map<UUID, String> names = new ConcurrentHashMap<>();
+    private final AtomicInteger nameVersion = new AtomicInteger();
+    // 每次重新生成变量缓存时都会查询共享来源，以此统计生成次数
+    private final AtomicLong creates = new AtomicLong();
+
+    private DeathForKeep plugin;
+    private ShareIndex shareIndex;
+    private PlaceholderHook hook;
+
+    @BeforeEach
+    void setUp() {
+        plugin = TestPlugins.create(folder, new YamlConfiguration());
+
+        PlayerDataCache dataCache = mock(PlayerDataCache.class, withSettings().stubOnly());
+        when(dataCache.get(any(UUID.class))).thenAnswer(invocation -> players.get(invocation.<UUID>getArgument(0)));
+        when(dataCache.findSharingWith(any(UUID.class))).thenAnswer(invocation -> {
+            creates.incrementAndGet();
+            return sharing.getOrDefault(invocation.<UUID>getArgument(0), Collections.emptyList());
+        });
+        when(plugin.getPlayerDataCache()).thenReturn(dataCache);
+
+        PlayerNameCache nameCache = mock(PlayerNameCache.class, withSettings().stubOnly());
+        when(nameCache.getVersion()).thenAnswer(invocation -> nameVersion.get());
+        when(nameCache.getName(any(UUID.class))).thenAnswer(invocation -> names.get(invocation.<UUID>getArgument(0)));
+        when(plugin.getNameCache()).thenReturn(nameCache);
+
+        // 消息直接返回键和玩家名称
+        Messages messages = mock(Messages.class, withSettings().stubOnly().defaultAnswer(invocation -> {
+            Object[] args = invocation.getArguments();
+            return args.length > 2 ? args[0] + " " + args[2] : String.valueOf(args[0]);
+        }));
+        when(plugin.getMessages()).thenReturn(messages);
+
+        shareIndex = new ShareIndex();
+        ProtectionService service = new ProtectionService(plugin, null, null, new ExpiryIndex(), shareIndex);
+        when(plugin.getProtectionService()).thenReturn(service);
+        hook = new PlaceholderHook(plugin);
+    }
+
+    @Test
+    void invalidatedByChanges() {
+        long expiry = System.currentTimeMillis() + 3600000L;
+        PlayerData data = new PlayerData(UUID.randomUUID(), expiry, null);
+        PlayerData sharer = new PlayerData(UUID.randomUUID(), expiry + 60000L, null);
+        PlaceholderState state = new PlaceholderState(data, 0, 0, Collections.singletonList(sharer),
+                "", "", false, 0);
+
+        assertTrue(state.isCurrent(data, 0, 0, 0));
+        assertFalse(state.isCurrent(data, 1, 0, 0));
+        assertFalse(state.isCurrent(data, 0, 1, 0));
+        assertFalse(state.isCurrent(null, 0, 0, 0));
+        // 所有名称都已加载时，名称缓存的变化不影响结果
+        assertTrue(state.isCurrent(data, 0, 0, 5));
+
+        sharer.setParticlesEnabled(!sharer.isParticlesEnabled());
+        assertFalse(state.isCurrent(data, 0, 0, 0));
+    }
+
+    @Test
+    void fallbackNameRefreshedAfterNameCacheChanges() {
+        PlayerData data = new PlayerData(UUID.randomUUID(), 0L, null);
+        PlaceholderState state = new PlaceholderState(data, 0, 0, Collections.emptyList(),
+                "Unknown", "", true, 3);
+
+        assertTrue(state.isCurrent(data, 0, 0, 3));
+        assertFalse(state.isCurrent(data, 0, 0, 4));
+    }
+
+    @Test
+    void expiryFallsBackToSharer() {
+        long now = System.currentTimeMillis();
+        PlayerData expired = new PlayerData(UUID.randomUUID(), now - 1000L, null);
+        PlayerData sharer = new PlayerData(UUID.randomUUID(), now + 3600000L, null);
+
+        PlaceholderState shared = new PlaceholderState(expired, 0, 0, Collections.singletonList(sharer),
+                "", "", false, 0);
+        PlaceholderState none = new PlaceholderState(null, 0, 0, Collections.emptyList(), "", "", false, 0);
+        assertEquals(now + 3600000L, shared.getExpiryTime());
+        assertEquals(0L, none.getExpiryTime());
+    }
+
+    @Test
+    void fallbackNameRefreshedAfterNameLoaded() {
+        Player player = player(UUID.randomUUID());
+        UUID target = UUID.randomUUID();
+        share(player.getUniqueId(), target);
+
+        assertEquals("placeholder.shared-with Unknown", hook.onPlaceholderRequest(player, "share_status"));
+
+        // 名称缓存版本未变化时仍使用缓存的结果
+        names.put(target, "Steve");
+        assertEquals("placeholder.shared-with Unknown", hook.onPlaceholderRequest(player, "share_status"));
+
+        nameVersion.incrementAndGet();
+        assertEquals("placeholder.shared-with Steve", hook.onPlaceholderRequest(player, "share_status"));
+    }
+
+    @Test
+    void loadedNamesIgnoreNameCacheVersion() {
+        Player player = player(UUID.randomUUID());
+        UUID target = UUID.randomUUID();
+        names.put(target, "Steve");
+        share(player.getUniqueId(), target);
+
+        assertEquals("placeholder.shared-with Steve", hook.onPlaceholderRequest(player, "share_status"));
+        long created = creates.get();
+
+        // 所有名称都已加载时，其他玩家的名称加载不会使缓存失效
+        names.put(target, "Alex");
+        nameVersion.incrementAndGet();
+        assertEquals("placeholder.shared-with Steve", hook.onPlaceholderRequest(player, "share_status"));
+        assertEquals(created, creates.get());
+    }
+
+    /**
+     * 100名在线玩家的计分板每tick请求5个变量，持续100 tick
+     * 每秒有一名玩家的数据变化，每50 tick有一次共享关系变化，统计缓存命中率和每次请求的耗时
+     * 插件方法由模拟对象提供，每次调用的开销单独输出
+     * 运行：mvn test -Pbenchmark
+     */
+    @Test
+    @Tag("benchmark")
+    void pollingEveryTick(TestReporter reporter) {
+        Random random = new Random(7);
+        long expiry = System.currentTimeMillis() + 3600000L;
+        List<Player> online = new ArrayList<>(PLAYERS);
+        for (int i = 0; i < PLAYERS; i++) {
+            UUID uuid = UUID.randomUUID();
+            online.add(player(uuid));
+            names.put(uuid, "player" + i);
+            // 四分之一的玩家没有保护数据
+            if (i % 4 != 0) {
+                players.put(uuid, new PlayerData(uuid, expiry + random.nextInt(3600000), null));
+            }
+        }
+        // 每10名玩家中有一名与下一名玩家共享保护
+        for (int i = 1; i + 1 < PLAYERS; i += 10) {
+            share(online.get(i).getUniqueId(), online.get(i + 1).getUniqueId());
+        }
+
+        long sink = 0;
+        // 预热
+        for (int tick = 0; tick < 20; tick++) {
+            sink += tick(online);
+        }
+        creates.set(0);
+
+        long start = System.nanoTime();
+        for (int tick = 0; tick < TICKS; tick++) {
+            if (tick % 20 == 0) {
+                PlayerData changed = players.get(online.get(1 + random.nextInt(PLAYERS - 1)).getUniqueId());
+                if (changed != null) {
+                    changed.setParticlesEnabled(!changed.isParticlesEnabled());
+                }
+            }
+            if (tick % 50 == 0) {
+                UUID owner = online.get(1).getUniqueId();
+                shareIndex.update(owner, players.get(owner).getSharedWithAll());
+            }
+            sink += tick(online);
+        }
+        long nanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < PLAYERS * PLACEHOLDERS.length; i++) {
+            plugin.getMessages();
+        }
+        long mockNanos = System.nanoTime() - start;
+
+        long lookups = (long) PLAYERS * PLACEHOLDERS.length * TICKS;
+        double hitRate = 1.0 - (double) creates.get() / lookups;
+        reporter.publishEntry("lookups", String.valueOf(lookups));
+        reporter.publishEntry("creates", String.valueOf(creates.get()));
+        reporter.publishEntry("hitRate", String.format("%.4f", hitRate));
+        reporter.publishEntry("latency", String.format("%.1f ns/次, 每tick %.3f ms",
+                (double) nanos / lookups, nanos / 1000000.0 / TICKS));
+        reporter.publishEntry("mock", String.format("%.1f ns/次插件方法调用",
+                (double) mockNanos / (PLAYERS * PLACEHOLDERS.length)));
+        assertTrue(hitRate > 0.99, "命中率过低: " + hitRate);
+        assertTrue(sink > 0);
+    }
+
+    private long tick(List<Player> online) {
+        long sink = 0;
+        for (Player player : online) {
+            for (String placeholder : PLACEHOLDERS) {
+                sink += hook.onPlaceholderRequest(player, placeholder).length();
+            }
+        }
+        return sink;
+    }
+
+    private void share(UUID owner, UUID target) {
+        PlayerData data = players.computeIfAbsent(owner,
+                uuid -> new PlayerData(uuid, System.currentTimeMillis() + 3600000L, null));
+        data.addSharedWith(target);
+        shareIndex.update(owner, data.getSharedWithAll());
+        sharing.put(target, Collections.singletonList(data));
+    }
+
+    // 只实现变量请求用到的方法，避免模拟框架的调用开销计入结果
+    private static Player player(UUID uuid) {
+        return (Player) Proxy.newProxyInstance(Player.class.getClassLoader(), new Class<?>[]{Player.class},
+                (proxy, method, args) -> {
+                    if ("getUniqueId".equals(method.getName())) {
+                        return uuid;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
@@ -0,0 +1,133 @@
+package org.littlesheep.deathforkeep.utils;
+
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 一次受保护的死亡和重生恢复读取设置的耗时，比较PluginSettings快照与逐项调用getConfig()
+ * 运行：mvn test -Pbenchmark
+ */
+class PluginSettingsBenchmarkTest {
+
+    private static final int DEATHS = 1000000;
+
+    // 与DeathForKeep中的字段相同，每次读取设置都要读取一次volatile字段
+    private volatile PluginSettings settings;
+
+    @Test
+    @Tag("benchmark")
+    void settingsVersusConfigLookups(TestReporter reporter) {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("use-inventory-backup", true);
+        config.set("backup.enabled", true);
+        config.set("backup.debug-mode", false);
+        config.set("backup.diff-report", false);
+        config.set("backup.retry-attempts", 3);
+        config.set("backup.final-delay", 60L);
+        config.set("backup.periodic.save-on-death", true);
+        config.set("sounds.protection-used.enabled", true);
+        config.set("sounds.protection-used.sound", "ENTITY_PLAYER_LEVELUP");
+        config.set("sounds.protection-used.volume", 0.5);
+        config.set("sounds.protection-used.pitch", 2.0);
+        settings = PluginSettings.load(config, Logger.getLogger("PluginSettingsBenchmarkTest"));
+
+        // 两种方式读取到的设置相同
+        assertEquals(configDeath(config), settingsDeath());
+
+        long sink = 0;
+        // 预热
+        for (int i = 0; i < DEATHS / 10; i++) {
+            sink += configDeath(config);
+            sink += settingsDeath();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < DEATHS; i++) {
+            sink += configDeath(config);
+        }
+        long configNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < DEATHS; i++) {
+            sink += settingsDeath();
+        }
+        long settingsNanos = System.nanoTime() - start;
+
+        reporter.publishEntry("getConfig", String.format("%.1f ns/次死亡", (double) configNanos / DEATHS));
+        reporter.publishEntry("settings", String.format("%.1f ns/次死亡", (double) settingsNanos / DEATHS));
+        reporter.publishEntry("sink", String.valueOf(sink));
+    }
+
+    /**
+     * 改用PluginSettings之前DeathListener在一次受保护的死亡中读取的设置：
+     * 死亡时刻备份、保护音效，以及重生后恢复检查中的重试次数、延迟和调试输出
+     */
+    private static long configDeath(FileConfiguration config) {
+        long result = 0;
+        if (config.getBoolean("use-inventory-backup", true) && config.getBoolean("backup.enabled", true)
+                && config.getBoolean("backup.periodic.save-on-death", true)) {
+            result += 1;
+            if (config.getBoolean("use-inventory-backup", true) && config.getBoolean("backup.enabled", true)) {
+                result += 2;
+            }
+            if (config.getBoolean("backup.debug-mode", false)) {
+                result += 4;
+            }
+        }
+        if (config.getBoolean("sounds.protection-used.enabled", true)) {
+            result += config.getString("sounds.protection-used.sound", "ENTITY_TOTEM_USE").length();
+            result += (long) ((float) config.getDouble("sounds.protection-used.volume", 1.0) * 100);
+            result += (long) ((float) config.getDouble("sounds.protection-used.pitch", 1.0) * 1000);
+        }
+        if (config.getBoolean("use-inventory-backup", true) && config.getBoolean("backup.enabled", true)) {
+            result += Math.max(1, config.getInt("backup.retry-attempts", 5)) * 10000L;
+            result += config.getLong("backup.final-delay", 40) * 100000L;
+            if (config.getBoolean("backup.debug-mode", false)) {
+                result += 8;
+            }
+            if (config.getBoolean("backup.diff-report", true) || config.getBoolean("backup.debug-mode", false)) {
+                result += 16;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 与configDeath()读取相同的设置，每次读取都与插件一样先取得当前的设置快照
+     */
+    private long settingsDeath() {
+        long result = 0;
+        if (settings.isBackupEnabled() && settings.isSaveOnDeath()) {
+            result += 1;
+            if (settings.isBackupEnabled()) {
+                result += 2;
+            }
+            if (settings.isDebugMode()) {
+                result += 4;
+            }
+        }
+        if (settings.isProtectionSoundEnabled()) {
+            result += settings.getProtectionSound().length();
+            result += (long) (settings.getProtectionSoundVolume() * 100);
+            result += (long) (settings.getProtectionSoundPitch() * 1000);
+        }
+        if (settings.isBackupEnabled()) {
+            result += Math.max(1, settings.getRetryAttempts()) * 10000L;
+            result += settings.getFinalDelay() * 100000L;
+            if (settings.isDebugMode()) {
+                result += 8;
+            }
+            if (settings.isDiffReport() || settings.isDebugMode()) {
+                result += 16;
+            }
+        }
+        return result;
+    }
+}
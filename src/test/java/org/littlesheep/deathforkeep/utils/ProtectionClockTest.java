@@ -0,0 +1,177 @@
+package org.littlesheep.deathforkeep.utils;
+
+import org.bukkit.Material;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.event.entity.PlayerDeathEvent;
+import org.bukkit.inventory.ItemStack;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.littlesheep.deathforkeep.DeathForKeep;
+import org.littlesheep.deathforkeep.TestPlugins;
+import org.littlesheep.deathforkeep.TestServer;
+import org.littlesheep.deathforkeep.data.ExpiryIndex;
+import org.littlesheep.deathforkeep.data.PlayerData;
+import org.littlesheep.deathforkeep.data.PlayerDataCache;
+import org.littlesheep.deathforkeep.data.PlayerDataStore;
+import org.littlesheep.deathforkeep.data.PlayerDataWriter;
+import org.littlesheep.deathforkeep.data.ProtectionSnapshot;
+import org.littlesheep.deathforkeep.data.ShareIndex;
+import org.littlesheep.deathforkeep.listeners.DeathListener;
+import org.littlesheep.deathforkeep.service.ProtectionService;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ProtectionClockTest {
+
+    private static final long NOW = 1700000000000L;
+
+    @AfterEach
+    void stopClock() {
+        ProtectionClock.stop();
+    }
+
+    @Test
+    void readsSystemTimeWhenNotRunning() {
+        ProtectionClock.fix(NOW);
+        ProtectionClock.stop();
+
+        long before = System.currentTimeMillis();
+        long now = ProtectionClock.now();
+        long after = System.currentTimeMillis();
+        assertTrue(now >= before && now <= after, "时钟未启动时应读取系统时间");
+    }
+
+    @Test
+    void readsCachedTimeWhenRunning() throws InterruptedException {
+        ProtectionClock.fix(NOW);
+        Thread.sleep(5L);
+        assertEquals(NOW, ProtectionClock.now());
+    }
+
+    @Test
+    void remainingNeverNegative() {
+        ProtectionClock.fix(NOW);
+        assertEquals(0L, ProtectionClock.remainingMillis(NOW - 1));
+        assertEquals(0L, ProtectionClock.remainingMillis(NOW));
+        assertEquals(1L, ProtectionClock.remainingMillis(NOW + 1));
+        assertEquals(0L, ProtectionClock.remainingSeconds(NOW + 999));
+        assertEquals(1L, ProtectionClock.remainingSeconds(NOW + 1000));
+    }
+
+    @Test
+    void callSitesAgreeAroundExpiry() {
+        ProtectionClock.fix(NOW);
+        PluginSettings.Level level = new PluginSettings.Level(1.0, true, false, null);
+
+        // 到期时间等于当前时间时视为已过期
+        for (long expiry : new long[]{NOW - 1000, NOW - 1, NOW, NOW + 1, NOW + 1000}) {
+            boolean expected = expiry > NOW;
+            UUID uuid = UUID.randomUUID();
+            PlayerData data = new PlayerData(uuid, expiry, null);
+            ProtectionSnapshot snapshot = ProtectionSnapshot.of(data, level, 0);
+
+            String at = "expiry = now " + (expiry - NOW >= 0 ? "+" : "") + (expiry - NOW);
+            assertEquals(expected, data.isActive(), at);
+            assertEquals(expected, snapshot.isActive(), at);
+            assertEquals(expected, ProtectionClock.remainingMillis(expiry) > 0, at);
+            assertEquals(ProtectionClock.remainingSeconds(expiry), data.getRemainingSeconds(), at);
+
+            // 提醒任务在 (上次检查, now] 内查找刚过期的玩家，并要求玩家已不再受保护
+            ExpiryIndex index = new ExpiryIndex();
+            index.update(uuid, expiry);
+            boolean remindedExpired = index.findExpiringBetween(NOW - 1000, NOW).contains(uuid);
+            assertEquals(expiry > NOW - 1000 && !expected, remindedExpired, at);
+        }
+    }
+
+    @Test
+    void serviceAndDeathListenerAgreeAroundExpiry(@TempDir File folder) {
+        TestServer.install();
+        ProtectionClock.fix(NOW);
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("backup.enabled", false);
+        config.set("backup.periodic.enabled", false);
+        config.set("sounds.protection-used.enabled", false);
+        config.set("performance.write-behind.flush-interval", 3600000L);
+        DeathForKeep plugin = TestPlugins.create(folder, config);
+        PluginSettings settings = PluginSettings.load(config, plugin.getLogger());
+        when(plugin.getSettings()).thenReturn(settings);
+
+        PlayerDataStore store = mock(PlayerDataStore.class);
+        ExpiryIndex expiryIndex = new ExpiryIndex();
+        ShareIndex shareIndex = new ShareIndex();
+        PlayerDataWriter writer = new PlayerDataWriter(plugin, store);
+        PlayerDataCache cache = new PlayerDataCache(plugin, store, writer, expiryIndex, shareIndex);
+        ProtectionService service = new ProtectionService(plugin, writer, cache, expiryIndex, shareIndex);
+        when(plugin.getProtectionService()).thenReturn(service);
+        DeathListener listener = new DeathListener(plugin);
+
+        try {
+            for (long expiry : new long[]{NOW - 1000, NOW - 1, NOW, NOW + 1, NOW + 1000}) {
+                boolean expected = expiry > NOW;
+                String at = "expiry = now " + (expiry - NOW >= 0 ? "+" : "") + (expiry - NOW);
+                UUID uuid = UUID.randomUUID();
+                cache.put(new PlayerData(uuid, expiry, null));
+                Player player = mock(Player.class);
+                when(player.getUniqueId()).thenReturn(uuid);
+
+                assertEquals(expected, service.hasActiveProtection(uuid), at);
+                assertEquals(expected, service.getSnapshot(uuid).isActive(), at);
+                assertEquals(expected ? ProtectionClock.remainingMillis(expiry) : 0L,
+                        service.getProtectionTimeLeft(uuid), at);
+
+                // 死亡事件的每个阶段都按同一时钟判断
+                List<Consumer<PlayerDeathEvent>> handlers = Arrays.asList(listener::onPlayerDeathEarly,
+                        listener::onPlayerDeathNormal, listener::onPlayerDeathHigh, listener::onPlayerDeath);
+                for (Consumer<PlayerDeathEvent> handler : handlers) {
+                    PlayerDeathEvent event = new PlayerDeathEvent(player,
+                            new ArrayList<>(Collections.singletonList(new ItemStack(Material.DIAMOND))), 10, "");
+                    handler.accept(event);
+                    assertEquals(expected, event.getKeepInventory(), at);
+                    assertEquals(expected, event.getDrops().isEmpty(), at);
+                }
+            }
+        } finally {
+            listener.onDisable();
+            writer.shutdown(1000L);
+        }
+    }
+
+    @Test
+    void forcedActiveIgnoresExpiry() {
+        ProtectionClock.fix(NOW);
+        PlayerData data = new PlayerData(UUID.randomUUID(), NOW - 1, null);
+        data.setForcedActive(true);
+
+        assertTrue(data.isActive());
+        assertTrue(ProtectionSnapshot.of(data, null, 0).isActive());
+        assertEquals(0L, data.getRemainingSeconds());
+    }
+
+    @Test
+    void snapshotFollowsClock() {
+        ProtectionClock.fix(NOW);
+        PlayerData data = new PlayerData(UUID.randomUUID(), NOW + 1, null);
+        ProtectionSnapshot snapshot = ProtectionSnapshot.of(data, null, 0);
+        assertTrue(snapshot.isActive());
+
+        // 快照只缓存到期时间，不缓存判断结果
+        ProtectionClock.fix(NOW + 1);
+        assertFalse(snapshot.isActive());
+        assertFalse(data.isActive());
+    }
+}